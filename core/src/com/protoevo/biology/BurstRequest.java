@@ -8,18 +8,38 @@ import com.protoevo.core.Simulation;
 import com.protoevo.env.Environment;
 import com.protoevo.physics.Particle;
 import com.protoevo.utils.Geometry;
+import com.protoevo.utils.SerializableBiFunction;
 import com.protoevo.utils.SerializableFunction;
+import com.protoevo.utils.SerializableSupplier;
 
 import java.io.Serializable;
-
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+
+/**
+ * Request for a cell to burst into children on the next birth and death phase it can.
+ * <p>
+ * Children are either created in full by a single function during the burst, or in two steps:
+ * a prepare step that builds each child without an environment or physics body, and an attach step
+ * that gives it a body and radius. The prepare step can be started on a worker thread as soon as the request
+ * is registered (see {@link #prepareChildren(Executor)}), so the burst itself only attaches the children.
+ * Prepared children are not saved, so requests loaded from a save create their children during the burst.
+ */
 public class BurstRequest<T extends Cell> implements Serializable {
     public static final long serialVersionUID = 1L;
 
     private SerializableFunction<Float, T> createChild;
+    private SerializableSupplier<T> prepareChild;
+    private SerializableBiFunction<T, Float, T> attachChild;
     private final Cell parent;
     private Class<T> cellType;
     private boolean overrideMinRadius, ready = false;
+    private int numPreparedChildren;
+    private transient List<CompletableFuture<T>> preparedChildren;
 
     public BurstRequest(Cell cell) {
         this.parent = cell;
@@ -44,6 +64,15 @@ public class BurstRequest<T extends Cell> implements Serializable {
         ready = true;
     }
 
+    public BurstRequest(Cell parent,
+                        Class<T> cellType,
+                        SerializableSupplier<T> prepareChild,
+                        SerializableBiFunction<T, Float, T> attachChild) {
+        this(parent, cellType, radius -> attachChild.apply(prepareChild.get(), radius));
+        this.prepareChild = prepareChild;
+        this.attachChild = attachChild;
+    }
+
     public void set(Class<T> cellType,
                     SerializableFunction<Float, T> createChild,
                     boolean overrideMinRadius) {
@@ -57,6 +86,60 @@ public class BurstRequest<T extends Cell> implements Serializable {
         return parent.getRadius() > parent.getMinBurstRadius() || overrideMinRadius;
     }
 
+    private int getMaxChildren() {
+        float volume = Geometry.getSphereVolume(parent.getRadius());
+        float minVolume = Geometry.getSphereVolume(Environment.settings.minParticleRadius.get());
+        return Math.min(6, (int) (volume / minVolume));
+    }
+
+    private int drawNumChildren() {
+        int maxChildren = getMaxChildren();
+        int nChildren = 2;
+        if (maxChildren > 2) {
+            int chances = parent.burstMultiplier();
+            for (int i = 0; i < chances; i++)
+                nChildren = Math.max(nChildren, MathUtils.random(2, maxChildren));
+        }
+        return nChildren;
+    }
+
+    /**
+     * Draws the number of children and starts preparing each of them on the given executor.
+     * Does nothing if the children are created in a single step, or are already being prepared.
+     */
+    public void prepareChildren(Executor executor) {
+        if (prepareChild == null || preparedChildren != null)
+            return;
+
+        numPreparedChildren = drawNumChildren();
+        List<CompletableFuture<T>> children = new ArrayList<>(numPreparedChildren);
+        for (int i = 0; i < numPreparedChildren; i++)
+            children.add(CompletableFuture.supplyAsync(prepareChild, executor));
+        preparedChildren = children;
+    }
+
+    /**
+     * @return whether the burst can go ahead without waiting for children to be prepared
+     */
+    public boolean isPrepared() {
+        if (preparedChildren == null)
+            return true;
+        for (CompletableFuture<T> child : preparedChildren)
+            if (!child.isDone())
+                return false;
+        return true;
+    }
+
+    private T createChild(int i, float radius) {
+        if (preparedChildren == null)
+            return createChild.apply(radius);
+        try {
+            return attachChild.apply(preparedChildren.get(i).join(), radius);
+        } catch (CompletionException e) {
+            throw new RuntimeException("Failed to prepare child of " + parent + ": " + e.getCause(), e.getCause());
+        }
+    }
+
     public void burst() {
         if (!ready)
             return;
@@ -74,27 +157,22 @@ public class BurstRequest<T extends Cell> implements Serializable {
 
         float angle = (float) (2 * Math.PI * Simulation.RANDOM.nextDouble());
 
-        float volume = Geometry.getSphereVolume(parent.getRadius());
-        float minVolume = Geometry.getSphereVolume(Environment.settings.minParticleRadius.get());
-        int maxChildren = Math.min(6, (int) (volume / minVolume));
-
-        int nChildren = 2;
-        if (maxChildren > 2) {
-            int chances = parent.burstMultiplier();
-            for (int i = 0; i < chances; i++)
-                nChildren = Math.max(nChildren, MathUtils.random(2, maxChildren));
-        }
+        // the number of prepared children was drawn when the request was made, so may need to be capped
+        int nChildren = preparedChildren == null
+                ? drawNumChildren()
+                : Math.min(numPreparedChildren, Math.max(2, getMaxChildren()));
 
         for (int i = 0; i < nChildren; i++) {
             Vector2 dir = new Vector2((float) Math.cos(angle), (float) Math.sin(angle));
             float p = 0.3f + 0.7f * MathUtils.random() / nChildren;
 
-            T child = createChild.apply(parent.getRadius() * p);
+            T child = createChild(i, parent.getRadius() * p);
             Particle childParticle = child.getParticle();
             childParticle.setPos(parent.getParticle().getPos().cpy().add(dir.scl(2 * childParticle.getRadius())));
             childParticle.applyImpulse(dir.scl(.005f));
 
             child.setGeneration(parent.getGeneration() + 1);
+            parent.getEnv().ifPresent(env -> env.registerBirth(parent, child));
             allocateChildResources(child, p);
 
             angle += 2 * Math.PI / nChildren;
@@ -104,22 +182,28 @@ public class BurstRequest<T extends Cell> implements Serializable {
     public void allocateChildResources(Cell child, float p) {
         child.setAvailableConstructionMass(parent.getConstructionMassAvailable() * p);
         child.setEnergyAvailable(parent.getEnergyAvailable() * p);
-        for (ComplexMolecule molecule : parent.getComplexMolecules())
-            child.setComplexMoleculeAvailable(molecule, p * parent.getComplexMoleculeAvailable(molecule));
+        MoleculeLedger parentMolecules = parent.getComplexMolecules();
+        for (int slot = 0; slot < parentMolecules.slots(); slot++) {
+            int ordinal = parentMolecules.ordinalAt(slot);
+            if (ordinal >= 0)
+                child.setComplexMoleculeAvailable(ordinal, p * parentMolecules.amountAt(slot));
+        }
 
 //        for (CellAdhesion.CAM cam : parent.getSurfaceCAMs())
 //            child.setCAMAvailable(cam, p * parent.getCAMAvailable(cam));
 
-        for (Food.Type foodType : parent.getFoodToDigest().keySet()) {
-            Food oldFood = parent.getFoodToDigest().get(foodType);
-            Food newFood = new Food(p * oldFood.getSimpleMass(), foodType);
-            if (newFood.getSimpleMass() <= 1e-12)
+        for (Food.Type foodType : Food.Type.values()) {
+            Food oldFood = parent.getFoodToDigest(foodType);
+            if (oldFood == null || p * oldFood.getSimpleMass() <= 1e-12)
                 continue;
-            for (ComplexMolecule molecule : oldFood.getComplexMolecules()) {
-                float moleculeAmount = p * oldFood.getComplexMoleculeMass(molecule);
-                if (moleculeAmount <= 1e-12)
+            Food newFood = new Food(p * oldFood.getSimpleMass(), foodType);
+            MoleculeLedger oldMolecules = oldFood.getComplexMoleculeMasses();
+            for (int slot = 0; slot < oldMolecules.slots(); slot++) {
+                int ordinal = oldMolecules.ordinalAt(slot);
+                float moleculeAmount = p * oldMolecules.amountAt(slot);
+                if (ordinal < 0 || moleculeAmount <= 1e-12)
                     continue;
-                newFood.addComplexMoleculeMass(molecule, moleculeAmount);
+                newFood.addComplexMoleculeMass(ordinal, moleculeAmount);
             }
             child.setFoodToDigest(foodType, newFood);
         }
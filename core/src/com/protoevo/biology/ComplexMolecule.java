@@ -3,23 +3,27 @@ package com.protoevo.biology;
 import com.protoevo.env.Environment;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Complex molecules are required for the construction of specialised cell behaviour.
+ * <p>
+ * Signatures are quantised, so there are only a fixed number of distinct molecules.
+ * These are all created up front in a table indexed by ordinal, so looking a molecule up
+ * is a plain array read that is safe to do from the parallel cell updates.
+ * The table is rebuilt if the number of possible molecules in the settings changes.
  */
 public class ComplexMolecule implements Serializable {
 
     public static final long serialVersionUID = 1L;
 
     private final float signature, productionCost;
+    private final int ordinal;
 
-    private final static Map<Float, ComplexMolecule> cache = new HashMap<>(
-            Environment.settings.possibleMolecules.get(), 1);
+    private static volatile ComplexMolecule[] table = new ComplexMolecule[0];
 
-    private ComplexMolecule(float signature, float productionCost) {
+    private ComplexMolecule(float signature, int ordinal, float productionCost) {
         this.signature = signature;
+        this.ordinal = ordinal;
         this.productionCost = productionCost;
     }
 
@@ -34,16 +38,62 @@ public class ComplexMolecule implements Serializable {
         return signature;
     }
 
+    /**
+     * @return the index of the quantised signature, between 0 and {@link #getNumOrdinals()}
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * @return the number of distinct molecules, signatures are quantised to multiples of
+     * one over the number of possible molecules, from 0 up to and including 1.
+     */
+    public static int getNumOrdinals() {
+        return Environment.settings.possibleMolecules.get() + 1;
+    }
+
+    private static ComplexMolecule[] getTable(int possibleMolecules) {
+        ComplexMolecule[] molecules = table;
+        if (molecules.length == possibleMolecules + 1)
+            return molecules;
+        return buildTable(possibleMolecules);
+    }
+
+    private static synchronized ComplexMolecule[] buildTable(int possibleMolecules) {
+        if (table.length == possibleMolecules + 1)
+            return table;
+
+        float productionCost = Environment.settings.moleculeProductionEnergyCost.get();
+        ComplexMolecule[] molecules = new ComplexMolecule[possibleMolecules + 1];
+        for (int ordinal = 0; ordinal <= possibleMolecules; ordinal++) {
+            float signature = (float) ((double) ordinal / possibleMolecules);
+            molecules[ordinal] = new ComplexMolecule(signature, ordinal, productionCost);
+        }
+        table = molecules;
+        return molecules;
+    }
+
+    public static ComplexMolecule fromOrdinal(int ordinal) {
+        return getTable(Environment.settings.possibleMolecules.get())[ordinal];
+    }
+
     public static ComplexMolecule fromSignature(float signature) {
         int possibleMolecules = Environment.settings.possibleMolecules.get();
-        signature = (float) (Math.floor(signature * possibleMolecules) / possibleMolecules);
-        if (!cache.containsKey(signature)) {
-            ComplexMolecule molecule = new ComplexMolecule(
-                    signature, Environment.settings.moleculeProductionEnergyCost.get());
-            cache.put(signature, molecule);
-            return molecule;
-        }
-        return cache.get(signature);
+        double quantised = Math.floor(signature * possibleMolecules);
+        int ordinal = Math.max(0, Math.min(possibleMolecules, (int) quantised));
+        return getTable(possibleMolecules)[ordinal];
+    }
+
+    /**
+     * Replaces deserialized molecules with the shared instance from the table,
+     * unless they were quantised under a different number of possible molecules.
+     */
+    private Object readResolve() {
+        ComplexMolecule[] molecules = getTable(Environment.settings.possibleMolecules.get());
+        if (ordinal < molecules.length && molecules[ordinal].signature == signature)
+            return molecules[ordinal];
+        return this;
     }
 
     @Override
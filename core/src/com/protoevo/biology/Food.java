@@ -3,9 +3,6 @@ package com.protoevo.biology;
 import com.protoevo.env.Environment;
 
 import java.io.Serializable;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 
 public class Food implements Serializable {
 
@@ -30,16 +27,11 @@ public class Food implements Serializable {
 
     private float mass, energy;
     private final Type type;
-    private final Map<ComplexMolecule, Float> complexMoleculeMasses;
+    private final MoleculeLedger complexMoleculeMasses = new MoleculeLedger();
 
-    public Food(float mass, Type foodType, HashMap<ComplexMolecule, Float> complexMoleculeMass) {
+    public Food(float mass, Type foodType) {
         this.mass = mass;
         this.type = foodType;
-        this.complexMoleculeMasses = complexMoleculeMass;
-    }
-
-    public Food(float mass, Type foodType) {
-        this(mass, foodType, new HashMap<>(0));
     }
 
     public Type getType() {
@@ -63,38 +55,40 @@ public class Food implements Serializable {
     }
 
     public float getComplexMoleculeMass(ComplexMolecule molecule) {
-        return complexMoleculeMasses.getOrDefault(molecule, 0f);
+        return complexMoleculeMasses.get(molecule);
     }
 
     public float getMass() {
-        float totalMass = mass;
-        for (float complexMoleculeMass : complexMoleculeMasses.values()) {
-            totalMass += complexMoleculeMass;
-        }
-        return totalMass;
+        return mass + complexMoleculeMasses.getTotal();
     }
 
-    public Collection<ComplexMolecule> getComplexMolecules() {
-        return complexMoleculeMasses.keySet();
+    public MoleculeLedger getComplexMoleculeMasses() {
+        return complexMoleculeMasses;
     }
 
     public void subtractComplexMolecule(ComplexMolecule molecule, float extracted) {
-        float currentAmount = getComplexMoleculeMass(molecule);
-        complexMoleculeMasses.put(molecule, Math.max(0, currentAmount - extracted));
+        subtractComplexMolecule(molecule.getOrdinal(), extracted);
     }
 
-    public Map<ComplexMolecule, Float> getComplexMoleculeMasses() {
-        return complexMoleculeMasses;
+    public void subtractComplexMolecule(int ordinal, float extracted) {
+        float currentAmount = complexMoleculeMasses.get(ordinal);
+        complexMoleculeMasses.set(ordinal, Math.max(0, currentAmount - extracted));
     }
 
-    public void addComplexMolecules(Map<ComplexMolecule, Float> masses) {
-        for (ComplexMolecule molecule : masses.keySet())
-            addComplexMoleculeMass(molecule, masses.get(molecule));
+    public void addComplexMolecules(MoleculeLedger masses) {
+        for (int slot = 0; slot < masses.slots(); slot++) {
+            int ordinal = masses.ordinalAt(slot);
+            if (ordinal >= 0)
+                addComplexMoleculeMass(ordinal, masses.amountAt(slot));
+        }
     }
 
     public void addComplexMoleculeMass(ComplexMolecule molecule, float mass) {
-        float currentMass = complexMoleculeMasses.getOrDefault(molecule, 0f);
-        complexMoleculeMasses.put(molecule, currentMass + mass);
+        addComplexMoleculeMass(molecule.getOrdinal(), mass);
+    }
+
+    public void addComplexMoleculeMass(int ordinal, float mass) {
+        complexMoleculeMasses.add(ordinal, mass);
     }
 
     public float getEnergy(float m) {
@@ -115,7 +109,6 @@ public class Food implements Serializable {
         float decay = Math.max(0, 1f - getDecayRate() * delta);
         mass = Math.max(0, mass - decay);
         energy = Math.max(0, energy - decay);
-        complexMoleculeMasses.replaceAll((m, v) -> complexMoleculeMasses.get(m)
-                * Environment.settings.cell.complexMoleculeDecayRate.get());
+        complexMoleculeMasses.scale(Environment.settings.cell.complexMoleculeDecayRate.get());
     }
 }
@@ -0,0 +1,206 @@
+package com.protoevo.biology;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Amounts of complex molecules, indexed by {@link ComplexMolecule#getOrdinal()}.
+ * <p>
+ * When the number of possible molecules is small enough the amounts are held in a dense array,
+ * otherwise they are held sparsely in parallel arrays of ordinals and amounts.
+ * A molecule is present once an amount has been set for it, even if that amount has since
+ * been depleted to zero, matching the key set of the map this replaced.
+ * Iterate over the slots rather than the molecules, so that no iterator or boxed float is created:
+ * <pre>
+ *     for (int slot = 0; slot < ledger.slots(); slot++) {
+ *         int ordinal = ledger.ordinalAt(slot);
+ *         if (ordinal < 0) continue;
+ *         float amount = ledger.amountAt(slot);
+ *     }
+ * </pre>
+ * The dense arrays are only allocated once a molecule is first set, as most cells and food never hold any.
+ * Molecules are added to the ledgers of other cells from worker threads, so inserting a molecule,
+ * which sets its presence bit and may allocate or grow the arrays, is synchronised and is never lost.
+ * Like the concurrent map it replaced, updating a molecule that is already present is not
+ * an atomic read-modify-write, so concurrent adds to the same molecule may lose one of the amounts.
+ */
+public class MoleculeLedger implements Serializable {
+
+    public static final long serialVersionUID = 1L;
+
+    /** Largest number of possible molecules that is stored densely. */
+    public static final int DENSE_LIMIT = 256;
+
+    // volatile so that the presence bits are published along with the lazily allocated dense amounts
+    private volatile float[] amounts;
+    private long[] present;  // dense only, bit set for each ordinal that has been set
+    private int[] ordinals;  // sparse only
+    private int size;
+
+    public MoleculeLedger() {
+        this(ComplexMolecule.getNumOrdinals());
+    }
+
+    public MoleculeLedger(int numOrdinals) {
+        if (numOrdinals > DENSE_LIMIT) {
+            amounts = new float[0];
+            ordinals = new int[0];
+        }
+    }
+
+    private boolean isDense() {
+        return ordinals == null;
+    }
+
+    private int find(int ordinal) {
+        for (int i = 0; i < size; i++)
+            if (ordinals[i] == ordinal)
+                return i;
+        return -1;
+    }
+
+    private synchronized void ensureDenseCapacity(int ordinal) {
+        if (amounts == null) {
+            int n = Math.max(ComplexMolecule.getNumOrdinals(), ordinal + 1);
+            present = new long[(n + 63) >>> 6];
+            amounts = new float[n];
+        } else if (ordinal >= amounts.length) {
+            present = Arrays.copyOf(present, (ordinal + 64) >>> 6);
+            amounts = Arrays.copyOf(amounts, ordinal + 1);
+        }
+    }
+
+    private synchronized void setSparse(int ordinal, float amount) {
+        int i = find(ordinal);
+        if (i < 0) {
+            if (size == ordinals.length) {
+                int capacity = Math.max(4, 2 * size);
+                ordinals = Arrays.copyOf(ordinals, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+            }
+            i = size++;
+            ordinals[i] = ordinal;
+        }
+        amounts[i] = amount;
+    }
+
+    private synchronized boolean containsSparse(int ordinal) {
+        return find(ordinal) >= 0;
+    }
+
+    private synchronized float getSparse(int ordinal) {
+        int i = find(ordinal);
+        return i < 0 ? 0f : amounts[i];
+    }
+
+    public float get(int ordinal) {
+        if (!isDense())
+            return getSparse(ordinal);
+        float[] dense = amounts;
+        return dense != null && ordinal < dense.length ? dense[ordinal] : 0f;
+    }
+
+    public float get(ComplexMolecule molecule) {
+        return get(molecule.getOrdinal());
+    }
+
+    private synchronized void insertDense(int ordinal, float amount) {
+        if (amounts == null || ordinal >= amounts.length)
+            ensureDenseCapacity(ordinal);
+        present[ordinal >>> 6] |= 1L << ordinal;
+        amounts[ordinal] = amount;
+    }
+
+    public void set(int ordinal, float amount) {
+        if (!isDense()) {
+            setSparse(ordinal, amount);
+            return;
+        }
+        float[] dense = amounts;
+        // a presence bit that is not seen yet just takes the synchronised path
+        if (dense == null || ordinal >= dense.length || (present[ordinal >>> 6] & (1L << ordinal)) == 0)
+            insertDense(ordinal, amount);
+        else
+            dense[ordinal] = amount;
+    }
+
+    public void set(ComplexMolecule molecule, float amount) {
+        set(molecule.getOrdinal(), amount);
+    }
+
+    public void add(int ordinal, float amount) {
+        set(ordinal, get(ordinal) + amount);
+    }
+
+    public boolean contains(int ordinal) {
+        if (!isDense())
+            return containsSparse(ordinal);
+        return amounts != null && ordinal < amounts.length && (present[ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+
+    public boolean isEmpty() {
+        if (!isDense())
+            return size == 0;
+        if (present == null)
+            return true;
+        for (long bits : present)
+            if (bits != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * @return the number of slots to iterate over, some of which may be empty
+     */
+    public int slots() {
+        if (!isDense())
+            return size;
+        return amounts == null ? 0 : amounts.length;
+    }
+
+    /**
+     * @param slot index between 0 and {@link #slots()}
+     * @return the ordinal of the molecule in the slot, or -1 if the slot is empty
+     */
+    public int ordinalAt(int slot) {
+        if (!isDense())
+            return ordinals[slot];
+        return (present[slot >>> 6] & (1L << slot)) != 0 ? slot : -1;
+    }
+
+    public float amountAt(int slot) {
+        return amounts[slot];
+    }
+
+    public void setAmountAt(int slot, float amount) {
+        amounts[slot] = amount;
+    }
+
+    public float getTotal() {
+        float total = 0;
+        int n = slots();
+        for (int i = 0; i < n; i++)
+            total += amounts[i];
+        return total;
+    }
+
+    /**
+     * Multiplies every amount by the given factor.
+     */
+    public void scale(float factor) {
+        int n = slots();
+        for (int i = 0; i < n; i++)
+            amounts[i] *= factor;
+    }
+
+    /**
+     * Sets this ledger to hold the given proportion of each molecule present in another.
+     */
+    public void setScaled(MoleculeLedger other, float p) {
+        for (int slot = 0; slot < other.slots(); slot++) {
+            int ordinal = other.ordinalAt(slot);
+            if (ordinal >= 0)
+                set(ordinal, p * other.amountAt(slot));
+        }
+    }
+}
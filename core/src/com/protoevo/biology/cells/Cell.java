@@ -6,6 +6,8 @@ import com.badlogic.gdx.math.Vector2;
 import com.protoevo.biology.*;
 import com.protoevo.biology.nodes.SurfaceNode;
 import com.protoevo.biology.organelles.Organelle;
+import com.protoevo.core.StatRecord;
+import com.protoevo.core.StatSchema;
 import com.protoevo.core.Statistics;
 import com.protoevo.env.Environment;
 import com.protoevo.physics.Collision;
@@ -18,7 +20,6 @@ import com.protoevo.utils.Utils;
 
 import java.io.Serializable;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static com.protoevo.utils.Utils.lerp;
@@ -26,8 +27,45 @@ import static com.protoevo.utils.Utils.lerp;
 public abstract class Cell implements Serializable, Coloured {
 	private static final long serialVersionUID = 1L;
 
+	/** Numeric stats of all cell types, subclasses register their own stats here too. */
+	public static final StatSchema statSchema = new StatSchema();
+	private static final StatSchema.Id
+			SIZE = statSchema.register("Size", Statistics.ComplexUnit.DISTANCE),
+			SPEED = statSchema.register("Speed", Statistics.ComplexUnit.SPEED),
+			TOTAL_MASS = statSchema.register("Total Mass", Statistics.ComplexUnit.MASS),
+			ACTIVITY = statSchema.register("Activity"),
+			AGE = statSchema.register("Age", Statistics.ComplexUnit.TIME),
+			HEALTH = statSchema.register("Health", Statistics.ComplexUnit.PERCENTAGE),
+			GENERATION = statSchema.registerCount("Generation"),
+			AVAILABLE_ENERGY = statSchema.register("Available Energy", Statistics.ComplexUnit.ENERGY),
+			CONSTRUCTION_MASS = statSchema.register("Construction Mass", Statistics.ComplexUnit.MASS),
+			GROWTH_RATE = statSchema.register("Growth Rate", Statistics.ComplexUnit.SPEED),
+			REPAIR_RATE = statSchema.register("Repair Rate", Statistics.ComplexUnit.PERCENTAGE_PER_TIME),
+			NUM_CELL_BINDINGS = statSchema.registerCount("Num Cell Bindings"),
+			MULTICELL_STRUCTURE_SIZE = statSchema.registerCount("Multicell Structure Size"),
+			BEING_ENGULFED = statSchema.registerBoolean("Being Engulfed"),
+			LIGHT_LEVEL = statSchema.register("Light Level", Statistics.ComplexUnit.PERCENTAGE),
+			INTERNAL_TEMPERATURE = statSchema.register("Temperature (Internal)", Statistics.ComplexUnit.TEMPERATURE),
+			EXTERNAL_TEMPERATURE = statSchema.register("Temperature (External)", Statistics.ComplexUnit.TEMPERATURE),
+			THERMAL_CONDUCTANCE = statSchema.register("Thermal Conductance"),
+			TEMPERATURE_TOLERANCE = statSchema.register("Temperature Tolerance", Statistics.ComplexUnit.TEMPERATURE),
+			IDEAL_TEMPERATURE = statSchema.register("Ideal Temperature", Statistics.ComplexUnit.TEMPERATURE),
+			ENERGY_LIMIT = statSchema.register("Energy Limit", Statistics.ComplexUnit.ENERGY),
+			CONSTRUCTION_MASS_LIMIT = statSchema.register("Construction Mass Limit", Statistics.ComplexUnit.MASS);
+	private static final StatSchema.Id[] digestionRateStats = new StatSchema.Id[Food.Type.numTypes()];
+	private static final StatSchema.Id[] foodToDigestStats = new StatSchema.Id[Food.Type.numTypes()];
+	static {
+		for (Food.Type type : Food.Type.values()) {
+			digestionRateStats[type.ordinal()] = statSchema.register(
+					type + " Digestion Rate", Statistics.ComplexUnit.MASS_PER_TIME);
+			foodToDigestStats[type.ordinal()] = statSchema.register(
+					type + " to Digest", Statistics.ComplexUnit.MASS);
+		}
+	}
+	private static volatile StatSchema.Id[] moleculeStats = new StatSchema.Id[0];
+
 	private Particle particle;
-	private Environment environment;
+	private transient Environment environment;
 	private final Colour healthyColour = new Colour(Color.WHITE);
 	private final Colour fullyDegradedColour = new Colour(Color.WHITE);
 	private final Colour currentColour = new Colour();
@@ -39,11 +77,12 @@ public abstract class Cell implements Serializable, Coloured {
 	private double constructionMassAvailable = Environment.settings.cell.startingAvailableConstructionMass.get();
 	private double massChangeForGrowth = 0f;
 	private double radius = Environment.settings.minParticleRadius.get() * (1 + 2 * Math.random());
-	private final Map<ComplexMolecule, Float> availableComplexMolecules = new ConcurrentHashMap<>(0);
+	private final MoleculeLedger availableComplexMolecules = new MoleculeLedger();
 	private final Collection<Long> attachedCellIDs = new ConcurrentLinkedQueue<>(); // cells attached to this cell
 	private final Set<Long> cellIdsInMultiCellGroup = new HashSet<>(0); // cells in the same multi-cell group
-	private final Map<Food.Type, Float> foodDigestionRates = new HashMap<>(0);
-	private final Map<Food.Type, Food> foodToDigest = new HashMap<>(0);
+	// indexed by Food.Type ordinal
+	private final float[] foodDigestionRates = new float[Food.Type.numTypes()];
+	private final Food[] foodToDigest = new Food[Food.Type.numTypes()];
 	private final Set<ConstructionProject> constructionProjects = new LinkedHashSet<>(0);
 	private ArrayList<Organelle> organelles = new ArrayList<>();
 	private boolean hasBurst = false;
@@ -199,12 +238,17 @@ public abstract class Cell implements Serializable, Coloured {
 	}
 
 	public void decayResources(float delta) {
-		foodToDigest.values().forEach(food -> food.decay(delta));
+		for (Food food : foodToDigest)
+			if (food != null)
+				food.decay(delta);
 
 		depleteEnergy(delta * Environment.settings.cell.energyDecayRate.get());
 
-		for (ComplexMolecule molecule : availableComplexMolecules.keySet()) {
-			depleteComplexMolecule(molecule, delta * Environment.settings.cell.complexMoleculeDecayRate.get());
+		float moleculeDecay = delta * Environment.settings.cell.complexMoleculeDecayRate.get();
+		for (int slot = 0; slot < availableComplexMolecules.slots(); slot++) {
+			if (availableComplexMolecules.ordinalAt(slot) >= 0)
+				availableComplexMolecules.setAmountAt(
+						slot, Math.max(0, availableComplexMolecules.amountAt(slot) - moleculeDecay));
 		}
 	}
 
@@ -310,17 +354,18 @@ public abstract class Cell implements Serializable, Coloured {
 	}
 
 	public float getDigestionRate(Food.Type foodType) {
-		return foodDigestionRates.getOrDefault(foodType, 0f);
+		return foodDigestionRates[foodType.ordinal()];
 	}
 
 	public void setDigestionRate(Food.Type foodType, float rate) {
-		foodDigestionRates.put(foodType, rate);
+		foodDigestionRates[foodType.ordinal()] = rate;
 	}
 
 	public float getTotalFoodMassToDigest() {
 		float total = 0;
-		for (Food food : foodToDigest.values()) {
-			total += food.getSimpleMass();
+		for (Food food : foodToDigest) {
+			if (food != null)
+				total += food.getSimpleMass();
 		}
 		return total;
 	}
@@ -339,39 +384,41 @@ public abstract class Cell implements Serializable, Coloured {
 		float removeMultiplier = Environment.settings.cell.engulfExtractionWasteMultiplier.get();
 		engulfed.removeMass(removeMultiplier * extractedMass, CauseOfDeath.EATEN);
 
-		Food food;
-		if (foodToDigest.containsKey(foodType))
-			food = foodToDigest.get(foodType);
-		else {
+		Food food = foodToDigest[foodType.ordinal()];
+		if (food == null) {
 			food = new Food(extractedMass, foodType);
-			foodToDigest.put(foodType, food);
+			foodToDigest[foodType.ordinal()] = food;
 		}
 
 		food.addSimpleMass(extractedMass);
 		food.addEnergy(engulfed.getEnergyAvailable() * extraction);
 
-		for (ComplexMolecule molecule : engulfed.getComplexMolecules()) {
-			if (engulfed.getComplexMoleculeAvailable(molecule) > 0) {
-				float extractedAmount = extraction * engulfed.getComplexMoleculeAvailable(molecule);
-				engulfed.depleteComplexMolecule(molecule, extractedAmount);
+		MoleculeLedger engulfedMolecules = engulfed.getComplexMolecules();
+		for (int slot = 0; slot < engulfedMolecules.slots(); slot++) {
+			int ordinal = engulfedMolecules.ordinalAt(slot);
+			if (ordinal >= 0 && engulfedMolecules.amountAt(slot) > 0) {
+				float extractedAmount = extraction * engulfedMolecules.amountAt(slot);
+				engulfed.depleteComplexMolecule(ordinal, extractedAmount);
 				if (extractedAmount <= 1e-12)
 					continue;
-				food.addComplexMoleculeMass(molecule, extractedMass);
+				food.addComplexMoleculeMass(ordinal, extractedMass);
 			}
 		}
 	}
 
 	public void addFood(Food.Type foodType, float amount) {
-		Food food = foodToDigest.getOrDefault(foodType, new Food(amount, foodType));
+		Food food = foodToDigest[foodType.ordinal()];
+		if (food == null) {
+			food = new Food(amount, foodType);
+			foodToDigest[foodType.ordinal()] = food;
+		}
 		food.addSimpleMass(amount);
-		foodToDigest.put(foodType, food);
 	}
 
 	public void digest(float delta) {
-		if (foodToDigest.isEmpty())
-			return;  // avoids creating iterator if there's nothing to digest
-
-		for (Food food : foodToDigest.values()) {
+		for (Food food : foodToDigest) {
+			if (food == null)
+				continue;
 			float rate = delta * Environment.settings.cell.digestionFactor.get() * getDigestionRate(food.getType());
 			activity += rate * Environment.settings.cell.digestionActivity.get();
 			if (food.getSimpleMass() > 0) {
@@ -380,13 +427,15 @@ public abstract class Cell implements Serializable, Coloured {
 				food.subtractSimpleMass(massExtracted);
 				addAvailableEnergy(food.getEnergy(massExtracted));
 			}
-			for (ComplexMolecule molecule : food.getComplexMolecules()) {
-				float amount = food.getComplexMoleculeMass(molecule);
-				if (amount == 0)
+			MoleculeLedger foodMolecules = food.getComplexMoleculeMasses();
+			for (int slot = 0; slot < foodMolecules.slots(); slot++) {
+				int ordinal = foodMolecules.ordinalAt(slot);
+				float amount = foodMolecules.amountAt(slot);
+				if (ordinal < 0 || amount == 0)
 					continue;
 				float extracted = Math.min(amount, amount * rate);
-				addAvailableComplexMolecule(molecule, extracted);
-				food.subtractComplexMolecule(molecule, extracted);
+				addAvailableComplexMolecule(ordinal, extracted);
+				foodMolecules.setAmountAt(slot, Math.max(0, amount - extracted));
 			}
 		}
 	}
@@ -601,61 +650,103 @@ public abstract class Cell implements Serializable, Coloured {
 		}
 	}
 
-	public Statistics getResourceStats() {
-		Statistics stats = particle.getStats();
-		stats.clear();
-
-		stats.putEnergy("Available Energy", energyAvailable);
-		stats.putEnergy("Energy Limit", getAvailableEnergyCap());
-		stats.putMass("Construction Mass", (float) constructionMassAvailable);
-		stats.putMass("Construction Mass Limit", getConstructionMassCap());
+	private static StatSchema.Id getMoleculeStat(int ordinal) {
+		StatSchema.Id[] ids = moleculeStats;
+		if (ids.length != ComplexMolecule.getNumOrdinals()) {
+			// names are formatted once per molecule, rather than every time stats are recorded
+			ids = new StatSchema.Id[ComplexMolecule.getNumOrdinals()];
+			for (int i = 0; i < ids.length; i++)
+				ids[i] = statSchema.register(
+						String.format("Molecule %.2f Available", ComplexMolecule.fromOrdinal(i).getSignature()),
+						Statistics.ComplexUnit.MASS);
+			moleculeStats = ids;
+		}
+		return ids[ordinal];
+	}
 
-		for (ComplexMolecule molecule : availableComplexMolecules.keySet())
-			if (availableComplexMolecules.get(molecule) >= 1e-12)
-				stats.putMass(
-						String.format("Molecule %.2f Available", molecule.getSignature()),
-						availableComplexMolecules.get(molecule));
+	public void recordResourceStats(StatRecord record) {
+		recordResourceStats(record, true);
+	}
 
-		Statistics.ComplexUnit massPerTime = Statistics.ComplexUnit.MASS_PER_TIME;
+	public void recordResourceStats(StatRecord record, boolean includeMolecules) {
+		record.put(AVAILABLE_ENERGY, energyAvailable);
+		record.put(ENERGY_LIMIT, getAvailableEnergyCap());
+		record.put(CONSTRUCTION_MASS, (float) constructionMassAvailable);
+		record.put(CONSTRUCTION_MASS_LIMIT, getConstructionMassCap());
 
-		for (Food.Type foodType : foodDigestionRates.keySet())
-			if (foodDigestionRates.get(foodType) > 0)
-				stats.put(foodType + " Digestion Rate", foodDigestionRates.get(foodType), massPerTime);
+		if (includeMolecules) {
+			for (int slot = 0; slot < availableComplexMolecules.slots(); slot++) {
+				int ordinal = availableComplexMolecules.ordinalAt(slot);
+				if (ordinal >= 0 && availableComplexMolecules.amountAt(slot) >= 1e-12)
+					record.put(getMoleculeStat(ordinal), availableComplexMolecules.amountAt(slot));
+			}
+		}
 
-		for (Food food : foodToDigest.values())
-			stats.putMass(food + " to Digest", food.getSimpleMass());
+		for (Food.Type foodType : Food.Type.values())
+			if (getDigestionRate(foodType) > 0)
+				record.put(digestionRateStats[foodType.ordinal()], getDigestionRate(foodType));
 
-		return stats;
+		for (Food food : foodToDigest)
+			if (food != null)
+				record.put(foodToDigestStats[food.getType().ordinal()], food.getSimpleMass());
 	}
 
-	public Statistics getStats() {
+	public Statistics getResourceStats() {
 		Statistics stats = particle.getStats();
-		stats.put("Activity", lastActivity);
-		stats.putTime("Age", timeAlive);
-		stats.putPercentage("Health", 100 * getHealth());
-		stats.putCount("Generation", getGeneration());
-		stats.putEnergy("Available Energy", energyAvailable);
-		stats.putMass("Construction Mass", (float) constructionMassAvailable);
+		stats.clear();
+		StatRecord record = new StatRecord(statSchema);
+		recordResourceStats(record);
+		return record.writeTo(stats);
+	}
 
-		stats.putSpeed("Growth Rate", getGrowthRate());
-		stats.put("Repair Rate", 100 * getRepairRate(),
-				Statistics.ComplexUnit.PERCENTAGE_PER_TIME);
+	/**
+	 * Records the numeric stats of the cell, without boxing values or building names.
+	 * Subclasses add their own stats, registered in {@link #statSchema}.
+	 * Stats that depend on the environment are only recorded while the cell is in one.
+	 * @param record the record to write into, which should be cleared first if it is being reused
+	 */
+	public void recordStats(StatRecord record) {
+		record.put(SIZE, particle.getRadius());
+		record.put(SPEED, particle.getSpeed());
+		record.put(TOTAL_MASS, particle.getMass());
+		record.put(ACTIVITY, lastActivity);
+		record.put(AGE, timeAlive);
+		record.put(HEALTH, 100 * getHealth());
+		record.put(GENERATION, getGeneration());
+		record.put(AVAILABLE_ENERGY, energyAvailable);
+		record.put(CONSTRUCTION_MASS, (float) constructionMassAvailable);
+
+		record.put(GROWTH_RATE, getGrowthRate());
+		record.put(REPAIR_RATE, 100 * getRepairRate());
 
 		if (getNumAttachedCells() > 0) {
-			stats.putCount("Num Cell Bindings", getNumAttachedCells());
-			stats.putCount("Multicell Structure Size", getNumCellsInMulticellularOrganism());
+			record.put(NUM_CELL_BINDINGS, getNumAttachedCells());
+			// the other cells of the structure can only be found through the environment
+			if (environment != null)
+				record.put(MULTICELL_STRUCTURE_SIZE, getNumCellsInMulticellularOrganism());
 		}
 
-		stats.putBoolean("Being Engulfed", engulfer != null);
+		record.put(BEING_ENGULFED, engulfer != null);
 
-		stats.putPercentage("Light Level", 100f * getLightAtCell());
-		stats.putTemperature("Temperature (Internal)", temperature);
-		stats.putTemperature("Temperature (External)", getExternalTemperature());
-		stats.put("Thermal Conductance", membraneThermalConductance);
-		stats.putTemperature("Temperature Tolerance", temperatureTolerance);
-		stats.putTemperature("Ideal Temperature", idealTemperature);
+		// without an environment, such as for a cell read straight from a save, these are left missing
+		if (environment != null) {
+			record.put(LIGHT_LEVEL, 100f * getLightAtCell());
+			record.put(EXTERNAL_TEMPERATURE, getExternalTemperature());
+		}
+		record.put(INTERNAL_TEMPERATURE, temperature);
+		record.put(THERMAL_CONDUCTANCE, membraneThermalConductance);
+		record.put(TEMPERATURE_TOLERANCE, temperatureTolerance);
+		record.put(IDEAL_TEMPERATURE, idealTemperature);
+	}
 
-		return stats;
+	/**
+	 * @return a view of the stats of the cell for the UI, backed by the particle's statistics
+	 */
+	public Statistics getStats() {
+		Statistics stats = particle.getStats();
+		StatRecord record = new StatRecord(statSchema);
+		recordStats(record);
+		return record.writeTo(stats);
 	}
 
 	public int getNumCellsInMulticellularOrganism() {
@@ -750,7 +841,7 @@ public abstract class Cell implements Serializable, Coloured {
 	}
 
 	public void setFoodToDigest(Food.Type foodType, Food food) {
-		foodToDigest.put(foodType, food);
+		foodToDigest[foodType.ordinal()] = food;
 	}
 
 //	public float getCAMAvailable(CellAdhesion.CAM cam) {
@@ -786,23 +877,35 @@ public abstract class Cell implements Serializable, Coloured {
 		energyAvailable = Math.max(0, energyAvailable - energy);
 	}
 
-	public Collection<ComplexMolecule> getComplexMolecules() {
-		return availableComplexMolecules.keySet();
+	public MoleculeLedger getComplexMolecules() {
+		return availableComplexMolecules;
 	}
 
 	public void depleteComplexMolecule(ComplexMolecule molecule, float amount) {
-		float currAmount = getComplexMoleculeAvailable(molecule);
-		setComplexMoleculeAvailable(molecule, currAmount - amount);
+		depleteComplexMolecule(molecule.getOrdinal(), amount);
+	}
+
+	public void depleteComplexMolecule(int ordinal, float amount) {
+		float currAmount = getComplexMoleculeAvailable(ordinal);
+		setComplexMoleculeAvailable(ordinal, currAmount - amount);
 	}
 
 	public float getComplexMoleculeAvailable(ComplexMolecule molecule) {
-		return availableComplexMolecules.getOrDefault(molecule, 0f);
+		return availableComplexMolecules.get(molecule.getOrdinal());
+	}
+
+	public float getComplexMoleculeAvailable(int ordinal) {
+		return availableComplexMolecules.get(ordinal);
 	}
 
 	public void addAvailableComplexMolecule(ComplexMolecule molecule, float amount) {
-		float currentAmount = availableComplexMolecules.getOrDefault(molecule, 0f);
+		addAvailableComplexMolecule(molecule.getOrdinal(), amount);
+	}
+
+	public void addAvailableComplexMolecule(int ordinal, float amount) {
+		float currentAmount = availableComplexMolecules.get(ordinal);
 		float newAmount = Math.min(getComplexMoleculeMassCap(), currentAmount + amount);
-		availableComplexMolecules.put(molecule, newAmount);
+		availableComplexMolecules.set(ordinal, newAmount);
 	}
 
 	private float getComplexMoleculeMassCap() {
@@ -813,7 +916,11 @@ public abstract class Cell implements Serializable, Coloured {
 	}
 
 	public void setComplexMoleculeAvailable(ComplexMolecule molecule, float amount) {
-		availableComplexMolecules.put(molecule, Math.max(0, amount));
+		setComplexMoleculeAvailable(molecule.getOrdinal(), amount);
+	}
+
+	public void setComplexMoleculeAvailable(int ordinal, float amount) {
+		availableComplexMolecules.set(ordinal, Math.max(0, amount));
 	}
 
 	public float getConstructionMassCap() {
@@ -859,11 +966,10 @@ public abstract class Cell implements Serializable, Coloured {
 		if (particle == null)
 			return 1f;
 
-		float extraMass = (float) constructionMassAvailable;
-		for (float mass : availableComplexMolecules.values())
-			extraMass += mass;
-		for (Food food : foodToDigest.values())
-			extraMass += food.getMass();
+		float extraMass = (float) constructionMassAvailable + availableComplexMolecules.getTotal();
+		for (Food food : foodToDigest)
+			if (food != null)
+				extraMass += food.getMass();
 		return particle.getMass() + extraMass;
 	}
 
@@ -893,8 +999,11 @@ public abstract class Cell implements Serializable, Coloured {
 		removeMass(mass, CauseOfDeath.LOST_TOO_MUCH_MASS);
 	}
 
-	public Map<Food.Type, Food> getFoodToDigest() {
-		return foodToDigest;
+	/**
+	 * @return the food of the given type waiting to be digested, or null if there is none
+	 */
+	public Food getFoodToDigest(Food.Type foodType) {
+		return foodToDigest[foodType.ordinal()];
 	}
 
 	public int getNumAttachedCells() {
@@ -917,6 +1026,10 @@ public abstract class Cell implements Serializable, Coloured {
 		this.repairRate = repairRate;
 	}
 
+	public Cell getEngulfer() {
+		return engulfer;
+	}
+
 	public void setEngulfer(Cell engulfer) {
 		this.engulfer = engulfer;
 	}
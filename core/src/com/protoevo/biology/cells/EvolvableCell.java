@@ -1,14 +1,18 @@
 package com.protoevo.biology.cells;
 
 import com.protoevo.biology.evolution.*;
+import com.protoevo.biology.nn.NeuralNetwork;
 import com.protoevo.biology.nn.Neuron;
 import com.protoevo.env.Environment;
 import com.protoevo.utils.Utils;
 
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
 public abstract class EvolvableCell extends Cell implements Evolvable {
 
     private GeneExpressionFunction geneExpressionFunction;
-    private float timeSinceLastGeneExpression = 0;
+    private float timeSinceLastGeneExpression = -1;
 
     @EvolvableFloat(name="Growth Rate", min=0, max=1)
     public void setGrowth(float growthRate) {
@@ -121,16 +125,54 @@ public abstract class EvolvableCell extends Cell implements Evolvable {
     public void update(float delta) {
         super.update(delta);
 
+        // start each cell at a random phase, so cells born together do not all express together.
+        // cells update in parallel, so this cannot use the shared MathUtils random
+        if (timeSinceLastGeneExpression < 0)
+            timeSinceLastGeneExpression = ThreadLocalRandom.current().nextFloat() * getExpressionInterval();
+
         timeSinceLastGeneExpression += delta;
         if (geneExpressionFunction != null
                 && timeSinceLastGeneExpression >= getExpressionInterval()) {
-            geneExpressionFunction.update();
             timeSinceLastGeneExpression = 0;
 
-            for (Neuron n : geneExpressionFunction.getRegulatoryNetwork().getNeurons()) {
-                if (n.getType().equals(Neuron.Type.HIDDEN))
-                    addActivity(Environment.settings.cell.grnHiddenNodeActivity.get() * n.getLastState());
-            }
+            Optional<Environment> env = getEnv();
+            if (env.isPresent())
+                env.get().requestGeneExpression(this);
+            else
+                expressGenes();
+        }
+    }
+
+    /**
+     * Called by the environment when the gene expression scheduler dispatches this cell.
+     */
+    public void expressGenes() {
+        geneExpressionFunction.update();
+        handleGeneExpression();
+    }
+
+    /**
+     * Called by the environment before the GRN of this cell is ticked as part of a batch.
+     */
+    public void prepareGeneExpression() {
+        geneExpressionFunction.prepareUpdate();
+    }
+
+    /**
+     * Called by the environment once the GRN of this cell has been ticked as part of a batch.
+     */
+    public void completeGeneExpression() {
+        geneExpressionFunction.completeUpdate();
+        handleGeneExpression();
+    }
+
+    private void handleGeneExpression() {
+        NeuralNetwork grn = geneExpressionFunction.getRegulatoryNetwork();
+        if (grn == null)
+            return;
+        for (Neuron n : grn.getNeurons()) {
+            if (n.getType().equals(Neuron.Type.HIDDEN))
+                addActivity(Environment.settings.cell.grnHiddenNodeActivity.get() * n.getLastState());
         }
     }
 
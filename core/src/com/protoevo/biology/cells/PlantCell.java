@@ -4,6 +4,8 @@ import com.badlogic.gdx.math.MathUtils;
 import com.protoevo.biology.CauseOfDeath;
 import com.protoevo.biology.evolution.Evolvable;
 import com.protoevo.biology.evolution.EvolvableFloat;
+import com.protoevo.core.StatRecord;
+import com.protoevo.core.StatSchema;
 import com.protoevo.core.Statistics;
 import com.protoevo.env.Environment;
 import com.protoevo.physics.Joining;
@@ -21,6 +23,9 @@ public class PlantCell extends EvolvableCell {
     private float photosynthesisRate = 0;
     private static final Statistics.ComplexUnit photosynthesisUnit =
             new Statistics.ComplexUnit(Statistics.BaseUnit.ENERGY).divide(Statistics.BaseUnit.TIME);
+    private static final StatSchema.Id
+            SPLIT_RADIUS = statSchema.register("Split Radius", Statistics.ComplexUnit.DISTANCE),
+            PHOTOSYNTHESIS_RATE = statSchema.register("Photosynthesis Rate", photosynthesisUnit);
 
     public PlantCell(float radius, Environment environment) {
         super();
@@ -193,11 +198,10 @@ public class PlantCell extends EvolvableCell {
     }
 
     @Override
-    public Statistics getStats() {
-        Statistics stats = super.getStats();
-        stats.putDistance("Split Radius", maxRadius);
-        stats.put("Photosynthesis Rate", photosynthesisRate, photosynthesisUnit);
-        return stats;
+    public void recordStats(StatRecord record) {
+        super.recordStats(record);
+        record.put(SPLIT_RADIUS, maxRadius);
+        record.put(PHOTOSYNTHESIS_RATE, photosynthesisRate);
     }
 
     @Override
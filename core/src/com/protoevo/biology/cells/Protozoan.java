@@ -6,6 +6,8 @@ import com.protoevo.biology.evolution.*;
 import com.protoevo.biology.nn.NeuralNetwork;
 import com.protoevo.biology.nodes.*;
 import com.protoevo.biology.organelles.Organelle;
+import com.protoevo.core.StatRecord;
+import com.protoevo.core.StatSchema;
 import com.protoevo.core.Statistics;
 import com.protoevo.env.ChemicalSolution;
 import com.protoevo.env.Environment;
@@ -20,6 +22,18 @@ import java.util.*;
 public class Protozoan extends EvolvableCell
 {
 	private static final long serialVersionUID = 2314292760446370751L;
+	private static final StatSchema.Id
+			DEATH_RATE = statSchema.register("Death Rate", Statistics.ComplexUnit.PERCENTAGE_PER_TIME),
+			SPLIT_RADIUS = statSchema.register("Split Radius", Statistics.ComplexUnit.DISTANCE),
+			HAS_MATED = statSchema.registerBoolean("Has Mated"),
+			NUM_SPIKES = statSchema.registerCount("Num Spikes"),
+			GRN_DEPTH = statSchema.registerCount("GRN Depth"),
+			GRN_SIZE = statSchema.registerCount("GRN Size"),
+			LIGHT_SENSITIVE_NODES = statSchema.registerCount("Light Sensitive Nodes"),
+			NUM_ENGULFED = statSchema.registerCount("Num Engulfed"),
+			HERBIVORE_FACTOR = statSchema.register("Herbivore Factor"),
+			MEAN_MUTATION_CHANCE = statSchema.register("Mean Mutation Chance", Statistics.ComplexUnit.PERCENTAGE),
+			NUM_MUTATIONS = statSchema.registerCount("Num Mutations");
 
 	private GeneExpressionFunction crossOverGenome;
 	private float matingCooldown = 0;
@@ -82,7 +96,8 @@ public class Protozoan extends EvolvableCell
 		engulfedCells.removeIf(this::removeEngulfedCondition);
 
 		if (shouldSplit() && hasNotBurst()) {
-			getEnv().ifPresent(e -> e.requestBurst(this, Protozoan.class, this::createSplitChild));
+			getEnv().ifPresent(e -> e.requestBurst(
+					this, Protozoan.class, this::prepareSplitChild, this::attachSplitChild));
 		}
 
 		generateThrust(delta);
@@ -97,7 +112,7 @@ public class Protozoan extends EvolvableCell
 				Object other = contact.getOther(contact);
 				if (other instanceof Protozoan) {
 					Protozoan protozoan = (Protozoan) other;
-					if (protozoan.mateDesire) {
+					if (protozoan.mateDesire && !isSplitting() && !protozoan.isSplitting()) {
 						setMate(protozoan);
 						return;
 					}
@@ -112,6 +127,7 @@ public class Protozoan extends EvolvableCell
 		crossOverGenome = other.getGeneExpressionFunction();
 		other.crossOverGenome = getGeneExpressionFunction();
 		other.matingCooldown = 1;
+		getEnv().ifPresent(env -> env.recordMating(this, other));
 	}
 
 	private boolean removeEngulfedCondition(Cell c) {
@@ -167,16 +183,18 @@ public class Protozoan extends EvolvableCell
 
 	@GeneRegulator(name="Plant to Digest")
 	public float getPlantToDigest() {
-		if (!getFoodToDigest().containsKey(Food.Type.Plant))
+		Food food = getFoodToDigest(Food.Type.Plant);
+		if (food == null)
 			return 0;
-		return getFoodToDigest().get(Food.Type.Plant).getSimpleMass() / getFoodToDigestMassCap();
+		return food.getSimpleMass() / getFoodToDigestMassCap();
 	}
 
 	@GeneRegulator(name="Meat to Digest")
 	public float getMeatToDigest() {
-		if (!getFoodToDigest().containsKey(Food.Type.Meat))
+		Food food = getFoodToDigest(Food.Type.Meat);
+		if (food == null)
 			return 0;
-		return getFoodToDigest().get(Food.Type.Meat).getSimpleMass() / getFoodToDigestMassCap();
+		return food.getSimpleMass() / getFoodToDigestMassCap();
 	}
 
 	@GeneRegulator(name="Plant Gradient", min=-1, max=1)
@@ -240,18 +258,31 @@ public class Protozoan extends EvolvableCell
 				&& getHealth() >= Environment.settings.protozoa.minHealthToSplit.get();
 	}
 
-	private Protozoan createSplitChild(float r) {
-		Protozoan child;
-		if (crossOverGenome != null) {
-			child = Evolvable.createChild(this.getClass(), this.getGeneExpressionFunction(), crossOverGenome);
-			getEnv().ifPresent(Environment::incrementCrossOverCount);
-		} else {
-			child = Evolvable.asexualClone(this);
-		}
+	/**
+	 * Once a split has been requested its children may already be being built,
+	 * so the protozoan no longer takes a mate.
+	 */
+	public boolean isSplitting() {
+		return getEnv().map(env -> env.hasBurstRequest(this, Protozoan.class)).orElse(false);
+	}
 
+	/**
+	 * Builds the genome and traits of a child, without an environment or physics body,
+	 * so that it can be run on a worker thread while the simulation continues.
+	 */
+	private Protozoan prepareSplitChild() {
+		if (crossOverGenome != null)
+			return Evolvable.createChild(this.getClass(), this.getGeneExpressionFunction(), crossOverGenome);
+		return Evolvable.asexualClone(this);
+	}
+
+	private Protozoan attachSplitChild(Protozoan child, float r) {
 		getEnv().ifPresent(child::setEnvironmentAndBuildPhysics);
 		child.setRadius(r);
 
+		if (hasMated())
+			getEnv().ifPresent(env -> env.recordCrossOver(this, child));
+
 		child.tags.addAll(tags);
 
 		return child;
@@ -361,10 +392,11 @@ public class Protozoan extends EvolvableCell
 	}
 
 	public int getNumOfAttachments(Class<? extends NodeAttachment> type) {
-		return (int) surfaceNodes.stream()
-				.map(SurfaceNode::getAttachment)
-				.filter(type::isInstance)
-				.count();
+		int count = 0;
+		for (SurfaceNode node : surfaceNodes)
+			if (type.isInstance(node.getAttachment()))
+				count++;
+		return count;
 	}
 
 	public int getNumSpikes() {
@@ -376,38 +408,38 @@ public class Protozoan extends EvolvableCell
 	}
 
 	@Override
-	public Statistics getStats() {
-		Statistics stats = super.getStats();
-		stats.put("Death Rate", 100 * damageRate, Statistics.ComplexUnit.PERCENTAGE_PER_TIME);
-		stats.putDistance("Split Radius", splitRadius);
-		stats.putBoolean("Has Mated", hasMated());
+	public void recordStats(StatRecord record) {
+		super.recordStats(record);
+		record.put(DEATH_RATE, 100 * damageRate);
+		record.put(SPLIT_RADIUS, splitRadius);
+		record.put(HAS_MATED, hasMated());
 		int numSpikes = getNumSpikes();
 		if (numSpikes > 0)
-			stats.putCount("Num Spikes", numSpikes);
+			record.put(NUM_SPIKES, numSpikes);
 
 		GeneExpressionFunction geneExpressionFunction = getGeneExpressionFunction();
 		NeuralNetwork grn = geneExpressionFunction.getRegulatoryNetwork();
 		if (grn != null) {
-			stats.putCount("GRN Depth", grn.getDepth());
-			stats.putCount("GRN Size", grn.getSize());
+			record.put(GRN_DEPTH, grn.getDepth());
+			record.put(GRN_SIZE, grn.getSize());
 		}
 		int numLSN = getNumLightSensitiveNodes();
 		if (numLSN > 0) {
-			stats.putCount("Light Sensitive Nodes", numLSN);
+			record.put(LIGHT_SENSITIVE_NODES, numLSN);
 		}
 		int numEngulfed = engulfedCells.size();
 		if (numEngulfed > 0) {
-			stats.putCount("Num Engulfed", numEngulfed);
-		}
-		int numBindings = getNumAttachedCells();
-		if (numBindings > 0) {
-			stats.putCount("Num Cell Bindings", numBindings);
+			record.put(NUM_ENGULFED, numEngulfed);
 		}
 
-		stats.put("Herbivore Factor", herbivoreFactor);
-		stats.putPercentage("Mean Mutation Chance", 100 * geneExpressionFunction.getMeanMutationRate());
-		stats.putCount("Num Mutations", geneExpressionFunction.getMutationCount());
+		record.put(HERBIVORE_FACTOR, herbivoreFactor);
+		record.put(MEAN_MUTATION_CHANCE, 100 * geneExpressionFunction.getMeanMutationRate());
+		record.put(NUM_MUTATIONS, geneExpressionFunction.getMutationCount());
+	}
 
+	@Override
+	public Statistics getStats() {
+		Statistics stats = super.getStats();
 		int i = 0;
 		for (Tag tag : tags) {
 			stats.put("Tag " + i, tag.tag + " (Gen " + tag.generation + ")");
@@ -449,6 +481,10 @@ public class Protozoan extends EvolvableCell
 		return crossOverGenome != null;
 	}
 
+	public GeneExpressionFunction getCrossOverGenome() {
+		return crossOverGenome;
+	}
+
 	public float getSplitRadius() {
 		return splitRadius;
 	}
@@ -4,8 +4,6 @@ import com.protoevo.biology.nn.NetworkGenome;
 import com.protoevo.core.Simulation;
 
 import java.io.Serializable;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -75,63 +73,33 @@ public interface Evolvable extends Serializable {
 
         childGenome.setGRNGenome(parent1Genome.getGRNGenome().crossover(parent2Genome.getGRNGenome()));
 
+        // the parents' nodes are copied, as adding a node to the child adds to its dependencies, and
+        // children may be built on another thread while the parents are still expressing their genes
         for (String geneName : allGeneNames) {
             if (parent1Genome.hasGene(geneName) && parent2Genome.hasGene(geneName)) {
                 childGenome.addNode(geneName,
                         Simulation.RANDOM.nextBoolean() ?
-                        parent1Genome.getNode(geneName) :
-                        parent2Genome.getNode(geneName)
+                        parent1Genome.getNode(geneName).copy() :
+                        parent2Genome.getNode(geneName).copy()
                 );
             } else if (parent1Genome.hasGene(geneName)) {
-                childGenome.addNode(geneName, parent1Genome.getNode(geneName));
+                childGenome.addNode(geneName, parent1Genome.getNode(geneName).copy());
             } else {
-                childGenome.addNode(geneName, parent2Genome.getNode(geneName));
+                childGenome.addNode(geneName, parent2Genome.getNode(geneName).copy());
             }
         }
 
         return Evolvable.createNew(clazz, childGenome.cloneWithMutation());
     }
 
-    static void setTraitValue(Evolvable e, Method setter, Object value) {
-        try {
-            setter.invoke(e, value);
-        }
-        catch (IllegalArgumentException | IllegalAccessException
-               | InvocationTargetException | NullPointerException ex) {
-            throw new RuntimeException(
-                    "Could not map value " + value + " to the trait. Check the signature of "
-                    + setter.getName() + " on " + e + ": " + ex
-            );
-        }
-        catch (ClassCastException ex) {
-            throw new RuntimeException(
-                    "Could not cast value " + value + " to the trait. Check the signature of "
-                    + setter.getName() + " on " + e + ": " + ex
-            );
-        }
-    }
-
     static <T extends Evolvable> T createNew(Class<T> clazz) {
         GeneExpressionFunction fn = createGeneMapping(clazz);
         return createNew(clazz, fn);
     }
 
     static <T extends Evolvable> Supplier<T> createEvolvableConstructor(Class<T> clazz, GeneExpressionFunction fn) {
-        return () -> {
-            try {
-                for (Constructor<?> c : clazz.getConstructors())
-                    if (c.getParameterCount() > 0
-                            && c.getParameterTypes()[0].equals(GeneExpressionFunction.Regulators.class))
-                        return clazz.getConstructor(GeneExpressionFunction.Regulators.class)
-                                .newInstance(fn.getGeneRegulators());
-
-                return clazz.getConstructor().newInstance();
-
-            } catch (InstantiationException | IllegalAccessException | InvocationTargetException |
-                     NoSuchMethodException e) {
-                throw new RuntimeException("Could not create new evolvable: " + e);
-            }
-        };
+        EvolvableSchema schema = EvolvableSchema.of(clazz);
+        return () -> clazz.cast(schema.newInstance(fn.getGeneRegulators()));
     }
 
     static <T extends Evolvable> T createNew(Class<T> clazz, GeneExpressionFunction fn) {
@@ -175,27 +143,25 @@ public interface Evolvable extends Serializable {
     {
         T newEvolvable = constructor.get();
 
-        for (Method method : newEvolvable.getClass().getMethods()) {
-            if (method.isAnnotationPresent(EvolvableComponent.class)) {
-
-                Class<Evolvable> componentClass = (Class<Evolvable>) method.getParameterTypes()[0];
-
-                GeneExpressionFunction componentFn = createGeneMapping(componentClass);
-                Evolvable component = createNewComponent(componentClass, componentFn);
-                componentFn.registerTargetEvolvable(component.name(), component);
-//                if (component.getGeneExpressionFunction() != null)
-//                    geneExpressionFunction.merge(component.getGeneExpressionFunction());
-
-                if (component instanceof GeneExpressionFunction) {
-                    GeneExpressionFunction newFn = (GeneExpressionFunction) component;
-                    newFn.registerTargetEvolvable(newFn.name(), newFn);
-                    newFn.merge(fn);
-                    fn = newFn;
-                }
-                else {
-                    fn.merge(componentFn);
-                    setTraitValue(newEvolvable, method, component);
-                }
+        EvolvableSchema schema = EvolvableSchema.of(newEvolvable.getClass());
+        for (Method method : schema.getComponentMethods()) {
+            Class<Evolvable> componentClass = (Class<Evolvable>) method.getParameterTypes()[0];
+
+            GeneExpressionFunction componentFn = createGeneMapping(componentClass);
+            Evolvable component = createNewComponent(componentClass, componentFn);
+            componentFn.registerTargetEvolvable(component.name(), component);
+//            if (component.getGeneExpressionFunction() != null)
+//                geneExpressionFunction.merge(component.getGeneExpressionFunction());
+
+            if (component instanceof GeneExpressionFunction) {
+                GeneExpressionFunction newFn = (GeneExpressionFunction) component;
+                newFn.registerTargetEvolvable(newFn.name(), newFn);
+                newFn.merge(fn);
+                fn = newFn;
+            }
+            else {
+                fn.merge(componentFn);
+                schema.getTraitSetter(method.getName(), method.getParameterTypes()[0]).set(newEvolvable, component);
             }
         }
 
@@ -215,7 +181,7 @@ public interface Evolvable extends Serializable {
             Class<T> clazz, GeneExpressionFunction.Regulators regulators
     ) {
         GeneExpressionFunction geneExpressionFunction = new GeneExpressionFunction(regulators);
-        for (Method method : clazz.getMethods()) {
+        for (Method method : EvolvableSchema.of(clazz).getTraitMethods()) {
             if (method.isAnnotationPresent(EvolvableFloat.class)) {
                 EvolvableFloat evolvable = method.getAnnotation(EvolvableFloat.class);
                 geneExpressionFunction.addEvolvableFloat(evolvable, method);
@@ -264,14 +230,8 @@ public interface Evolvable extends Serializable {
 
     static <T extends Evolvable> GeneExpressionFunction.Regulators extractRegulators(Class<T> clazz) {
         GeneExpressionFunction.Regulators regulators = new GeneExpressionFunction.Regulators();
-        for (Method method : clazz.getMethods()) {
-            if (method.isAnnotationPresent(GeneRegulator.class)) {
-                String regulatorName = method.getAnnotation(GeneRegulator.class).name();
-                GeneExpressionFunction.RegulationNode regulator =
-                        new GeneExpressionFunction.RegulationNode(regulatorName, method);
-                regulators.put(regulatorName, regulator);
-            }
-        }
+        for (EvolvableSchema.RegulatorAccessor accessor : EvolvableSchema.of(clazz).getRegulators())
+            regulators.put(accessor.getName(), accessor.createNode());
         return regulators;
     }
 }
@@ -0,0 +1,419 @@
+package com.protoevo.biology.evolution;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable description of the gene regulators, trait setters, components and constructor
+ * of an {@link Evolvable} class.
+ * <p>
+ * Built once per class and cached. Accessors are bound with {@link LambdaMetafactory} so that
+ * reading a regulator or setting a trait is a direct call with a primitive float signature,
+ * rather than a reflective {@link Method#invoke}. Regulators are looked up by method name and trait setters
+ * by method name and parameter type, which is what gene expression nodes store so that they can be rebound
+ * after deserialization.
+ * The annotated methods are also kept, in the order {@link Class#getMethods()} returned them,
+ * so that building a gene mapping does not have to scan the class again. That order is unspecified,
+ * but it is the order gene mappings were always built in.
+ */
+public final class EvolvableSchema {
+
+    @FunctionalInterface
+    public interface FloatGetter {
+        float get(Evolvable target);
+    }
+
+    @FunctionalInterface
+    public interface FloatSetter {
+        void set(Evolvable target, float value);
+    }
+
+    @FunctionalInterface
+    public interface ObjectSetter {
+        void set(Evolvable target, Object value);
+    }
+
+    @FunctionalInterface
+    public interface EvolvableConstructor {
+        Evolvable create(GeneExpressionFunction.Regulators regulators);
+    }
+
+    public static final class RegulatorAccessor {
+        private final String name, methodName;
+        private final float min, max;
+        private final FloatGetter getter;
+
+        private RegulatorAccessor(Method method) {
+            GeneRegulator annotation = method.getAnnotation(GeneRegulator.class);
+            this.name = annotation.name();
+            this.methodName = method.getName();
+            this.min = annotation.min();
+            this.max = annotation.max();
+            this.getter = bindGetter(method);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public GeneExpressionFunction.RegulationNode createNode() {
+            return new GeneExpressionFunction.RegulationNode(name, this, null, methodName);
+        }
+
+        /**
+         * @param target the evolvable to read the regulator from
+         * @return the regulator value, normalised from [min, max] to [-1, 1]
+         */
+        public float getValue(Evolvable target) {
+            return 2f * (getter.get(target) - min) / (max - min) - 1f;
+        }
+    }
+
+    public static final class TraitAccessor {
+        private final String methodName;
+        private final Class<?> declaringClass, valueType;
+        private final ObjectSetter setter;
+        private final FloatSetter floatSetter;
+
+        private TraitAccessor(Method method) {
+            this.methodName = method.getName();
+            this.declaringClass = method.getDeclaringClass();
+            this.valueType = method.getParameterTypes()[0];
+            this.setter = bindSetter(method);
+            this.floatSetter = valueType.equals(float.class) ? bindFloatSetter(method) : null;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public Class<?> getDeclaringClass() {
+            return declaringClass;
+        }
+
+        public Class<?> getValueType() {
+            return valueType;
+        }
+
+        public boolean acceptsEvolvable(Class<? extends Evolvable> evolvableType) {
+            return declaringClass.isAssignableFrom(evolvableType);
+        }
+
+        public void set(Evolvable target, Object value) {
+            try {
+                setter.set(target, value);
+            } catch (ClassCastException | NullPointerException ex) {
+                throw new RuntimeException(
+                        "Could not map value " + value + " to the trait. Check the signature of "
+                        + methodName + " on " + target + ": " + ex
+                );
+            }
+        }
+
+        public void setFloat(Evolvable target, float value) {
+            if (floatSetter == null) {
+                set(target, value);
+                return;
+            }
+            floatSetter.set(target, value);
+        }
+    }
+
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private static final Map<Class<?>, EvolvableSchema> schemas = new ConcurrentHashMap<>();
+
+    private final Class<?> evolvableClass;
+    private final Map<String, RegulatorAccessor> regulators = new HashMap<>();
+    private final Map<String, TraitAccessor> traitSetters = new HashMap<>();
+    private final List<RegulatorAccessor> regulatorList = new ArrayList<>();
+    private final List<Method> traitMethods = new ArrayList<>();
+    private final List<Method> componentMethods = new ArrayList<>();
+    private volatile EvolvableConstructor constructor;
+
+    private EvolvableSchema(Class<?> evolvableClass) {
+        this.evolvableClass = evolvableClass;
+        for (Method method : evolvableClass.getMethods()) {
+            if (method.isAnnotationPresent(GeneRegulator.class)) {
+                RegulatorAccessor accessor = new RegulatorAccessor(method);
+                regulators.put(method.getName(), accessor);
+                regulatorList.add(accessor);
+            }
+            else if (isTraitSetter(method)) {
+                String key = traitKey(method.getName(), method.getParameterTypes()[0]);
+                traitSetters.put(key, new TraitAccessor(method));
+                traitMethods.add(method);
+                if (method.isAnnotationPresent(EvolvableComponent.class))
+                    componentMethods.add(method);
+            }
+        }
+    }
+
+    public static EvolvableSchema of(Class<?> evolvableClass) {
+        return schemas.computeIfAbsent(evolvableClass, EvolvableSchema::new);
+    }
+
+    public static boolean isTraitSetter(Method method) {
+        return method.getParameterCount() == 1 && (
+                method.isAnnotationPresent(EvolvableFloat.class)
+                || method.isAnnotationPresent(ControlVariable.class)
+                || method.isAnnotationPresent(EvolvableInteger.class)
+                || method.isAnnotationPresent(EvolvableObject.class)
+                || method.isAnnotationPresent(EvolvableList.class)
+                || method.isAnnotationPresent(EvolvableComponent.class));
+    }
+
+    public Class<?> getEvolvableClass() {
+        return evolvableClass;
+    }
+
+    public RegulatorAccessor getRegulator(String methodName) {
+        RegulatorAccessor accessor = regulators.get(methodName);
+        if (accessor == null)
+            throw new RuntimeException("Failed to find gene regulator " + methodName + " in " + evolvableClass);
+        return accessor;
+    }
+
+    private static String traitKey(String methodName, Class<?> valueType) {
+        return methodName + "(" + valueType.getName() + ")";
+    }
+
+    /**
+     * @return the trait setter with the given name that takes the given type, as setters may be overloaded
+     */
+    public TraitAccessor getTraitSetter(String methodName, Class<?> valueType) {
+        return traitSetters.get(traitKey(methodName, valueType));
+    }
+
+    public static TraitAccessor getTraitSetter(Method method) {
+        return of(method.getDeclaringClass()).getTraitSetter(method.getName(), method.getParameterTypes()[0]);
+    }
+
+    /**
+     * @return the gene regulators of the class, in the order {@link Class#getMethods()} returned them
+     */
+    public List<RegulatorAccessor> getRegulators() {
+        return Collections.unmodifiableList(regulatorList);
+    }
+
+    /**
+     * @return every annotated trait setter of the class, including components,
+     * in the order {@link Class#getMethods()} returned them
+     */
+    public List<Method> getTraitMethods() {
+        return Collections.unmodifiableList(traitMethods);
+    }
+
+    /**
+     * @return the setters annotated with {@link EvolvableComponent}, in the order {@link Class#getMethods()}
+     * returned them
+     */
+    public List<Method> getComponentMethods() {
+        return Collections.unmodifiableList(componentMethods);
+    }
+
+    /**
+     * Creates a new instance of the class, using the constructor that takes the gene regulators
+     * if there is one, and the no-argument constructor otherwise.
+     * The constructor is bound on first use, so that abstract classes can still have a schema.
+     */
+    public Evolvable newInstance(GeneExpressionFunction.Regulators regulators) {
+        EvolvableConstructor c = constructor;
+        if (c == null) {
+            c = bindConstructor(evolvableClass);
+            constructor = c;
+        }
+        return c.create(regulators);
+    }
+
+    private static MethodHandle unreflect(Method method) {
+        try {
+            return lookup.unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(
+                    "Could not access " + method.getName() + " on " + method.getDeclaringClass() + ": " + e);
+        }
+    }
+
+    private static EvolvableConstructor bindConstructor(Class<?> clazz) {
+        MethodHandle handle;
+        try {
+            boolean takesRegulators = false;
+            for (Constructor<?> c : clazz.getConstructors())
+                if (c.getParameterCount() > 0
+                        && c.getParameterTypes()[0].equals(GeneExpressionFunction.Regulators.class))
+                    takesRegulators = true;
+
+            MethodType type = MethodType.methodType(Evolvable.class, GeneExpressionFunction.Regulators.class);
+            if (takesRegulators) {
+                handle = lookup.unreflectConstructor(clazz.getConstructor(GeneExpressionFunction.Regulators.class))
+                        .asType(type);
+            } else {
+                handle = MethodHandles.dropArguments(
+                        lookup.unreflectConstructor(clazz.getConstructor())
+                                .asType(MethodType.methodType(Evolvable.class)),
+                        0, GeneExpressionFunction.Regulators.class);
+            }
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new RuntimeException("Could not create new evolvable: " + e);
+        }
+
+        final MethodHandle constructorHandle = handle;
+        return regulators -> {
+            try {
+                return (Evolvable) constructorHandle.invokeExact(regulators);
+            } catch (Throwable e) {
+                throw new RuntimeException("Could not create new evolvable: " + e);
+            }
+        };
+    }
+
+    /**
+     * @return an implementation of the functional interface that calls the method directly, or null if
+     * the metafactory cannot bind the method, in which case callers fall back to an adapted method handle
+     */
+    private static Object metafactory(Method method, String samName, Class<?> samType,
+                                      MethodType samSignature, MethodType instantiatedSignature) {
+        CallSite site;
+        try {
+            site = LambdaMetafactory.metafactory(
+                    lookup, samName, MethodType.methodType(samType),
+                    samSignature, lookup.unreflect(method), instantiatedSignature);
+        } catch (LambdaConversionException | ReflectiveOperationException e) {
+            return null;
+        }
+        try {
+            return site.getTarget().invoke();
+        } catch (Throwable e) {
+            // the call site only constructs the implementation, so this is not expected to fail
+            throw new RuntimeException(
+                    "Failed to bind " + method.getName() + "(" + method.getDeclaringClass() + ")", e);
+        }
+    }
+
+    private static FloatGetter bindGetter(Method method) {
+        FloatGetter getter = (FloatGetter) metafactory(
+                method, "get", FloatGetter.class,
+                MethodType.methodType(float.class, Evolvable.class),
+                MethodType.methodType(float.class, method.getDeclaringClass()));
+        if (getter != null)
+            return getter;
+
+        // fall back to an adapted method handle, e.g. if the class is not accessible to the metafactory
+        MethodHandle handle = unreflect(method)
+                .asType(MethodType.methodType(float.class, Evolvable.class));
+        return target -> {
+            try {
+                return (float) handle.invokeExact(target);
+            } catch (Throwable e) {
+                throw new RuntimeException(
+                        "Failed to get value for gene regulator "
+                        + method.getName() + "(" + method.getDeclaringClass() + ")", e);
+            }
+        };
+    }
+
+    private static FloatSetter bindFloatSetter(Method method) {
+        FloatSetter setter = (FloatSetter) metafactory(
+                method, "set", FloatSetter.class,
+                MethodType.methodType(void.class, Evolvable.class, float.class),
+                MethodType.methodType(void.class, method.getDeclaringClass(), float.class));
+        if (setter != null)
+            return setter;
+
+        MethodHandle handle = unreflect(method)
+                .asType(MethodType.methodType(void.class, Evolvable.class, float.class));
+        return (target, value) -> {
+            try {
+                handle.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new RuntimeException(
+                        "Failed to set trait " + method.getName() + "(" + method.getDeclaringClass() + ")", e);
+            }
+        };
+    }
+
+    /**
+     * The primitive types in order of width, each of which a narrower one can be widened to.
+     */
+    private static final List<Class<?>> WIDENING_ORDER = Arrays.asList(
+            byte.class, short.class, int.class, long.class, float.class, double.class);
+
+    /**
+     * Converts a boxed primitive to the given wider primitive type, as {@link Method#invoke} would,
+     * such as an Integer to a Float for a float setter.
+     * @return the converted value, or the value unchanged if there is no widening conversion
+     */
+    private static Object widen(Object value, Class<?> type) {
+        if (value instanceof Character && type != char.class)
+            value = (int) (Character) value;
+        if (!(value instanceof Number))
+            return value;
+        int from = WIDENING_ORDER.indexOf(MethodType.methodType(value.getClass()).unwrap().returnType());
+        int to = WIDENING_ORDER.indexOf(type);
+        if (from < 0 || to <= from)
+            return value;
+
+        Number number = (Number) value;
+        if (type == short.class)
+            return number.shortValue();
+        if (type == int.class)
+            return number.intValue();
+        if (type == long.class)
+            return number.longValue();
+        if (type == float.class)
+            return number.floatValue();
+        return number.doubleValue();
+    }
+
+    private static ObjectSetter bindSetter(Method method) {
+        Class<?> parameterType = method.getParameterTypes()[0];
+        ObjectSetter setter = bindExactSetter(method);
+        if (!parameterType.isPrimitive())
+            return setter;
+
+        // the bound setter casts to the exact wrapper type, so other boxed primitives are widened first
+        Class<?> wrapperType = MethodType.methodType(parameterType).wrap().returnType();
+        return (target, value) -> setter.set(target,
+                value == null || value.getClass() == wrapperType ? value : widen(value, parameterType));
+    }
+
+    private static ObjectSetter bindExactSetter(Method method) {
+        Class<?> valueType = MethodType.methodType(method.getParameterTypes()[0]).wrap().returnType();
+        ObjectSetter setter = (ObjectSetter) metafactory(
+                method, "set", ObjectSetter.class,
+                MethodType.methodType(void.class, Evolvable.class, Object.class),
+                MethodType.methodType(void.class, method.getDeclaringClass(), valueType));
+        if (setter != null)
+            return setter;
+
+        MethodHandle handle = unreflect(method)
+                .asType(MethodType.methodType(void.class, Evolvable.class, Object.class));
+        return (target, value) -> {
+            try {
+                handle.invokeExact(target, value);
+            } catch (ClassCastException | NullPointerException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(
+                        "Failed to set trait " + method.getName() + "(" + method.getDeclaringClass() + ")", e);
+            }
+        };
+    }
+}
@@ -5,6 +5,7 @@ import com.protoevo.biology.nn.NetworkGenome;
 import com.protoevo.biology.nn.NeuralNetwork;
 import com.protoevo.biology.nn.NeuronGene;
 import com.protoevo.biology.nn.SynapseGene;
+import com.protoevo.env.Environment;
 import com.protoevo.utils.Utils;
 
 import java.io.Serializable;
@@ -12,7 +13,6 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
-import java.util.function.Function;
 
 
 public class GeneExpressionFunction implements Evolvable.Component, Serializable {
@@ -34,44 +34,30 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
     public static class RegulationNode extends Node implements Serializable {
         public static final long serialVersionUID = 1L;
         public String name;
-        private transient Function<Evolvable, Float> regulatorGetter;
+        private transient EvolvableSchema.RegulatorAccessor regulator;
         private final String methodGetterName;
         private String targetID;
         private Object lastTarget;
 
         public RegulationNode(RegulationNode other) {
             this.name = other.name;
-            this.regulatorGetter = other.regulatorGetter;
+            this.regulator = other.regulator;
             this.methodGetterName = other.methodGetterName;
             this.targetID = other.targetID;
             this.lastTarget = null;
         }
 
-        private Function<Evolvable, Float> createGetter(Method method) {
-            String regulatorName = method.getAnnotation(GeneRegulator.class).name();
-            float max = method.getAnnotation(GeneRegulator.class).max();
-            float min = method.getAnnotation(GeneRegulator.class).min();
-            return evolvable -> {
-                try {
-                    return 2f * ((Float) method.invoke(evolvable) - min) / (max - min) - 1f;
-                } catch (IllegalAccessException | InvocationTargetException | IllegalArgumentException e) {
-                    throw new RuntimeException(
-                        "Failed to get value for gene regulator "
-                        + regulatorName + "(" + method.getName() + ":" + method.getDeclaringClass() + ")", e);
-                }
-            };
-        }
-
         public RegulationNode(String name, Method getterMethod) {
             this.name = name;
-            this.regulatorGetter = createGetter(getterMethod);
+            this.regulator = EvolvableSchema.of(getterMethod.getDeclaringClass())
+                    .getRegulator(getterMethod.getName());
             this.methodGetterName = getterMethod.getName();
         }
 
-        public RegulationNode(String name, Function<Evolvable, Float> regulatorGetter,
+        public RegulationNode(String name, EvolvableSchema.RegulatorAccessor regulator,
                               String targetID, String methodGetterName) {
             this.name = name;
-            this.regulatorGetter = regulatorGetter;
+            this.regulator = regulator;
             this.methodGetterName = methodGetterName;
             this.targetID = targetID;
         }
@@ -82,18 +68,10 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
 
         public float getValue(Evolvable evolvable) {
             lastTarget = evolvable;
-            if (regulatorGetter == null) {
-                for (Method method : evolvable.getClass().getMethods())
-                    if (method.getName().equals(methodGetterName)) {
-                        regulatorGetter = createGetter(method);
-                        break;
-                    }
-
-                if (regulatorGetter == null)
-                    throw new RuntimeException(
-                        "Failed to find method " + methodGetterName + " in " + evolvable.getClass());
-            }
-            return regulatorGetter.apply(evolvable);
+            // the accessor is transient, so needs rebinding if the node was deserialized
+            if (regulator == null)
+                regulator = EvolvableSchema.of(evolvable.getClass()).getRegulator(methodGetterName);
+            return regulator.getValue(evolvable);
         }
 
         @Override
@@ -101,12 +79,12 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
             return lastTarget;
         }
 
-        public Function<Evolvable, Float> getGetter() {
-            return regulatorGetter;
+        public EvolvableSchema.RegulatorAccessor getRegulator() {
+            return regulator;
         }
 
         public RegulationNode copy() {
-//            return new RegulationNode(name, regulatorGetter, targetID, methodGetterName);
+//            return new RegulationNode(name, regulator, targetID, methodGetterName);
             return new RegulationNode(this);
         }
 
@@ -123,19 +101,23 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
         public static final long serialVersionUID = 1L;
         private String name;
         private Trait<?> trait;
-        private transient Method traitSetter;
+        private transient EvolvableSchema.TraitAccessor traitSetter;
         private final String methodName;
+        private final Class<?> valueType;
         private final Map<String, Object> dependencies;
         private String[] dependents;
         private Object lastTraitValue;
+        private float lastFloatTraitValue;
+        private boolean hasLastFloatTraitValue;
         private String targetID;
         private Object lastTarget;
 
         public ExpressionNode(String name, Trait<?> trait, Method traitSetter, String[] dependencies) {
             this.name = name;
             this.trait = trait;
-            this.traitSetter = traitSetter;
+            this.traitSetter = traitSetter != null ? EvolvableSchema.getTraitSetter(traitSetter) : null;
             this.methodName = traitSetter != null ? traitSetter.getName() : null;
+            this.valueType = traitSetter != null ? traitSetter.getParameterTypes()[0] : null;
             this.dependencies = new HashMap<>();
             for (String str : dependencies)
                 if (!str.equals(""))
@@ -147,8 +129,9 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
                               Map<String, Object> dependencies, String[] dependents) {
             this.name = name;
             this.trait = trait;
-            this.traitSetter = traitSetter;
+            this.traitSetter = traitSetter != null ? EvolvableSchema.getTraitSetter(traitSetter) : null;
             this.methodName = traitSetter != null ? traitSetter.getName() : null;
+            this.valueType = traitSetter != null ? traitSetter.getParameterTypes()[0] : null;
             this.targetID = targetID;
             this.dependencies = dependencies;
             this.dependents = dependents;
@@ -159,10 +142,15 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
         }
 
         public ExpressionNode(ExpressionNode other) {
+            this(other, other.trait.copy());
+        }
+
+        private ExpressionNode(ExpressionNode other, Trait<?> trait) {
             this.name = other.name;
-            this.trait = other.trait.copy();
+            this.trait = trait;
             this.traitSetter = other.traitSetter;
             this.methodName = other.methodName;
+            this.valueType = other.valueType;
             this.dependencies = new HashMap<>();
             for (String str : other.dependencies.keySet())
                 if (!str.equals(""))
@@ -187,9 +175,7 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
         }
 
         public ExpressionNode cloneWithMutation() {
-            ExpressionNode newNode = copy();
-            newNode.trait = trait.cloneWithMutation();
-            return newNode;
+            return new ExpressionNode(this, trait.cloneWithMutation());
         }
 
         public ExpressionNode copy() {
@@ -211,18 +197,39 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
         }
 
         public boolean acceptsEvolvable(Class<? extends Evolvable> evolvableType) {
-            return mapsToTrait() && getTraitSetter().getDeclaringClass().isAssignableFrom(evolvableType);
+            if (!mapsToTrait())
+                return false;
+            EvolvableSchema.TraitAccessor setter = traitSetter != null
+                    ? traitSetter
+                    : EvolvableSchema.of(evolvableType).getTraitSetter(methodName, valueType);
+            return setter != null && setter.acceptsEvolvable(evolvableType);
         }
 
         public void setTraitValue(Evolvable target, Object traitValue) {
-            Method setter = getTraitSetter(target);
+            EvolvableSchema.TraitAccessor setter = getTraitSetter(target);
             if (!traitValue.equals(lastTraitValue) && setter != null) {
-                Evolvable.setTraitValue(target, setter, traitValue);
+                setter.set(target, traitValue);
                 lastTraitValue = traitValue;
+                hasLastFloatTraitValue = false;
                 lastTarget = target;
             }
         }
 
+        /**
+         * Sets a float trait without boxing the value.
+         */
+        public void setTraitValue(Evolvable target, float traitValue) {
+            EvolvableSchema.TraitAccessor setter = getTraitSetter(target);
+            if (setter == null || (hasLastFloatTraitValue
+                    && Float.floatToIntBits(traitValue) == Float.floatToIntBits(lastFloatTraitValue)))
+                return;
+            setter.setFloat(target, traitValue);
+            lastFloatTraitValue = traitValue;
+            hasLastFloatTraitValue = true;
+            lastTraitValue = null;
+            lastTarget = target;
+        }
+
         @Override
         public Object getLastTarget() {
             return lastTarget;
@@ -245,27 +252,21 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
             return methodName != null;
         }
 
-        public Method getTraitSetter() {
+        public EvolvableSchema.TraitAccessor getTraitSetter() {
             return getTraitSetter(lastTarget);
         }
 
-        public Method getTraitSetter(Object target) {
+        public EvolvableSchema.TraitAccessor getTraitSetter(Object target) {
             if (traitSetter != null)
                 return traitSetter;
 
             if (target == null || methodName == null)
                 return null;
 
-            // this is to handle transient method field.
-            // if the node was serialized and rebuilt, the method field will be null.
-            for (Method method : target.getClass().getMethods()) {
-                if (method.getName().equals(methodName)) {
-                    traitSetter = method;
-                    return method;
-                }
-            }
-
-            return null;
+            // this is to handle transient accessor field.
+            // if the node was serialized and rebuilt, the accessor will be null.
+            traitSetter = EvolvableSchema.of(target.getClass()).getTraitSetter(methodName, valueType);
+            return traitSetter;
         }
 
         public void prependName(String name) {
@@ -280,6 +281,13 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
     private Regulators regulators;
     private Collection<String> regulatedTraits = new ArrayList<>();
     private final Map<String, Evolvable> targetMap = new HashMap<>();
+    private transient NeuralNetwork boundGRN;
+    private transient int biasInput, randomSourceInput;
+    private transient int[] inputSlots, outputSlots;
+    private transient float[] inputValues;
+    private transient ExpressionNode[] geneInputNodes, expressedNodes;
+    private transient RegulationNode[] boundRegulators;
+    private transient Evolvable[] boundRegulatorTargets, expressedTargets;
 
     public GeneExpressionFunction(ExpressionNodes expressionNodes, Regulators regulators) {
         this.expressionNodes = expressionNodes;
@@ -290,13 +298,20 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
         this(new ExpressionNodes(), regulators);
     }
 
+    /**
+     * The activation setting is read once, when the network is built, rather than on every tick.
+     */
+    private static NeuralNetwork buildNetwork(NetworkGenome genome) {
+        return genome.phenotype(Environment.settings.misc.fastActivations.get());
+    }
+
     public void buildGeneRegulatoryNetwork() {
         if (grnGenome == null)
             grnGenome = GRNFactory.createNetworkGenome(this);
         else  // ensure grn IO is up to date
             GRNFactory.createIO(grnGenome, this);
 
-        geneRegulatoryNetwork = grnGenome.phenotype();
+        geneRegulatoryNetwork = buildNetwork(grnGenome);
 
         for (int i = 0; i < geneRegulatoryNetwork.getDepth() + 1; i++)
             tick();
@@ -316,48 +331,114 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
         return geneRegulatoryNetwork;
     }
 
-    private void setGRNInputs() {
-        geneRegulatoryNetwork.setInput("Bias", 1f);
-        geneRegulatoryNetwork.setInput("Random Source", MathUtils.random(-1f, 1f));
+    /**
+     * Resolves the GRN inputs and outputs to neuron indices once for the current network,
+     * so that each tick copies primitive values in and out rather than looking neurons up by label.
+     */
+    private void bindGRN() {
+        NeuralNetwork grn = geneRegulatoryNetwork;
+        biasInput = grn.getNeuronIndex("Bias");
+        randomSourceInput = grn.getNeuronIndex("Random Source");
+
+        List<ExpressionNode> inputNodes = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
         for (String geneName : getTraitNames()) {
-            String inputName = GRNFactory.getInputName(geneName);
-            if (geneRegulatoryNetwork.hasSensor(inputName)) {
-                if (notDisabled(geneName)) {
-                    Object geneValue = getGeneValue(geneName);
-                    float value;
-                    if (geneValue instanceof Float)
-                        value = (float) geneValue;
-                    else if (geneValue instanceof Integer)
-                        value = (int) geneValue;
-                    else if (geneValue instanceof Boolean)
-                        value = ((boolean) geneValue) ? 1f : -1f;
-                    else
-                        throw new RuntimeException("Could not cast gene " + geneName + " value to float.");
-
-                    geneRegulatoryNetwork.setInput(inputName, value);
-                } else {
-                    geneRegulatoryNetwork.setInput(inputName, 0);
-                }
+            int slot = grn.getNeuronIndex(GRNFactory.getInputName(geneName));
+            if (slot >= 0) {
+                inputNodes.add(expressionNodes.get(geneName));
+                slots.add(slot);
             }
         }
+        geneInputNodes = inputNodes.toArray(new ExpressionNode[0]);
 
+        List<RegulationNode> regulatorNodes = new ArrayList<>();
+        List<Evolvable> targets = new ArrayList<>();
         for (String regulatorName : regulators.keySet()) {
             RegulationNode node = regulators.get(regulatorName);
-            if (!targetMap.containsKey(node.targetID))
+            int slot = grn.getNeuronIndex(regulatorName);
+            if (!targetMap.containsKey(node.targetID) || slot < 0)
                 continue;
+            regulatorNodes.add(node);
+            targets.add(targetMap.get(node.targetID));
+            slots.add(slot);
+        }
+        boundRegulators = regulatorNodes.toArray(new RegulationNode[0]);
+        boundRegulatorTargets = targets.toArray(new Evolvable[0]);
+
+        inputSlots = new int[slots.size()];
+        for (int i = 0; i < inputSlots.length; i++)
+            inputSlots[i] = slots.get(i);
+        inputValues = new float[inputSlots.length];
 
-            Evolvable target = targetMap.get(node.targetID);
-            if (geneRegulatoryNetwork.hasSensor(regulatorName))
-                geneRegulatoryNetwork.setInput(regulatorName, node.getValue(target));
+        List<ExpressionNode> expressed = new ArrayList<>();
+        List<Evolvable> expressedTargetList = new ArrayList<>();
+        for (String trait : getTraitNames()) {
+            ExpressionNode node = expressionNodes.get(trait);
+            if (node.mapsToTrait() && targetMap.containsKey(node.getTargetID())) {
+                expressed.add(node);
+                expressedTargetList.add(targetMap.get(node.getTargetID()));
+            }
         }
+        expressedNodes = expressed.toArray(new ExpressionNode[0]);
+        expressedTargets = expressedTargetList.toArray(new Evolvable[0]);
+        outputSlots = new int[expressedNodes.length];
+        for (int i = 0; i < expressedNodes.length; i++)
+            outputSlots[i] = grn.getNeuronIndex(GRNFactory.getOutputName(expressedNodes[i].getName()));
+
+        boundGRN = grn;
+    }
+
+    private void invalidateGRNBinding() {
+        boundGRN = null;
+    }
+
+    private void ensureGRNBound() {
+        if (boundGRN != geneRegulatoryNetwork)
+            bindGRN();
+    }
+
+    private void setGRNInputs() {
+        ensureGRNBound();
+        float randomSource = MathUtils.random(-1f, 1f);
+        if (biasInput >= 0)
+            geneRegulatoryNetwork.setInput(biasInput, 1f);
+        if (randomSourceInput >= 0)
+            geneRegulatoryNetwork.setInput(randomSourceInput, randomSource);
+
+        int i = 0;
+        for (ExpressionNode node : geneInputNodes) {
+            if (node.getTrait().isDisabled())
+                inputValues[i++] = 0;
+            else
+                inputValues[i++] = geneValueAsFloat(node.getName());
+        }
+
+        for (int j = 0; j < boundRegulators.length; j++)
+            inputValues[i++] = boundRegulators[j].getValue(boundRegulatorTargets[j]);
+
+        geneRegulatoryNetwork.setInputs(inputSlots, inputValues);
+    }
+
+    private float geneValueAsFloat(String geneName) {
+        Object geneValue = getGeneValue(geneName);
+        if (geneValue instanceof Float)
+            return (float) geneValue;
+        else if (geneValue instanceof Integer)
+            return (int) geneValue;
+        else if (geneValue instanceof Boolean)
+            return ((boolean) geneValue) ? 1f : -1f;
+        else
+            throw new RuntimeException("Could not cast gene " + geneName + " value to float.");
     }
 
     public void setGeneRegulators(Regulators regulators) {
         this.regulators = regulators;
+        invalidateGRNBinding();
     }
 
     public void registerTargetEvolvable(String id, Evolvable evolvable) {
         targetMap.put(id, evolvable);
+        invalidateGRNBinding();
 
         for (String trait : getTraitNames()) {
             ExpressionNode node = expressionNodes.get(trait);
@@ -386,10 +467,52 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
 
     public void update() {
         tick();
-        for (String trait : getTraitNames()) {
-            ExpressionNode node = expressionNodes.get(trait);
-            if (node.mapsToTrait() && targetMap.containsKey(node.getTargetID()))
-                node.setTraitValue(targetMap.get(node.getTargetID()), getTraitValue(trait));
+        expressTraits();
+    }
+
+    /**
+     * First half of an update where the GRN is ticked externally, e.g. in a population-wide batch.
+     * Sets the GRN inputs ready for the network to be ticked.
+     */
+    public void prepareUpdate() {
+        if (geneRegulatoryNetwork != null)
+            setGRNInputs();
+    }
+
+    /**
+     * Second half of an update where the GRN is ticked externally.
+     * Must be called after the network has been ticked following {@link #prepareUpdate()}.
+     */
+    public void completeUpdate() {
+        if (geneRegulatoryNetwork != null)
+            setGRNInputs();
+        expressTraits();
+    }
+
+    private void expressTraits() {
+        if (geneRegulatoryNetwork == null) {
+            for (String trait : getTraitNames()) {
+                ExpressionNode node = expressionNodes.get(trait);
+                if (node.mapsToTrait() && targetMap.containsKey(node.getTargetID()))
+                    node.setTraitValue(targetMap.get(node.getTargetID()), getTraitValue(trait));
+            }
+            return;
+        }
+
+        ensureGRNBound();
+        for (int i = 0; i < expressedNodes.length; i++) {
+            ExpressionNode node = expressedNodes[i];
+            Trait<?> trait = node.getTrait();
+            int slot = outputSlots[i];
+            if (slot >= 0 && !trait.isDisabled()) {
+                float grnOutput = geneRegulatoryNetwork.getState(slot);
+                if (trait instanceof FloatTrait)
+                    node.setTraitValue(expressedTargets[i], grnOutput);
+                else
+                    node.setTraitValue(expressedTargets[i], parseGRNOutput(trait, grnOutput));
+            } else {
+                node.setTraitValue(expressedTargets[i], getGeneValue(node.getName()));
+            }
         }
     }
 
@@ -495,7 +618,7 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
         addNode(name, new ExpressionNode(name, trait, method, evolvable.geneDependencies()));
     }
 
-    public Method getTraitSetter(String geneName) {
+    public EvolvableSchema.TraitAccessor getTraitSetter(String geneName) {
         return expressionNodes.get(geneName).getTraitSetter();
     }
 
@@ -508,6 +631,7 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
     }
 
     public void merge(GeneExpressionFunction other) {
+        invalidateGRNBinding();
         other.expressionNodes.forEach(expressionNodes::putIfAbsent);
         other.regulators.forEach(regulators::putIfAbsent);
         other.targetMap.forEach(targetMap::putIfAbsent);
@@ -571,7 +695,7 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
         if (grnGenome != null) {
             newFn.grnGenome = GRNFactory.createIO(new NetworkGenome(grnGenome), newFn);
             newFn.grnGenome.mutate();
-            newFn.geneRegulatoryNetwork = newFn.grnGenome.phenotype();
+            newFn.geneRegulatoryNetwork = buildNetwork(newFn.grnGenome);
         }
 
         return newFn;
@@ -593,7 +717,7 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
 
         if (grnGenome != null) {
             newFn.grnGenome = new NetworkGenome(grnGenome);
-            newFn.geneRegulatoryNetwork = newFn.grnGenome.phenotype();
+            newFn.geneRegulatoryNetwork = buildNetwork(newFn.grnGenome);
         }
 
         return newFn;
@@ -638,6 +762,7 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
     }
 
     public void addNode(String geneName, ExpressionNode node) {
+        invalidateGRNBinding();
         expressionNodes.put(geneName, node);
         if (node.getTrait().canDisable()) {
             String disableName = "Disable " + geneName;
@@ -650,6 +775,7 @@ public class GeneExpressionFunction implements Evolvable.Component, Serializable
     }
 
     public void prependNames(String name) {
+        invalidateGRNBinding();
         ExpressionNodes newNodes = new ExpressionNodes();
         for (Map.Entry<String, ExpressionNode> entry : expressionNodes.entrySet()) {
             ExpressionNode node = entry.getValue();
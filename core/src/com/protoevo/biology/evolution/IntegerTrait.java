@@ -163,6 +163,15 @@ public class IntegerTrait implements Trait<Integer> {
         return new IntegerTrait(this, value);
     }
 
+    /**
+     * Whether the trait is disabled is set by the regulatory network of the organism each time
+     * it is expressed, so unlike other value traits it cannot be shared between genomes.
+     */
+    @Override
+    public Trait<Integer> copy() {
+        return new IntegerTrait(this, value);
+    }
+
     @Override
     public boolean canDisable() {
         return canDisable;
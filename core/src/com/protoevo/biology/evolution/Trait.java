@@ -43,17 +43,17 @@ public interface Trait<T> extends Evolvable.Component, Serializable {
         if (Math.random() > getMutationRate())
             return copy();
 
-        if (Simulation.RANDOM.nextBoolean())
-            mutateMutationRate();
-
         Trait<T> newTrait = createNew(newRandomValue());
-        newTrait.incrementMutationCount();
 
         if (newTrait == null)
             throw new RuntimeException(
                 "Failed to mutate " + getTraitName() + ": received null. "  +
                 "Ensure that createNew and newRandomValue are implemented for " + this.getClass()
             );
+
+        if (Simulation.RANDOM.nextBoolean())
+            newTrait.mutateMutationRate();
+        newTrait.incrementMutationCount();
         return newTrait;
     }
 
@@ -82,7 +82,13 @@ public interface Trait<T> extends Evolvable.Component, Serializable {
             return other;
     }
 
+    /**
+     * Traits are shared between the genomes of parents and offspring, so once a trait has been
+     * initialised it is never modified: mutations create a new trait instead.
+     * Traits that hold per-organism state, such as {@link CollectionTrait} and {@link IntegerTrait}, must override this.
+     * @return a trait that can be used by a copy of the genome
+     */
     default Trait<T> copy() {
-        return createNew(getValue());
+        return this;
     }
 }
@@ -6,18 +6,72 @@ import com.protoevo.utils.SerializableFunction;
 import com.protoevo.utils.Utils;
 
 import java.io.Serializable;
+import java.util.Random;
 import java.util.function.Function;
 
 public class ActivationFn implements Serializable, Function<Float, Float> {
     public static final long serialVersionUID = 1L;
 
-    public static final ActivationFn SIGMOID = new ActivationFn(z -> 1 / (1 + (float) Math.exp(-z)), "Sigmoid");
-    public static final ActivationFn LINEAR = new ActivationFn(z -> z, "Linear");
-    public static final ActivationFn TANH = new ActivationFn(z -> (float) Math.tanh(z), "Tanh");
-    public static final ActivationFn STEP = new ActivationFn(z -> z > 0 ? 1f : 0f, "Step");
-    public static final ActivationFn RELU = new ActivationFn(z -> z > 0 ? z : 0f, "ReLu");
-    public static final ActivationFn SIN = new ActivationFn(MathUtils::sin, "Sin");
-    public static final ActivationFn GAUSSIAN = new ActivationFn(z -> (float) Math.exp(-z*z), "Gaussian");
+    /*
+     * Opcodes used by compiled networks to dispatch activations on primitive floats.
+     * CUSTOM falls back to the boxed function.
+     */
+    public static final int CUSTOM = 0;
+    public static final int OP_SIGMOID = 1;
+    public static final int OP_LINEAR = 2;
+    public static final int OP_TANH = 3;
+    public static final int OP_STEP = 4;
+    public static final int OP_RELU = 5;
+    public static final int OP_SIN = 6;
+    public static final int OP_GAUSSIAN = 7;
+    public static final int OP_OUTPUT_MAPPER = 8;
+    public static final int OP_INPUT_MAPPER = 9;
+    public static final int OP_BOOLEAN_MAPPER = 10;
+
+    /**
+     * Identifies the kind of an activation. Compiled networks store the primitive opcode of the id,
+     * so that they can dispatch with a switch over ints.
+     */
+    public enum Id {
+        CUSTOM(ActivationFn.CUSTOM),
+        SIGMOID(OP_SIGMOID),
+        LINEAR(OP_LINEAR),
+        TANH(OP_TANH),
+        STEP(OP_STEP),
+        RELU(OP_RELU),
+        SIN(OP_SIN),
+        GAUSSIAN(OP_GAUSSIAN),
+        OUTPUT_MAPPER(OP_OUTPUT_MAPPER),
+        INPUT_MAPPER(OP_INPUT_MAPPER),
+        BOOLEAN_MAPPER(OP_BOOLEAN_MAPPER);
+
+        private final int opcode;
+
+        Id(int opcode) {
+            this.opcode = opcode;
+        }
+
+        public int getOpcode() {
+            return opcode;
+        }
+
+        public static Id fromOpcode(int opcode) {
+            Id[] ids = values();
+            if (opcode < 0 || opcode >= ids.length || ids[opcode].opcode != opcode)
+                throw new IllegalArgumentException("Unknown activation opcode: " + opcode);
+            return ids[opcode];
+        }
+    }
+
+    public static final ActivationFn SIGMOID = new ActivationFn(
+            z -> 1 / (1 + (float) Math.exp(-z)), "Sigmoid", Id.SIGMOID);
+    public static final ActivationFn LINEAR = new ActivationFn(z -> z, "Linear", Id.LINEAR);
+    public static final ActivationFn TANH = new ActivationFn(z -> (float) Math.tanh(z), "Tanh", Id.TANH);
+    public static final ActivationFn STEP = new ActivationFn(z -> z > 0 ? 1f : 0f, "Step", Id.STEP);
+    public static final ActivationFn RELU = new ActivationFn(z -> z > 0 ? z : 0f, "ReLu", Id.RELU);
+    public static final ActivationFn SIN = new ActivationFn(MathUtils::sin, "Sin", Id.SIN);
+    public static final ActivationFn GAUSSIAN = new ActivationFn(
+            z -> (float) Math.exp(-z*z), "Gaussian", Id.GAUSSIAN);
 
     public static final ActivationFn[] activationFunctions = new ActivationFn[]{
             SIGMOID, LINEAR, TANH, STEP, RELU, SIN, GAUSSIAN
@@ -26,32 +80,79 @@ public class ActivationFn implements Serializable, Function<Float, Float> {
     public static ActivationFn getOutputMapper(float min, float max) {
         return new ActivationFn(
                 z -> Utils.cyclicalLinearRemap(z, -1, 1, min, max),
-                String.format("CyclicalLinearRemap[[%.3f, %.3f] -> [-1, 1]]", min, max)
+                String.format("CyclicalLinearRemap[[%.3f, %.3f] -> [-1, 1]]", min, max),
+                Id.OUTPUT_MAPPER, min, max
         );
     }
 
     public static ActivationFn getInputMapper(float min, float max) {
         return new ActivationFn(
                 z -> Utils.cyclicalLinearRemap(z, min, max, -1, 1),
-                String.format("CyclicalLinearRemap[[-1, 1] -> [%.3f, %.3f]]", min, max)
+                String.format("CyclicalLinearRemap[[-1, 1] -> [%.3f, %.3f]]", min, max),
+                Id.INPUT_MAPPER, min, max
         );
     }
 
     public static ActivationFn getBooleanInputMapper() {
-        return new ActivationFn(z -> z > 0 ? 1f : -1f);
+        return new ActivationFn(z -> z > 0 ? 1f : -1f, null, Id.BOOLEAN_MAPPER);
+    }
+
+    /**
+     * Restores an activation from what {@link GenomeCodec} writes of it. Custom activations cannot be restored,
+     * as their functions are not written.
+     */
+    static ActivationFn restore(Id id, String name, float lower, float upper) {
+        switch (id) {
+            case SIGMOID:
+                return SIGMOID;
+            case LINEAR:
+                return LINEAR;
+            case TANH:
+                return TANH;
+            case STEP:
+                return STEP;
+            case RELU:
+                return RELU;
+            case SIN:
+                return SIN;
+            case GAUSSIAN:
+                return GAUSSIAN;
+            case OUTPUT_MAPPER:
+                return getOutputMapper(lower, upper);
+            case INPUT_MAPPER:
+                return getInputMapper(lower, upper);
+            case BOOLEAN_MAPPER:
+                return getBooleanInputMapper();
+            default:
+                throw new IllegalArgumentException("Cannot restore custom activation " + name);
+        }
     }
 
     @JsonIgnore
     private final SerializableFunction<Float, Float> function;
     private String name;
+    private final Id id;
+    private final float lower, upper;
 
     public ActivationFn(SerializableFunction<Float, Float> function) {
-        this.function = function;
+        this(function, null);
     }
 
     public ActivationFn(SerializableFunction<Float, Float> function, String name) {
+        this(function, name, Id.CUSTOM);
+    }
+
+    private ActivationFn(SerializableFunction<Float, Float> function, String name, Id id) {
+        this(function, name, id, 0, 0);
+    }
+
+    private ActivationFn(SerializableFunction<Float, Float> function, String name,
+                         Id id, float lower, float upper) {
         this.function = function;
         this.name = name;
+        this.id = id;
+        this.lower = lower;
+        this.upper = upper;
     }
 
     @Override
@@ -70,6 +171,72 @@ public class ActivationFn implements Serializable, Function<Float, Float> {
         return activationFunctions[(int) (Math.random() * activationFunctions.length)];
     }
 
+    public static ActivationFn randomActivation(Random random) {
+        return activationFunctions[random.nextInt(activationFunctions.length)];
+    }
+
+    public Id getId() {
+        return id;
+    }
+
+    public int getOpcode() {
+        return id.getOpcode();
+    }
+
+    public float getLower() {
+        return lower;
+    }
+
+    public float getUpper() {
+        return upper;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Evaluates the activation without boxing, unless it is a custom function.
+     * @param z the pre-activation value
+     * @return the activated value
+     */
+    public float activate(float z) {
+        if (id == Id.CUSTOM)
+            return function.apply(z);
+        return activate(id.getOpcode(), lower, upper, z);
+    }
+
+    /**
+     * Primitive activation dispatch used by compiled networks.
+     * Must agree exactly with the boxed functions defined above.
+     */
+    public static float activate(int opcode, float lower, float upper, float z) {
+        switch (opcode) {
+            case OP_SIGMOID:
+                return 1 / (1 + (float) Math.exp(-z));
+            case OP_LINEAR:
+                return z;
+            case OP_TANH:
+                return (float) Math.tanh(z);
+            case OP_STEP:
+                return z > 0 ? 1f : 0f;
+            case OP_RELU:
+                return z > 0 ? z : 0f;
+            case OP_SIN:
+                return MathUtils.sin(z);
+            case OP_GAUSSIAN:
+                return (float) Math.exp(-z*z);
+            case OP_OUTPUT_MAPPER:
+                return Utils.cyclicalLinearRemap(z, -1, 1, lower, upper);
+            case OP_INPUT_MAPPER:
+                return Utils.cyclicalLinearRemap(z, lower, upper, -1, 1);
+            case OP_BOOLEAN_MAPPER:
+                return z > 0 ? 1f : -1f;
+            default:
+                throw new IllegalArgumentException("Unknown activation opcode: " + opcode);
+        }
+    }
+
     @Override
     public Float apply(Float z) {
         return function.apply(z);
@@ -0,0 +1,185 @@
+package com.protoevo.biology.nn;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ticks many networks at once by grouping those that share a compiled topology.
+ * <p>
+ * Each group is gathered into contiguous buffers with the batch index innermost,
+ * so every synapse becomes a loop over the batch. The results are scattered back
+ * into the state buffers of each network, exactly as if each network had been ticked on its own.
+ * Networks are only grouped with others that use the same activations, fast or exact.
+ * Networks whose topology is unique, or that use custom activations, are ticked directly.
+ */
+public class BatchedNetworkEvaluator {
+
+    private static class TopologyKey {
+        private final CompiledNetwork compiled;
+        private final boolean fastActivations;
+
+        TopologyKey(CompiledNetwork compiled, boolean fastActivations) {
+            this.compiled = compiled;
+            this.fastActivations = fastActivations;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * compiled.getTopologyHash() + Boolean.hashCode(fastActivations);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TopologyKey))
+                return false;
+            TopologyKey other = (TopologyKey) o;
+            return fastActivations == other.fastActivations && compiled.hasSameTopology(other.compiled);
+        }
+    }
+
+    private static class Scratch {
+        float[] state = new float[0], next = new float[0], weights = new float[0];
+        float[] lower = new float[0], upper = new float[0], acc = new float[0];
+
+        void ensureCapacity(int stateSize, int nWeights, int nRows, int batchSize) {
+            if (state.length < stateSize) {
+                state = new float[stateSize];
+                next = new float[stateSize];
+            }
+            if (weights.length < nWeights)
+                weights = new float[nWeights];
+            if (lower.length < nRows) {
+                lower = new float[nRows];
+                upper = new float[nRows];
+            }
+            if (acc.length < batchSize)
+                acc = new float[batchSize];
+        }
+    }
+
+    private final Map<TopologyKey, List<NeuralNetwork>> groups = new HashMap<>();
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+    private int lastBatchCount, lastBatchedNetworks, lastUnbatchedNetworks;
+
+    /**
+     * Ticks every network once.
+     * @param networks the networks to tick, each network should only appear once
+     */
+    public void tick(Collection<NeuralNetwork> networks) {
+        groups.values().forEach(List::clear);
+        for (NeuralNetwork network : networks) {
+            CompiledNetwork compiled = network.getCompiled();
+            groups.computeIfAbsent(new TopologyKey(compiled, network.usesFastActivations()),
+                    k -> new ArrayList<>()).add(network);
+        }
+        groups.values().removeIf(List::isEmpty);
+
+        int batchCount = 0, batched = 0, unbatched = 0;
+        for (List<NeuralNetwork> group : groups.values()) {
+            if (group.size() > 1 && !group.get(0).getCompiled().hasCustomActivations()) {
+                batchCount++;
+                batched += group.size();
+            } else {
+                unbatched += group.size();
+            }
+        }
+        lastBatchCount = batchCount;
+        lastBatchedNetworks = batched;
+        lastUnbatchedNetworks = unbatched;
+
+        groups.values().parallelStream().forEach(this::tickGroup);
+    }
+
+    private void tickGroup(List<NeuralNetwork> group) {
+        CompiledNetwork topology = group.get(0).getCompiled();
+        if (group.size() == 1 || topology.hasCustomActivations()) {
+            for (NeuralNetwork network : group)
+                network.tick();
+            return;
+        }
+
+        final int batchSize = group.size();
+        final int size = topology.getSize();
+        final int[] rowNeuron = topology.getRowNeurons();
+        final int[] rowStart = topology.getRowStarts();
+        final int[] inputIdx = topology.getInputIndices();
+        final int[] opcodes = topology.getOpcodes();
+        final int nSynapses = topology.getNumSynapses();
+        final boolean fastActivations = group.get(0).usesFastActivations();
+
+        Scratch buffers = scratch.get();
+        buffers.ensureCapacity(size * batchSize, nSynapses * batchSize, size * batchSize, batchSize);
+        final float[] state = buffers.state;
+        final float[] next = buffers.next;
+        final float[] weights = buffers.weights;
+        final float[] lower = buffers.lower;
+        final float[] upper = buffers.upper;
+        final float[] acc = buffers.acc;
+
+        // gather
+        for (int b = 0; b < batchSize; b++) {
+            NeuralNetwork network = group.get(b);
+            CompiledNetwork compiled = network.getCompiled();
+            float[] networkState = network.getStateBuffer();
+            for (int i = 0; i < size; i++)
+                state[i * batchSize + b] = networkState[i];
+            float[] networkWeights = compiled.getWeights();
+            for (int k = 0; k < nSynapses; k++)
+                weights[k * batchSize + b] = networkWeights[k];
+            float[] networkLower = compiled.getLowerBounds();
+            float[] networkUpper = compiled.getUpperBounds();
+            for (int row = 0; row < size; row++) {
+                lower[row * batchSize + b] = networkLower[row];
+                upper[row * batchSize + b] = networkUpper[row];
+            }
+        }
+
+        // batched sparse matrix-vector product, synapses are accumulated in the same order as CompiledNetwork.tick
+        for (int row = 0; row < size; row++) {
+            for (int b = 0; b < batchSize; b++)
+                acc[b] = 0f;
+
+            for (int k = rowStart[row]; k < rowStart[row + 1]; k++) {
+                int in = inputIdx[k] * batchSize;
+                int w = k * batchSize;
+                for (int b = 0; b < batchSize; b++)
+                    acc[b] += state[in + b] * weights[w + b];
+            }
+
+            int op = opcodes[row];
+            int out = rowNeuron[row] * batchSize;
+            int params = row * batchSize;
+            if (fastActivations) {
+                for (int b = 0; b < batchSize; b++)
+                    next[out + b] = FastActivations.activate(op, lower[params + b], upper[params + b], acc[b]);
+            } else {
+                for (int b = 0; b < batchSize; b++)
+                    next[out + b] = ActivationFn.activate(op, lower[params + b], upper[params + b], acc[b]);
+            }
+        }
+
+        // scatter
+        for (int b = 0; b < batchSize; b++) {
+            NeuralNetwork network = group.get(b);
+            float[] networkNext = network.getNextStateBuffer();
+            for (int i = 0; i < size; i++)
+                networkNext[i] = next[i * batchSize + b];
+            network.swapStateBuffers();
+        }
+    }
+
+    public int getLastBatchCount() {
+        return lastBatchCount;
+    }
+
+    public int getLastBatchedNetworks() {
+        return lastBatchedNetworks;
+    }
+
+    public int getLastUnbatchedNetworks() {
+        return lastUnbatchedNetworks;
+    }
+}
@@ -0,0 +1,188 @@
+package com.protoevo.biology.nn;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Flat, allocation-free form of a {@link NeuralNetwork}.
+ * <p>
+ * Neurons are laid out as rows ordered by depth, with their incoming synapses stored in
+ * compressed sparse row (CSR) layout. Activations are dispatched on primitive floats via
+ * {@link ActivationFn#activate(int, float, float, float)}, using the opcode of each activation's
+ * {@link ActivationFn.Id}, or via {@link FastActivations} when fast activations are requested.
+ * The compiled form holds no state,
+ * it reads from one state buffer and writes to another, indexed by neuron id.
+ */
+public class CompiledNetwork {
+
+    private final int size;
+    private final int[] rowNeuron;
+    private final int[] rowStart;
+    private final int[] inputIdx;
+    private final float[] weights;
+    private final int[] opcodes;
+    private final float[] lower, upper;
+    private final ActivationFn[] customActivations;
+    private final boolean hasCustomActivations;
+    private final int topologyHash;
+
+    private CompiledNetwork(int size, int[] rowNeuron, int[] rowStart, int[] inputIdx, float[] weights,
+                            int[] opcodes, float[] lower, float[] upper, ActivationFn[] customActivations) {
+        this.size = size;
+        this.rowNeuron = rowNeuron;
+        this.rowStart = rowStart;
+        this.inputIdx = inputIdx;
+        this.weights = weights;
+        this.opcodes = opcodes;
+        this.lower = lower;
+        this.upper = upper;
+        this.customActivations = customActivations;
+
+        boolean custom = false;
+        for (int op : opcodes)
+            custom |= op == ActivationFn.CUSTOM;
+        this.hasCustomActivations = custom;
+
+        int hash = Arrays.hashCode(rowNeuron);
+        hash = 31 * hash + Arrays.hashCode(rowStart);
+        hash = 31 * hash + Arrays.hashCode(inputIdx);
+        hash = 31 * hash + Arrays.hashCode(opcodes);
+        this.topologyHash = hash;
+    }
+
+    /**
+     * Compiles the given neurons, which must have ids 0..n-1 and depths already computed.
+     * @param neurons the neurons of the network
+     * @return the compiled network
+     */
+    public static CompiledNetwork compile(List<Neuron> neurons) {
+        int size = neurons.size();
+        Neuron[] ordered = neurons.toArray(new Neuron[0]);
+        Arrays.sort(ordered, Comparator.comparingInt(Neuron::getDepth).thenComparingInt(Neuron::getId));
+
+        int nSynapses = 0;
+        for (Neuron neuron : ordered)
+            nSynapses += neuron.getInputs().length;
+
+        int[] rowNeuron = new int[size];
+        int[] rowStart = new int[size + 1];
+        int[] inputIdx = new int[nSynapses];
+        float[] weights = new float[nSynapses];
+        int[] opcodes = new int[size];
+        float[] lower = new float[size];
+        float[] upper = new float[size];
+        ActivationFn[] customActivations = new ActivationFn[size];
+
+        int k = 0;
+        for (int row = 0; row < size; row++) {
+            Neuron neuron = ordered[row];
+            rowNeuron[row] = neuron.getId();
+            rowStart[row] = k;
+            Neuron[] inputs = neuron.getInputs();
+            float[] neuronWeights = neuron.getWeights();
+            for (int i = 0; i < inputs.length; i++) {
+                inputIdx[k] = inputs[i].getId();
+                weights[k] = neuronWeights[i];
+                k++;
+            }
+            ActivationFn activation = neuron.getActivation();
+            opcodes[row] = activation.getOpcode();
+            lower[row] = activation.getLower();
+            upper[row] = activation.getUpper();
+            if (opcodes[row] == ActivationFn.CUSTOM)
+                customActivations[row] = activation;
+        }
+        rowStart[size] = k;
+
+        return new CompiledNetwork(
+                size, rowNeuron, rowStart, inputIdx, weights, opcodes, lower, upper, customActivations);
+    }
+
+    /**
+     * Computes the next state of every neuron from the current state.
+     * @param state the current state, indexed by neuron id
+     * @param next the buffer to write the next state into, indexed by neuron id
+     */
+    public void tick(float[] state, float[] next) {
+        tick(state, next, false);
+    }
+
+    /**
+     * Computes the next state of every neuron from the current state.
+     * @param state the current state, indexed by neuron id
+     * @param next the buffer to write the next state into, indexed by neuron id
+     * @param fastActivations whether to use the approximate activations of {@link FastActivations}
+     */
+    public void tick(float[] state, float[] next, boolean fastActivations) {
+        for (int row = 0; row < size; row++) {
+            float z = 0f;
+            for (int k = rowStart[row]; k < rowStart[row + 1]; k++)
+                z += state[inputIdx[k]] * weights[k];
+
+            int op = opcodes[row];
+            if (op == ActivationFn.CUSTOM)
+                next[rowNeuron[row]] = customActivations[row].activate(z);
+            else if (fastActivations)
+                next[rowNeuron[row]] = FastActivations.activate(op, lower[row], upper[row], z);
+            else
+                next[rowNeuron[row]] = ActivationFn.activate(op, lower[row], upper[row], z);
+        }
+    }
+
+    /**
+     * Networks share a topology if they have the same rows, synapses and activation opcodes.
+     * Weights and activation ranges may differ.
+     */
+    public boolean hasSameTopology(CompiledNetwork other) {
+        return topologyHash == other.topologyHash
+                && Arrays.equals(rowNeuron, other.rowNeuron)
+                && Arrays.equals(rowStart, other.rowStart)
+                && Arrays.equals(inputIdx, other.inputIdx)
+                && Arrays.equals(opcodes, other.opcodes);
+    }
+
+    public int getTopologyHash() {
+        return topologyHash;
+    }
+
+    public boolean hasCustomActivations() {
+        return hasCustomActivations;
+    }
+
+    int[] getRowNeurons() {
+        return rowNeuron;
+    }
+
+    int[] getRowStarts() {
+        return rowStart;
+    }
+
+    int[] getInputIndices() {
+        return inputIdx;
+    }
+
+    float[] getWeights() {
+        return weights;
+    }
+
+    int[] getOpcodes() {
+        return opcodes;
+    }
+
+    float[] getLowerBounds() {
+        return lower;
+    }
+
+    float[] getUpperBounds() {
+        return upper;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getNumSynapses() {
+        return inputIdx.length;
+    }
+}
@@ -0,0 +1,90 @@
+package com.protoevo.biology.nn;
+
+/**
+ * Approximate versions of the transcendental activation functions, used when
+ * fast activations are enabled in the settings.
+ * <p>
+ * Tanh and the gaussian are read from tables sampled every 1/256 and linearly interpolated,
+ * the sigmoid is derived from tanh using sigmoid(z) = (1 + tanh(z / 2)) / 2.
+ * Outside the sampled range the functions are within float rounding of their asymptotes.
+ * The maximum absolute errors against the exact {@link ActivationFn#activate(int, float, float, float)}
+ * path are given by the constants below, and are checked by the tests.
+ * Sin already uses the libGDX lookup table on the exact path, and the remaining activations
+ * are cheap enough that they are left exact.
+ */
+public final class FastActivations {
+
+    public static final float TANH_MAX_ERROR = 2e-6f;
+    public static final float SIGMOID_MAX_ERROR = 1e-6f;
+    public static final float GAUSSIAN_MAX_ERROR = 4e-6f;
+
+    private static final int SAMPLES_PER_UNIT = 256;
+    private static final float TANH_RANGE = 8f;
+    private static final float GAUSSIAN_RANGE = 4f;
+
+    private static final float[] tanhTable = sample(-TANH_RANGE, TANH_RANGE, Math::tanh);
+    private static final float[] gaussianTable = sample(0, GAUSSIAN_RANGE, x -> Math.exp(-x * x));
+
+    private FastActivations() {}
+
+    private interface Exact {
+        double apply(double x);
+    }
+
+    private static float[] sample(float start, float end, Exact fn) {
+        int n = (int) ((end - start) * SAMPLES_PER_UNIT);
+        // one extra sample so that interpolating at the end of the range stays in bounds
+        float[] table = new float[n + 2];
+        for (int i = 0; i <= n; i++)
+            table[i] = (float) fn.apply(start + i / (double) SAMPLES_PER_UNIT);
+        table[n + 1] = table[n];
+        return table;
+    }
+
+    private static float interpolate(float[] table, float x) {
+        int i = (int) x;
+        float t = x - i;
+        float a = table[i];
+        return a + t * (table[i + 1] - a);
+    }
+
+    public static float tanh(float z) {
+        if (z <= -TANH_RANGE)
+            return -1f;
+        if (z >= TANH_RANGE)
+            return 1f;
+        // NaN falls through, and propagates through the interpolation weight
+        return interpolate(tanhTable, (z + TANH_RANGE) * SAMPLES_PER_UNIT);
+    }
+
+    public static float sigmoid(float z) {
+        return 0.5f + 0.5f * tanh(0.5f * z);
+    }
+
+    public static float gaussian(float z) {
+        float x = Math.abs(z);
+        if (x >= GAUSSIAN_RANGE)
+            return 0f;
+        return interpolate(gaussianTable, x * SAMPLES_PER_UNIT);
+    }
+
+    /**
+     * Approximate counterpart of {@link ActivationFn#activate(int, float, float, float)}.
+     */
+    public static float activate(int opcode, float lower, float upper, float z) {
+        switch (opcode) {
+            case ActivationFn.OP_SIGMOID:
+                return sigmoid(z);
+            case ActivationFn.OP_TANH:
+                return tanh(z);
+            case ActivationFn.OP_GAUSSIAN:
+                return gaussian(z);
+            default:
+                return ActivationFn.activate(opcode, lower, upper, z);
+        }
+    }
+
+    public static float activate(ActivationFn.Id id, float lower, float upper, float z) {
+        return activate(id.getOpcode(), lower, upper, z);
+    }
+}
@@ -0,0 +1,157 @@
+package com.protoevo.biology.nn;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Writes genes and genomes in a compact binary form, and reads them back.
+ * <p>
+ * Everything about a gene is written other than its tags, which only label neurons for the UI.
+ * A synapse gene refers to its neuron genes, and a genome to its genes, by keys that are given
+ * when writing and resolved when reading, so that genes shared between genomes need only be written once.
+ */
+public class GenomeCodec {
+
+    private static void writeNullableString(DataOutput out, String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null)
+            out.writeUTF(string);
+    }
+
+    private static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeActivation(DataOutput out, ActivationFn activation) throws IOException {
+        out.writeByte(activation.getId().ordinal());
+        writeNullableString(out, activation.getName());
+        out.writeFloat(activation.getLower());
+        out.writeFloat(activation.getUpper());
+    }
+
+    private static ActivationFn readActivation(DataInput in) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= ActivationFn.Id.values().length)
+            throw new IOException("Unknown activation id: " + ordinal);
+        ActivationFn.Id id = ActivationFn.Id.values()[ordinal];
+        String name = readNullableString(in);
+        float lower = in.readFloat();
+        float upper = in.readFloat();
+        if (id == ActivationFn.Id.CUSTOM)
+            throw new IOException("Cannot read custom activation " + name + ": its function is not written");
+        return ActivationFn.restore(id, name, lower, upper);
+    }
+
+    public static void writeNeuronGene(DataOutput out, NeuronGene gene) throws IOException {
+        out.writeLong(gene.getSignature());
+        out.writeInt(gene.getId());
+        out.writeByte(gene.getType().ordinal());
+        out.writeBoolean(gene.getActivation() != null);
+        if (gene.getActivation() != null)
+            writeActivation(out, gene.getActivation());
+        writeNullableString(out, gene.getLabel());
+        out.writeBoolean(gene.isDisabled());
+        out.writeFloat(gene.getMutationRate());
+        out.writeFloat(gene.getMinMutationRate());
+        out.writeFloat(gene.getMaxMutationRate());
+        out.writeInt(gene.getNumMutations());
+        out.writeInt(gene.getNumMutationRateMutations());
+    }
+
+    public static NeuronGene readNeuronGene(DataInput in) throws IOException {
+        long signature = in.readLong();
+        int id = in.readInt();
+        Neuron.Type type = Neuron.Type.values()[in.readByte()];
+        ActivationFn activation = in.readBoolean() ? readActivation(in) : null;
+        String label = readNullableString(in);
+        boolean disabled = in.readBoolean();
+        float mutationRate = in.readFloat();
+        float mutationRateMin = in.readFloat();
+        float mutationRateMax = in.readFloat();
+        int nMutations = in.readInt();
+        int nMutationRateMutations = in.readInt();
+        return new NeuronGene(signature, id, type, activation, label, disabled,
+                mutationRate, mutationRateMin, mutationRateMax, nMutations, nMutationRateMutations);
+    }
+
+    /**
+     * @param neuronKeys gives the key each neuron gene of the synapse is written as
+     */
+    public static void writeSynapseGene(DataOutput out, SynapseGene gene,
+                                        ToLongFunction<NeuronGene> neuronKeys) throws IOException {
+        out.writeLong(gene.getSignature());
+        out.writeInt(gene.getInnovation());
+        out.writeLong(neuronKeys.applyAsLong(gene.getIn()));
+        out.writeLong(neuronKeys.applyAsLong(gene.getOut()));
+        out.writeFloat(gene.getWeight());
+        out.writeBoolean(gene.isDisabled());
+        out.writeFloat(gene.getMutationRate());
+        out.writeFloat(gene.getMinMutationRate());
+        out.writeFloat(gene.getMaxMutationRate());
+        out.writeInt(gene.getNumMutations());
+        out.writeInt(gene.getNumMutationRateMutations());
+    }
+
+    /**
+     * @param neurons resolves the keys the neuron genes of the synapse were written as
+     */
+    public static SynapseGene readSynapseGene(DataInput in, LongFunction<NeuronGene> neurons) throws IOException {
+        long signature = in.readLong();
+        int innovation = in.readInt();
+        NeuronGene inGene = neurons.apply(in.readLong());
+        NeuronGene outGene = neurons.apply(in.readLong());
+        float weight = in.readFloat();
+        boolean disabled = in.readBoolean();
+        float mutationRate = in.readFloat();
+        float mutationRateMin = in.readFloat();
+        float mutationRateMax = in.readFloat();
+        int nMutations = in.readInt();
+        int nMutationRateMutations = in.readInt();
+        return new SynapseGene(signature, innovation, inGene, outGene, weight, disabled,
+                mutationRate, mutationRateMin, mutationRateMax, nMutations, nMutationRateMutations);
+    }
+
+    private static void writeNeuronKeys(DataOutput out, NeuronGene[] genes,
+                                        ToLongFunction<NeuronGene> neuronKeys) throws IOException {
+        out.writeInt(genes.length);
+        for (NeuronGene gene : genes)
+            out.writeLong(neuronKeys.applyAsLong(gene));
+    }
+
+    private static NeuronGene[] readNeurons(DataInput in, LongFunction<NeuronGene> neurons) throws IOException {
+        NeuronGene[] genes = new NeuronGene[in.readInt()];
+        for (int i = 0; i < genes.length; i++)
+            genes[i] = neurons.apply(in.readLong());
+        return genes;
+    }
+
+    public static void writeGenome(DataOutput out, NetworkGenome genome, ToLongFunction<NeuronGene> neuronKeys,
+                                   ToLongFunction<SynapseGene> synapseKeys) throws IOException {
+        out.writeInt(genome.getNumNeuronGenes());
+        out.writeInt(genome.getNumStructuralMutations());
+        writeNeuronKeys(out, genome.getSensorNeuronGenes(), neuronKeys);
+        writeNeuronKeys(out, genome.getOutputNeuronGenes(), neuronKeys);
+        writeNeuronKeys(out, genome.getHiddenNeuronGenes(), neuronKeys);
+        SynapseGene[] synapseGenes = genome.getSynapseGenes();
+        out.writeInt(synapseGenes.length);
+        for (SynapseGene gene : synapseGenes)
+            out.writeLong(synapseKeys.applyAsLong(gene));
+    }
+
+    public static NetworkGenome readGenome(DataInput in, LongFunction<NeuronGene> neurons,
+                                           LongFunction<SynapseGene> synapses) throws IOException {
+        int nNeuronGenes = in.readInt();
+        int numStructuralMutations = in.readInt();
+        NeuronGene[] sensorGenes = readNeurons(in, neurons);
+        NeuronGene[] outputGenes = readNeurons(in, neurons);
+        NeuronGene[] hiddenGenes = readNeurons(in, neurons);
+        SynapseGene[] synapseGenes = new SynapseGene[in.readInt()];
+        for (int i = 0; i < synapseGenes.length; i++)
+            synapseGenes[i] = synapses.apply(in.readLong());
+        return new NetworkGenome(sensorGenes, outputGenes, hiddenGenes, synapseGenes,
+                nNeuronGenes, numStructuralMutations);
+    }
+}
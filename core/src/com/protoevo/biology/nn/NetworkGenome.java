@@ -1,7 +1,6 @@
 package com.protoevo.biology.nn;
 
 import com.badlogic.gdx.math.MathUtils;
-import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.google.common.collect.Iterators;
 import com.protoevo.core.Simulation;
 import com.protoevo.env.Environment;
@@ -9,9 +8,6 @@ import org.apache.commons.lang3.ArrayUtils;
 
 import java.io.Serializable;
 import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class NetworkGenome implements Serializable
 {
@@ -19,8 +15,7 @@ public class NetworkGenome implements Serializable
 	private NeuronGene[] sensorNeuronGenes, outputNeuronGenes, hiddenNeuronGenes;
 	private int nNeuronGenes;
 	private SynapseGene[] synapseGenes;
-	@JsonIgnore
-	private Random random = Simulation.RANDOM;
+	private transient boolean synapsesSorted = false;
 	private int numStructuralMutations = 0, nSensors, nOutputs;
 	private static int maxSynapseMutationsPerGeneration = 10;
 	private static int maxNodeMutationsPerGeneration = 10;
@@ -29,14 +24,18 @@ public class NetworkGenome implements Serializable
 		setProperties(other);
 	}
 
+	/**
+	 * Genes are immutable once built, so they are shared with the other genome rather than copied.
+	 * Only the gene arrays are copied, mutations then replace the genes that change.
+	 */
 	public void setProperties(NetworkGenome other)
 	{
-		sensorNeuronGenes = copy(other.sensorNeuronGenes);
-		outputNeuronGenes = copy(other.outputNeuronGenes);
-		hiddenNeuronGenes = copy(other.hiddenNeuronGenes);
-		synapseGenes = copy(other.synapseGenes);
+		sensorNeuronGenes = other.sensorNeuronGenes.clone();
+		outputNeuronGenes = other.outputNeuronGenes.clone();
+		hiddenNeuronGenes = other.hiddenNeuronGenes.clone();
+		synapseGenes = other.synapseGenes.clone();
 		nNeuronGenes = other.nNeuronGenes;
-		random = other.random;
+		synapsesSorted = other.synapsesSorted;
 		numStructuralMutations = other.numStructuralMutations;
 		nSensors = other.nSensors;
 		nOutputs = other.nOutputs;
@@ -46,20 +45,6 @@ public class NetworkGenome implements Serializable
 		this(0, 0);
 	}
 
-	private NeuronGene[] copy(NeuronGene[] neuronGenes) {
-		NeuronGene[] newGenes = new NeuronGene[neuronGenes.length];
-		for (int i = 0; i < neuronGenes.length; i++)
-			newGenes[i] = new NeuronGene(neuronGenes[i]);
-		return newGenes;
-	}
-
-	private SynapseGene[] copy(SynapseGene[] synapseGenes) {
-		SynapseGene[] newGenes = new SynapseGene[synapseGenes.length];
-		for (int i = 0; i < synapseGenes.length; i++)
-			newGenes[i] = new SynapseGene(synapseGenes[i]);
-		return newGenes;
-	}
-
 	public NetworkGenome(int numInputs, int numOutputs)
 	{
 		this.nSensors = numInputs;
@@ -99,6 +84,16 @@ public class NetworkGenome implements Serializable
 		nNeuronGenes = nSensors + nOutputs + hiddenGenes.length;
 	}
 
+	/**
+	 * Restores a genome exactly as it was written by {@link GenomeCodec}.
+	 */
+	NetworkGenome(NeuronGene[] sensorGenes, NeuronGene[] outputGenes, NeuronGene[] hiddenGenes,
+				  SynapseGene[] synapseGenes, int nNeuronGenes, int numStructuralMutations) {
+		this(sensorGenes, outputGenes, hiddenGenes, synapseGenes);
+		this.nNeuronGenes = nNeuronGenes;
+		this.numStructuralMutations = numStructuralMutations;
+	}
+
 	public NeuronGene addSensor(String label, ActivationFn activation, Object...tags) {
 		NeuronGene n = new NeuronGene(
 				nNeuronGenes++, Neuron.Type.SENSOR, activation, label
@@ -127,6 +122,7 @@ public class NetworkGenome implements Serializable
 
 		int originalLen = synapseGenes.length;
 		synapseGenes = Arrays.copyOf(synapseGenes, originalLen + outputNeuronGenes.length);
+		synapsesSorted = false;
 		for (int i = 0; i < outputNeuronGenes.length; i++)
 			synapseGenes[originalLen + i] = new SynapseGene(n, outputNeuronGenes[i]);
 	}
@@ -152,12 +148,14 @@ public class NetworkGenome implements Serializable
 
 		int originalLen = synapseGenes.length;
 		synapseGenes = Arrays.copyOf(synapseGenes, originalLen + sensorNeuronGenes.length);
+		synapsesSorted = false;
 		for (int i = 0; i < sensorNeuronGenes.length; i++)
 			synapseGenes[originalLen + i] = new SynapseGene(sensorNeuronGenes[i], n);
 	}
 
 	public SynapseGene addSynapse(NeuronGene in, NeuronGene out, float w) {
 		synapseGenes = Arrays.copyOf(synapseGenes, synapseGenes.length + 1);
+		synapsesSorted = false;
 		synapseGenes[synapseGenes.length - 1] = new SynapseGene(in, out, w);
 		return synapseGenes[synapseGenes.length - 1];
 	}
@@ -166,7 +164,8 @@ public class NetworkGenome implements Serializable
 		return addSynapse(in, out, MathUtils.random(-1f, 1f));
 	}
 
-	private void createHiddenBetween(SynapseGene g) {
+	private void createHiddenBetween(int synapseIdx, Random random) {
+		SynapseGene g = synapseGenes[synapseIdx];
 
 		if (hiddenNeuronGenes.length >= Environment.settings.evo.maxGRNSize.get())
 			return;
@@ -177,20 +176,21 @@ public class NetworkGenome implements Serializable
 
 		n.setMutationRange(
 				Environment.settings.evo.minRegulationMutationChance.get(),
-				Environment.settings.evo.maxRegulationMutationChance.get());
+				Environment.settings.evo.maxRegulationMutationChance.get(),
+				random);
 
 		hiddenNeuronGenes = Arrays.copyOf(hiddenNeuronGenes, hiddenNeuronGenes.length + 1);
 		hiddenNeuronGenes[hiddenNeuronGenes.length - 1] = n;
 
-		SynapseGene inConnection = new SynapseGene(g.getIn(), n, g.getWeight());
-		SynapseGene outConnection = new SynapseGene(n, g.getOut(), 1f);
+		SynapseGene inConnection = new SynapseGene(g.getIn(), n, g.getWeight(), random);
+		SynapseGene outConnection = new SynapseGene(n, g.getOut(), 1f, random);
 
 
 		synapseGenes = Arrays.copyOf(synapseGenes, synapseGenes.length + 2);
+		synapsesSorted = false;
+		synapseGenes[synapseIdx] = g.withDisabled(true);
 		synapseGenes[synapseGenes.length - 2] = inConnection;
 		synapseGenes[synapseGenes.length - 1] = outConnection;
-
-		g.setDisabled(true);
 	}
 
 	private int getSynapseGeneIndex(NeuronGene in, NeuronGene out) {
@@ -206,23 +206,6 @@ public class NetworkGenome implements Serializable
 		return -1;
 	}
 
-	private int getNeuronGeneIndex(NeuronGene gene) {
-		if (gene.isGenomeIdxKnown())
-			return gene.getGenomeIdx();
-
-		for (int i = 0; i < sensorNeuronGenes.length; i++) {
-			sensorNeuronGenes[i].setGenomeIdx(i);
-		}
-		for (int i = 0; i < outputNeuronGenes.length; i++) {
-			outputNeuronGenes[i].setGenomeIdx(i);
-		}
-		for (int i = 0; i < hiddenNeuronGenes.length; i++) {
-			hiddenNeuronGenes[i].setGenomeIdx(i);
-		}
-
-		return gene.getGenomeIdx();
-	}
-
 	public NeuronGene getNeuronGene(String name) {
 		for (NeuronGene n : sensorNeuronGenes)
 			if (n.getLabel().equals(name))
@@ -236,194 +219,311 @@ public class NetworkGenome implements Serializable
 		return null;
 	}
 	
-	private void mutateConnection(NeuronGene in, NeuronGene out) {
+	private void mutateConnection(NeuronGene in, NeuronGene out, Random random) {
 		numStructuralMutations++;
 
 		int idx = getSynapseGeneIndex(in, out);
 
 		if (idx == -1) {  // synapse doesn't exist - create a new one
 			synapseGenes = Arrays.copyOf(synapseGenes, synapseGenes.length + 1);
-			synapseGenes[synapseGenes.length - 1] = new SynapseGene(in, out);
+			synapseGenes[synapseGenes.length - 1] = new SynapseGene(in, out, random);
+			synapsesSorted = false;
 		} else {  // synapse does exist
 			SynapseGene g = synapseGenes[idx];
-			synapseGenes[idx] = g.cloneWithMutation();
-			if (Math.random() < g.getMutationRate())   // create new hidden neuron
-				createHiddenBetween(g);
+			synapseGenes[idx] = g.cloneWithMutation(random);
+			if (random.nextFloat() < g.getMutationRate())   // create new hidden neuron
+				createHiddenBetween(idx, random);
 		}
 	}
 
 	/**
 	 * The only valid kind of sensor mutation is creating a connection to a hidden or output neuron.
-	 * @param sensorGene the neuron to mutate
+	 * @param myIdx the index of the neuron to mutate
 	 */
-	private void mutateSensor(NeuronGene sensorGene) {
-		int myIdx = getNeuronGeneIndex(sensorGene);
-		sensorNeuronGenes[myIdx] = sensorGene.cloneWithMutation();
+	private void mutateSensor(int myIdx, Random random) {
+		NeuronGene sensorGene = sensorNeuronGenes[myIdx];
+		sensorNeuronGenes[myIdx] = sensorGene.cloneWithMutation(random);
 
 		if (hiddenNeuronGenes.length + outputNeuronGenes.length == 0)
 			return;
 
-		if (Math.random() < sensorGene.getMutationRate()) {
-			int otherIdx = MathUtils.random(hiddenNeuronGenes.length + outputNeuronGenes.length - 1);
+		if (random.nextFloat() < sensorGene.getMutationRate()) {
+			int otherIdx = random.nextInt(hiddenNeuronGenes.length + outputNeuronGenes.length);
 			if (otherIdx < outputNeuronGenes.length)
-				mutateConnection(sensorGene, outputNeuronGenes[otherIdx]);
+				mutateConnection(sensorGene, outputNeuronGenes[otherIdx], random);
 			else
-				mutateConnection(sensorGene, hiddenNeuronGenes[otherIdx - outputNeuronGenes.length]);
+				mutateConnection(sensorGene, hiddenNeuronGenes[otherIdx - outputNeuronGenes.length], random);
 		}
 	}
 
 	/**
 	 * The only valid kind of output mutation is creating a connection to a hidden or sensor neuron.
-	 * @param outputGene the neuron to mutate
+	 * @param myIdx the index of the neuron to mutate
 	 */
-	private void mutateOutput(NeuronGene outputGene) {
-		int myIdx = getNeuronGeneIndex(outputGene);
-		outputNeuronGenes[myIdx] = outputGene.cloneWithMutation();
+	private void mutateOutput(int myIdx, Random random) {
+		NeuronGene outputGene = outputNeuronGenes[myIdx];
+		outputNeuronGenes[myIdx] = outputGene.cloneWithMutation(random);
 
 		if (hiddenNeuronGenes.length + sensorNeuronGenes.length == 0)
 			return;
 
-		if (Math.random() < outputGene.getMutationRate()) {
-			int otherIdx = MathUtils.random(hiddenNeuronGenes.length + sensorNeuronGenes.length - 1);
+		if (random.nextFloat() < outputGene.getMutationRate()) {
+			int otherIdx = random.nextInt(hiddenNeuronGenes.length + sensorNeuronGenes.length);
 			if (otherIdx < sensorNeuronGenes.length)
-				mutateConnection(sensorNeuronGenes[otherIdx], outputGene);
+				mutateConnection(sensorNeuronGenes[otherIdx], outputGene, random);
 			else
-				mutateConnection(hiddenNeuronGenes[otherIdx - sensorNeuronGenes.length], outputGene);
+				mutateConnection(hiddenNeuronGenes[otherIdx - sensorNeuronGenes.length], outputGene, random);
 		}
 	}
 
 	/**
 	 * There are two kinds of hidden neuron mutations: creating a connection to any other neuron,
 	 * or changing the activation function.
-	 * @param hiddenGene the neuron to mutate
+	 * @param myIdx the index of the neuron to mutate
 	 */
-	private void mutateHidden(NeuronGene hiddenGene) {
-		int myIdx = getNeuronGeneIndex(hiddenGene);
-		hiddenNeuronGenes[myIdx] = hiddenGene.cloneWithMutation();
+	private void mutateHidden(int myIdx, Random random) {
+		NeuronGene hiddenGene = hiddenNeuronGenes[myIdx];
+		hiddenNeuronGenes[myIdx] = hiddenGene.cloneWithMutation(random);
 
-		if (Math.random() < hiddenGene.getMutationRate()
+		if (random.nextFloat() < hiddenGene.getMutationRate()
 				&& hiddenNeuronGenes.length + outputNeuronGenes.length > 0) {
 			// random connection mutation involving this neuron
-			int otherIdx = MathUtils.random(
-					hiddenNeuronGenes.length +
-					outputNeuronGenes.length - 1);
+			int otherIdx = random.nextInt(hiddenNeuronGenes.length + outputNeuronGenes.length);
 			if (otherIdx < hiddenNeuronGenes.length)
-				mutateConnection(hiddenGene, hiddenNeuronGenes[otherIdx]);
+				mutateConnection(hiddenGene, hiddenNeuronGenes[otherIdx], random);
 			else
-				mutateConnection(hiddenGene, outputNeuronGenes[otherIdx - hiddenNeuronGenes.length]);
+				mutateConnection(hiddenGene, outputNeuronGenes[otherIdx - hiddenNeuronGenes.length], random);
 		}
 	}
 
 	public void mutateNeuronGene(NeuronGene neuronGene) {
+		mutateNeuronGene(neuronGene, Simulation.RANDOM);
+	}
+
+	public void mutateNeuronGene(NeuronGene neuronGene, Random random) {
 		if (neuronGene.getType() == Neuron.Type.SENSOR) {
-			mutateSensor(neuronGene);
+			mutateSensor(ArrayUtils.indexOf(sensorNeuronGenes, neuronGene), random);
 			return;
 		}
 
 		if (neuronGene.getType() == Neuron.Type.OUTPUT) {
-			mutateOutput(neuronGene);
+			mutateOutput(ArrayUtils.indexOf(outputNeuronGenes, neuronGene), random);
 			return;
 		}
 
-		mutateHidden(neuronGene);
+		mutateHidden(ArrayUtils.indexOf(hiddenNeuronGenes, neuronGene), random);
 	}
 
 	public void mutateSynapseGene(int idx) {
-		if (Simulation.RANDOM.nextFloat() < Environment.settings.evo.structuralMutationChance.get())
-			synapseGenes[idx] = synapseGenes[idx].cloneWithMutation();
-		else if (Math.random() < synapseGenes[idx].getMutationRate())
-			createHiddenBetween(synapseGenes[idx]);
+		mutateSynapseGene(idx, Simulation.RANDOM);
 	}
-	
-	public void mutate()
+
+	public void mutateSynapseGene(int idx, Random random) {
+		if (random.nextFloat() < Environment.settings.evo.structuralMutationChance.get())
+			synapseGenes[idx] = synapseGenes[idx].cloneWithMutation(random);
+		else if (random.nextFloat() < synapseGenes[idx].getMutationRate())
+			createHiddenBetween(idx, random);
+	}
+
+	public void mutate() {
+		mutate(Simulation.RANDOM);
+	}
+
+	/**
+	 * @param random the source of randomness for every decision made by the mutation, including the weights
+	 *               and mutation rates of new genes, so that mutations can run off the main thread and be
+	 *               reproduced from a seed. Only gene signatures and innovation numbers are drawn globally,
+	 *               as they only need to be unique.
+	 */
+	public void mutate(Random random)
 	{
 		for (int i = 0; i < maxNodeMutationsPerGeneration; i++) {
-			int idx = MathUtils.random(
-					0, sensorNeuronGenes.length + outputNeuronGenes.length + hiddenNeuronGenes.length - 1);
+			int idx = random.nextInt(sensorNeuronGenes.length + outputNeuronGenes.length + hiddenNeuronGenes.length);
 			if (idx < sensorNeuronGenes.length)
-				mutateSensor(sensorNeuronGenes[idx]);
+				mutateSensor(idx, random);
 			else if (idx < sensorNeuronGenes.length + outputNeuronGenes.length)
-				mutateOutput(outputNeuronGenes[idx - sensorNeuronGenes.length]);
+				mutateOutput(idx - sensorNeuronGenes.length, random);
 			else
-				mutateHidden(hiddenNeuronGenes[idx - sensorNeuronGenes.length - outputNeuronGenes.length]);
+				mutateHidden(idx - sensorNeuronGenes.length - outputNeuronGenes.length, random);
 		}
 
 		if (synapseGenes.length > 0)
 			for (int i = 0; i < maxSynapseMutationsPerGeneration; i++) {
-				int idx = MathUtils.random(0, synapseGenes.length - 1);
-				mutateSynapseGene(idx);
+				int idx = random.nextInt(synapseGenes.length);
+				mutateSynapseGene(idx, random);
 			}
 	}
-	
-	public NetworkGenome crossover(NetworkGenome other)
-	{
-		Map<Integer, SynapseGene> myConnections = Arrays.stream(synapseGenes)
-				.collect(Collectors.toMap(
-						SynapseGene::getInnovation,
-						Function.identity(),
-						(x1, x2) -> random.nextBoolean() ? x1 : x2));
-		Map<Integer, SynapseGene> theirConnections = Arrays.stream(other.synapseGenes)
-				.collect(Collectors.toMap(
-						SynapseGene::getInnovation,
-						Function.identity(),
-						(x1, x2) -> random.nextBoolean() ? x1 : x2));
-
-		Set<Integer> innovationNumbers = new HashSet<>();
-		innovationNumbers.addAll(myConnections.keySet());
-		innovationNumbers.addAll(theirConnections.keySet());
-
-		HashSet<SynapseGene> childSynapses = new HashSet<>();
-
-		for (int innovation : innovationNumbers) {
-			boolean iContain = myConnections.containsKey(innovation);
-			boolean theyContain = theirConnections.containsKey(innovation);
-			SynapseGene g;
-			if (iContain && theyContain) {
-				g = Simulation.RANDOM.nextBoolean() ?
-						myConnections.get(innovation) :
-						theirConnections.get(innovation);
-				if (g.isDisabled() && MathUtils.random() < Environment.settings.evo.globalMutationChance.get())
-					g.setDisabled(false);
-				childSynapses.add(g);
-				continue;
 
-			} else if (iContain) {
-				g = myConnections.get(innovation);
-			} else {
-				g = theirConnections.get(innovation);
+	/**
+	 * Crossover merge-joins the synapses of the two genomes by innovation number.
+	 * New synapses almost always have the largest innovation number, so this is usually just a check.
+	 * The genome may be read from other threads, so when out of order a sorted copy is returned
+	 * and the genome's own array is left as it is.
+	 * @return the synapse genes, sorted by innovation number
+	 */
+	private SynapseGene[] getSortedSynapseGenes() {
+		SynapseGene[] genes = synapseGenes;
+		if (synapsesSorted)
+			return genes;
+		for (int i = 1; i < genes.length; i++) {
+			if (genes[i - 1].getInnovation() > genes[i].getInnovation()) {
+				genes = genes.clone();
+				Arrays.sort(genes);
+				return genes;
 			}
+		}
+		synapsesSorted = true;
+		return genes;
+	}
 
-			if (g.getIn().getType().equals(Neuron.Type.SENSOR) || Simulation.RANDOM.nextBoolean())
-				childSynapses.add(g);
+	/**
+	 * Per-thread buffers reused by crossover, so that mating only allocates the child's gene arrays.
+	 * Occupancy of the connection set and neuron table is marked with a generation stamp,
+	 * which avoids clearing them between crossovers.
+	 */
+	private static class CrossoverScratch {
+		SynapseGene[] synapses = new SynapseGene[64];
+		NeuronGene[] neuronsById = new NeuronGene[64];
+		long[] connections = new long[128];
+		int[] connectionStamps = new int[128];
+		int generation = 0;
+
+		void prepare(int maxSynapses) {
+			if (synapses.length < maxSynapses)
+				synapses = new SynapseGene[Integer.highestOneBit(maxSynapses) << 1];
+			int tableSize = Integer.highestOneBit(Math.max(maxSynapses, 1)) << 2;
+			if (connections.length < tableSize) {
+				connections = new long[tableSize];
+				connectionStamps = new int[tableSize];
+			}
+			generation++;
+			if (generation == 0) {
+				Arrays.fill(connectionStamps, 0);
+				generation = 1;
+			}
 		}
 
-		SynapseGene[] childSynapseArray = childSynapses.toArray(new SynapseGene[0]);
+		/**
+		 * @return false if a synapse between the two neurons has already been added
+		 */
+		boolean addConnection(int inId, int outId) {
+			long key = ((long) inId << 32) | (outId & 0xffffffffL);
+			int mask = connections.length - 1;
+			int slot = (int) (key ^ (key >>> 29)) * 0x9E3779B9 & mask;
+			while (connectionStamps[slot] == generation) {
+				if (connections[slot] == key)
+					return false;
+				slot = (slot + 1) & mask;
+			}
+			connectionStamps[slot] = generation;
+			connections[slot] = key;
+			return true;
+		}
 
-		Set<NeuronGene> neuronGenes = childSynapses.stream()
-				.flatMap(s -> Stream.of(s.getIn(), s.getOut()))
-				.collect(Collectors.toSet());
+		void addNeuron(NeuronGene gene) {
+			int id = gene.getId();
+			if (id >= neuronsById.length)
+				neuronsById = Arrays.copyOf(neuronsById, Integer.highestOneBit(id) << 1);
+			if (neuronsById[id] == null)
+				neuronsById[id] = gene;
+		}
+	}
 
-		NeuronGene[] childSensorGenes = neuronGenes.stream()
-				.filter(n -> n.getType().equals(Neuron.Type.SENSOR))
-				.sorted(Comparator.comparingInt(NeuronGene::getId))
-				.toArray(NeuronGene[]::new);
+	private static final ThreadLocal<CrossoverScratch> crossoverScratch =
+			ThreadLocal.withInitial(CrossoverScratch::new);
 
-		NeuronGene[] childOutputGenes = neuronGenes.stream()
-				.filter(n -> n.getType().equals(Neuron.Type.OUTPUT))
-				.sorted(Comparator.comparingInt(NeuronGene::getId))
-				.toArray(NeuronGene[]::new);
+	public NetworkGenome crossover(NetworkGenome other) {
+		return crossover(other, Simulation.RANDOM);
+	}
 
-		NeuronGene[] childHiddenGenes = neuronGenes.stream()
-				.filter(n -> n.getType().equals(Neuron.Type.HIDDEN))
-				.sorted(Comparator.comparingInt(NeuronGene::getId))
-				.toArray(NeuronGene[]::new);
+	public NetworkGenome crossover(NetworkGenome other, Random random)
+	{
+		SynapseGene[] mine = getSortedSynapseGenes();
+		SynapseGene[] theirs = other.getSortedSynapseGenes();
+
+		CrossoverScratch scratch = crossoverScratch.get();
+		scratch.prepare(mine.length + theirs.length);
+		SynapseGene[] childSynapses = scratch.synapses;
+		int nChildSynapses = 0;
+		int maxNeuronId = -1;
+
+		int i = 0, j = 0;
+		while (i < mine.length || j < theirs.length) {
+			int innovation = Math.min(
+					i < mine.length ? mine[i].getInnovation() : Integer.MAX_VALUE,
+					j < theirs.length ? theirs[j].getInnovation() : Integer.MAX_VALUE);
+
+			// a genome may hold several synapses with the same innovation, in which case one is chosen at random
+			SynapseGene myGene = null, theirGene = null;
+			for (; i < mine.length && mine[i].getInnovation() == innovation; i++)
+				if (myGene == null || !random.nextBoolean())
+					myGene = mine[i];
+			for (; j < theirs.length && theirs[j].getInnovation() == innovation; j++)
+				if (theirGene == null || !random.nextBoolean())
+					theirGene = theirs[j];
 
-		return new NetworkGenome(
+			SynapseGene g;
+			if (myGene != null && theirGene != null) {
+				g = random.nextBoolean() ? myGene : theirGene;
+				// parent genes are shared, so re-enabling must copy the gene
+				if (g.isDisabled() && random.nextFloat() < Environment.settings.evo.globalMutationChance.get())
+					g = g.withDisabled(false);
+			} else {
+				g = myGene != null ? myGene : theirGene;
+				if (!g.getIn().getType().equals(Neuron.Type.SENSOR) && !random.nextBoolean())
+					continue;
+			}
+
+			if (scratch.addConnection(g.getIn().getId(), g.getOut().getId())) {
+				childSynapses[nChildSynapses++] = g;
+				scratch.addNeuron(g.getIn());
+				scratch.addNeuron(g.getOut());
+				maxNeuronId = Math.max(maxNeuronId, Math.max(g.getIn().getId(), g.getOut().getId()));
+			}
+		}
+
+		SynapseGene[] childSynapseArray = Arrays.copyOf(childSynapses, nChildSynapses);
+		Arrays.fill(childSynapses, 0, nChildSynapses, null);
+
+		NeuronGene[] neuronsById = scratch.neuronsById;
+		int nSensors = 0, nOutputs = 0, nHidden = 0;
+		for (int id = 0; id <= maxNeuronId; id++) {
+			NeuronGene n = neuronsById[id];
+			if (n == null)
+				continue;
+			if (n.getType() == Neuron.Type.SENSOR)
+				nSensors++;
+			else if (n.getType() == Neuron.Type.OUTPUT)
+				nOutputs++;
+			else
+				nHidden++;
+		}
+
+		NeuronGene[] childSensorGenes = new NeuronGene[nSensors];
+		NeuronGene[] childOutputGenes = new NeuronGene[nOutputs];
+		NeuronGene[] childHiddenGenes = new NeuronGene[nHidden];
+		nSensors = nOutputs = nHidden = 0;
+		for (int id = 0; id <= maxNeuronId; id++) {
+			NeuronGene n = neuronsById[id];
+			if (n == null)
+				continue;
+			neuronsById[id] = null;
+			if (n.getType() == Neuron.Type.SENSOR)
+				childSensorGenes[nSensors++] = n;
+			else if (n.getType() == Neuron.Type.OUTPUT)
+				childOutputGenes[nOutputs++] = n;
+			else
+				childHiddenGenes[nHidden++] = n;
+		}
+
+		NetworkGenome child = new NetworkGenome(
 				childSensorGenes,
 				childOutputGenes,
 				childHiddenGenes,
 				childSynapseArray
 		);
+		child.synapsesSorted = true;
+		return child;
 	}
 
 	private int maxNeuronId() {
@@ -437,7 +537,14 @@ public class NetworkGenome implements Serializable
 		return id;
 	}
 
-	public NeuralNetwork phenotype()
+	public NeuralNetwork phenotype() {
+		return phenotype(false);
+	}
+
+	/**
+	 * @param fastActivations whether the network ticks with the approximate activations of {@link FastActivations}
+	 */
+	public NeuralNetwork phenotype(boolean fastActivations)
 	{
 
 		Neuron[] neurons = new Neuron[maxNeuronId() + 1];
@@ -491,7 +598,7 @@ public class NetworkGenome implements Serializable
 			inputCounts[outIdx]++;
 		}
 
-		return new NeuralNetwork(neurons);
+		return new NeuralNetwork(neurons, fastActivations);
 	}
 
 	public float distance(NetworkGenome other)
@@ -519,6 +626,22 @@ public class NetworkGenome implements Serializable
 		return synapseGenes;
 	}
 
+	NeuronGene[] getSensorNeuronGenes() {
+		return sensorNeuronGenes;
+	}
+
+	NeuronGene[] getOutputNeuronGenes() {
+		return outputNeuronGenes;
+	}
+
+	NeuronGene[] getHiddenNeuronGenes() {
+		return hiddenNeuronGenes;
+	}
+
+	int getNumNeuronGenes() {
+		return nNeuronGenes;
+	}
+
 	public int getNumStructuralMutations() {
 		return numStructuralMutations;
 	}
@@ -576,6 +699,7 @@ public class NetworkGenome implements Serializable
 		hiddenNeuronGenes = ArrayUtils.addAll(hiddenNeuronGenes, other.hiddenNeuronGenes);
 		outputNeuronGenes = ArrayUtils.addAll(outputNeuronGenes, other.outputNeuronGenes);
 		synapseGenes = ArrayUtils.addAll(synapseGenes, other.synapseGenes);
+		synapsesSorted = false;
 //		for (NeuronGene gene : other.hiddenNeuronGenes)
 //			addNeuronGene(gene);
 //		for (NeuronGene gene : other.outputNeuronGenes)
@@ -18,10 +18,22 @@ public class NeuralNetwork implements Serializable
     private final HashMap<String, Neuron> outputLabels = new HashMap<>(), inputLabels = new HashMap<>();
     private final int depth;
     private final int nInputs;
+    private final boolean fastActivations;
+    private float[] state, lastState;
+    private transient CompiledNetwork compiled;
+    private transient HashMap<String, Integer> labelIndices;
     private boolean computedGraphics = false;
     private float nodeSpacing;
 
     public NeuralNetwork(Neuron[] neurons) {
+        this(neurons, false);
+    }
+
+    /**
+     * @param fastActivations whether to tick with the approximate activations of {@link FastActivations}
+     */
+    public NeuralNetwork(Neuron[] neurons, boolean fastActivations) {
+        this.fastActivations = fastActivations;
         this.neurons = new ArrayList<>();
 
         int nSensors = 0;
@@ -31,6 +43,7 @@ public class NeuralNetwork implements Serializable
             if (neuron == null)
                 continue;
             neuron.setId(id++);
+            neuron.setNetwork(this);
             this.neurons.add(neuron);
             if (neuron.getType().equals(Neuron.Type.SENSOR))
                 nSensors++;
@@ -60,7 +73,15 @@ public class NeuralNetwork implements Serializable
         outputs = new float[nOutputs];
         Arrays.fill(outputs, 0f);
 
+        state = new float[this.neurons.size()];
+        lastState = new float[this.neurons.size()];
+
         depth = calculateDepth();
+        compiled = CompiledNetwork.compile(this.neurons);
+    }
+
+    public boolean usesFastActivations() {
+        return fastActivations;
     }
 
     public int getDepth() {
@@ -114,10 +135,48 @@ public class NeuralNetwork implements Serializable
             inputNeurons[i].setState(values[i]);
     }
 
+    public CompiledNetwork getCompiled() {
+        // compiled form is transient, so needs rebuilding after deserialization
+        if (compiled == null)
+            compiled = CompiledNetwork.compile(neurons);
+        return compiled;
+    }
+
     public void tick()
     {
-        for (Neuron n : neurons) n.tick();
-        for (Neuron n : neurons) n.update();
+        // the buffer holding the last state is no longer needed, so it receives the next state
+        getCompiled().tick(state, lastState, fastActivations);
+        swapStateBuffers();
+    }
+
+    public float getState(int neuronId) {
+        return state[neuronId];
+    }
+
+    public float getLastState(int neuronId) {
+        return lastState[neuronId];
+    }
+
+    void setState(int neuronId, float value) {
+        state[neuronId] = value;
+    }
+
+    float[] getStateBuffer() {
+        return state;
+    }
+
+    /**
+     * Completes a tick that was evaluated outside of the network, e.g. by {@link BatchedNetworkEvaluator}.
+     * @return the buffer that the next state should be written into before calling {@link #swapStateBuffers()}
+     */
+    float[] getNextStateBuffer() {
+        return lastState;
+    }
+
+    void swapStateBuffers() {
+        float[] tmp = lastState;
+        lastState = state;
+        state = tmp;
     }
 
     public float[] outputs()
@@ -193,6 +252,30 @@ public class NeuralNetwork implements Serializable
         }
     }
 
+    /**
+     * @param label the label of the neuron
+     * @return the index of the first neuron with the given label, or -1 if there is none
+     */
+    public int getNeuronIndex(String label) {
+        if (labelIndices == null) {
+            HashMap<String, Integer> indices = new HashMap<>(2 * neurons.size());
+            for (Neuron n : neurons)
+                if (n.hasLabel())
+                    indices.putIfAbsent(n.getLabel(), n.getId());
+            labelIndices = indices;
+        }
+        return labelIndices.getOrDefault(label, -1);
+    }
+
+    public void setInput(int neuronIdx, float value) {
+        state[neuronIdx] = neurons.get(neuronIdx).getActivation().activate(value);
+    }
+
+    public void setInputs(int[] neuronIndices, float[] values) {
+        for (int i = 0; i < neuronIndices.length; i++)
+            setInput(neuronIndices[i], values[i]);
+    }
+
     public boolean hasSensor(String label) {
         if (inputLabels.containsKey(label))
             return true;
@@ -29,7 +29,7 @@ public class Neuron implements Comparable<Neuron>, Serializable {
     private final float[] weights;
     private Type type;
     private int id;
-    private float state = 0, lastState = 0, nextState = 0;
+    private NeuralNetwork network;
     private float learningRate = 0;
     private ActivationFn activation;
     private int depth = -1;
@@ -53,18 +53,12 @@ public class Neuron implements Comparable<Neuron>, Serializable {
             connectedToOutput = true;
     }
 
-    void tick()
-    {
-        nextState = 0.0f;
-        for (int i = 0; i < inputs.length; i++)
-            nextState += inputs[i].getState() * weights[i];
-        nextState = activation.apply(nextState);
-    }
-
-    void update()
-    {
-        lastState = state;
-        state = nextState;
+    /**
+     * Neurons are a view onto the state buffers of the network they belong to.
+     * @param network the network holding this neuron's state
+     */
+    void setNetwork(NeuralNetwork network) {
+        this.network = network;
     }
 
     @Override
@@ -83,15 +77,15 @@ public class Neuron implements Comparable<Neuron>, Serializable {
     }
 
     public float getState() {
-        return state;
+        return network.getState(id);
     }
 
     public float getLastState() {
-        return lastState;
+        return network.getLastState(id);
     }
 
     public Neuron setState(float s) {
-        state = activation.apply(s);
+        network.setState(id, activation.activate(s));
         return this;
     }
 
@@ -153,7 +147,7 @@ public class Neuron implements Comparable<Neuron>, Serializable {
     @Override
     public String toString()
     {
-        StringBuilder s = new StringBuilder(String.format("id:%d, state:%.1f", id, state));
+        StringBuilder s = new StringBuilder(String.format("id:%d, state:%.1f", id, getState()));
         if (label != null)
             s.append(", label: ").append(label);
         s.append(", connections: [");
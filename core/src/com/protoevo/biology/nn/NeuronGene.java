@@ -7,7 +7,12 @@ import com.protoevo.env.Environment;
 import com.protoevo.utils.Utils;
 
 import java.io.Serializable;
+import java.util.Random;
 
+/**
+ * Neuron genes are shared between the genomes of parents and offspring, so once a genome has been
+ * built they are never modified. Mutating a gene returns a new gene and leaves this one untouched.
+ */
 public class NeuronGene implements Comparable<NeuronGene>, Serializable
 {
     private final long signature;
@@ -24,8 +29,6 @@ public class NeuronGene implements Comparable<NeuronGene>, Serializable
     private float mutationRateMax = Environment.settings.evo.maxMutationChance.get();
     private int nMutations = 0;
     private int nMutationRateMutations = 0;
-    @JsonIgnore
-    private int genomeIdx = -1;
 
     public NeuronGene(int id, Neuron.Type type, ActivationFn activation)
     {
@@ -47,6 +50,25 @@ public class NeuronGene implements Comparable<NeuronGene>, Serializable
         this.nMutationRateMutations = other.nMutationRateMutations;
     }
 
+    /**
+     * Restores a gene exactly as it was written by {@link GenomeCodec}.
+     */
+    NeuronGene(long signature, int id, Neuron.Type type, ActivationFn activation, String label, boolean disabled,
+               float mutationRate, float mutationRateMin, float mutationRateMax,
+               int nMutations, int nMutationRateMutations) {
+        this.signature = signature;
+        this.id = id;
+        this.type = type;
+        this.activation = activation;
+        this.label = label;
+        this.disabled = disabled;
+        this.mutationRate = mutationRate;
+        this.mutationRateMin = mutationRateMin;
+        this.mutationRateMax = mutationRateMax;
+        this.nMutations = nMutations;
+        this.nMutationRateMutations = nMutationRateMutations;
+    }
+
     public NeuronGene(int id, Neuron.Type type, ActivationFn activation, String label)
     {
         signature = Utils.randomLong();
@@ -58,9 +80,13 @@ public class NeuronGene implements Comparable<NeuronGene>, Serializable
     }
 
     public void setMutationRange(float min, float max) {
+        setMutationRange(min, max, MathUtils.random);
+    }
+
+    public void setMutationRange(float min, float max, Random random) {
         mutationRateMin = min;
         mutationRateMax = max;
-        mutationRate = MathUtils.random(min, max);
+        mutationRate = min + random.nextFloat() * (max - min);
     }
 
     public float getMinMutationRate() {
@@ -80,21 +106,25 @@ public class NeuronGene implements Comparable<NeuronGene>, Serializable
     }
 
     public NeuronGene cloneWithMutation() {
-        NeuronGene newGene = new NeuronGene(this);
-        if (Math.random() > mutationRate)
-            return newGene;
+        return cloneWithMutation(Simulation.RANDOM);
+    }
+
+    public NeuronGene cloneWithMutation(Random random) {
+        if (random.nextFloat() > mutationRate)
+            return this;
 
-        nMutations++;
+        NeuronGene newGene = new NeuronGene(this);
+        newGene.nMutations++;
 
         if (type == Neuron.Type.HIDDEN)
-            newGene.activation = ActivationFn.randomActivation();
+            newGene.activation = ActivationFn.randomActivation(random);
 
-        if (Simulation.RANDOM.nextBoolean()) {
-            newGene.mutationRate = MathUtils.random(mutationRateMin, mutationRateMax);
-            nMutationRateMutations++;
+        if (random.nextBoolean()) {
+            newGene.mutationRate = mutationRateMin + random.nextFloat() * (mutationRateMax - mutationRateMin);
+            newGene.nMutationRateMutations++;
         }
 
-        if (Math.random() < Environment.settings.evo.deleteNeuronMutationRate.get() && type == Neuron.Type.HIDDEN)
+        if (random.nextFloat() < Environment.settings.evo.deleteNeuronMutationRate.get() && type == Neuron.Type.HIDDEN)
             newGene.disable();
 
         return newGene;
@@ -125,7 +155,7 @@ public class NeuronGene implements Comparable<NeuronGene>, Serializable
         return str;
     }
 
-    public void disable() {
+    private void disable() {
         disabled = true;
     }
 
@@ -161,19 +191,15 @@ public class NeuronGene implements Comparable<NeuronGene>, Serializable
         return tags;
     }
 
-    public boolean isGenomeIdxKnown() {
-        return genomeIdx != -1;
-    }
-
-    public int getGenomeIdx() {
-        return genomeIdx;
+    public int getMutationCount() {
+        return nMutations + nMutationRateMutations;
     }
 
-    public void setGenomeIdx(int myIdx) {
-        genomeIdx = myIdx;
+    long getSignature() {
+        return signature;
     }
 
-    public int getMutationCount() {
-        return nMutations + nMutationRateMutations;
+    int getNumMutationRateMutations() {
+        return nMutationRateMutations;
     }
 }
@@ -8,13 +8,19 @@ import com.protoevo.utils.Utils;
 
 import java.io.Serializable;
 import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Synapse genes are shared between the genomes of parents and offspring, so once a genome has been
+ * built they are never modified. Mutating a gene returns a new gene and leaves this one untouched.
+ */
 public class SynapseGene implements Comparable<SynapseGene>, Serializable
 {
     private final long signature;
-    private static int globalInnovation = 0;
+    private static final AtomicInteger globalInnovation = new AtomicInteger();
     private final int innovation;
-    private NeuronGene in, out;
+    private final NeuronGene in, out;
     private float weight;
     private boolean disabled;
     private float mutationRate = Environment.settings.evo.globalMutationChance.get();
@@ -45,20 +51,52 @@ public class SynapseGene implements Comparable<SynapseGene>, Serializable
         this.signature = other.signature;
     }
 
+    /**
+     * Restores a gene exactly as it was written by {@link GenomeCodec}.
+     */
+    SynapseGene(long signature, int innovation, NeuronGene in, NeuronGene out, float weight, boolean disabled,
+                float mutationRate, float mutationRateMin, float mutationRateMax,
+                int nMutations, int nMutationRateMutations) {
+        this.signature = signature;
+        this.innovation = innovation;
+        this.in = in;
+        this.out = out;
+        this.weight = weight;
+        this.disabled = disabled;
+        this.mutationRate = mutationRate;
+        this.mutationRateMin = mutationRateMin;
+        this.mutationRateMax = mutationRateMax;
+        this.nMutations = nMutations;
+        this.nMutationRateMutations = nMutationRateMutations;
+    }
+
     public SynapseGene(NeuronGene in, NeuronGene out, float weight) {
-        this(in, out, weight, globalInnovation++);
+        this(in, out, weight, MathUtils.random);
+    }
+
+    public SynapseGene(NeuronGene in, NeuronGene out, float weight, Random random) {
+        this(in, out, weight, globalInnovation.getAndIncrement());
 
         setMutationRange(
                 Math.min(in.getMinMutationRate(), out.getMinMutationRate()),
-                Math.max(in.getMaxMutationRate(), out.getMaxMutationRate()));
+                Math.max(in.getMaxMutationRate(), out.getMaxMutationRate()),
+                random);
     }
 
     public static float randomInitialWeight() {
-        return (float) (2 * Simulation.RANDOM.nextDouble() - 1);
+        return randomInitialWeight(Simulation.RANDOM);
+    }
+
+    public static float randomInitialWeight(Random random) {
+        return (float) (2 * random.nextDouble() - 1);
     }
 
     public SynapseGene(NeuronGene in, NeuronGene out) {
-        this(in, out, randomInitialWeight(), globalInnovation++);
+        this(in, out, Simulation.RANDOM);
+    }
+
+    public SynapseGene(NeuronGene in, NeuronGene out, Random random) {
+        this(in, out, randomInitialWeight(random), globalInnovation.getAndIncrement());
     }
 
     @Override
@@ -83,31 +121,51 @@ public class SynapseGene implements Comparable<SynapseGene>, Serializable
     }
 
     public void setMutationRange(float min, float max) {
+        setMutationRange(min, max, MathUtils.random);
+    }
+
+    public void setMutationRange(float min, float max, Random random) {
         mutationRateMin = min;
         mutationRateMax = max;
-        mutationRate = MathUtils.random(min, max);
+        mutationRate = min + random.nextFloat() * (max - min);
     }
 
     public SynapseGene cloneWithMutation() {
-        SynapseGene newGene = new SynapseGene(this);
-        if (Math.random() > mutationRate)
-            return newGene;
+        return cloneWithMutation(Simulation.RANDOM);
+    }
 
-        nMutations++;
+    public SynapseGene cloneWithMutation(Random random) {
+        if (random.nextFloat() > mutationRate)
+            return this;
 
-        newGene.weight = randomInitialWeight();
+        SynapseGene newGene = new SynapseGene(this);
+        newGene.nMutations++;
 
-        if (Simulation.RANDOM.nextBoolean()) {
-            newGene.mutationRate = MathUtils.random(mutationRateMin, mutationRateMax);
-            nMutationRateMutations++;
+        newGene.weight = randomInitialWeight(random);
+
+        if (random.nextBoolean()) {
+            newGene.mutationRate = mutationRateMin + random.nextFloat() * (mutationRateMax - mutationRateMin);
+            newGene.nMutationRateMutations++;
         }
 
-        if (Math.random() < Environment.settings.evo.deleteSynapseMutationRate.get())
-            newGene.setDisabled(true);
+        if (random.nextFloat() < Environment.settings.evo.deleteSynapseMutationRate.get())
+            newGene.disabled = true;
 
         return newGene;
     }
 
+    /**
+     * @param disabled whether the synapse should be disabled
+     * @return this gene if it is already in the given state, otherwise a copy in that state
+     */
+    public SynapseGene withDisabled(boolean disabled) {
+        if (this.disabled == disabled)
+            return this;
+        SynapseGene newGene = new SynapseGene(this);
+        newGene.disabled = disabled;
+        return newGene;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(in.getId(), out.getId());
@@ -125,10 +183,6 @@ public class SynapseGene implements Comparable<SynapseGene>, Serializable
         return disabled;
     }
 
-    public void setDisabled(boolean disabled) {
-        this.disabled = disabled;
-    }
-
     public int getInnovation() {
         return innovation;
     }
@@ -137,27 +191,35 @@ public class SynapseGene implements Comparable<SynapseGene>, Serializable
         return in;
     }
 
-    public void setIn(NeuronGene in) {
-        this.in = in;
-    }
-
     public NeuronGene getOut() {
         return out;
     }
 
-    public void setOut(NeuronGene out) {
-        this.out = out;
-    }
-
     public float getWeight() {
         return weight;
     }
 
-    public void setWeight(float weight) {
-        this.weight = weight;
-    }
-
     public int getMutationCount() {
         return nMutations + nMutationRateMutations;
     }
+
+    long getSignature() {
+        return signature;
+    }
+
+    float getMinMutationRate() {
+        return mutationRateMin;
+    }
+
+    float getMaxMutationRate() {
+        return mutationRateMax;
+    }
+
+    int getNumMutations() {
+        return nMutations;
+    }
+
+    int getNumMutationRateMutations() {
+        return nMutationRateMutations;
+    }
 }
@@ -1,6 +1,6 @@
 package com.protoevo.biology.nodes;
 
-import com.protoevo.biology.ComplexMolecule;
+import com.protoevo.biology.MoleculeLedger;
 import com.protoevo.biology.cells.Cell;
 import com.protoevo.biology.cells.Protozoan;
 import com.protoevo.core.Statistics;
@@ -132,13 +132,20 @@ public class AdhesionReceptor extends NodeAttachment {
         }
 
         molecularMassTransfer = 0;
-        for (ComplexMolecule molecule : cell.getComplexMolecules())
-            handleComplexMoleculeTransport(other, cell, molecule, delta);
-        for (ComplexMolecule molecule : other.getComplexMolecules())
-            handleComplexMoleculeTransport(cell, other, molecule, delta);
+        handleComplexMoleculeTransport(other, cell, delta);
+        handleComplexMoleculeTransport(cell, other, delta);
     }
 
-    private void handleComplexMoleculeTransport(Cell src, Cell dst, ComplexMolecule molecule, float delta) {
+    private void handleComplexMoleculeTransport(Cell src, Cell dst, float delta) {
+        MoleculeLedger molecules = dst.getComplexMolecules();
+        for (int slot = 0; slot < molecules.slots(); slot++) {
+            int ordinal = molecules.ordinalAt(slot);
+            if (ordinal >= 0)
+                handleComplexMoleculeTransport(src, dst, ordinal, delta);
+        }
+    }
+
+    private void handleComplexMoleculeTransport(Cell src, Cell dst, int molecule, float delta) {
         float massDelta = dst.getComplexMoleculeAvailable(molecule) - src.getComplexMoleculeAvailable(molecule);
         float transferRate = Environment.settings.cell.bindingResourceTransport.get();
         if (massDelta > 0) {
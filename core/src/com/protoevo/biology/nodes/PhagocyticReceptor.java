@@ -119,6 +119,7 @@ public class PhagocyticReceptor extends NodeAttachment implements Serializable {
         cell.setEngulfer(node.getCell());
         cell.kill(CauseOfDeath.EATEN);
         ((Protozoan) node.getCell()).getEngulfedCells().add(cell);
+        node.getCell().getEnv().ifPresent(env -> env.recordEngulfed(node.getCell(), cell));
     }
 
     @Override
@@ -2,6 +2,7 @@ package com.protoevo.biology.nodes;
 
 import com.badlogic.gdx.math.Vector2;
 import com.protoevo.biology.ComplexMolecule;
+import com.protoevo.biology.MoleculeLedger;
 import com.protoevo.biology.ConstructionProject;
 import com.protoevo.biology.MoleculeFunctionalContext;
 import com.protoevo.biology.cells.Cell;
@@ -10,6 +11,9 @@ import com.protoevo.core.Statistics;
 import com.protoevo.env.Environment;
 
 import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -42,14 +46,41 @@ public class SurfaceNode implements Evolvable.Element, Serializable {
     private final MoleculeFunctionalContext moleculeFunctionalContext = () -> nodeFunctionSignatures;
     private static final float criticalCandidateConstructionProgress = 0.1f;
 
+    private static Class<NodeAttachment>[] boundAttachmentClasses;
+    private static MethodHandle[] attachmentConstructors;
+
+    /**
+     * The attachment constructors are looked up once, rather than reflectively for every new node.
+     * They are rebound if {@link NodeAttachment#possibleAttachments} is replaced.
+     */
+    private static synchronized MethodHandle[] getAttachmentConstructors() {
+        if (boundAttachmentClasses == NodeAttachment.possibleAttachments && attachmentConstructors != null)
+            return attachmentConstructors;
+
+        Class<NodeAttachment>[] classes = NodeAttachment.possibleAttachments;
+        MethodHandle[] constructors = new MethodHandle[classes.length];
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        MethodType type = MethodType.methodType(NodeAttachment.class, SurfaceNode.class);
+        for (int i = 0; i < classes.length; i++) {
+            try {
+                constructors[i] = lookup.findConstructor(
+                        classes[i], MethodType.methodType(void.class, SurfaceNode.class)).asType(type);
+            }
+            catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new RuntimeException("Failed to instantiate node attachment: " + e);
+            }
+        }
+        boundAttachmentClasses = classes;
+        attachmentConstructors = constructors;
+        return constructors;
+    }
+
     public SurfaceNode() {
-        for (Class<NodeAttachment> attachmentClass : NodeAttachment.possibleAttachments) {
+        for (MethodHandle constructor : getAttachmentConstructors()) {
             try {
-                NodeAttachment attachment = attachmentClass.getConstructor(SurfaceNode.class)
-                        .newInstance(this);
-                candidateAttachments.add(attachment);
+                candidateAttachments.add((NodeAttachment) constructor.invokeExact(this));
             }
-            catch (Exception e) {
+            catch (Throwable e) {
                 throw new RuntimeException("Failed to instantiate node attachment: " + e);
             }
         }
@@ -167,8 +198,12 @@ public class SurfaceNode implements Evolvable.Element, Serializable {
 
     private void handleAttachmentConstructionProjects(float delta) {
         deltaTime = delta;
-        for (ComplexMolecule molecule : cell.getComplexMolecules())
-            moleculeFunctionalContext.accept(molecule);
+        MoleculeLedger molecules = cell.getComplexMolecules();
+        for (int slot = 0; slot < molecules.slots(); slot++) {
+            int ordinal = molecules.ordinalAt(slot);
+            if (ordinal >= 0)
+                moleculeFunctionalContext.accept(ComplexMolecule.fromOrdinal(ordinal));
+        }
     }
 
     public float requiredArcLength() {
@@ -295,10 +330,14 @@ public class SurfaceNode implements Evolvable.Element, Serializable {
                         attachment.getConstructionProject().getRequiredComplexMoleculeAmount(molecule));
             }
 
-            for (ComplexMolecule molecule : cell.getComplexMolecules())
-                if (cell.getComplexMoleculeAvailable(molecule) > 0)
-                    stats.putMass(String.format("Molecule %.2f Available", molecule.getSignature()),
-                            cell.getComplexMoleculeAvailable(molecule));
+            MoleculeLedger molecules = cell.getComplexMolecules();
+            for (int slot = 0; slot < molecules.slots(); slot++) {
+                int ordinal = molecules.ordinalAt(slot);
+                if (ordinal >= 0 && molecules.amountAt(slot) > 0)
+                    stats.putMass(String.format("Molecule %.2f Available",
+                                    ComplexMolecule.fromOrdinal(ordinal).getSignature()),
+                            molecules.amountAt(slot));
+            }
 
             attachment.addStats(stats);
         }
@@ -0,0 +1,128 @@
+package com.protoevo.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The file handling shared by {@link StatsLog} and {@link GenomeArchive}, whose files are a header of a magic
+ * number and a version followed by records that are only ever appended.
+ * <p>
+ * Records are appended and synced a batch at a time, and a batch that fails to write is cut back off,
+ * so the only damage a file can take is a record cut short by a crash. Scanning stops at such a record,
+ * and it is cut off when the file is next opened to append to.
+ */
+final class AppendOnlyFile {
+
+    static final int HEADER_SIZE = 8;
+
+    interface RecordLength {
+        /**
+         * @return the length of the payload that follows the given record header, or -1 if the header is invalid
+         */
+        long of(ByteBuffer header);
+    }
+
+    interface RecordConsumer {
+        void accept(ByteBuffer header, ByteBuffer payload);
+    }
+
+    private AppendOnlyFile() {}
+
+    /**
+     * Opens a file to append to, writing the header if the file is new. Any record cut short at the end
+     * of the file should be cut off with {@link #truncate} once the file has been scanned.
+     */
+    static FileChannel open(Path path, int magic, int version) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(magic).putInt(version).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        return channel;
+    }
+
+    static ByteBuffer readAll(FileChannel channel) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate((int) channel.size());
+        channel.position(0);
+        while (bytes.hasRemaining() && channel.read(bytes) >= 0);
+        bytes.flip();
+        return bytes;
+    }
+
+    /**
+     * Reads the header, leaving the buffer at the first record.
+     */
+    static void checkHeader(ByteBuffer bytes, int magic, int version, String what) {
+        if (bytes.remaining() < HEADER_SIZE || bytes.getInt() != magic || bytes.getInt() != version)
+            throw new RuntimeException("Not a " + what + ", or written by an unsupported version");
+    }
+
+    /**
+     * The length of a record whose header ends with the length of its payload.
+     */
+    static long lengthAtEnd(ByteBuffer header) {
+        return header.getInt(header.limit() - 4);
+    }
+
+    /**
+     * Passes each complete record to the consumer, as its header and its payload, stopping at the end of
+     * the buffer or at a record that was cut short.
+     * @return the position of the end of the last complete record
+     */
+    static long scan(ByteBuffer bytes, int recordHeaderSize, RecordLength length, RecordConsumer consumer) {
+        int end = bytes.position();
+        while (bytes.remaining() >= recordHeaderSize) {
+            ByteBuffer header = bytes.slice();
+            header.limit(recordHeaderSize);
+            bytes.position(bytes.position() + recordHeaderSize);
+            long payloadLength = length.of(header);
+            if (payloadLength < 0 || payloadLength > bytes.remaining())
+                break;
+            ByteBuffer payload = bytes.slice();
+            payload.limit((int) payloadLength);
+            bytes.position(bytes.position() + (int) payloadLength);
+            consumer.accept(header, payload);
+            end = bytes.position();
+        }
+        return end;
+    }
+
+    /**
+     * Cuts off anything after the last complete record, and moves to the end of the file to append.
+     */
+    static void truncate(FileChannel channel, long end) throws IOException {
+        if (end < channel.size())
+            channel.truncate(end);
+        channel.position(channel.size());
+    }
+
+    /**
+     * Writes to the end of the file and syncs it, cutting the file back to where it was if the write fails
+     * so that later records are not written after a partial one.
+     */
+    static void append(FileChannel channel, ByteBuffer... buffers) throws IOException {
+        long end = channel.size();
+        try {
+            for (ByteBuffer bytes : buffers) {
+                while (bytes.hasRemaining())
+                    channel.write(bytes);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            try {
+                channel.truncate(end);
+                channel.position(end);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+}
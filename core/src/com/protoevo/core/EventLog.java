@@ -0,0 +1,463 @@
+package com.protoevo.core;
+
+import com.protoevo.biology.CauseOfDeath;
+import com.protoevo.biology.cells.Cell;
+import com.protoevo.biology.cells.MeatCell;
+import com.protoevo.biology.cells.PlantCell;
+import com.protoevo.biology.cells.Protozoan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A log of the births, deaths, matings, crossovers and engulfings in a simulation,
+ * from which the phylogeny of a run can be reconstructed.
+ * <p>
+ * Recording an event never blocks or allocates: each thread that records events is given its own ring buffer,
+ * which only it writes to and only the writer thread of the log reads from, so no locks are taken.
+ * The writer thread drains the rings every {@link #DRAIN_INTERVAL_MILLIS} and appends their events to
+ * the current segment of the log, which is synced to disk every {@link #SYNC_INTERVAL_MILLIS}.
+ * If a ring fills up before it is drained, further events from that thread are dropped and counted,
+ * see {@link #getDroppedCount()}, rather than holding up the simulation.
+ * The ring of a thread that has died is dropped once it has been drained, so that the threads of a pool
+ * coming and going do not each leave a ring behind.
+ * <p>
+ * The log is a directory of segments, each a header followed by fixed size records,
+ * and a new segment is started once the current one reaches the maximum segment size,
+ * or when the log is opened again to resume a simulation. A record is:
+ * <ul>
+ *     <li>the event type, the cause of death plus one or zero, the cell type, and a reserved byte</li>
+ *     <li>the generation, as an int, the time in seconds, as a double, then the position, as floats</li>
+ *     <li>the id of the cell the event is about and of the other cell involved, or zero</li>
+ * </ul>
+ * Events from the same thread are in the order they were recorded, but events from different threads
+ * are only ordered as well as the rings were drained, so sort by time where the order matters.
+ * A record cut short by a crash is ignored by the reader.
+ */
+public class EventLog implements Closeable {
+
+    public static final String EVENTS_DIR = "events";
+    public static final String SEGMENT_PREFIX = "events-", SEGMENT_SUFFIX = ".log";
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_RING_CAPACITY = 1 << 14;
+    public static final long DRAIN_INTERVAL_MILLIS = 10;
+    public static final long SYNC_INTERVAL_MILLIS = 5000;
+    public static final int RECORD_SIZE = 40;
+
+    private static final int MAGIC = 0x50455645;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int WRITE_BUFFER_RECORDS = 1 << 12;
+
+    /**
+     * The cell types an event can be about, in the order they are written. Only append to this.
+     */
+    private static final List<Class<? extends Cell>> CELL_TYPES = new ArrayList<>();
+    static {
+        CELL_TYPES.add(Cell.class);
+        CELL_TYPES.add(Protozoan.class);
+        CELL_TYPES.add(PlantCell.class);
+        CELL_TYPES.add(MeatCell.class);
+    }
+
+    public enum Type {
+        /** The cell was added to the environment, the other cell is its parent, if it had one. */
+        BIRTH,
+        /** The cell was removed from the environment, the other cell is the one that engulfed it, if any. */
+        DEATH,
+        /** The cell took the other cell as a mate. */
+        MATING,
+        /** The cell was born from a crossover of the genome of the other cell, its parent, and of its mate. */
+        CROSSOVER,
+        /** The cell engulfed the other cell. */
+        ENGULF
+    }
+
+    public static class Event {
+        private final Type type;
+        private final CauseOfDeath causeOfDeath;
+        private final Class<? extends Cell> cellType;
+        private final int generation;
+        private final double time;
+        private final float x, y;
+        private final long cellId, otherId;
+
+        private Event(ByteBuffer buffer, int offset) {
+            type = Type.values()[buffer.get(offset)];
+            int cause = buffer.get(offset + 1);
+            causeOfDeath = cause == 0 ? null : CauseOfDeath.values()[cause - 1];
+            cellType = CELL_TYPES.get(buffer.get(offset + 2));
+            generation = buffer.getInt(offset + 4);
+            time = buffer.getDouble(offset + 8);
+            x = buffer.getFloat(offset + 16);
+            y = buffer.getFloat(offset + 20);
+            cellId = buffer.getLong(offset + 24);
+            otherId = buffer.getLong(offset + 32);
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return the cause of death of a death event, otherwise null
+         */
+        public CauseOfDeath getCauseOfDeath() {
+            return causeOfDeath;
+        }
+
+        /**
+         * @return the type of the cell the event is about, or {@link Cell} if it is not one that is known
+         */
+        public Class<? extends Cell> getCellType() {
+            return cellType;
+        }
+
+        public int getGeneration() {
+            return generation;
+        }
+
+        /**
+         * @return the elapsed time of the environment when the event happened, in seconds
+         */
+        public double getTime() {
+            return time;
+        }
+
+        public float getX() {
+            return x;
+        }
+
+        public float getY() {
+            return y;
+        }
+
+        public long getCellId() {
+            return cellId;
+        }
+
+        /**
+         * @return the id of the other cell involved in the event, or zero if there is none
+         */
+        public long getOtherId() {
+            return otherId;
+        }
+
+        @Override
+        public String toString() {
+            return type + (causeOfDeath == null ? "" : " (" + causeOfDeath + ")")
+                    + " of " + cellType.getSimpleName() + " " + cellId
+                    + (otherId == 0 ? "" : " with " + otherId)
+                    + " at " + time + "s, generation " + generation;
+        }
+    }
+
+    /**
+     * A buffer of records that one thread writes to and the writer thread reads from.
+     * The head is only advanced by the recording thread and the tail by the writer thread,
+     * each publishing the records before it with an ordered write.
+     */
+    private static class Ring {
+        private final Thread owner;
+        private final byte[] records;
+        private final ByteBuffer buffer;
+        private final int capacity, mask;
+        private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+        private long cachedTail;
+        private volatile long dropped;
+
+        private Ring(Thread owner, int capacity) {
+            this.owner = owner;
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            records = new byte[capacity * RECORD_SIZE];
+            buffer = ByteBuffer.wrap(records);
+        }
+
+        private void offer(Type type, CauseOfDeath cause, int cellType, int generation,
+                           double time, float x, float y, long cellId, long otherId) {
+            long h = head.get();
+            if (h - cachedTail >= capacity) {
+                cachedTail = tail.get();
+                if (h - cachedTail >= capacity) {
+                    dropped = dropped + 1;
+                    return;
+                }
+            }
+            int offset = (int) (h & mask) * RECORD_SIZE;
+            buffer.put(offset, (byte) type.ordinal());
+            buffer.put(offset + 1, (byte) (cause == null ? 0 : cause.ordinal() + 1));
+            buffer.put(offset + 2, (byte) cellType);
+            buffer.put(offset + 3, (byte) 0);
+            buffer.putInt(offset + 4, generation);
+            buffer.putDouble(offset + 8, time);
+            buffer.putFloat(offset + 16, x);
+            buffer.putFloat(offset + 20, y);
+            buffer.putLong(offset + 24, cellId);
+            buffer.putLong(offset + 32, otherId);
+            head.lazySet(h + 1);
+        }
+
+        private boolean isEmpty() {
+            return head.get() == tail.get();
+        }
+
+        /**
+         * Copies up to the given number of records into the buffer.
+         * @return the number of records copied
+         */
+        private int drainTo(ByteBuffer out, int maxRecords) {
+            long t = tail.get();
+            int n = (int) Math.min(head.get() - t, maxRecords);
+            if (n <= 0)
+                return 0;
+            int start = (int) (t & mask);
+            int first = Math.min(n, capacity - start);
+            out.put(records, start * RECORD_SIZE, first * RECORD_SIZE);
+            if (first < n)
+                out.put(records, 0, (n - first) * RECORD_SIZE);
+            tail.lazySet(t + n);
+            return n;
+        }
+    }
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final int ringCapacity;
+    private final List<Ring> rings = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Ring> threadRing;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_RECORDS * RECORD_SIZE);
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile IOException failure;
+    // the events dropped by the rings of threads that have died, whose rings are no longer kept
+    private volatile long retiredDropped;
+    private FileChannel segment;
+    private int segmentIndex;
+    private long segmentBytes, lastSync;
+
+    public EventLog(Path directory, long maxSegmentBytes, int ringCapacity) throws IOException {
+        if (maxSegmentBytes < HEADER_SIZE + RECORD_SIZE)
+            throw new IllegalArgumentException("Segments must have room for at least one event");
+        if (Integer.bitCount(ringCapacity) != 1)
+            throw new IllegalArgumentException("Ring capacity must be a power of two, not " + ringCapacity);
+
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.ringCapacity = ringCapacity;
+        threadRing = ThreadLocal.withInitial(this::newRing);
+
+        Files.createDirectories(directory);
+        List<Path> segments = getSegments(directory);
+        segmentIndex = segments.isEmpty() ? 0 : getSegmentIndex(segments.get(segments.size() - 1));
+        startSegment();
+
+        writer = new Thread(this::runWriter, "Event Log Writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public static EventLog open(Path directory) throws IOException {
+        return new EventLog(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_RING_CAPACITY);
+    }
+
+    public static Path getDirectory(String simulationName) {
+        return Paths.get("saves/" + simulationName + "/" + EVENTS_DIR);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private Ring newRing() {
+        Ring ring = new Ring(Thread.currentThread(), ringCapacity);
+        rings.add(ring);
+        return ring;
+    }
+
+    /**
+     * Records an event about a cell from the calling thread.
+     * @param cause the cause of death of a death event, otherwise null
+     * @param otherId the id of the other cell involved in the event, or zero if there is none
+     */
+    public void record(Type type, CauseOfDeath cause, Class<? extends Cell> cellType, int generation,
+                       double time, float x, float y, long cellId, long otherId) {
+        threadRing.get().offer(type, cause, Math.max(CELL_TYPES.indexOf(cellType), 0),
+                generation, time, x, y, cellId, otherId);
+    }
+
+    /**
+     * @return the number of events dropped because the ring of the thread that recorded them was full
+     */
+    public long getDroppedCount() {
+        long dropped = retiredDropped;
+        for (Ring ring : rings)
+            dropped += ring.dropped;
+        return dropped;
+    }
+
+    private static Path getSegmentPath(Path directory, int index) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private static int getSegmentIndex(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * @return the segments of the log in the given directory, in the order they were written
+     */
+    public static List<Path> getSegments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory))
+            return new ArrayList<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)
+                                && name.length() > SEGMENT_PREFIX.length() + SEGMENT_SUFFIX.length();
+                    })
+                    .sorted((a, b) -> Integer.compare(getSegmentIndex(a), getSegmentIndex(b)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void startSegment() throws IOException {
+        segmentIndex++;
+        segment = FileChannel.open(getSegmentPath(directory, segmentIndex),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining())
+            segment.write(header);
+        segmentBytes = HEADER_SIZE;
+    }
+
+    private void endSegment() throws IOException {
+        segment.force(false);
+        segment.close();
+        segment = null;
+    }
+
+    /**
+     * Writes every event in the rings to the log, starting new segments as they fill up,
+     * and drops the rings of threads that have died.
+     * @return the number of events written
+     */
+    private int drain() throws IOException {
+        int written = 0;
+        for (Ring ring : rings) {
+            // checked before draining, so that a dead thread's ring is only dropped once it is empty
+            boolean ownerDead = !ring.owner.isAlive();
+            while (!ring.isEmpty()) {
+                int space = (int) Math.min(WRITE_BUFFER_RECORDS, (maxSegmentBytes - segmentBytes) / RECORD_SIZE);
+                if (space == 0) {
+                    endSegment();
+                    startSegment();
+                    continue;
+                }
+                writeBuffer.clear();
+                int n = ring.drainTo(writeBuffer, space);
+                writeBuffer.flip();
+                while (writeBuffer.hasRemaining())
+                    segment.write(writeBuffer);
+                segmentBytes += (long) n * RECORD_SIZE;
+                written += n;
+            }
+            if (ownerDead) {
+                rings.remove(ring);
+                retiredDropped += ring.dropped;
+            }
+        }
+        return written;
+    }
+
+    private void runWriter() {
+        try {
+            lastSync = System.currentTimeMillis();
+            while (running) {
+                if (drain() == 0)
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(DRAIN_INTERVAL_MILLIS));
+                long now = System.currentTimeMillis();
+                if (now - lastSync >= SYNC_INTERVAL_MILLIS) {
+                    segment.force(false);
+                    lastSync = now;
+                }
+            }
+            drain();
+            endSegment();
+        } catch (IOException e) {
+            failure = e;
+            System.out.println("Failed to write to the event log: " + e.getMessage());
+            try {
+                if (segment != null)
+                    segment.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Writes out the events recorded so far and stops the writer thread.
+     * Events recorded after the log is closed are never written.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the event log", e);
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    private static void readSegment(Path path, Consumer<Event> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE)
+                return;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC)
+                throw new IOException(path + " is not an event log segment");
+            int version = buffer.getInt(4);
+            if (version != VERSION)
+                throw new IOException("Unsupported event log version " + version + " in " + path);
+            int end = HEADER_SIZE + (int) ((size - HEADER_SIZE) / RECORD_SIZE) * RECORD_SIZE;
+            for (int offset = HEADER_SIZE; offset < end; offset += RECORD_SIZE)
+                consumer.accept(new Event(buffer, offset));
+        }
+    }
+
+    /**
+     * Reads every event in the log in the given directory, segment by segment.
+     */
+    public static void read(Path directory, Consumer<Event> consumer) throws IOException {
+        for (Path segment : getSegments(directory))
+            readSegment(segment, consumer);
+    }
+
+    public static List<Event> readAll(Path directory) throws IOException {
+        List<Event> events = new ArrayList<>();
+        read(directory, events::add);
+        return events;
+    }
+}
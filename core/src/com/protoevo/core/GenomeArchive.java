@@ -0,0 +1,406 @@
+package com.protoevo.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.protoevo.biology.nn.GenomeCodec;
+import com.protoevo.biology.nn.NetworkGenome;
+import com.protoevo.biology.nn.NeuronGene;
+import com.protoevo.biology.nn.SynapseGene;
+import com.protoevo.utils.FileIO;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * A content addressed archive of the genomes of the protozoa in each statistics snapshot.
+ * <p>
+ * Every neuron gene, synapse gene and genome is identified by a hash of its binary form, written by
+ * {@link GenomeCodec}, and is written to the archive the first time it is seen and never again.
+ * A synapse gene refers to its neuron genes, and a genome to its genes, by their hashes, so a genome
+ * that differs from its parent's by a mutation only adds the genes that mutated and a list of hashes.
+ * A snapshot is then just the id of each protozoan and the hash of its genome.
+ * <p>
+ * Genes are never modified once built, and a genome is never modified once its cell is born, so the hashes
+ * of the genes and genomes of one snapshot are kept by identity for the next, and only the genomes of
+ * protozoa born in between are hashed.
+ * <p>
+ * The archive is a directory holding two append-only files:
+ * <ul>
+ *     <li>{@link #PACK_FILE}: records of a type, a hash, a length and the gene or genome</li>
+ *     <li>{@link #SNAPSHOTS_FILE}: for each snapshot the time it was taken, the number of protozoa,
+ *     then the id and genome hash of each</li>
+ * </ul>
+ * The pack is synced before the snapshot that refers to it is written, and a record cut short
+ * by a crash is dropped when the archive is next opened.
+ * Use {@link Contents#writeJson} to convert the archive back to the JSON genome files.
+ */
+public class GenomeArchive implements Closeable {
+
+    public static final String ARCHIVE_DIR = "genome-archive";
+    public static final String PACK_FILE = "genomes.pack";
+    public static final String SNAPSHOTS_FILE = "snapshots.log";
+    public static final String JSON_DIR = "protozoa-genomes";
+
+    private static final int PACK_MAGIC = 0x50454750, SNAPSHOTS_MAGIC = 0x50454753;
+    private static final int VERSION = 1;
+    private static final int PACK_RECORD_HEADER_SIZE = 13, SNAPSHOT_HEADER_SIZE = 12;
+    private static final byte NEURON = 0, SYNAPSE = 1, GENOME = 2;
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final Path dir;
+    private final FileChannel pack, snapshots;
+    private final Set<Long> written = new HashSet<>();
+    // the hashes of the genes and genomes of the last snapshot, by identity
+    private Map<Object, Long> hashes = new IdentityHashMap<>();
+    private Map<Object, Long> nextHashes = new IdentityHashMap<>();
+    private final ByteArrayOutputStream scratch = new ByteArrayOutputStream();
+    private final DataOutputStream scratchOut = new DataOutputStream(scratch);
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final List<Long> pendingHashes = new ArrayList<>();
+
+    private GenomeArchive(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        pack = AppendOnlyFile.open(dir.resolve(PACK_FILE), PACK_MAGIC, VERSION);
+        snapshots = AppendOnlyFile.open(dir.resolve(SNAPSHOTS_FILE), SNAPSHOTS_MAGIC, VERSION);
+        AppendOnlyFile.truncate(pack,
+                scanPack(AppendOnlyFile.readAll(pack), (type, hash, payload) -> written.add(hash)));
+        AppendOnlyFile.truncate(snapshots, scanSnapshots(AppendOnlyFile.readAll(snapshots), null));
+    }
+
+    /**
+     * Opens the archive in the given directory to append to, creating it if it does not exist.
+     */
+    public static GenomeArchive open(Path dir) throws IOException {
+        return new GenomeArchive(dir);
+    }
+
+    public static Path getDirectory(String simulationName) {
+        return Paths.get("saves/" + simulationName + "/stats/" + ARCHIVE_DIR);
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    private interface RecordConsumer {
+        void accept(byte type, long hash, ByteBuffer payload);
+    }
+
+    /**
+     * @return the position of the end of the last complete record of the pack
+     */
+    private static long scanPack(ByteBuffer bytes, RecordConsumer consumer) {
+        AppendOnlyFile.checkHeader(bytes, PACK_MAGIC, VERSION, "genome pack");
+        return AppendOnlyFile.scan(bytes, PACK_RECORD_HEADER_SIZE, AppendOnlyFile::lengthAtEnd,
+                (header, payload) -> consumer.accept(header.get(0), header.getLong(1), payload));
+    }
+
+    /**
+     * @return the position of the end of the last complete snapshot
+     */
+    private static long scanSnapshots(ByteBuffer bytes, List<Snapshot> snapshots) {
+        AppendOnlyFile.checkHeader(bytes, SNAPSHOTS_MAGIC, VERSION, "genome snapshot log");
+        // a snapshot is its time and number of protozoa, then the id and genome hash of each
+        return AppendOnlyFile.scan(bytes, SNAPSHOT_HEADER_SIZE,
+                header -> header.getInt(8) < 0 ? -1 : 16L * header.getInt(8),
+                (header, payload) -> {
+                    if (snapshots == null)
+                        return;
+                    int count = header.getInt(8);
+                    long[] cellIds = new long[count], genomeHashes = new long[count];
+                    for (int i = 0; i < count; i++) {
+                        cellIds[i] = payload.getLong();
+                        genomeHashes[i] = payload.getLong();
+                    }
+                    snapshots.add(new Snapshot(header.getLong(0), cellIds, genomeHashes));
+                });
+    }
+
+    private long lookup(Object object) {
+        Long hash = nextHashes.get(object);
+        if (hash == null)
+            throw new IllegalStateException("Gene was not hashed before the genome referring to it");
+        return hash;
+    }
+
+    /**
+     * Hashes what has been written to the scratch buffer, and adds it to the pending records
+     * if it is not already in the archive.
+     */
+    private long store(Object object, byte type) throws IOException {
+        byte[] bytes = scratch.toByteArray();
+        scratch.reset();
+        long hash = HASH.hashBytes(bytes).asLong();
+        if (written.add(hash)) {
+            pendingHashes.add(hash);
+            DataOutputStream out = new DataOutputStream(pending);
+            out.writeByte(type);
+            out.writeLong(hash);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        nextHashes.put(object, hash);
+        return hash;
+    }
+
+    private long hashNeuron(NeuronGene gene) throws IOException {
+        Long hash = nextHashes.get(gene);
+        if (hash != null)
+            return hash;
+        hash = hashes.get(gene);
+        if (hash != null) {
+            nextHashes.put(gene, hash);
+            return hash;
+        }
+        GenomeCodec.writeNeuronGene(scratchOut, gene);
+        return store(gene, NEURON);
+    }
+
+    private long hashSynapse(SynapseGene gene) throws IOException {
+        Long hash = nextHashes.get(gene);
+        if (hash != null)
+            return hash;
+        hash = hashes.get(gene);
+        if (hash != null) {
+            nextHashes.put(gene, hash);
+            return hash;
+        }
+        hashNeuron(gene.getIn());
+        hashNeuron(gene.getOut());
+        GenomeCodec.writeSynapseGene(scratchOut, gene, this::lookup);
+        return store(gene, SYNAPSE);
+    }
+
+    private long hashGenome(NetworkGenome genome) throws IOException {
+        Long hash = hashes.get(genome);
+        if (hash != null) {
+            // its genes are not carried over, and are only hashed again if a new genome shares them
+            nextHashes.put(genome, hash);
+            return hash;
+        }
+        Iterator<NeuronGene> neuronGenes = genome.iterateNeuronGenes();
+        while (neuronGenes.hasNext())
+            hashNeuron(neuronGenes.next());
+        for (SynapseGene gene : genome.getSynapseGenes())
+            hashSynapse(gene);
+        GenomeCodec.writeGenome(scratchOut, genome, this::lookup, this::lookup);
+        return store(genome, GENOME);
+    }
+
+    /**
+     * Adds a snapshot of the genomes of the given protozoa, writing any genes and genomes
+     * not already in the archive, and syncs the archive to disk.
+     * @param takenAt the time the snapshot was taken, in milliseconds since the epoch
+     */
+    public synchronized void append(long takenAt, long[] cellIds, NetworkGenome[] genomes) throws IOException {
+        if (cellIds.length != genomes.length)
+            throw new IllegalArgumentException("Expected a genome for each of " + cellIds.length + " cells");
+
+        long[] genomeHashes = new long[genomes.length];
+        try {
+            for (int i = 0; i < genomes.length; i++)
+                genomeHashes[i] = hashGenome(genomes[i]);
+            if (pending.size() > 0)
+                AppendOnlyFile.append(pack, ByteBuffer.wrap(pending.toByteArray()));
+        } catch (IOException e) {
+            // nothing of this snapshot made it into the pack
+            written.removeAll(pendingHashes);
+            nextHashes.clear();
+            throw e;
+        } finally {
+            pending.reset();
+            pendingHashes.clear();
+            scratch.reset();
+        }
+
+        ByteBuffer snapshot = ByteBuffer.allocate(12 + 16 * genomes.length);
+        snapshot.putLong(takenAt);
+        snapshot.putInt(genomes.length);
+        for (int i = 0; i < genomes.length; i++) {
+            snapshot.putLong(cellIds[i]);
+            snapshot.putLong(genomeHashes[i]);
+        }
+        snapshot.flip();
+        AppendOnlyFile.append(snapshots, snapshot);
+
+        // the hashes of the last snapshot that were not carried over belong to genes no longer alive
+        Map<Object, Long> previous = hashes;
+        hashes = nextHashes;
+        previous.clear();
+        nextHashes = previous;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            pack.close();
+        } finally {
+            snapshots.close();
+        }
+    }
+
+    /**
+     * Reads the whole of the archive in the given directory.
+     */
+    public static Contents read(Path dir) throws IOException {
+        ByteBuffer packBytes = ByteBuffer.wrap(Files.readAllBytes(dir.resolve(PACK_FILE)));
+        ByteBuffer snapshotBytes = ByteBuffer.wrap(Files.readAllBytes(dir.resolve(SNAPSHOTS_FILE)));
+        Contents contents = new Contents();
+        scanPack(packBytes, (type, hash, payload) -> contents.records.put(hash, payload));
+        scanSnapshots(snapshotBytes, contents.snapshots);
+        return contents;
+    }
+
+    /**
+     * The protozoa of one snapshot and the hashes of their genomes.
+     */
+    public static class Snapshot {
+        private final long takenAt;
+        private final long[] cellIds, genomeHashes;
+
+        private Snapshot(long takenAt, long[] cellIds, long[] genomeHashes) {
+            this.takenAt = takenAt;
+            this.cellIds = cellIds;
+            this.genomeHashes = genomeHashes;
+        }
+
+        public long getTakenAt() {
+            return takenAt;
+        }
+
+        public int size() {
+            return cellIds.length;
+        }
+
+        public long getCellId(int i) {
+            return cellIds[i];
+        }
+
+        public long getGenomeHash(int i) {
+            return genomeHashes[i];
+        }
+    }
+
+    /**
+     * The snapshots of an archive, and the genomes they refer to, which are only deserialised when asked for.
+     */
+    public static class Contents {
+        private final Map<Long, ByteBuffer> records = new HashMap<>();
+        private final List<Snapshot> snapshots = new ArrayList<>();
+        private final Map<Long, NeuronGene> neuronGenes = new HashMap<>();
+        private final Map<Long, SynapseGene> synapseGenes = new HashMap<>();
+        private final Map<Long, NetworkGenome> genomes = new HashMap<>();
+
+        public List<Snapshot> getSnapshots() {
+            return Collections.unmodifiableList(snapshots);
+        }
+
+        /**
+         * @return the number of distinct genes and genomes in the archive
+         */
+        public int getRecordCount() {
+            return records.size();
+        }
+
+        private DataInputStream open(long hash) {
+            ByteBuffer payload = records.get(hash);
+            if (payload == null)
+                throw new RuntimeException("No gene or genome with hash " + Long.toHexString(hash) + " in the archive");
+            return new DataInputStream(new ByteArrayInputStream(
+                    payload.array(), payload.arrayOffset(), payload.limit()));
+        }
+
+        private NeuronGene getNeuronGene(long hash) {
+            return neuronGenes.computeIfAbsent(hash, h -> {
+                try {
+                    return GenomeCodec.readNeuronGene(open(h));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        private SynapseGene getSynapseGene(long hash) {
+            SynapseGene gene = synapseGenes.get(hash);
+            if (gene == null) {
+                try {
+                    gene = GenomeCodec.readSynapseGene(open(hash), this::getNeuronGene);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                synapseGenes.put(hash, gene);
+            }
+            return gene;
+        }
+
+        /**
+         * @return the genome with the given hash, shared by every protozoan with that genome
+         */
+        public NetworkGenome getGenome(long hash) {
+            NetworkGenome genome = genomes.get(hash);
+            if (genome == null) {
+                try {
+                    genome = GenomeCodec.readGenome(open(hash), this::getNeuronGene, this::getSynapseGene);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                genomes.put(hash, genome);
+            }
+            return genome;
+        }
+
+        public List<NetworkGenome> getGenomes(Snapshot snapshot) {
+            List<NetworkGenome> snapshotGenomes = new ArrayList<>(snapshot.size());
+            for (int i = 0; i < snapshot.size(); i++)
+                snapshotGenomes.add(getGenome(snapshot.getGenomeHash(i)));
+            return snapshotGenomes;
+        }
+
+        /**
+         * Writes each snapshot to the given directory as a JSON list of its genomes, named by the time
+         * it was taken, as the genomes of each snapshot were written before this archive existed.
+         */
+        public void writeJson(Path outputDir) throws IOException {
+            Files.createDirectories(outputDir);
+            ObjectMapper mapper = FileIO.getJsonMapper();
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss");
+            for (Snapshot snapshot : snapshots) {
+                String name = format.format(new Date(snapshot.getTakenAt())) + ".json";
+                mapper.writeValue(outputDir.resolve(name).toFile(), getGenomes(snapshot));
+            }
+        }
+    }
+
+    /**
+     * Converts the archive in the given directory to the JSON genome files read by pyprotoevo,
+     * in a directory next to the archive.
+     * @return the contents of the archive
+     */
+    public static Contents export(Path dir) throws IOException {
+        Contents contents = read(dir);
+        contents.writeJson(dir.toAbsolutePath().getParent().resolve(JSON_DIR));
+        return contents;
+    }
+
+    /**
+     * Converts the genome archive of the named simulation, or the archive in the given directory,
+     * to the JSON genome files read by pyprotoevo.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: GenomeArchive <simulation name or path to " + ARCHIVE_DIR + ">");
+            return;
+        }
+        Path dir = Files.isDirectory(Paths.get(args[0])) ? Paths.get(args[0]) : getDirectory(args[0]);
+        Contents contents = export(dir);
+        System.out.println("Converted " + contents.getSnapshots().size() + " snapshots of " + dir + " to " + JSON_DIR);
+    }
+}
@@ -0,0 +1,203 @@
+package com.protoevo.core;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-memory estimate of the distribution of a stream of values, from which quantiles and ranks can be read.
+ * <p>
+ * This is a KLL sketch (Karnin, Lang and Liberty, "Optimal Quantile Approximation in Streams", 2016).
+ * Values are buffered in a stack of compactors, where each item at level h stands for 2^h values.
+ * When the sketch is over capacity the lowest full compactor is sorted and every other item,
+ * starting at a random offset, is promoted to the level above while the rest are discarded.
+ * Compactors shrink geometrically towards the bottom, so the sketch holds O(k) items however
+ * many values it has seen, and the rank error is roughly 1.7 / k of the number of values.
+ * Two sketches can be merged by concatenating their compactors and compacting again,
+ * which makes them suitable for parallel reductions.
+ */
+public class QuantileSketch {
+
+    public static final int DEFAULT_K = 128;
+    private static final double SHRINK = 2.0 / 3.0;
+    private static final int MIN_CAPACITY = 2;
+
+    private final int k;
+    private double[][] levels = new double[1][];
+    private int[] sizes = new int[1];
+    private int[] capacities = new int[1];
+    private int numLevels = 1, totalCapacity, totalSize;
+    private long count;
+    private long random = 0x9E3779B97F4A7C15L;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    public QuantileSketch(int k) {
+        if (k < MIN_CAPACITY)
+            throw new IllegalArgumentException("Sketch parameter k must be at least " + MIN_CAPACITY);
+        this.k = k;
+        updateCapacities();
+        levels[0] = new double[capacities[0]];
+    }
+
+    private void updateCapacities() {
+        // capacities depend on the depth below the top level, so change whenever a level is added
+        if (capacities.length < numLevels)
+            capacities = new int[levels.length];
+        totalCapacity = 0;
+        for (int h = 0; h < numLevels; h++) {
+            int depth = numLevels - 1 - h;
+            capacities[h] = Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(SHRINK, depth)));
+            totalCapacity += capacities[h];
+        }
+    }
+
+    private boolean nextCoin() {
+        // xorshift, so that compaction does not depend on any shared random state
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (random & 1) != 0;
+    }
+
+    private void append(int level, double value) {
+        if (sizes[level] == levels[level].length)
+            levels[level] = Arrays.copyOf(levels[level], Math.max(MIN_CAPACITY, 2 * sizes[level]));
+        levels[level][sizes[level]++] = value;
+        totalSize++;
+    }
+
+    private void addLevel() {
+        if (numLevels == levels.length) {
+            levels = Arrays.copyOf(levels, 2 * numLevels);
+            sizes = Arrays.copyOf(sizes, 2 * numLevels);
+        }
+        levels[numLevels] = new double[MIN_CAPACITY];
+        sizes[numLevels] = 0;
+        numLevels++;
+        updateCapacities();
+    }
+
+    private void compact() {
+        while (totalSize > totalCapacity) {
+            int level = 0;
+            while (sizes[level] < capacities[level])
+                level++;
+            if (level + 1 == numLevels)
+                addLevel();
+
+            double[] items = levels[level];
+            int size = sizes[level];
+            Arrays.sort(items, 0, size);
+            // an odd item out stays behind, so that the weight of the sketch is preserved exactly
+            int start = size % 2;
+            int offset = nextCoin() ? 1 : 0;
+            for (int i = start + offset; i < size; i += 2)
+                append(level + 1, items[i]);
+            totalSize -= size - start;
+            sizes[level] = start;
+        }
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value))
+            return;
+        count++;
+        append(0, value);
+        if (sizes[0] >= capacities[0])
+            compact();
+    }
+
+    /**
+     * Merges the values seen by another sketch into this one.
+     * @return this sketch
+     */
+    public QuantileSketch merge(QuantileSketch other) {
+        while (numLevels < other.numLevels)
+            addLevel();
+        for (int h = 0; h < other.numLevels; h++)
+            for (int i = 0; i < other.sizes[h]; i++)
+                append(h, other.levels[h][i]);
+        count += other.count;
+        compact();
+        return this;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return the number of values held, which is bounded by about 3k
+     */
+    public int getRetainedItems() {
+        return totalSize;
+    }
+
+    /**
+     * @return the estimated number of values seen that are less than or equal to the given value
+     */
+    public double getRank(double value) {
+        double rank = 0;
+        for (int h = 0; h < numLevels; h++) {
+            long weight = 1L << h;
+            for (int i = 0; i < sizes[h]; i++)
+                if (levels[h][i] <= value)
+                    rank += weight;
+        }
+        return rank;
+    }
+
+    /**
+     * @return the estimated values at each of the given fractions of the way through the sorted values,
+     * or NaN if no values have been seen
+     */
+    public double[] getQuantiles(double... fractions) {
+        double[] quantiles = new double[fractions.length];
+        if (isEmpty()) {
+            Arrays.fill(quantiles, Double.NaN);
+            return quantiles;
+        }
+
+        int n = totalSize;
+        double[] values = new double[n];
+        long[] weights = new long[n];
+        Integer[] order = new Integer[n];
+        int j = 0;
+        for (int h = 0; h < numLevels; h++) {
+            for (int i = 0; i < sizes[h]; i++, j++) {
+                values[j] = levels[h][i];
+                weights[j] = 1L << h;
+                order[j] = j;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+        long total = 0;
+        for (long weight : weights)
+            total += weight;
+
+        for (int q = 0; q < fractions.length; q++) {
+            double target = Math.min(1, Math.max(0, fractions[q])) * total;
+            long cumulative = 0;
+            double quantile = values[order[n - 1]];
+            for (int i = 0; i < n; i++) {
+                cumulative += weights[order[i]];
+                if (cumulative >= target) {
+                    quantile = values[order[i]];
+                    break;
+                }
+            }
+            quantiles[q] = quantile;
+        }
+        return quantiles;
+    }
+
+    public double getQuantile(double fraction) {
+        return getQuantiles(fraction)[0];
+    }
+}
@@ -4,11 +4,16 @@ import com.github.javafaker.Faker;
 import com.protoevo.biology.cells.Protozoan;
 import com.protoevo.biology.nn.NetworkGenome;
 import com.protoevo.core.repl.REPL;
+import com.protoevo.env.CheckpointChain;
 import com.protoevo.env.EnvFileIO;
 import com.protoevo.env.Environment;
+import com.protoevo.env.EnvironmentSnapshot;
+import com.protoevo.env.SaveIndex;
+import com.protoevo.env.SaveManifest;
+import com.protoevo.env.SaveMetadata;
+import com.protoevo.env.SnapshotWriter;
 import com.protoevo.settings.SimulationSettings;
 import com.protoevo.utils.EnvironmentImageRenderer;
-import com.protoevo.utils.FileIO;
 import com.protoevo.utils.TimedEventsManager;
 
 import java.awt.*;
@@ -22,6 +27,9 @@ import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -43,6 +51,20 @@ public class Simulation implements Runnable
 	private String name;
 	private List<String> statsNames;
 	private final REPL repl = new REPL(this);
+	// held for the whole of each tick, so that snapshots are only ever taken between ticks
+	private final Object tickLock = new Object();
+	private final SnapshotWriter snapshotWriter = new SnapshotWriter();
+	private final CheckpointChain historicalSaves = new CheckpointChain();
+	// writes statistics snapshots in the order they were taken, without holding up the simulation loop
+	private final ExecutorService statisticsWriter = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Statistics Writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private EventLog eventLog;
+	// only used from the statistics writer thread
+	private StatsLog statsLog;
+	private GenomeArchive genomeArchive;
 
 	public Simulation() {
 		this(Environment.settings.simulationSeed.get());
@@ -101,8 +123,6 @@ public class Simulation implements Runnable
 			Files.createDirectories(Paths.get("saves/" + simulationName));
 			Files.createDirectories(Paths.get("saves/" + simulationName + "/env"));
 			Files.createDirectories(Paths.get("saves/" + simulationName + "/stats"));
-			Files.createDirectories(Paths.get("saves/" + simulationName + "/stats/summaries"));
-			Files.createDirectories(Paths.get("saves/" + simulationName + "/stats/protozoa-genomes"));
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -146,48 +166,44 @@ public class Simulation implements Runnable
 		repl.setManager(manager);
 	}
 
-	public static Stream<Path> getStatsPaths(String name) {
-		Path dir = Paths.get("saves/" + name + "/stats/summaries");
-		if (Files.exists(dir)) {
-			try (Stream<Path> paths = Files.list(dir)){
-				return paths.collect(Collectors.toList()).stream()
-						.filter(path -> path.getFileName().toString().endsWith(".json"));
-			} catch (IOException e) {
-				System.out.println("Unable to find environment of given name: " + e.getMessage());
-				System.exit(0);
-				return Stream.empty();
-			}
-		}
-		return Stream.empty();
+	/**
+	 * @return the history of the statistics snapshots of the simulation, read from its stats log
+	 */
+	public static Path getEnvironmentDir(String name) {
+		return Paths.get("saves/" + name + "/env");
 	}
 
-	public static Optional<Path> getClosestStatsPath(String name, Long time) {
-		return getStatsPaths(name).min(
-				Comparator.comparingLong(
-					path -> Math.abs(time - path.toFile().lastModified())));
+	/**
+	 * @return the metadata of the saves of the simulation, from oldest to most recent, read from its save index
+	 */
+	public static List<SaveMetadata> getSaves(String name) {
+		try {
+			return SaveIndex.read(getEnvironmentDir(name));
+		} catch (IOException e) {
+			System.out.println("Unable to read the saves of " + name + ": " + e.getMessage());
+			return new ArrayList<>();
+		}
 	}
 
 	public static Stream<Path> getSavePaths(String name) {
-		Path dir = Paths.get("saves/" + name + "/env");
-		if (Files.exists(dir)) {
-			try (Stream<Path> paths = Files.list(dir)){
-				return paths.collect(Collectors.toList()).stream().filter(Files::isDirectory);
-			} catch (IOException e) {
-				System.out.println("Unable to find environment of given name: " + e.getMessage());
-				System.exit(0);
-				return Stream.empty();
-			}
-		}
-		return Stream.empty();
+		Path dir = getEnvironmentDir(name);
+		return getSaves(name).stream()
+				.map(metadata -> dir.resolve(metadata.getName()))
+				.filter(SaveManifest::exists);
 	}
 
-	public static Long saveModifiedTime(Path path) {
-		return Paths.get(path.toString() + "/environment.dat")
-				.toFile().lastModified();
+	public static Optional<SaveMetadata> getMostRecentSaveMetadata(String name) {
+		try {
+			return SaveIndex.mostRecent(getEnvironmentDir(name));
+		} catch (IOException e) {
+			System.out.println("Unable to read the saves of " + name + ": " + e.getMessage());
+			return Optional.empty();
+		}
 	}
 
 	public static Optional<Path> getMostRecentSave(String name) {
-		return getSavePaths(name).max(Comparator.comparingLong(Simulation::saveModifiedTime));
+		return getMostRecentSaveMetadata(name)
+				.map(metadata -> getEnvironmentDir(name).resolve(metadata.getName()));
 	}
 
 	public Environment loadMostRecentEnv() {
@@ -203,8 +219,11 @@ public class Simulation implements Runnable
 	public void prepare()
 	{
 		paused = false;
+		// the log of an environment prepared before is closed, so that its writer thread does not outlive it
+		closeEventLog();
 		environment = environmentLoader.get();
 		environment.setSimulationName(name);
+		openEventLog();
 		if (!initialised) {
 			environment.initialise();
 			makeStatisticsSnapshot();
@@ -270,17 +289,20 @@ public class Simulation implements Runnable
 		try {
 			float delta = timeDilation * Environment.settings.simulationUpdateDelta.get();
 
-			try {
-				environment.update(delta);
-			} catch (Exception e) {
-				e.printStackTrace();
-				System.out.println("Error occurred during simulation. Saving and exiting.");
-				save();
-				repl.close();
-				throw e;
+			synchronized (tickLock) {
+				try {
+					environment.update(delta);
+				} catch (Exception e) {
+					e.printStackTrace();
+					System.out.println("Error occurred during simulation. Saving and exiting.");
+					save();
+					snapshotWriter.flush();
+					repl.close();
+					throw e;
+				}
+
+				timedEventsManager.update(delta);
 			}
-
-			timedEventsManager.update(delta);
 			// timeSinceSave += delta;
 			// timeSinceSnapshot += delta;
 			// timeSinceAutoSave += delta;
@@ -320,6 +342,9 @@ public class Simulation implements Runnable
 		} catch (IOException ioException) {
 			System.err.println("Failed to create crash report: " + ioException + "\nWhen handling exception: " + e);
 		}
+		// write out the statistics and events still buffered, as exiting skips close
+		closeStatistics();
+		closeEventLog();
 		System.exit(0);
 	}
 
@@ -348,8 +373,12 @@ public class Simulation implements Runnable
 	public void close() {
 		simulate = false;
 		System.out.println("\nClosing simulation.");
-		String saveFile = save();
+		// the last save of a run is the one it is resumed from, so it does not depend on any other save
+		String saveFile = save(null);
+		snapshotWriter.flush();
 		System.out.println("Saved environment to: " + saveFile);
+		closeStatistics();
+		closeEventLog();
 		repl.close();
 	}
 
@@ -365,6 +394,13 @@ public class Simulation implements Runnable
 	}
 
 	public String save() {
+		return save(historicalSaves);
+	}
+
+	/**
+	 * @param chain the checkpoint chain to write the save into, or null to write it as a full save
+	 */
+	private String save(CheckpointChain chain) {
 		if (environment == null)
 			return null;
 
@@ -372,9 +408,10 @@ public class Simulation implements Runnable
 		renderer.render(getSaveFolder() + "/screenshots");
 		System.out.println("Created screenshot in directory: " + getSaveFolder() + "/screenshots");
 
+		saveRequested = false;
 		String timeStamp = getTimeStampString();
 		String fileName = getSaveFolder() + "/env/" + timeStamp;
-		EnvFileIO.saveEnvironment(environment, fileName);
+		snapshotWriter.write(takeSnapshot(), fileName, chain);
 		return fileName;
 	}
 
@@ -387,30 +424,131 @@ public class Simulation implements Runnable
 		System.out.println("Created screenshot in directory: " + getSaveFolder() + "/screenshots");
 
 		String fileName = getSaveFolder() + "/env/autosave";
-		EnvFileIO.saveEnvironment(environment, fileName);
+		snapshotWriter.write(takeSnapshot(), fileName);
 	}
 
+	/**
+	 * Copies the environment between ticks, waiting for the current tick to finish if there is one,
+	 * so that the copy is consistent even when requested from another thread.
+	 * The copy is serialised later, by whoever writes the snapshot.
+	 */
+	public EnvironmentSnapshot takeSnapshot() {
+		synchronized (tickLock) {
+			return EnvironmentSnapshot.take(environment);
+		}
+	}
+
+	/**
+	 * Takes a snapshot of the summary statistics of the environment and queues it to be written.
+	 * Alongside the stats, the snapshot holds the quantiles and histogram of each protozoa stat.
+	 * The summary is computed on the calling thread in a single parallel pass over the cells,
+	 * so that it is consistent with the current state, while appending it to the {@link StatsLog}
+	 * of the simulation happens on the statistics writer thread. If genomes are to be written,
+	 * the genomes of the protozoa are added to the {@link GenomeArchive} of the simulation.
+	 */
 	public void makeStatisticsSnapshot() {
 		Statistics stats = new Statistics(environment.getStats());
 		stats.putAll(environment.getDebugStats());
 		stats.putAll(environment.getPhysicsDebugStats());
-		stats.putAll(environment.getProtozoaSummaryStats(true, false, true));
-
-		String timeStamp = getTimeStampString();
+		StatSummary protozoaSummary = environment.summariseProtozoa(true, true, true, true);
+		stats.putAll(environment.getProtozoaSummaryStats(protozoaSummary, true));
+		Map<String, StatDistribution> distributions = protozoaSummary.getDistributions();
 
-		FileIO.writeJson(stats, getSaveFolder() + "/stats/summaries/" + timeStamp);
+		long takenAt = System.currentTimeMillis();
 
+		// a cell's genome is only mutated while the cell is being created, and crossover sorts a copy of the
+		// parents' synapses rather than the genomes themselves, so they can be archived after the snapshot is taken
+		long[] protozoaIds = null;
+		NetworkGenome[] protozoaGenomes = null;
 		if (Environment.settings.misc.writeGenomes.get()) {
-			List<NetworkGenome> protozoaGenomes = environment.getCells().stream()
+			List<Protozoan> protozoa = environment.getCells().stream()
 					.filter(cell -> cell instanceof Protozoan)
-					.map(cell -> ((Protozoan) cell).getGeneExpressionFunction().getGRNGenome())
+					.map(cell -> (Protozoan) cell)
 					.collect(Collectors.toList());
-			FileIO.writeJson(protozoaGenomes, getSaveFolder() + "/stats/protozoa-genomes/" + timeStamp);
+			protozoaIds = new long[protozoa.size()];
+			protozoaGenomes = new NetworkGenome[protozoa.size()];
+			for (int i = 0; i < protozoa.size(); i++) {
+				protozoaIds[i] = protozoa.get(i).getId();
+				protozoaGenomes[i] = protozoa.get(i).getGeneExpressionFunction().getGRNGenome();
+			}
 		}
 
+		final long[] ids = protozoaIds;
+		final NetworkGenome[] genomes = protozoaGenomes;
+		statisticsWriter.execute(() -> {
+			try {
+				if (statsLog == null)
+					statsLog = StatsLog.open(StatsLog.getPath(name));
+				statsLog.append(takenAt, stats, distributions);
+			} catch (IOException e) {
+				System.out.println("Failed to write statistics snapshot: " + e.getMessage());
+			}
+			if (genomes != null) {
+				try {
+					if (genomeArchive == null)
+						genomeArchive = GenomeArchive.open(GenomeArchive.getDirectory(name));
+					genomeArchive.append(takenAt, ids, genomes);
+				} catch (IOException e) {
+					System.out.println("Failed to archive genomes: " + e.getMessage());
+				}
+			}
+		});
+
 //		PythonRunner.runPython("pyprotoevo.create_plots", "--quiet --simulation " + name);
 	}
 
+	private void openEventLog() {
+		try {
+			eventLog = EventLog.open(EventLog.getDirectory(name));
+			environment.setEventLog(eventLog);
+		} catch (IOException e) {
+			System.out.println("Failed to open the event log: " + e.getMessage());
+		}
+	}
+
+	private void closeEventLog() {
+		if (eventLog == null)
+			return;
+		if (environment != null)
+			environment.setEventLog(null);
+		try {
+			eventLog.close();
+			if (eventLog.getDroppedCount() > 0)
+				System.out.println("Dropped " + eventLog.getDroppedCount() + " events from the event log.");
+		} catch (IOException e) {
+			System.out.println("Failed to close the event log: " + e.getMessage());
+		}
+		eventLog = null;
+	}
+
+	/**
+	 * Writes out and closes the stats log and genome archive, and exports the stats log to CSV and
+	 * newline-delimited JSON for analysis in Python.
+	 */
+	private void closeStatistics() {
+		try {
+			statisticsWriter.submit(() -> {
+				try {
+					if (statsLog != null) {
+						statsLog.close();
+						StatsLog.export(statsLog.getPath());
+					}
+				} finally {
+					statsLog = null;
+					if (genomeArchive != null) {
+						genomeArchive.close();
+						genomeArchive = null;
+					}
+				}
+				return null;
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			System.out.println("Failed to close the stats log: " + e.getCause().getMessage());
+		}
+	}
+
 	public void toggleDebug() {
 		debug = !debug;
 	}
@@ -0,0 +1,93 @@
+package com.protoevo.core;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Quantiles and a histogram of a stat over a population, read from a {@link QuantileSketch}.
+ * <p>
+ * This is what is written to the statistics snapshots, so it holds a fixed number of values
+ * regardless of the size of the population. The histogram has equal width bins between the exact
+ * min and max of the stat, with counts estimated from the ranks of the sketch.
+ */
+public class StatDistribution {
+
+    public static final double[] QUANTILES = {0.01, 0.05, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99};
+    public static final int HISTOGRAM_BINS = 20;
+
+    private final long count;
+    private final double min, max;
+    private final Map<String, Double> quantiles = new LinkedHashMap<>();
+    private final double[] binEdges;
+    private final long[] binCounts;
+
+    public StatDistribution(QuantileSketch sketch, double min, double max) {
+        this.count = sketch.getCount();
+        this.min = min;
+        this.max = max;
+
+        double[] values = sketch.getQuantiles(QUANTILES);
+        for (int i = 0; i < QUANTILES.length; i++)
+            quantiles.put(quantileName(QUANTILES[i]), values[i]);
+
+        int bins = max > min ? HISTOGRAM_BINS : 1;
+        binEdges = new double[bins + 1];
+        binCounts = new long[bins];
+        double width = (max - min) / bins;
+        for (int i = 0; i <= bins; i++)
+            binEdges[i] = i == bins ? max : min + i * width;
+
+        double previousRank = 0;
+        for (int i = 0; i < bins; i++) {
+            double rank = i == bins - 1 ? count : sketch.getRank(binEdges[i + 1]);
+            binCounts[i] = Math.max(0, Math.round(rank - previousRank));
+            previousRank = rank;
+        }
+    }
+
+    /**
+     * @return the name of a quantile as written in the snapshots, e.g. "p5" for 0.05 and "p50" for the median
+     */
+    public static String quantileName(double fraction) {
+        double percent = 100 * fraction;
+        if (percent == Math.rint(percent))
+            return "p" + (int) percent;
+        return "p" + percent;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getQuantile(double fraction) {
+        return quantiles.getOrDefault(quantileName(fraction), Double.NaN);
+    }
+
+    /**
+     * @return the quantiles by name, in the order of {@link #QUANTILES}
+     */
+    public Map<String, Double> getQuantiles() {
+        return Collections.unmodifiableMap(quantiles);
+    }
+
+    public double getMedian() {
+        return getQuantile(0.5);
+    }
+
+    public double[] getBinEdges() {
+        return binEdges;
+    }
+
+    public long[] getBinCounts() {
+        return binCounts;
+    }
+}
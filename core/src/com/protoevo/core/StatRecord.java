@@ -0,0 +1,105 @@
+package com.protoevo.core;
+
+import java.util.Arrays;
+
+/**
+ * Values of the stats of a {@link StatSchema}, held in a primitive array indexed by stat id.
+ * <p>
+ * Stats that were not recorded, e.g. because they only apply when a cell has some feature,
+ * are left out of the record rather than given a default value.
+ * A record can be cleared and reused, so that recording the stats of a large population
+ * does not need to allocate anything per cell.
+ */
+public class StatRecord {
+
+    private final StatSchema schema;
+    private double[] values;
+    private long[] present;
+
+    public StatRecord(StatSchema schema) {
+        this.schema = schema;
+        int n = schema.size();
+        values = new double[n];
+        present = new long[(n + 63) >>> 6];
+    }
+
+    public StatSchema getSchema() {
+        return schema;
+    }
+
+    private void ensureCapacity(int index) {
+        // stats may be registered after the record was created
+        if (index >= values.length) {
+            int n = Math.max(index + 1, schema.size());
+            values = Arrays.copyOf(values, n);
+            present = Arrays.copyOf(present, (n + 63) >>> 6);
+        }
+    }
+
+    public void put(StatSchema.Id id, double value) {
+        int i = id.getIndex();
+        ensureCapacity(i);
+        values[i] = value;
+        present[i >>> 6] |= 1L << i;
+    }
+
+    public void put(StatSchema.Id id, boolean value) {
+        put(id, value ? 1 : 0);
+    }
+
+    public boolean has(int index) {
+        return index < values.length && (present[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public boolean has(StatSchema.Id id) {
+        return has(id.getIndex());
+    }
+
+    public double get(int index) {
+        return has(index) ? values[index] : Double.NaN;
+    }
+
+    public double get(StatSchema.Id id) {
+        return get(id.getIndex());
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public void clear() {
+        Arrays.fill(present, 0);
+    }
+
+    /**
+     * Puts each recorded stat into the given statistics, converting values back to the
+     * boxed type and unit they were registered with.
+     * @return the given statistics
+     */
+    public Statistics writeTo(Statistics stats) {
+        for (int i = 0; i < values.length; i++) {
+            if (!has(i))
+                continue;
+            StatSchema.Id id = schema.get(i);
+            Statistics.Stat stat;
+            switch (id.getType()) {
+                case INTEGER:
+                    stat = stats.put(id.getName(), (int) values[i]);
+                    break;
+                case BOOLEAN:
+                    stat = stats.put(id.getName(), values[i] != 0);
+                    break;
+                default:
+                    stat = stats.put(id.getName(), values[i]);
+                    break;
+            }
+            if (id.getUnit() != null)
+                stat.setUnit(id.getUnit());
+        }
+        return stats;
+    }
+
+    public Statistics toStatistics() {
+        return writeTo(new Statistics());
+    }
+}
@@ -0,0 +1,102 @@
+package com.protoevo.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of numeric statistics, each declared once with a name, type and unit.
+ * <p>
+ * Every stat is given a dense index, so that the values of many stats can be recorded
+ * into the primitive arrays of a {@link StatRecord} rather than into a map of boxed values.
+ * Registering the same name twice returns the existing id, which lets subclasses share stats
+ * with the same meaning. Only boolean, integer and double stats can be registered.
+ */
+public class StatSchema {
+
+    public static final class Id {
+        private final int index;
+        private final String name;
+        private final Statistics.StatType type;
+        private final Statistics.ComplexUnit unit;
+
+        private Id(int index, String name, Statistics.StatType type, Statistics.ComplexUnit unit) {
+            this.index = index;
+            this.name = name;
+            this.type = type;
+            this.unit = unit;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Statistics.StatType getType() {
+            return type;
+        }
+
+        public Statistics.ComplexUnit getUnit() {
+            return unit;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private volatile Id[] ids = new Id[0];
+    private final Map<String, Id> idsByName = new HashMap<>();
+
+    public synchronized Id register(String name, Statistics.StatType type, Statistics.ComplexUnit unit) {
+        if (type == Statistics.StatType.STRING)
+            throw new IllegalArgumentException("Cannot register string stat " + name + " in a schema");
+
+        Id id = idsByName.get(name);
+        if (id != null) {
+            if (id.type != type)
+                throw new IllegalArgumentException(
+                        "Stat " + name + " is already registered as " + id.type + ", not " + type);
+            return id;
+        }
+
+        id = new Id(ids.length, name, type, unit);
+        idsByName.put(name, id);
+        Id[] grown = Arrays.copyOf(ids, ids.length + 1);
+        grown[id.index] = id;
+        ids = grown;
+        return id;
+    }
+
+    public Id register(String name, Statistics.ComplexUnit unit) {
+        return register(name, Statistics.StatType.DOUBLE, unit);
+    }
+
+    public Id register(String name) {
+        return register(name, Statistics.StatType.DOUBLE, null);
+    }
+
+    public Id registerCount(String name) {
+        return register(name, Statistics.StatType.INTEGER, Statistics.ComplexUnit.COUNT);
+    }
+
+    public Id registerBoolean(String name) {
+        return register(name, Statistics.StatType.BOOLEAN, null);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public Id get(int index) {
+        return ids[index];
+    }
+
+    public synchronized Id get(String name) {
+        return idsByName.get(name);
+    }
+}
@@ -0,0 +1,285 @@
+package com.protoevo.core;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Running summary of each stat of a {@link StatSchema}, accumulated over many {@link StatRecord}s.
+ * <p>
+ * For every stat it keeps the count, mean, sum of squared deviations, min and max, and optionally
+ * the same moments of the log of the positive values. Means and variances are updated with
+ * Welford's algorithm and two summaries are combined with the pairwise update of Chan et al.,
+ * so a population can be summarised in a single parallel reduction:
+ * <pre>
+ *     cells.parallelStream().collect(
+ *         () -> new StatSummary(schema, false),
+ *         (summary, cell) -> {
+ *             StatRecord record = summary.getScratchRecord();
+ *             record.clear();
+ *             cell.recordStats(record);
+ *             summary.accept(record);
+ *         },
+ *         StatSummary::merge);
+ * </pre>
+ * See https://en.wikipedia.org/wiki/Algorithms_for_calculating_variance
+ * <p>
+ * Summaries can also keep a {@link QuantileSketch} of each stat, from which medians, tails and
+ * histograms are read, at the cost of a few kilobytes per stat seen.
+ */
+public class StatSummary {
+
+    private final StatSchema schema;
+    private final boolean computeLogStats, computeDistributions;
+    private final StatRecord scratch;
+    private int samples;
+    private long[] counts;
+    private double[] means, m2s, mins, maxs;
+    private long[] logCounts;
+    private double[] logMeans, logM2s;
+    private QuantileSketch[] sketches;
+
+    public StatSummary(StatSchema schema, boolean computeLogStats) {
+        this(schema, computeLogStats, false);
+    }
+
+    public StatSummary(StatSchema schema, boolean computeLogStats, boolean computeDistributions) {
+        this.schema = schema;
+        this.computeLogStats = computeLogStats;
+        this.computeDistributions = computeDistributions;
+        this.scratch = new StatRecord(schema);
+        allocate(schema.size());
+    }
+
+    private void allocate(int n) {
+        counts = new long[n];
+        means = new double[n];
+        m2s = new double[n];
+        mins = new double[n];
+        maxs = new double[n];
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+        if (computeLogStats) {
+            logCounts = new long[n];
+            logMeans = new double[n];
+            logM2s = new double[n];
+        }
+        if (computeDistributions)
+            sketches = new QuantileSketch[n];
+    }
+
+    private void ensureCapacity(int n) {
+        // stats may be registered after the summary was created
+        if (n <= counts.length)
+            return;
+        int old = counts.length;
+        counts = Arrays.copyOf(counts, n);
+        means = Arrays.copyOf(means, n);
+        m2s = Arrays.copyOf(m2s, n);
+        mins = Arrays.copyOf(mins, n);
+        maxs = Arrays.copyOf(maxs, n);
+        Arrays.fill(mins, old, n, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, old, n, Double.NEGATIVE_INFINITY);
+        if (computeLogStats) {
+            logCounts = Arrays.copyOf(logCounts, n);
+            logMeans = Arrays.copyOf(logMeans, n);
+            logM2s = Arrays.copyOf(logM2s, n);
+        }
+        if (computeDistributions)
+            sketches = Arrays.copyOf(sketches, n);
+    }
+
+    /**
+     * @return a record owned by this summary that can be cleared and filled before calling
+     * {@link #accept(StatRecord)}, so that accumulating does not allocate per sample
+     */
+    public StatRecord getScratchRecord() {
+        return scratch;
+    }
+
+    public void accept(StatRecord record) {
+        samples++;
+        ensureCapacity(record.capacity());
+        for (int i = 0; i < record.capacity(); i++) {
+            if (!record.has(i))
+                continue;
+            double value = record.get(i);
+            long count = ++counts[i];
+            double delta = value - means[i];
+            means[i] += delta / count;
+            m2s[i] += delta * (value - means[i]);
+            if (value < mins[i]) mins[i] = value;
+            if (value > maxs[i]) maxs[i] = value;
+
+            if (computeLogStats && value > 0) {
+                double logValue = Math.log(value);
+                long logCount = ++logCounts[i];
+                double logDelta = logValue - logMeans[i];
+                logMeans[i] += logDelta / logCount;
+                logM2s[i] += logDelta * (logValue - logMeans[i]);
+            }
+
+            if (computeDistributions) {
+                if (sketches[i] == null)
+                    sketches[i] = new QuantileSketch();
+                sketches[i].add(value);
+            }
+        }
+    }
+
+    private static double mergeMean(double meanA, long countA, double meanB, long countB) {
+        return meanA + (meanB - meanA) * countB / (countA + countB);
+    }
+
+    private static double mergeM2(double meanA, double m2A, long countA, double meanB, double m2B, long countB) {
+        double delta = meanB - meanA;
+        return m2A + m2B + delta * delta * countA * countB / (countA + countB);
+    }
+
+    /**
+     * Combines the samples of another summary of the same schema into this one.
+     * The other summary should not be used afterwards, as its sketches may now be shared.
+     * @return this summary
+     */
+    public StatSummary merge(StatSummary other) {
+        if (other.schema != schema || other.computeLogStats != computeLogStats
+                || other.computeDistributions != computeDistributions)
+            throw new IllegalArgumentException("Cannot merge summaries of different schemas");
+
+        samples += other.samples;
+        ensureCapacity(other.counts.length);
+        for (int i = 0; i < other.counts.length; i++) {
+            long countB = other.counts[i];
+            if (countB == 0)
+                continue;
+            long countA = counts[i];
+            m2s[i] = mergeM2(means[i], m2s[i], countA, other.means[i], other.m2s[i], countB);
+            means[i] = mergeMean(means[i], countA, other.means[i], countB);
+            counts[i] = countA + countB;
+            mins[i] = Math.min(mins[i], other.mins[i]);
+            maxs[i] = Math.max(maxs[i], other.maxs[i]);
+
+            if (computeLogStats && other.logCounts[i] > 0) {
+                long logCountA = logCounts[i], logCountB = other.logCounts[i];
+                logM2s[i] = mergeM2(logMeans[i], logM2s[i], logCountA, other.logMeans[i], other.logM2s[i], logCountB);
+                logMeans[i] = mergeMean(logMeans[i], logCountA, other.logMeans[i], logCountB);
+                logCounts[i] = logCountA + logCountB;
+            }
+
+            if (computeDistributions) {
+                if (sketches[i] == null)
+                    sketches[i] = other.sketches[i];
+                else
+                    sketches[i].merge(other.sketches[i]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return the number of records accepted, whether or not they held any stats
+     */
+    public int getSamples() {
+        return samples;
+    }
+
+    private boolean inRange(StatSchema.Id id) {
+        return id.getIndex() < counts.length;
+    }
+
+    public long getCount(StatSchema.Id id) {
+        return inRange(id) ? counts[id.getIndex()] : 0;
+    }
+
+    public double getMean(StatSchema.Id id) {
+        return getCount(id) > 0 ? means[id.getIndex()] : Double.NaN;
+    }
+
+    /**
+     * @return the population variance of the stat
+     */
+    public double getVariance(StatSchema.Id id) {
+        long count = getCount(id);
+        return count > 0 ? m2s[id.getIndex()] / count : Double.NaN;
+    }
+
+    public double getMin(StatSchema.Id id) {
+        return getCount(id) > 0 ? mins[id.getIndex()] : Double.NaN;
+    }
+
+    public double getMax(StatSchema.Id id) {
+        return getCount(id) > 0 ? maxs[id.getIndex()] : Double.NaN;
+    }
+
+    public long getLogCount(StatSchema.Id id) {
+        return computeLogStats && inRange(id) ? logCounts[id.getIndex()] : 0;
+    }
+
+    public double getLogMean(StatSchema.Id id) {
+        return getLogCount(id) > 0 ? logMeans[id.getIndex()] : Double.NaN;
+    }
+
+    public double getLogVariance(StatSchema.Id id) {
+        long count = getLogCount(id);
+        return count > 0 ? logM2s[id.getIndex()] / count : Double.NaN;
+    }
+
+    /**
+     * @return the distribution of the stat, or null if it was not seen or distributions are not being computed
+     */
+    public StatDistribution getDistribution(StatSchema.Id id) {
+        if (!computeDistributions || getCount(id) == 0)
+            return null;
+        int i = id.getIndex();
+        return new StatDistribution(sketches[i], mins[i], maxs[i]);
+    }
+
+    /**
+     * @return the distribution of each stat that was seen, by name in schema order,
+     * or an empty map if distributions are not being computed
+     */
+    public Map<String, StatDistribution> getDistributions() {
+        Map<String, StatDistribution> distributions = new LinkedHashMap<>();
+        if (!computeDistributions)
+            return distributions;
+        for (int i = 0; i < counts.length; i++)
+            if (counts[i] > 0)
+                distributions.put(schema.get(i).getName(), new StatDistribution(sketches[i], mins[i], maxs[i]));
+        return distributions;
+    }
+
+    /**
+     * Puts the summary of each stat that was seen into the given statistics, using the names
+     * "X Mean", "X Min", "X Max", "X Count" and "X Log Mean", with the standard deviations
+     * as the errors of the means.
+     * The count of a stat is left out when it was recorded for every sample,
+     * as it is then the same as the number of samples.
+     * @param stats the statistics to write into
+     * @param includeRange whether to include the min and max of each stat
+     * @return the given statistics
+     */
+    public Statistics writeTo(Statistics stats, boolean includeRange) {
+        for (int i = 0; i < counts.length; i++) {
+            long count = counts[i];
+            if (count == 0)
+                continue;
+            StatSchema.Id id = schema.get(i);
+            String name = id.getName();
+            Statistics.ComplexUnit unit = id.getUnit();
+
+            Statistics.Stat mean = stats.put(name + " Mean", means[i], unit);
+            mean.setError(Math.sqrt(m2s[i] / count));
+            if (includeRange) {
+                stats.put(name + " Max", maxs[i], unit);
+                stats.put(name + " Min", mins[i], unit);
+            }
+            if (count != samples)
+                stats.putCount(name + " Count", (int) count);
+            if (computeLogStats && logCounts[i] > 0) {
+                Statistics.Stat logMean = stats.put(name + " Log Mean", logMeans[i]);
+                logMean.setError(Math.sqrt(logM2s[i] / logCounts[i]));
+            }
+        }
+        return stats;
+    }
+}
@@ -286,10 +286,22 @@ public class Statistics implements Serializable, Iterable<Statistics.Stat> {
             return name;
         }
 
+        public StatType getType() {
+            return type;
+        }
+
         public ComplexUnit getUnit() {
             return unit;
         }
 
+        public double getError() {
+            return error;
+        }
+
+        public void setError(double error) {
+            this.error = error;
+        }
+
         public void setUnitMultipliers(Map<BaseUnit, Double> unitMultipliers) {
             this.unitMultipliers = unitMultipliers;
         }
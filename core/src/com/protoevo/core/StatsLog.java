@@ -0,0 +1,765 @@
+package com.protoevo.core;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * An append-only log of the statistics snapshots of a simulation, with one row per snapshot
+ * and one column per stat, or per field of the distribution of a protozoa stat.
+ * <p>
+ * Every column is given a dense id the first time it appears, which it keeps for the rest of the run,
+ * and its name, type and unit are written once, when it is defined, rather than in every row.
+ * Rows are buffered in memory and written as blocks in which each column is stored contiguously,
+ * so that appending a snapshot only copies its values into the buffer. A block is written and
+ * synced to disk every {@link #FLUSH_ROWS} rows, or once {@link #FLUSH_INTERVAL_MILLIS} has passed
+ * since the last, and when the log is flushed or closed.
+ * <p>
+ * The file is a header followed by records, each a type and a length followed by its payload:
+ * <ul>
+ *     <li>columns: the columns defined since the last such record, as their kind, type, name,
+ *     distribution field and unit exponents</li>
+ *     <li>rows: the number of rows and of columns the block covers, the time stamp of each row,
+ *     then for each column a flag and its values, and its errors if any are non-zero</li>
+ * </ul>
+ * A stat missing from a row is stored as a particular NaN, distinct from a stat whose value is NaN.
+ * A record cut short by a crash is dropped when the log is next opened.
+ * <p>
+ * Reading the history of a run is a single sequential read of the log, see {@link #read(Path)}.
+ * The history can be exported to CSV or newline-delimited JSON for analysis in Python, the latter
+ * with the same layout as the JSON summaries that were written before this log existed.
+ */
+public class StatsLog implements Closeable {
+
+    public static final String LOG_FILE = "stats.log";
+    public static final String CSV_FILE = "stats.csv";
+    public static final String NDJSON_FILE = "stats.ndjson";
+    public static final int FLUSH_ROWS = 32;
+    public static final long FLUSH_INTERVAL_MILLIS = 5 * 60 * 1000;
+
+    private static final int MAGIC = 0x5045534C;
+    private static final int VERSION = 1;
+    private static final int RECORD_HEADER_SIZE = 5;
+    private static final byte COLUMNS = 0, ROWS = 1;
+    private static final byte ALL_MISSING = 1, HAS_ERRORS = 2;
+    private static final long MISSING_BITS = 0x7ff800004d495353L;
+    private static final double MISSING = Double.longBitsToDouble(MISSING_BITS);
+
+    /**
+     * The fields of a {@link StatDistribution} given a column each, other than the quantiles and bins.
+     */
+    private static final String COUNT = "count", MIN = "min", MAX = "max", BIN = "bin";
+
+    public enum ColumnKind { STAT, DISTRIBUTION }
+
+    public static class Column {
+        private final int id;
+        private final ColumnKind kind;
+        private final Statistics.StatType type;
+        private final String name, field;
+        private final Statistics.ComplexUnit unit;
+
+        private Column(int id, ColumnKind kind, Statistics.StatType type, String name, String field,
+                       Statistics.ComplexUnit unit) {
+            this.id = id;
+            this.kind = kind;
+            this.type = type;
+            this.name = name;
+            this.field = field;
+            this.unit = unit;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public ColumnKind getKind() {
+            return kind;
+        }
+
+        public Statistics.StatType getType() {
+            return type;
+        }
+
+        /**
+         * @return the name of the stat, which for a distribution is the stat the distribution is of
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the field of the distribution held by the column, such as "p50" or "bin3", or an empty
+         * string for a stat
+         */
+        public String getField() {
+            return field;
+        }
+
+        public Statistics.ComplexUnit getUnit() {
+            return unit;
+        }
+
+        /**
+         * @return the name of the column in exports, which for a distribution is the stat and field
+         */
+        public String getLabel() {
+            return kind == ColumnKind.STAT ? name : name + " " + field;
+        }
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final List<Column> columns = new ArrayList<>();
+    private final Map<String, Column> statColumns = new HashMap<>();
+    // the columns of each distribution, in the order they were defined: the count, min, max, quantiles then bins
+    private final Map<String, List<Column>> distributionColumns = new HashMap<>();
+    private int definedColumns;
+    private final List<Row> buffered = new ArrayList<>();
+    private long lastFlushTime = System.currentTimeMillis();
+
+    private StatsLog(Path path) throws IOException {
+        this.path = path;
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        channel = AppendOnlyFile.open(path, MAGIC, VERSION);
+        long end = parse(AppendOnlyFile.readAll(channel), columns, null);
+        for (Column column : columns) {
+            if (column.kind == ColumnKind.STAT)
+                statColumns.put(column.name, column);
+            else
+                distributionColumns.computeIfAbsent(column.name, name -> new ArrayList<>()).add(column);
+        }
+        definedColumns = columns.size();
+        // drop a record that was only partly written before the last run stopped
+        AppendOnlyFile.truncate(channel, end);
+    }
+
+    /**
+     * Opens the log at the given path to append to, creating it if it does not exist.
+     */
+    public static StatsLog open(Path path) throws IOException {
+        return new StatsLog(path);
+    }
+
+    public static Path getPath(String simulationName) {
+        return Paths.get("saves/" + simulationName + "/stats/" + LOG_FILE);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    private Column addColumn(ColumnKind kind, Statistics.StatType type, String name, String field,
+                             Statistics.ComplexUnit unit) {
+        Column column = new Column(columns.size(), kind, type, name, field,
+                unit == null ? null : new Statistics.ComplexUnit(unit));
+        columns.add(column);
+        return column;
+    }
+
+    private Column getStatColumn(Statistics.Stat stat) {
+        Column column = statColumns.get(stat.getName());
+        if (column == null) {
+            column = addColumn(ColumnKind.STAT, stat.getType(), stat.getName(), "", stat.getUnit());
+            statColumns.put(stat.getName(), column);
+        }
+        return column;
+    }
+
+    /**
+     * @return the columns of the distribution of the given stat, with enough bin columns for the given number of bins
+     */
+    private List<Column> getDistributionColumns(String name, int bins) {
+        List<Column> fields = distributionColumns.get(name);
+        if (fields == null) {
+            fields = new ArrayList<>();
+            fields.add(addColumn(ColumnKind.DISTRIBUTION, Statistics.StatType.INTEGER, name, COUNT, null));
+            fields.add(addColumn(ColumnKind.DISTRIBUTION, Statistics.StatType.DOUBLE, name, MIN, null));
+            fields.add(addColumn(ColumnKind.DISTRIBUTION, Statistics.StatType.DOUBLE, name, MAX, null));
+            for (double q : StatDistribution.QUANTILES)
+                fields.add(addColumn(ColumnKind.DISTRIBUTION, Statistics.StatType.DOUBLE,
+                        name, StatDistribution.quantileName(q), null));
+            distributionColumns.put(name, fields);
+        }
+        int firstBin = 3 + StatDistribution.QUANTILES.length;
+        for (int i = fields.size() - firstBin; i < bins; i++)
+            fields.add(addColumn(ColumnKind.DISTRIBUTION, Statistics.StatType.INTEGER, name, BIN + i, null));
+        return fields;
+    }
+
+    /**
+     * The values of a row as they are appended, indexed by column id.
+     */
+    private static class Row {
+        private final long timeStamp;
+        private double[] values;
+        private double[] errors;
+
+        private Row(long timeStamp, int columns) {
+            this.timeStamp = timeStamp;
+            values = new double[columns];
+            Arrays.fill(values, MISSING);
+        }
+
+        private void put(Column column, double value) {
+            if (column.id >= values.length) {
+                int length = values.length;
+                values = Arrays.copyOf(values, Math.max(column.id + 1, 2 * length));
+                Arrays.fill(values, length, values.length, MISSING);
+            }
+            values[column.id] = value;
+        }
+
+        private void putError(Column column, double error) {
+            if (errors == null)
+                errors = new double[values.length];
+            else if (column.id >= errors.length)
+                errors = Arrays.copyOf(errors, values.length);
+            errors[column.id] = error;
+        }
+
+        private double getValue(int column) {
+            return column < values.length ? values[column] : MISSING;
+        }
+
+        private double getError(int column) {
+            return errors != null && column < errors.length ? errors[column] : 0;
+        }
+    }
+
+    /**
+     * Appends a row for a snapshot taken at the given time, writing it along with the rows before it
+     * if it is time to flush. String stats are not logged.
+     * @param timeStamp the time the snapshot was taken, in milliseconds since the epoch
+     */
+    public synchronized void append(long timeStamp, Statistics stats,
+                                    Map<String, StatDistribution> distributions) throws IOException {
+        Row row = new Row(timeStamp, columns.size());
+        for (Statistics.Stat stat : stats.getStats()) {
+            if (!stat.canBeNumeric() || stat.getValue() == null)
+                continue;
+            Column column = getStatColumn(stat);
+            row.put(column, stat.getDouble());
+            if (stat.getError() != 0)
+                row.putError(column, stat.getError());
+        }
+        if (distributions != null) {
+            for (Map.Entry<String, StatDistribution> entry : distributions.entrySet()) {
+                StatDistribution distribution = entry.getValue();
+                long[] bins = distribution.getBinCounts();
+                Iterator<Column> fields = getDistributionColumns(entry.getKey(), bins.length).iterator();
+                row.put(fields.next(), distribution.getCount());
+                row.put(fields.next(), distribution.getMin());
+                row.put(fields.next(), distribution.getMax());
+                for (double quantile : distribution.getQuantiles().values())
+                    row.put(fields.next(), quantile);
+                for (long count : bins)
+                    row.put(fields.next(), count);
+            }
+        }
+
+        buffered.add(row);
+        if (buffered.size() >= FLUSH_ROWS
+                || System.currentTimeMillis() - lastFlushTime >= FLUSH_INTERVAL_MILLIS)
+            flush();
+    }
+
+    /**
+     * Writes the buffered rows and syncs the log to disk.
+     */
+    public synchronized void flush() throws IOException {
+        lastFlushTime = System.currentTimeMillis();
+        if (buffered.isEmpty())
+            return;
+
+        ByteBuffer rows = encodeRows();
+        if (definedColumns < columns.size()) {
+            ByteBuffer newColumns = encodeColumns(columns.subList(definedColumns, columns.size()));
+            AppendOnlyFile.append(channel, recordHeader(COLUMNS, newColumns), newColumns,
+                    recordHeader(ROWS, rows), rows);
+            definedColumns = columns.size();
+        } else {
+            AppendOnlyFile.append(channel, recordHeader(ROWS, rows), rows);
+        }
+
+        buffered.clear();
+    }
+
+    private static ByteBuffer recordHeader(byte type, ByteBuffer payload) {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        header.put(type).putInt(payload.remaining()).flip();
+        return header;
+    }
+
+    private static void putString(ByteBuffer buffer, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer encodeColumns(List<Column> newColumns) {
+        int size = 4;
+        for (Column column : newColumns)
+            size += 2 + (2 + 3 * column.name.length()) + (2 + 3 * column.field.length())
+                    + 1 + 2 * Statistics.BaseUnit.values().length;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(newColumns.size());
+        for (Column column : newColumns) {
+            buffer.put((byte) column.kind.ordinal());
+            buffer.put((byte) column.type.ordinal());
+            putString(buffer, column.name);
+            putString(buffer, column.field);
+            if (column.unit == null) {
+                buffer.put((byte) -1);
+                continue;
+            }
+            int exponents = 0;
+            for (Statistics.BaseUnit unit : Statistics.BaseUnit.values())
+                if (column.unit.getExponent(unit) != 0)
+                    exponents++;
+            buffer.put((byte) exponents);
+            for (Statistics.BaseUnit unit : Statistics.BaseUnit.values()) {
+                if (column.unit.getExponent(unit) != 0) {
+                    buffer.put((byte) unit.ordinal());
+                    buffer.put((byte) column.unit.getExponent(unit));
+                }
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void decodeColumns(ByteBuffer buffer, List<Column> columns) {
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            ColumnKind kind = ColumnKind.values()[buffer.get()];
+            Statistics.StatType type = Statistics.StatType.values()[buffer.get()];
+            String name = getString(buffer);
+            String field = getString(buffer);
+            int exponents = buffer.get();
+            Statistics.ComplexUnit unit = exponents < 0 ? null : new Statistics.ComplexUnit();
+            for (int e = 0; e < exponents; e++)
+                unit.multiply(Statistics.BaseUnit.values()[buffer.get()], buffer.get());
+            columns.add(new Column(columns.size(), kind, type, name, field, unit));
+        }
+    }
+
+    private ByteBuffer encodeRows() {
+        int rows = buffered.size();
+        int numColumns = columns.size();
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 8 * rows + numColumns * (1 + 16 * rows));
+        buffer.putInt(rows);
+        buffer.putInt(numColumns);
+        for (Row row : buffered)
+            buffer.putLong(row.timeStamp);
+
+        for (int c = 0; c < numColumns; c++) {
+            boolean allMissing = true, hasErrors = false;
+            for (Row row : buffered) {
+                if (Double.doubleToRawLongBits(row.getValue(c)) != MISSING_BITS)
+                    allMissing = false;
+                if (row.getError(c) != 0)
+                    hasErrors = true;
+            }
+            buffer.put((byte) ((allMissing ? ALL_MISSING : 0) | (hasErrors ? HAS_ERRORS : 0)));
+            if (allMissing)
+                continue;
+            for (Row row : buffered)
+                buffer.putDouble(row.getValue(c));
+            if (hasErrors) {
+                for (Row row : buffered)
+                    buffer.putDouble(row.getError(c));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads the records of a log, adding the columns it defines to the given list and,
+     * if given a history, its rows to the history.
+     * @return the position of the end of the last complete record
+     */
+    private static long parse(ByteBuffer bytes, List<Column> columns, History history) {
+        AppendOnlyFile.checkHeader(bytes, MAGIC, VERSION, "stats log");
+        return AppendOnlyFile.scan(bytes, RECORD_HEADER_SIZE, AppendOnlyFile::lengthAtEnd, (header, payload) -> {
+            byte type = header.get(0);
+            if (type == COLUMNS)
+                decodeColumns(payload, columns);
+            else if (type == ROWS && history != null)
+                history.addBlock(payload);
+        });
+    }
+
+    /**
+     * Counts the rows in a log without decoding them, skipping from one record to the next.
+     */
+    private static int countRows(ByteBuffer bytes) {
+        ByteBuffer records = bytes.duplicate();
+        AppendOnlyFile.checkHeader(records, MAGIC, VERSION, "stats log");
+        int[] rows = {0};
+        AppendOnlyFile.scan(records, RECORD_HEADER_SIZE, AppendOnlyFile::lengthAtEnd, (header, payload) -> {
+            if (header.get(0) == ROWS)
+                rows[0] += payload.getInt(0);
+        });
+        return rows[0];
+    }
+
+    /**
+     * Reads the whole history of a log in one pass over the file.
+     * Rows that are still buffered by a log open for appending are not included.
+     */
+    public static History read(Path path) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        History history = new History(countRows(bytes));
+        parse(bytes, history.columns, history);
+        return history;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * The rows of a log, held as one array per column.
+     */
+    public static class History {
+        private final List<Column> columns = new ArrayList<>();
+        private final long[] timeStamps;
+        private final List<double[]> values = new ArrayList<>(), errors = new ArrayList<>();
+        private int rows;
+
+        private History(int capacity) {
+            timeStamps = new long[capacity];
+        }
+
+        private double[] getOrCreate(List<double[]> arrays, int column, double fill) {
+            while (arrays.size() <= column)
+                arrays.add(null);
+            double[] array = arrays.get(column);
+            if (array == null) {
+                array = new double[timeStamps.length];
+                Arrays.fill(array, fill);
+                arrays.set(column, array);
+            }
+            return array;
+        }
+
+        private void addBlock(ByteBuffer block) {
+            int blockRows = block.getInt();
+            int blockColumns = block.getInt();
+            for (int r = 0; r < blockRows; r++)
+                timeStamps[rows + r] = block.getLong();
+            for (int c = 0; c < blockColumns; c++) {
+                byte flags = block.get();
+                if ((flags & ALL_MISSING) != 0)
+                    continue;
+                double[] columnValues = getOrCreate(values, c, MISSING);
+                for (int r = 0; r < blockRows; r++)
+                    columnValues[rows + r] = block.getDouble();
+                if ((flags & HAS_ERRORS) != 0) {
+                    double[] columnErrors = getOrCreate(errors, c, 0);
+                    for (int r = 0; r < blockRows; r++)
+                        columnErrors[rows + r] = block.getDouble();
+                }
+            }
+            rows += blockRows;
+        }
+
+        public int getRowCount() {
+            return rows;
+        }
+
+        public List<Column> getColumns() {
+            return Collections.unmodifiableList(columns);
+        }
+
+        /**
+         * @return the column of the given stat, or null if it was never logged
+         */
+        public Column getColumn(String name) {
+            for (Column column : columns)
+                if (column.kind == ColumnKind.STAT && column.name.equals(name))
+                    return column;
+            return null;
+        }
+
+        /**
+         * @return the time the snapshot of the given row was taken, in milliseconds since the epoch
+         */
+        public long getTimeStamp(int row) {
+            return timeStamps[row];
+        }
+
+        public boolean has(Column column, int row) {
+            double[] columnValues = column.id < values.size() ? values.get(column.id) : null;
+            return columnValues != null && Double.doubleToRawLongBits(columnValues[row]) != MISSING_BITS;
+        }
+
+        /**
+         * @return the value of the column in the given row, or NaN if it is missing from the row
+         */
+        public double getValue(Column column, int row) {
+            return has(column, row) ? values.get(column.id)[row] : Double.NaN;
+        }
+
+        public double getError(Column column, int row) {
+            double[] columnErrors = column.id < errors.size() ? errors.get(column.id) : null;
+            return columnErrors == null ? 0 : columnErrors[row];
+        }
+
+        private boolean hasErrors(Column column) {
+            return column.id < errors.size() && errors.get(column.id) != null;
+        }
+
+        /**
+         * @return the stats of the given row, as they were when the snapshot was taken
+         */
+        public Statistics getStatistics(int row) {
+            Statistics stats = new Statistics();
+            for (Column column : columns) {
+                if (column.kind != ColumnKind.STAT || !has(column, row))
+                    continue;
+                Statistics.Stat stat = stats.put(column.name, column.type, box(column.type, values.get(column.id)[row]));
+                stat.setUnit(column.unit);
+                stat.setError(getError(column, row));
+            }
+            return stats;
+        }
+
+        private static Comparable<?> box(Statistics.StatType type, double value) {
+            switch (type) {
+                case BOOLEAN:
+                    return value != 0;
+                case INTEGER:
+                    return (int) value;
+                default:
+                    return value;
+            }
+        }
+
+        private static String formatTimeStamp(SimpleDateFormat format, long timeStamp) {
+            return format.format(new Date(timeStamp));
+        }
+
+        private static String csvValue(Column column, double value) {
+            if (Double.isNaN(value))
+                return "NaN";
+            switch (column.type) {
+                case BOOLEAN:
+                    return value != 0 ? "true" : "false";
+                case INTEGER:
+                    return Long.toString((long) value);
+                default:
+                    return Double.toString(value);
+            }
+        }
+
+        private static String csvQuote(String string) {
+            if (string.indexOf(',') < 0 && string.indexOf('"') < 0 && string.indexOf('\n') < 0)
+                return string;
+            return '"' + string.replace("\"", "\"\"") + '"';
+        }
+
+        /**
+         * Writes the history as CSV, with a column for the time stamp, one for each logged column and one
+         * for the errors of each stat that ever had any. Values missing from a row are left empty.
+         */
+        public void writeCsv(Writer writer) throws IOException {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss");
+            StringBuilder line = new StringBuilder("Time Stamp");
+            for (Column column : columns) {
+                line.append(',').append(csvQuote(column.getLabel()));
+                if (hasErrors(column))
+                    line.append(',').append(csvQuote(column.getLabel() + " Error"));
+            }
+            writer.write(line.append('\n').toString());
+
+            for (int r = 0; r < rows; r++) {
+                line.setLength(0);
+                line.append(formatTimeStamp(format, timeStamps[r]));
+                for (Column column : columns) {
+                    line.append(',');
+                    if (has(column, r))
+                        line.append(csvValue(column, values.get(column.id)[r]));
+                    if (hasErrors(column)) {
+                        line.append(',');
+                        if (has(column, r))
+                            line.append(getError(column, r));
+                    }
+                }
+                writer.write(line.append('\n').toString());
+            }
+            writer.flush();
+        }
+
+        private static void writeJsonValue(JsonGenerator json, Column column, double value) throws IOException {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                json.writeString(Double.toString(value));
+                return;
+            }
+            switch (column.type) {
+                case BOOLEAN:
+                    json.writeBoolean(value != 0);
+                    break;
+                case INTEGER:
+                    json.writeNumber((long) value);
+                    break;
+                default:
+                    json.writeNumber(value);
+            }
+        }
+
+        private static void writeJsonUnit(JsonGenerator json, Statistics.ComplexUnit unit) throws IOException {
+            if (unit == null) {
+                json.writeNull();
+                return;
+            }
+            json.writeStartObject();
+            json.writeObjectFieldStart("units");
+            for (Statistics.BaseUnit base : Statistics.BaseUnit.values())
+                if (unit.getExponent(base) != 0)
+                    json.writeNumberField(base.name(), unit.getExponent(base));
+            json.writeEndObject();
+            json.writeEndObject();
+        }
+
+        private void writeJsonDistribution(JsonGenerator json, List<Column> fields, int row) throws IOException {
+            json.writeStartObject();
+            List<Column> bins = new ArrayList<>();
+            double min = Double.NaN, max = Double.NaN;
+            boolean quantilesStarted = false;
+            for (Column column : fields) {
+                if (!has(column, row))
+                    continue;
+                double value = values.get(column.id)[row];
+                if (column.field.startsWith(BIN)) {
+                    bins.add(column);
+                    continue;
+                }
+                boolean quantile = !column.field.equals(COUNT) && !column.field.equals(MIN) && !column.field.equals(MAX);
+                if (quantile && !quantilesStarted) {
+                    json.writeObjectFieldStart("quantiles");
+                    quantilesStarted = true;
+                } else if (!quantile && quantilesStarted) {
+                    json.writeEndObject();
+                    quantilesStarted = false;
+                }
+                if (column.field.equals(MIN))
+                    min = value;
+                else if (column.field.equals(MAX))
+                    max = value;
+                json.writeFieldName(column.field);
+                writeJsonValue(json, column, value);
+            }
+            if (quantilesStarted)
+                json.writeEndObject();
+
+            // the bins have equal widths between the min and max, as in StatDistribution
+            json.writeArrayFieldStart("binEdges");
+            for (int i = 0; i <= bins.size(); i++)
+                json.writeNumber(i == bins.size() ? max : min + i * (max - min) / bins.size());
+            json.writeEndArray();
+            json.writeArrayFieldStart("binCounts");
+            for (Column bin : bins)
+                json.writeNumber((long) values.get(bin.id)[row]);
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+
+        /**
+         * Writes the history as newline-delimited JSON, one object per row, each laid out as the JSON summaries
+         * written before this log existed, with the addition of the time stamp of the row.
+         */
+        public void writeNdjson(Writer writer) throws IOException {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss");
+            Map<String, List<Column>> distributionColumns = new LinkedHashMap<>();
+            for (Column column : columns)
+                if (column.kind == ColumnKind.DISTRIBUTION)
+                    distributionColumns.computeIfAbsent(column.name, name -> new ArrayList<>()).add(column);
+
+            JsonGenerator json = new JsonFactory().createGenerator(writer);
+            json.setRootValueSeparator(null);
+            for (int r = 0; r < rows; r++) {
+                json.writeStartObject();
+                json.writeStringField("time_stamp", formatTimeStamp(format, timeStamps[r]));
+                json.writeObjectFieldStart("stats");
+                for (Column column : columns) {
+                    if (column.kind != ColumnKind.STAT || !has(column, r))
+                        continue;
+                    json.writeObjectFieldStart(column.name);
+                    json.writeStringField("name", column.name);
+                    json.writeStringField("type", column.type.name());
+                    json.writeFieldName("value");
+                    writeJsonValue(json, column, values.get(column.id)[r]);
+                    json.writeNumberField("error", getError(column, r));
+                    json.writeFieldName("unit");
+                    writeJsonUnit(json, column.unit);
+                    json.writeEndObject();
+                }
+                json.writeEndObject();
+
+                json.writeObjectFieldStart("distributions");
+                for (Map.Entry<String, List<Column>> entry : distributionColumns.entrySet()) {
+                    // the count is the first column of a distribution, and is logged whenever the distribution is
+                    if (!has(entry.getValue().get(0), r))
+                        continue;
+                    json.writeFieldName(entry.getKey());
+                    writeJsonDistribution(json, entry.getValue(), r);
+                }
+                json.writeEndObject();
+                json.writeEndObject();
+                json.flush();
+                writer.write('\n');
+            }
+            json.flush();
+        }
+    }
+
+    /**
+     * Exports the log of a simulation to CSV and newline-delimited JSON, next to the log.
+     */
+    public static void export(Path logPath) throws IOException {
+        History history = read(logPath);
+        Path dir = logPath.toAbsolutePath().getParent();
+        try (Writer writer = Files.newBufferedWriter(dir.resolve(CSV_FILE), StandardCharsets.UTF_8)) {
+            history.writeCsv(writer);
+        }
+        try (Writer writer = Files.newBufferedWriter(dir.resolve(NDJSON_FILE), StandardCharsets.UTF_8)) {
+            history.writeNdjson(writer);
+        }
+    }
+
+    /**
+     * Exports the stats log of the named simulation, or of the log at the given path, for analysis in Python.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: StatsLog <simulation name or path to " + LOG_FILE + ">");
+            return;
+        }
+        Path logPath = args[0].endsWith(LOG_FILE) ? Paths.get(args[0]) : getPath(args[0]);
+        export(logPath);
+        System.out.println("Exported " + logPath + " to " + CSV_FILE + " and " + NDJSON_FILE);
+    }
+}
@@ -0,0 +1,255 @@
+package com.protoevo.env;
+
+import com.protoevo.biology.cells.Cell;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A table of the cells in a save, with where each one is and which record of which segment holds it,
+ * so that a save can be browsed, and single cells loaded from it, without reading its segments.
+ * <p>
+ * The index is written next to the manifest as a header naming the cell classes, followed by
+ * one entry of fixed size per cell, sorted by id. Entries are read straight from the file,
+ * which is memory mapped, rather than being copied onto the heap.
+ * The index records when the save it describes was taken, so that an index left behind by an
+ * earlier save in the same directory is never mistaken for the current one.
+ */
+public class CellIndex {
+
+    public static final String INDEX_FILE = "cells.idx";
+
+    private static final int MAGIC = 0x50454349;
+    private static final int VERSION = 1;
+    static final int ENTRY_SIZE = 36;
+    private static final int ID = 0, RECORD_KEY = 8, X = 16, Y = 20, RADIUS = 24,
+            GENERATION = 28, SEGMENT = 32, CLASS = 34, FLAGS = 35;
+    private static final byte ENGULFED = 1;
+
+    /**
+     * The entries of the cells of one segment, as they are serialised.
+     */
+    public static class Entries {
+        private final int segment;
+        private final List<String> classNames;
+        private ByteBuffer buffer;
+
+        /**
+         * @param classNames the names of the classes indexed so far, shared by the entries of every segment
+         */
+        public Entries(int segment, List<String> classNames, int expectedCells) {
+            this.segment = segment;
+            this.classNames = classNames;
+            this.buffer = ByteBuffer.allocate(Math.max(1, expectedCells) * ENTRY_SIZE);
+        }
+
+        public void add(long recordKey, Cell cell) {
+            add(cell.getId(), recordKey, cell.getPos().x, cell.getPos().y, cell.getRadius(),
+                    cell.getGeneration(), cell.getClass(), cell.isEngulfed());
+        }
+
+        public void add(long id, long recordKey, float x, float y, float radius, int generation,
+                        Class<? extends Cell> cellClass, boolean engulfed) {
+            if (buffer.remaining() < ENTRY_SIZE) {
+                ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            int classIndex;
+            synchronized (classNames) {
+                classIndex = classNames.indexOf(cellClass.getName());
+                if (classIndex < 0) {
+                    classIndex = classNames.size();
+                    classNames.add(cellClass.getName());
+                }
+            }
+            buffer.putLong(id);
+            buffer.putLong(recordKey);
+            buffer.putFloat(x);
+            buffer.putFloat(y);
+            buffer.putFloat(radius);
+            buffer.putInt(generation);
+            buffer.putShort((short) segment);
+            buffer.put((byte) classIndex);
+            buffer.put(engulfed ? ENGULFED : 0);
+        }
+
+        private int size() {
+            return buffer.position() / ENTRY_SIZE;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int entriesStart, size;
+    private final long takenAt;
+    private final List<Class<? extends Cell>> classes = new ArrayList<>();
+
+    private CellIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new RuntimeException("Not a cell index, or written by an unsupported version");
+        takenAt = buffer.getLong(8);
+        size = buffer.getInt(16);
+        int numClasses = buffer.get(20);
+        ByteBuffer header = buffer.duplicate();
+        header.position(21);
+        for (int i = 0; i < numClasses; i++) {
+            byte[] name = new byte[header.getShort()];
+            header.get(name);
+            String className = new String(name, StandardCharsets.UTF_8);
+            try {
+                classes.add(Class.forName(className).asSubclass(Cell.class));
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException("Cell index refers to unknown cell class " + className, e);
+            }
+        }
+        entriesStart = header.position();
+    }
+
+    static byte[] toBytes(long takenAt, List<String> classNames, List<Entries> segments) {
+        if (classNames.size() > Byte.MAX_VALUE)
+            throw new RuntimeException("Too many cell classes to index: " + classNames.size());
+        int size = 0;
+        for (Entries entries : segments)
+            size += entries.size();
+
+        ByteBuffer entries = ByteBuffer.allocate(size * ENTRY_SIZE);
+        for (Entries segment : segments)
+            entries.put(segment.buffer.array(), 0, segment.buffer.position());
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparingLong(i -> entries.getLong(i * ENTRY_SIZE + ID)));
+
+        int headerSize = 21;
+        List<byte[]> names = new ArrayList<>();
+        for (String className : classNames) {
+            byte[] name = className.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            headerSize += 2 + name.length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(headerSize + size * ENTRY_SIZE);
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putLong(takenAt);
+        out.putInt(size);
+        out.put((byte) names.size());
+        for (byte[] name : names) {
+            out.putShort((short) name.length);
+            out.put(name);
+        }
+        for (int i : order)
+            out.put(entries.array(), i * ENTRY_SIZE, ENTRY_SIZE);
+        return out.array();
+    }
+
+    public static void write(Path dir, long takenAt, List<String> classNames, List<Entries> segments)
+            throws IOException {
+        EnvironmentSnapshot.writeAtomically(dir.resolve(INDEX_FILE), toBytes(takenAt, classNames, segments));
+    }
+
+    static CellIndex fromBytes(byte[] bytes) {
+        return new CellIndex(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Maps the index of the save in the given directory.
+     * @return the index, or null if there is no index for the save that was taken at the given time
+     */
+    public static CellIndex map(Path dir, long takenAt) throws IOException {
+        Path path = dir.resolve(INDEX_FILE);
+        if (!Files.exists(path))
+            return null;
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        CellIndex index = new CellIndex(buffer);
+        return index.takenAt == takenAt ? index : null;
+    }
+
+    private int offset(int i) {
+        return entriesStart + i * ENTRY_SIZE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTakenAt() {
+        return takenAt;
+    }
+
+    /**
+     * @return the position in the index of the cell with the given id, or -1 if it is not in the save
+     */
+    public int indexOf(long id) {
+        int low = 0, high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = getId(mid);
+            if (midId < id)
+                low = mid + 1;
+            else if (midId > id)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    public long getId(int i) {
+        return buffer.getLong(offset(i) + ID);
+    }
+
+    /**
+     * @return the key of the record holding the cell, shared by the cells that refer to each other
+     */
+    public long getRecordKey(int i) {
+        return buffer.getLong(offset(i) + RECORD_KEY);
+    }
+
+    public float getX(int i) {
+        return buffer.getFloat(offset(i) + X);
+    }
+
+    public float getY(int i) {
+        return buffer.getFloat(offset(i) + Y);
+    }
+
+    public float getRadius(int i) {
+        return buffer.getFloat(offset(i) + RADIUS);
+    }
+
+    public int getGeneration(int i) {
+        return buffer.getInt(offset(i) + GENERATION);
+    }
+
+    public int getSegment(int i) {
+        return buffer.getShort(offset(i) + SEGMENT);
+    }
+
+    public Class<? extends Cell> getCellClass(int i) {
+        return classes.get(buffer.get(offset(i) + CLASS));
+    }
+
+    public boolean isEngulfed(int i) {
+        return (buffer.get(offset(i) + FLAGS) & ENGULFED) != 0;
+    }
+
+    public int count(Class<? extends Cell> cellClass) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (cellClass.isAssignableFrom(getCellClass(i)))
+                count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,228 @@
+package com.protoevo.env;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Writes a series of saves as a chain of checkpoints, where most checkpoints only store what changed
+ * since the one before.
+ * <p>
+ * Every so often a checkpoint is written in full, and the ones after it are deltas: a cell group,
+ * or the environment header with its chemicals, light and joints, that has not changed since the
+ * previous checkpoint is stored as just its key, and one that has changed is stored as its changed bytes
+ * (see {@link RecordFile}). Any checkpoint can be loaded by reading back along the chain to the last
+ * full one, which is what {@link EnvFileIO#reloadEnvironment} does.
+ * <p>
+ * The chain holds the contents of the last checkpoint it wrote in memory, to compare the next one against.
+ * <p>
+ * A delta cannot be loaded without the checkpoints before it, so saves should be removed with {@link #delete},
+ * which first compacts the checkpoints that depend on the one being removed. Chains written with a larger
+ * number of deltas than the current setting are compacted down to it when a simulation next writes a checkpoint,
+ * see {@link #limitDepth}.
+ */
+public class CheckpointChain {
+
+    /**
+     * The contents of a checkpoint, with every record resolved against its parents.
+     */
+    public static class State {
+        private final String name;
+        private final int depth;
+        private final byte[] header;
+        private final List<EnvironmentSnapshot.Segment> segments;
+        private final Map<Long, byte[]> records = new HashMap<>();
+
+        State(String name, int depth, byte[] header, List<EnvironmentSnapshot.Segment> segments) {
+            this.name = name;
+            this.depth = depth;
+            this.header = header;
+            this.segments = segments;
+            for (EnvironmentSnapshot.Segment segment : segments) {
+                for (RecordFile.Record record : segment.getRecords())
+                    records.put(record.getKey(), record.getBytes());
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public byte[] getHeader() {
+            return header;
+        }
+
+        public Map<Long, byte[]> getRecords() {
+            return records;
+        }
+
+        List<EnvironmentSnapshot.Segment> getSegments() {
+            return segments;
+        }
+    }
+
+    private State last;
+    private Path lastDirectory;
+
+    public void write(EnvironmentSnapshot snapshot, String directory) throws IOException {
+        write(snapshot, directory, Environment.settings.misc.historicalSaveDeltas.get());
+    }
+
+    /**
+     * Writes the snapshot as a delta of the last checkpoint written by this chain, or in full if there
+     * have already been the given number of deltas since the last full checkpoint.
+     * Checkpoints are expected to be sibling directories, such as the historical saves of a simulation.
+     */
+    public void write(EnvironmentSnapshot snapshot, String directory, int maxDeltas) throws IOException {
+        Path dir = Paths.get(directory).toAbsolutePath().normalize();
+        if (last == null)
+            limitDepth(dir.getParent(), maxDeltas);
+        State parent = last;
+        if (parent != null && (parent.depth >= maxDeltas
+                || dir.equals(lastDirectory)
+                || !dir.getParent().equals(lastDirectory.getParent())
+                || !SaveManifest.exists(lastDirectory)))
+            parent = null;
+
+        SaveManifest manifest = snapshot.writeTo(dir, parent, snapshot.getTakenAt());
+        last = snapshot.toState(dir.getFileName().toString(), manifest.getDepth());
+        lastDirectory = dir;
+    }
+
+    /**
+     * Reads the full contents of a checkpoint, following the chain back to the last full checkpoint.
+     */
+    public static State read(Path dir) throws IOException {
+        SaveManifest manifest = SaveManifest.read(dir);
+        State parent = manifest.isDelta() ? readParent(dir, manifest) : null;
+
+        byte[] header = readHeader(dir, manifest, parent);
+        List<EnvironmentSnapshot.Segment> segments;
+        try {
+            segments = manifest.getSegments().parallelStream()
+                    .map(entry -> new EnvironmentSnapshot.Segment(
+                            entry.getFirstChunk(), entry.getLastChunk(), entry.getCellCount(),
+                            readSegment(dir, manifest, entry, parent)))
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new State(dir.getFileName().toString(), manifest.getDepth(), header, segments);
+    }
+
+    /**
+     * Reads the checkpoint that a delta checkpoint stores its changes relative to.
+     */
+    static State readParent(Path dir, SaveManifest manifest) throws IOException {
+        Path parentDir = dir.resolveSibling(manifest.getParent());
+        if (!SaveManifest.exists(parentDir))
+            throw new IOException("Cannot load " + dir + ": it only stores the changes since "
+                    + manifest.getParent() + ", which has been deleted");
+        return read(parentDir);
+    }
+
+    static byte[] readHeader(Path dir, SaveManifest manifest, State parent) throws IOException {
+        Map<Long, byte[]> parentHeader = parent == null
+                ? null : Collections.singletonMap(EnvironmentSnapshot.HEADER_KEY, parent.getHeader());
+        return RecordFile.read(manifest.readFile(dir, manifest.getHeader()), parentHeader).get(0).getBytes();
+    }
+
+    static List<RecordFile.Record> readSegment(Path dir, SaveManifest manifest,
+                                               SaveManifest.Entry segment, State parent) {
+        try {
+            return RecordFile.read(manifest.readFile(dir, segment), parent == null ? null : parent.getRecords());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Rewrites a checkpoint so that it stands on its own, without changing what it holds.
+     * Checkpoints after it still load as before, and the checkpoints before it can then be deleted.
+     */
+    public static void compact(Path dir) throws IOException {
+        SaveManifest manifest = SaveManifest.read(dir);
+        if (!manifest.isDelta())
+            return;
+        State state = read(dir);
+        EnvironmentSnapshot snapshot = new EnvironmentSnapshot(state.getHeader(), state.getSegments(),
+                manifest.getCodec(), true, manifest.getTakenAt(), SaveMetadata.read(dir));
+        long fileStamp = System.currentTimeMillis();
+        if (fileStamp == manifest.getTakenAt())
+            fileStamp++;
+        snapshot.writeTo(dir, null, fileStamp);
+        if (Files.exists(dir.resolveSibling(SaveIndex.INDEX_FILE)))
+            SaveIndex.append(dir.getParent(), snapshot.getWrittenMetadata());
+    }
+
+    private static List<Path> listCheckpoints(Path environmentDir) throws IOException {
+        if (!Files.isDirectory(environmentDir))
+            return new ArrayList<>();
+        try (Stream<Path> paths = Files.list(environmentDir)) {
+            return paths.filter(Files::isDirectory)
+                    .filter(SaveManifest::exists)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Compacts each checkpoint in the directory that is more than the given number of deltas on from
+     * a full checkpoint, so that no checkpoint needs more than that many others read to load it.
+     * @return the number of checkpoints compacted
+     */
+    public static int limitDepth(Path environmentDir, int maxDepth) throws IOException {
+        Map<Path, SaveManifest> manifests = new HashMap<>();
+        for (Path dir : listCheckpoints(environmentDir))
+            manifests.put(dir, SaveManifest.read(dir));
+        // a checkpoint is always taken after its parent, so parents come first
+        List<Path> dirs = new ArrayList<>(manifests.keySet());
+        dirs.sort(Comparator.comparingLong(dir -> manifests.get(dir).getTakenAt()));
+
+        Map<String, Integer> depths = new HashMap<>();
+        int compacted = 0;
+        for (Path dir : dirs) {
+            SaveManifest manifest = manifests.get(dir);
+            int depth = 0;
+            if (manifest.isDelta()) {
+                Integer parentDepth = depths.get(manifest.getParent());
+                if (parentDepth == null)
+                    continue;  // its parent has been deleted, so it cannot be loaded or compacted
+                depth = parentDepth + 1;
+                if (depth > maxDepth) {
+                    compact(dir);
+                    depth = 0;
+                    compacted++;
+                }
+            }
+            depths.put(dir.getFileName().toString(), depth);
+        }
+        return compacted;
+    }
+
+    /**
+     * Deletes a checkpoint, first compacting any checkpoints stored as changes since it so that they still load.
+     */
+    public static void delete(Path dir) throws IOException {
+        dir = dir.toAbsolutePath().normalize();
+        String name = dir.getFileName().toString();
+        for (Path sibling : listCheckpoints(dir.getParent())) {
+            if (!sibling.equals(dir) && name.equals(SaveManifest.read(sibling).getParent()))
+                compact(sibling);
+        }
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path path : paths)
+            Files.delete(path);
+    }
+}
@@ -1,166 +1,126 @@
 package com.protoevo.env;
 
-import com.badlogic.gdx.math.Vector2;
-import com.protoevo.biology.CauseOfDeath;
-import com.protoevo.biology.ComplexMolecule;
-import com.protoevo.biology.ConstructionProject;
-import com.protoevo.biology.Food;
 import com.protoevo.biology.cells.Cell;
-import com.protoevo.biology.cells.PlantCell;
-import com.protoevo.biology.cells.Protozoan;
-import com.protoevo.biology.evolution.*;
-import com.protoevo.biology.nn.*;
-import com.protoevo.biology.nodes.*;
-import com.protoevo.biology.organelles.MoleculeProductionOrganelle;
-import com.protoevo.biology.organelles.Organelle;
-import com.protoevo.core.Statistics;
-import com.protoevo.physics.Joining;
-import com.protoevo.physics.JointsManager;
-import com.protoevo.physics.SpatialHash;
-import com.protoevo.physics.box2d.Box2DCollisionHandler;
-import com.protoevo.utils.Colour;
 import org.nustaq.serialization.FSTConfiguration;
-import org.nustaq.serialization.FSTObjectInput;
-import org.nustaq.serialization.FSTObjectOutput;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 public class EnvFileIO {
 
+    /**
+     * @return the FST configuration of the calling thread, see {@link Serialiser}
+     */
     public static FSTConfiguration getFSTConfig() {
-        FSTConfiguration fstConfig = FSTConfiguration.createDefaultConfiguration();
-        fstConfig.registerClass(
-                Environment.class,
-                Cell.class,
-                Food.class,
-                CauseOfDeath.class,
-                ConstructionProject.class,
-                SpatialHash.class,
-                Rock.class,
-                Box2DCollisionHandler.class,
-                Colour.class,
-                Protozoan.class,
-                SurfaceNode.class,
-                NodeAttachment.class,
-                Flagellum.class,
-                Spike.class,
-                PhagocyticReceptor.class,
-                Photoreceptor.class,
-                AdhesionReceptor.class,
-                Organelle.class,
-                MoleculeProductionOrganelle.class,
-                PlantCell.class,
-                ChemicalSolution.class,
-                ComplexMolecule.class,
-                Statistics.class,
-                Statistics.Stat.class,
-                JointsManager.class,
-                Joining.class,
-                GeneExpressionFunction.class,
-                GeneExpressionFunction.ExpressionNode.class,
-                GeneExpressionFunction.RegulationNode.class,
-                NeuralNetwork.class,
-                Neuron.class,
-                NetworkGenome.class,
-                NeuronGene.class,
-                SynapseGene.class,
-                Evolvable.class,
-                Evolvable.Component.class,
-                Evolvable.Element.class,
-                Trait.class,
-                FloatTrait.class,
-                ControlTrait.class,
-                BooleanTrait.class,
-                IntegerTrait.class,
-                CollectionTrait.class,
-                Vector2.class
-        );
-//        fstConfig.setShareReferences(false);
-        return fstConfig;
+        return Serialiser.getConfiguration();
     }
 
     public static byte[] toBytes(Object object, Class<?> clazz) {
-        FSTConfiguration config = getFSTConfig();
-        try (FSTObjectOutput out = config.getObjectOutput()) {
-            out.writeObject(object, clazz);
-            return out.getCopyOfWrittenBuffer();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        return Serialiser.toBytes(object, clazz);
     }
 
     public static <T> T fromBytes(byte[] bytes, Class<T> clazz) {
-        FSTConfiguration config = getFSTConfig();
-        try {
-            return (T) config.getObjectInput(bytes).readObject(clazz);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        return Serialiser.fromBytes(bytes, clazz);
     }
 
     public static void serialize(Object object, Class<?> clazz, String filename) {
-        try (FileOutputStream fileOut = new FileOutputStream(filename);
-             FSTObjectOutput out = new FSTObjectOutput(fileOut, getFSTConfig())) {
-            out.writeObject(object, clazz);
+        serialize(object, clazz, filename, SaveCodec.NONE);
+    }
+
+    public static void serialize(Object object, Class<?> clazz, String filename, SaveCodec codec) {
+        try (OutputStream fileOut = codec.wrap(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            Serialiser.write(fileOut, object, clazz);
         } catch(IOException i) {
             i.printStackTrace();
         }
     }
 
     public static <T> T deserialize(String filename, Class<T> clazz) {
-        try (FileInputStream fileIn = new FileInputStream(filename);
-             FSTObjectInput in = new FSTObjectInput(fileIn, getFSTConfig())) {
-            T object = (T) in.readObject(clazz);
-            return object;
+        return deserialize(filename, clazz, SaveCodec.NONE);
+    }
+
+    public static <T> T deserialize(String filename, Class<T> clazz, SaveCodec codec) {
+        try (InputStream fileIn = codec.wrap(new BufferedInputStream(new FileInputStream(filename)))) {
+            return Serialiser.read(fileIn, clazz);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    public static void saveEnvironment(Environment env, String filename)
-    {
+    private static List<Cell> readSegment(Path dir, SaveManifest manifest, SaveManifest.Entry segment,
+                                          CheckpointChain.State parent) {
+        List<Cell> cells = new ArrayList<>(segment.getCellCount());
+        for (RecordFile.Record record : CheckpointChain.readSegment(dir, manifest, segment, parent))
+            cells.addAll(Serialiser.listFromBytes(record.getBytes(), Cell.class));
+        cells.removeIf(c -> Float.isNaN(c.getPos().x) || Float.isNaN(c.getPos().y));
+        return cells;
+    }
+
+    /**
+     * Loads a save written by {@link EnvironmentSnapshot}. Segments are deserialised in parallel
+     * and their cells added to the environment in order as each one becomes available.
+     * If the save is a delta checkpoint, the checkpoints it depends on are read first.
+     * Saves in the single file format from before there were manifests are loaded by {@link SingleFileSave}.
+     */
+    public static Environment reloadEnvironment(String filename) {
+        Path dir = Paths.get(filename);
+        SaveManifest manifest;
+        CheckpointChain.State parent;
         try {
-            Files.createDirectories(Paths.get(filename));
-            // Files.createDirectories(Paths.get(filename + "/chunks"));
+            manifest = SaveManifest.read(dir);
+            parent = manifest.isDelta() ? CheckpointChain.readParent(dir, manifest) : null;
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new RuntimeException("Failed to read save manifest in " + filename + ": " + e.getMessage(), e);
+        }
+        if (manifest.isSingleFile()) {
+            try {
+                return SingleFileSave.load(dir);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read single file save in " + filename, e);
+            }
+        }
+
+        List<CompletableFuture<List<Cell>>> segments = manifest.getSegments().stream()
+                .map(segment -> CompletableFuture.supplyAsync(() -> readSegment(dir, manifest, segment, parent)))
+                .collect(Collectors.toList());
+
+        Environment env;
+        try {
+            env = fromBytes(CheckpointChain.readHeader(dir, manifest, parent), Environment.class);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read save header in " + filename, e);
         }
+        env.createTransientObjects();
 
-        serialize(env, Environment.class, filename + "/environment.dat");
+        for (CompletableFuture<List<Cell>> segment : segments) {
+            for (Cell cell : segment.join())
+                env.restoreCell(cell);
+        }
 
-//        Chunks chunks = env.getChunks();
-//        env.updateChunkAllocations();
-//        env.getChunks().getChunkIndices().forEach(i -> {
-//            List<Cell> cells = chunks.getChunkStream(i).collect(Collectors.toList());
-//            serialize(cells, cells.getClass(), filename + "/chunks/" + i + ".chunk");
-//        });
+        env.rebuildWorld();
+        return env;
     }
 
-    public static void deserializeChunk(String filename, List<Cell> cells) {
-        List<Cell> chunkCells = deserialize(filename, cells.getClass());
-        chunkCells.removeIf(c -> Float.isNaN(c.getPos().x) || Float.isNaN(c.getPos().y));
-        cells.addAll(chunkCells);
+    /**
+     * Serialises the environment together with its cells into a single buffer, for sending over the network.
+     */
+    public static byte[] environmentToBytes(Environment env) {
+        Object[] bundle = {env, new ArrayList<>(env.getCells())};
+        return toBytes(bundle, Object[].class);
     }
 
-    public static Environment reloadEnvironment(String filename) {
-        Environment env = deserialize(filename + "/environment.dat", Environment.class);
+    public static Environment environmentFromBytes(byte[] bytes) {
+        Object[] bundle = fromBytes(bytes, Object[].class);
+        Environment env = (Environment) bundle[0];
         env.createTransientObjects();
-
-//        Path chunksDir = Paths.get(filename + "/chunks");
-//        List<Cell> cells = new ArrayList<>();
-//        try (Stream<Path> pathStream = Files.list(chunksDir)) {
-//            pathStream.filter(f -> !Files.isDirectory(f) && f.toString().endsWith(".chunk"))
-//                    .forEach(f -> deserializeChunk(f.toString(), cells));
-//        } catch (IOException e) {
-//            throw new RuntimeException("Invalid input directory: " + chunksDir, e);
-//        }
-//
-//        for (Cell cell : cells)
-//            env.add(cell);
-
+        for (Object cell : (List<?>) bundle[1])
+            env.restoreCell((Cell) cell);
         env.rebuildWorld();
         return env;
     }
@@ -7,21 +7,31 @@ import com.google.common.collect.Streams;
 import com.protoevo.biology.BurstRequest;
 import com.protoevo.biology.CauseOfDeath;
 import com.protoevo.biology.cells.Cell;
+import com.protoevo.biology.cells.EvolvableCell;
 import com.protoevo.biology.cells.MeatCell;
 import com.protoevo.biology.cells.PlantCell;
 import com.protoevo.biology.cells.Protozoan;
 import com.protoevo.biology.evolution.Evolvable;
+import com.protoevo.biology.nn.BatchedNetworkEvaluator;
+import com.protoevo.biology.nn.NeuralNetwork;
+import com.protoevo.core.EventLog;
+import com.protoevo.core.StatRecord;
+import com.protoevo.core.StatSummary;
 import com.protoevo.core.Statistics;
 import com.protoevo.physics.*;
 import com.protoevo.physics.box2d.Box2DPhysics;
 import com.protoevo.settings.SimulationSettings;
 import com.protoevo.utils.Geometry;
+import com.protoevo.utils.SerializableBiFunction;
 import com.protoevo.utils.SerializableFunction;
+import com.protoevo.utils.SerializableSupplier;
 
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Stream;
 
 
@@ -59,12 +69,22 @@ public class Environment implements Serializable
 
 	@JsonIgnore
 	private transient Set<Cell> cellsToAdd;
-	private final ConcurrentHashMap<Long, Cell> cells = new ConcurrentHashMap<>();
+	// cells are saved separately in segments, see EnvironmentSnapshot
+	private transient ConcurrentHashMap<Long, Cell> cells = new ConcurrentHashMap<>();
 	private boolean hasInitialised, hasStarted;
 	private Vector2[] populationStartCentres;
 	@JsonIgnore
-	private final ConcurrentHashMap<Cell, BurstRequest<? extends Cell>> burstRequests = new ConcurrentHashMap<>();
-	private final Collection<Cell> handledBurstRequests = new ConcurrentLinkedQueue<>();
+	private transient ConcurrentHashMap<Cell, BurstRequest<? extends Cell>> burstRequests = new ConcurrentHashMap<>();
+	private transient Collection<Cell> handledBurstRequests = new ConcurrentLinkedQueue<>();
+	private transient GeneExpressionScheduler geneExpressionScheduler;
+	private transient BatchedNetworkEvaluator grnEvaluator;
+	private transient List<NeuralNetwork> grnBatch;
+	@JsonIgnore
+	private transient EventLog eventLog;
+	// the parent of each child born in a burst this tick, only tracked while events are being logged
+	private transient Map<Long, Long> cellParents;
+	// shared by all environments, as only one is simulated at a time
+	private static ExecutorService offspringExecutor;
 
 	public Environment()
 	{
@@ -76,8 +96,8 @@ public class Environment implements Serializable
 		Environment.settings = settings;
 
 		hasStarted = false;
-		createTransientObjects();
 		physics = new Box2DPhysics();
+		createTransientObjects();
 
 		System.out.println("Creating chemicals solution... ");
 		if (Environment.settings.enableChemicalField.get()) {
@@ -99,7 +119,15 @@ public class Environment implements Serializable
 	}
 
 	public void createTransientObjects() {
+		cells = new ConcurrentHashMap<>();
+		burstRequests = new ConcurrentHashMap<>();
+		handledBurstRequests = new ConcurrentLinkedQueue<>();
+		physics.createTransientObjects();
 		cellsToAdd = new HashSet<>();
+		geneExpressionScheduler = new GeneExpressionScheduler();
+		grnEvaluator = new BatchedNetworkEvaluator();
+		grnBatch = new ArrayList<>();
+		cellParents = new HashMap<>();
 		chunks = new Chunks();
 		chunks.initialise();
 		updateChunkAllocations();
@@ -145,13 +173,47 @@ public class Environment implements Serializable
 
 	private void handleCellUpdates(float delta) {
 		getCells().parallelStream().forEach(cell -> cell.update(delta));
+		handleGeneExpression();
+	}
+
+	public void requestGeneExpression(EvolvableCell cell) {
+		geneExpressionScheduler.request(cell);
+	}
+
+	private void handleGeneExpression() {
+		List<EvolvableCell> slice = geneExpressionScheduler.nextSlice(
+				Environment.settings.misc.geneExpressionSpreadTicks.get());
+		if (slice.isEmpty())
+			return;
+
+		if (!Environment.settings.misc.batchGeneExpression.get()) {
+			slice.parallelStream().forEach(EvolvableCell::expressGenes);
+			return;
+		}
+
+		slice.parallelStream().forEach(EvolvableCell::prepareGeneExpression);
+
+		grnBatch.clear();
+		for (EvolvableCell cell : slice) {
+			// cells without a GRN have nothing to tick, and take their traits straight from their genes
+			NeuralNetwork grn = cell.getGeneExpressionFunction().getRegulatoryNetwork();
+			if (grn != null)
+				grnBatch.add(grn);
+		}
+
+		grnEvaluator.tick(grnBatch);
+		slice.parallelStream().forEach(EvolvableCell::completeGeneExpression);
+
+		grnBatch.clear();
 	}
 
 	private void handleBirthsAndDeaths() {
 		handledBurstRequests.clear();
 		for (Cell parent : burstRequests.keySet()) {
 			BurstRequest<? extends Cell> burstRequest = burstRequests.get(parent);
-			if (hasBurstCapacity(parent, burstRequest.getCellType()) && burstRequest.canBurst()) {
+			if (burstRequest.isPrepared()
+					&& hasBurstCapacity(parent, burstRequest.getCellType())
+					&& burstRequest.canBurst()) {
 				burstRequest.burst();
 				handledBurstRequests.add(parent);
 			}
@@ -312,6 +374,10 @@ public class Environment implements Serializable
 
 	public void tryAdd(Cell cell) {
 		add(cell);
+		if (eventLog != null) {
+			Long parentId = cellParents.remove(cell.getId());
+			logEvent(EventLog.Type.BIRTH, null, cell, parentId == null ? 0 : parentId);
+		}
 		bornCounts.put(cell.getClass(),
 				bornCounts.getOrDefault(cell.getClass(), 0L) + 1);
 		generationCounts.put(cell.getClass(),
@@ -324,6 +390,30 @@ public class Environment implements Serializable
 		chunks.add(cell);
 	}
 
+	/**
+	 * Adds a cell that was saved separately from this environment back into it.
+	 * Call {@link #rebuildWorld()} once every cell has been restored.
+	 */
+	public void restoreCell(Cell cell) {
+		cell.setEnvironment(this);
+		physics.registerParticle(cell.getParticle());
+		add(cell);
+	}
+
+	/**
+	 * Restores the cells and burst requests of a save in the single file format, which were read
+	 * into their fields along with the rest of this environment, see {@link SingleFileSave}.
+	 * Call {@link #rebuildWorld()} afterwards.
+	 */
+	void restoreSingleFileCells() {
+		List<Cell> savedCells = new ArrayList<>(cells.values());
+		Map<Cell, BurstRequest<? extends Cell>> savedRequests = new HashMap<>(burstRequests);
+		createTransientObjects();
+		for (Cell cell : savedCells)
+			restoreCell(cell);
+		burstRequests.putAll(savedRequests);
+	}
+
 	public Optional<Cell> getCell(long id) {
 		return Optional.ofNullable(cells.get(id));
 	}
@@ -332,6 +422,7 @@ public class Environment implements Serializable
 		for (Cell cell : cellsToAdd)
 			tryAdd(cell);
 		cellsToAdd.clear();
+		cellParents.clear();
 	}
 
 	public int getCount(Class<? extends Cell> cellClass) {
@@ -349,6 +440,8 @@ public class Environment implements Serializable
 			int count = causeOfDeathCounts.getOrDefault(cod, 0);
 			causeOfDeathCounts.put(cod, count + 1);
 		}
+		if (eventLog != null)
+			logEvent(EventLog.Type.DEATH, cod, e, e.isEngulfed() ? e.getEngulfer().getId() : 0);
 		e.getParticle().dispose();
 	}
 
@@ -455,6 +548,8 @@ public class Environment implements Serializable
 
 	public Statistics getDebugStats() {
 		debugStats.clear();
+		if (eventLog != null && eventLog.getDroppedCount() > 0)
+			debugStats.putCount("Events Dropped", (int) eventLog.getDroppedCount());
 		for (CauseOfDeath cod : CauseOfDeath.values()) {
 			if (!cod.isDebugDeath())
 				continue;
@@ -462,6 +557,18 @@ public class Environment implements Serializable
 			if (count > 0)
 				debugStats.put("Died from " + cod.getReason(), (float) count);
 		}
+		if (grnEvaluator != null) {
+			debugStats.putCount("GRN Batches", grnEvaluator.getLastBatchCount());
+			debugStats.putCount("Batched GRNs", grnEvaluator.getLastBatchedNetworks());
+			debugStats.putCount("Unbatched GRNs", grnEvaluator.getLastUnbatchedNetworks());
+		}
+		if (geneExpressionScheduler != null) {
+			debugStats.putCount("Gene Expression Queue", geneExpressionScheduler.getQueueDepth());
+			debugStats.putCount("Gene Expression Budget", geneExpressionScheduler.getLastBudget());
+			debugStats.putCount("Gene Expressions", geneExpressionScheduler.getLastDispatched());
+			debugStats.put("Gene Expression Mean Lag", geneExpressionScheduler.getLastMeanLag());
+			debugStats.putCount("Gene Expression Max Lag", (int) geneExpressionScheduler.getLastMaxLag());
+		}
 		return debugStats;
 	}
 
@@ -469,29 +576,44 @@ public class Environment implements Serializable
 		return physics.getDebugStats();
 	}
 
-	public Statistics getProtozoaSummaryStats(
-			boolean computeLogStats, boolean removeMoleculeStats, boolean allStats) {
-		Iterator<Statistics> protozoaStats = getCells().stream()
+	/**
+	 * Summarises the stats of every protozoan in a single parallel pass, recording each cell
+	 * into a reused {@link StatRecord} rather than building a {@link Statistics} per cell.
+	 * @param computeLogStats whether to also summarise the logs of the stats
+	 * @param includeResources whether to include energy, construction mass and digestion stats
+	 * @param includeMolecules whether to include the amounts of complex molecules, if including resources
+	 * @param computeDistributions whether to sketch the distribution of each stat
+	 */
+	public StatSummary summariseProtozoa(
+			boolean computeLogStats, boolean includeResources, boolean includeMolecules, boolean computeDistributions) {
+		return getCells().parallelStream()
 				.filter(cell -> cell instanceof Protozoan)
-				.map(p -> {
-					if (allStats)
-						return ((Protozoan) p).getAllStats();
-					return p.getStats();
-				})
-				.iterator();
-
-		Statistics stats = Statistics.computeSummaryStatistics(protozoaStats, computeLogStats);
-		final int protozoaCount = numberOfProtozoa();
-		stats.putCount("Protozoa Count", protozoaCount);
-		stats.getStatsMap().entrySet().removeIf(
-			entry -> entry.getKey().endsWith("Count")
-					&& ((int) entry.getValue().getValue() == 0 || (int) entry.getValue().getValue() == protozoaCount)
-				|| (removeMoleculeStats && entry.getKey().contains("Molecule"))
-				|| (!allStats && (entry.getKey().contains("Min") || entry.getKey().contains("Max")))
-		);
+				.collect(
+					() -> new StatSummary(Cell.statSchema, computeLogStats, computeDistributions),
+					(summary, cell) -> {
+						StatRecord record = summary.getScratchRecord();
+						record.clear();
+						cell.recordStats(record);
+						if (includeResources)
+							cell.recordResourceStats(record, includeMolecules);
+						summary.accept(record);
+					},
+					StatSummary::merge
+				);
+	}
+
+	public Statistics getProtozoaSummaryStats(StatSummary summary, boolean includeRange) {
+		Statistics stats = summary.writeTo(new Statistics(), includeRange);
+		stats.putCount("Protozoa Count", summary.getSamples());
 		return stats;
 	}
 
+	public Statistics getProtozoaSummaryStats(
+			boolean computeLogStats, boolean removeMoleculeStats, boolean allStats) {
+		StatSummary summary = summariseProtozoa(computeLogStats, allStats, !removeMoleculeStats, false);
+		return getProtozoaSummaryStats(summary, allStats);
+	}
+
 	public Statistics getProtozoaSummaryStats() {
 		return getProtozoaSummaryStats(false, true, false);
 	}
@@ -569,6 +691,36 @@ public class Environment implements Serializable
 		requestBurst(parent, cellType, createChild, false);
 	}
 
+	/**
+	 * Requests a burst whose children are prepared on a worker thread straight away,
+	 * so that the burst only has to attach them to the environment.
+	 * @param prepareChild builds a child without touching the environment or physics, safe to call off-thread
+	 * @param attachChild gives a prepared child its physics body and radius during the burst
+	 */
+	public <T extends Cell> void requestBurst(Cell parent,
+											  Class<T> cellType,
+											  SerializableSupplier<T> prepareChild,
+											  SerializableBiFunction<T, Float, T> attachChild) {
+		if (hasBurstRequest(parent, cellType) || !hasBurstCapacity(parent, cellType))
+			return;
+
+		BurstRequest<T> request = new BurstRequest<>(parent, cellType, prepareChild, attachChild);
+		if (burstRequests.putIfAbsent(parent, request) == null)
+			request.prepareChildren(getOffspringExecutor());
+	}
+
+	private static synchronized ExecutorService getOffspringExecutor() {
+		if (offspringExecutor == null) {
+			int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+			offspringExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+				Thread thread = new Thread(runnable, "Offspring Builder");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return offspringExecutor;
+	}
+
 	public SpatialHash<Cell> getSpatialHash(Class<? extends Cell> clazz) {
 		return chunks.getSpatialHash(clazz);
 	}
@@ -577,8 +729,48 @@ public class Environment implements Serializable
 		return chunks;
 	}
 
-	public void incrementCrossOverCount() {
+	public void setEventLog(EventLog eventLog) {
+		this.eventLog = eventLog;
+	}
+
+	public Optional<EventLog> getEventLog() {
+		return Optional.ofNullable(eventLog);
+	}
+
+	/**
+	 * Notes the parent of a child created in a burst, so that its birth can be logged
+	 * once it is added to the environment.
+	 */
+	public void registerBirth(Cell parent, Cell child) {
+		if (eventLog != null)
+			cellParents.put(child.getId(), parent.getId());
+	}
+
+	/**
+	 * Counts a child created from the genome of a parent crossed with that of its mate.
+	 * The child has neither its position nor its generation yet, so those of its parent are logged.
+	 */
+	public void recordCrossOver(Cell parent, Cell child) {
 		crossoverEvents = crossoverEvents + 1;
+		if (eventLog != null)
+			eventLog.record(EventLog.Type.CROSSOVER, null, child.getClass(), parent.getGeneration() + 1,
+					getElapsedTime(), parent.getPos().x, parent.getPos().y, child.getId(), parent.getId());
+	}
+
+	public void recordMating(Cell cell, Cell mate) {
+		if (eventLog != null)
+			logEvent(EventLog.Type.MATING, null, cell, mate.getId());
+	}
+
+	public void recordEngulfed(Cell engulfer, Cell engulfed) {
+		if (eventLog != null)
+			logEvent(EventLog.Type.ENGULF, null, engulfer, engulfed.getId());
+	}
+
+	private void logEvent(EventLog.Type type, CauseOfDeath cause, Cell cell, long otherId) {
+		Vector2 pos = cell.getPos();
+		eventLog.record(type, cause, cell.getClass(), cell.getGeneration(), getElapsedTime(),
+				pos.x, pos.y, cell.getId(), otherId);
 	}
 
 	public float getRadius() {
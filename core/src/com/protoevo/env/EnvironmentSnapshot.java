@@ -0,0 +1,436 @@
+package com.protoevo.env;
+
+import com.protoevo.biology.cells.Cell;
+import com.protoevo.biology.cells.EvolvableCell;
+import com.protoevo.biology.cells.MeatCell;
+import com.protoevo.biology.cells.PlantCell;
+import com.protoevo.biology.cells.Protozoan;
+import com.protoevo.biology.evolution.GeneExpressionFunction;
+import com.protoevo.physics.SpatialHash;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A consistent copy of an {@link Environment} that can be serialised and written to disk
+ * while the simulation carries on.
+ * <p>
+ * Snapshots must be taken between ticks, when nothing is mutating the environment.
+ * Taking one copies the environment and its cells with a {@link StructuralCopier}, which is the only part
+ * of saving that needs the simulation to wait. The copy is serialised when the snapshot is first written,
+ * see {@link SnapshotWriter} for serialising and writing snapshots in the background.
+ * If the environment cannot be copied, it is serialised while the snapshot is taken instead.
+ * <p>
+ * The environment is serialised without its cells into a header, and the cells are split into
+ * segments by spatial hash chunk that are serialised and written in parallel. Cells that refer to
+ * each other, such as an engulfer and the cells it has engulfed, or a pair of mates, are kept in
+ * the same segment so that each segment can be read back on its own. See {@link SaveManifest}
+ * for how the files are laid out, and {@link SaveMetadata} and {@link CellIndex} for the summaries
+ * written alongside them.
+ */
+public class EnvironmentSnapshot {
+
+    public static final int DEFAULT_SEGMENTS = 16;
+    static final long HEADER_KEY = 0;
+
+    /**
+     * The cells of a run of chunks, as one record per group of cells that refer to each other.
+     */
+    static class Segment {
+        private final int firstChunk;
+        private int lastChunk, cellCount;
+        // the copies of the cells of each record, until they are serialised
+        private List<ArrayList<Cell>> groups = new ArrayList<>();
+        private long[] keys;
+        private List<RecordFile.Record> records;
+        private CellIndex.Entries indexEntries;
+
+        Segment(int firstChunk, int lastChunk, int cellCount, List<RecordFile.Record> records) {
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+            this.cellCount = cellCount;
+            this.records = records;
+        }
+
+        private Segment(int firstChunk) {
+            this(firstChunk, firstChunk, 0, null);
+        }
+
+        List<RecordFile.Record> getRecords() {
+            return records;
+        }
+    }
+
+    private byte[] headerBytes;
+    // the copy of the environment, until it is serialised
+    private Environment environment;
+    private final List<Segment> segments;
+    private final SaveCodec codec;
+    private final boolean parallelCompression;
+    private final long takenAt;
+    private long copyTimeNanos, serialiseTimeNanos;
+    private final SaveMetadata metadata;
+    private volatile long writtenSizeBytes = -1;
+    private volatile SaveMetadata writtenMetadata;
+    // the classes named in the cell index entries of the segments, if the snapshot was taken from an environment
+    private List<String> cellClassNames;
+
+    EnvironmentSnapshot(byte[] headerBytes, List<Segment> segments, SaveCodec codec, boolean parallelCompression,
+                        long takenAt, SaveMetadata metadata) {
+        this.headerBytes = headerBytes;
+        this.segments = segments;
+        this.codec = codec;
+        this.parallelCompression = parallelCompression;
+        this.takenAt = takenAt;
+        this.metadata = metadata;
+    }
+
+    /**
+     * A snapshot of an environment and cells that are already serialised, with one segment per list of records.
+     * Each record is a group of cells, keyed by the smallest id in the group.
+     */
+    public static EnvironmentSnapshot of(byte[] headerBytes, List<List<RecordFile.Record>> segmentRecords,
+                                         SaveCodec codec, long takenAt, SaveMetadata metadata) {
+        List<Segment> segments = new ArrayList<>(segmentRecords.size());
+        for (int i = 0; i < segmentRecords.size(); i++) {
+            List<RecordFile.Record> records = segmentRecords.get(i);
+            segments.add(new Segment(i, i, records.size(), records));
+        }
+        return new EnvironmentSnapshot(headerBytes, segments, codec, false, takenAt, metadata);
+    }
+
+    public static EnvironmentSnapshot take(Environment environment) {
+        return take(environment, DEFAULT_SEGMENTS, SaveCodec.fromSettings(),
+                Environment.settings.misc.parallelSaveCompression.get());
+    }
+
+    /**
+     * @param codec how the files are compressed when the snapshot is written, not when it is taken
+     * @param parallelCompression whether to serialise, compress and write the segments on all cores at once
+     */
+    public static EnvironmentSnapshot take(Environment environment, int numSegments,
+                                           SaveCodec codec, boolean parallelCompression) {
+        long start = System.nanoTime();
+        List<Segment> segments = partition(environment, numSegments);
+        SaveMetadata metadata = new SaveMetadata(environment.getElapsedTime(), environment.getGeneration(),
+                environment.numberOfProtozoa(), environment.getCount(PlantCell.class),
+                environment.getCount(MeatCell.class));
+        EnvironmentSnapshot snapshot = new EnvironmentSnapshot(null, segments, codec, parallelCompression,
+                System.currentTimeMillis(), metadata);
+        snapshot.cellClassNames = new ArrayList<>();
+
+        // each segment is copied on its own, as it is serialised on its own, so segments can be copied in parallel
+        IntStream.range(0, segments.size()).parallel().forEach(i -> {
+            Segment segment = segments.get(i);
+            segment.keys = new long[segment.groups.size()];
+            segment.indexEntries = new CellIndex.Entries(i, snapshot.cellClassNames, segment.cellCount);
+            for (int j = 0; j < segment.groups.size(); j++) {
+                long key = Long.MAX_VALUE;
+                for (Cell cell : segment.groups.get(j))
+                    key = Math.min(key, cell.getId());
+                segment.keys[j] = key;
+                for (Cell cell : segment.groups.get(j))
+                    segment.indexEntries.add(key, cell);
+            }
+        });
+        try {
+            snapshot.environment = new StructuralCopier().copy(environment);
+            IntStream.range(0, segments.size()).parallel().forEach(i -> {
+                Segment segment = segments.get(i);
+                StructuralCopier copier = new StructuralCopier();
+                List<ArrayList<Cell>> copies = new ArrayList<>(segment.groups.size());
+                for (ArrayList<Cell> group : segment.groups)
+                    copies.add(copier.copy(group));
+                segment.groups = copies;
+            });
+        } catch (RuntimeException e) {
+            System.out.println("Failed to copy the environment, serialising it while the simulation waits: "
+                    + e.getMessage());
+            snapshot.environment = environment;
+            snapshot.serialise();
+        }
+        snapshot.copyTimeNanos = System.nanoTime() - start;
+        return snapshot;
+    }
+
+    /**
+     * Serialises the copy of the environment and its cells, if it has not been already.
+     */
+    public synchronized void serialise() {
+        if (headerBytes != null)
+            return;
+        long start = System.nanoTime();
+        IntStream indices = IntStream.range(0, segments.size());
+        if (parallelCompression)
+            indices = indices.parallel();
+        indices.forEach(i -> {
+            Segment segment = segments.get(i);
+            segment.records = new ArrayList<>(segment.groups.size());
+            for (int j = 0; j < segment.groups.size(); j++)
+                segment.records.add(new RecordFile.Record(
+                        segment.keys[j], Serialiser.toBytes(segment.groups.get(j), ArrayList.class)));
+            segment.groups = null;
+        });
+        headerBytes = Serialiser.toBytes(environment, Environment.class);
+        environment = null;
+        serialiseTimeNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Splits the cells into at most the given number of segments, each covering a run of whole chunks.
+     * A group of cells that refer to each other is placed by the chunk of one of its members.
+     */
+    private static List<Segment> partition(Environment environment, int numSegments) {
+        Collection<Cell> cells = environment.getCells();
+        CellGroups groups = new CellGroups(cells);
+
+        Map<Cell, ArrayList<Cell>> rootGroups = new IdentityHashMap<>();
+        for (Cell cell : cells)
+            rootGroups.computeIfAbsent(groups.find(cell), root -> new ArrayList<>(1)).add(cell);
+
+        SpatialHash<Cell> hash = environment.getSpatialHash(Protozoan.class);
+        TreeMap<Integer, List<ArrayList<Cell>>> chunkGroups = new TreeMap<>();
+        for (Map.Entry<Cell, ArrayList<Cell>> entry : rootGroups.entrySet()) {
+            int chunk = hash.getChunkIndex(entry.getKey().getPos());
+            chunkGroups.computeIfAbsent(chunk, i -> new ArrayList<>()).add(entry.getValue());
+        }
+
+        int cellsPerSegment = Math.max(1, (cells.size() + numSegments - 1) / numSegments);
+        List<Segment> segments = new ArrayList<>();
+        Segment segment = null;
+        for (Map.Entry<Integer, List<ArrayList<Cell>>> entry : chunkGroups.entrySet()) {
+            if (segment == null || segment.cellCount >= cellsPerSegment) {
+                segment = new Segment(entry.getKey());
+                segments.add(segment);
+            }
+            for (ArrayList<Cell> group : entry.getValue()) {
+                segment.groups.add(group);
+                segment.cellCount += group.size();
+            }
+            segment.lastChunk = entry.getKey();
+        }
+        return segments;
+    }
+
+    /**
+     * Union-find over the references between cells that serialisation would follow.
+     */
+    private static class CellGroups {
+        private final Map<Cell, Cell> parents = new IdentityHashMap<>();
+
+        private CellGroups(Collection<Cell> cells) {
+            Map<GeneExpressionFunction, Cell> genomeOwners = new IdentityHashMap<>();
+            for (Cell cell : cells) {
+                parents.put(cell, cell);
+                if (cell instanceof EvolvableCell)
+                    genomeOwners.put(((EvolvableCell) cell).getGeneExpressionFunction(), cell);
+            }
+
+            for (Cell cell : cells) {
+                union(cell, cell.getEngulfer());
+                if (cell instanceof Protozoan) {
+                    Protozoan protozoan = (Protozoan) cell;
+                    for (Cell engulfed : protozoan.getEngulfedCells())
+                        union(cell, engulfed);
+                    if (protozoan.getCrossOverGenome() != null)
+                        union(cell, genomeOwners.get(protozoan.getCrossOverGenome()));
+                }
+            }
+        }
+
+        private Cell find(Cell cell) {
+            Cell parent = parents.get(cell);
+            while (parent != cell) {
+                Cell grandparent = parents.get(parent);
+                parents.put(cell, grandparent);
+                cell = parent;
+                parent = grandparent;
+            }
+            return cell;
+        }
+
+        private void union(Cell a, Cell b) {
+            // cells no longer in the environment are saved with whichever cell still refers to them
+            if (b == null || !parents.containsKey(b))
+                return;
+            Cell rootA = find(a), rootB = find(b);
+            if (rootA != rootB)
+                parents.put(rootB, rootA);
+        }
+    }
+
+    public long getTakenAt() {
+        return takenAt;
+    }
+
+    /**
+     * @return how long taking the snapshot held up the simulation
+     */
+    public long getCopyTimeNanos() {
+        return copyTimeNanos;
+    }
+
+    public long getSerialiseTimeNanos() {
+        return serialiseTimeNanos;
+    }
+
+    public SaveCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return the size of the snapshot on disk after compression, or -1 if it has not been written yet
+     */
+    public long getWrittenSizeBytes() {
+        return writtenSizeBytes;
+    }
+
+    /**
+     * @return the metadata the snapshot was last written with, or null if it has not been written yet
+     */
+    public SaveMetadata getWrittenMetadata() {
+        return writtenMetadata;
+    }
+
+    public long getSizeBytes() {
+        serialise();
+        long size = headerBytes.length;
+        for (Segment segment : segments) {
+            for (RecordFile.Record record : segment.records)
+                size += record.getBytes().length;
+        }
+        return size;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Writes the snapshot into the given save directory, as a save that stands on its own.
+     * Each segment is compressed separately, so the segments can be compressed and written in parallel.
+     * The manifest is moved into place last, so a save interrupted part way through leaves
+     * any earlier save in the directory intact.
+     */
+    public void writeTo(String directory) throws IOException {
+        writeTo(Paths.get(directory), null, takenAt);
+    }
+
+    /**
+     * @param parent the checkpoint to store records relative to, or null to store them in full
+     * @param fileStamp names the files, and must differ from that of any save already in the directory
+     * @return the manifest of the written save
+     */
+    SaveManifest writeTo(Path dir, CheckpointChain.State parent, long fileStamp) throws IOException {
+        serialise();
+        Files.createDirectories(dir.resolve(SaveManifest.SEGMENTS_DIR));
+        Map<Long, byte[]> parentRecords = parent == null ? null : parent.getRecords();
+
+        List<SaveManifest.Entry> segmentEntries;
+        try {
+            IntStream indices = IntStream.range(0, segments.size());
+            if (parallelCompression)
+                indices = indices.parallel();
+            segmentEntries = indices
+                    .mapToObj(i -> writeSegment(dir, fileStamp, i, parentRecords))
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        String headerFile = SaveManifest.headerFile(fileStamp);
+        byte[] header = RecordFile.write(
+                Collections.singletonList(new RecordFile.Record(HEADER_KEY, headerBytes)),
+                parent == null ? null : Collections.singletonMap(HEADER_KEY, parent.getHeader()));
+        byte[] encodedHeader = codec.encode(header);
+        writeAtomically(dir.resolve(headerFile), encodedHeader);
+        SaveManifest.Entry headerEntry = new SaveManifest.Entry(headerFile, encodedHeader, header.length);
+
+        SaveManifest manifest = new SaveManifest(takenAt, codec,
+                parent == null ? null : parent.getName(),
+                parent == null ? 0 : parent.getDepth() + 1,
+                headerEntry, segmentEntries);
+        manifest.writeTo(dir);
+        if (cellClassNames != null) {
+            List<CellIndex.Entries> indexEntries = segments.stream()
+                    .map(segment -> segment.indexEntries)
+                    .collect(Collectors.toList());
+            CellIndex.write(dir, takenAt, cellClassNames, indexEntries);
+        }
+        SaveMetadata savedMetadata = metadata.forSave(dir.getFileName().toString(), manifest);
+        savedMetadata.writeTo(dir);
+        writtenSizeBytes = manifest.getSizeBytes();
+        writtenMetadata = savedMetadata;
+        deleteUnlisted(dir, manifest);
+        return manifest;
+    }
+
+    private SaveManifest.Entry writeSegment(Path dir, long fileStamp, int i, Map<Long, byte[]> parentRecords) {
+        Segment segment = segments.get(i);
+        String file = SaveManifest.segmentFile(fileStamp, i);
+        byte[] bytes = RecordFile.write(segment.records, parentRecords);
+        byte[] encoded = codec.encode(bytes);
+        try {
+            writeAtomically(dir.resolve(file), encoded);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new SaveManifest.Entry(file, encoded, bytes.length,
+                segment.cellCount, segment.firstChunk, segment.lastChunk);
+    }
+
+    /**
+     * @return the contents of this snapshot as a checkpoint that later snapshots can be stored relative to
+     */
+    CheckpointChain.State toState(String name, int depth) {
+        serialise();
+        return new CheckpointChain.State(name, depth, headerBytes, segments);
+    }
+
+    private static void deleteUnlisted(Path dir, SaveManifest manifest) throws IOException {
+        Set<Path> listed = new HashSet<>();
+        listed.add(dir.resolve(manifest.getHeader().getFile()));
+        for (SaveManifest.Entry segment : manifest.getSegments())
+            listed.add(dir.resolve(segment.getFile()));
+
+        List<Path> stale;
+        try (Stream<Path> files = Files.list(dir);
+             Stream<Path> segmentFiles = Files.list(dir.resolve(SaveManifest.SEGMENTS_DIR))) {
+            Stream<Path> headers = files.filter(path -> path.getFileName().toString().startsWith("header-"));
+            stale = Stream.concat(headers, segmentFiles)
+                    .filter(path -> path.toString().endsWith(".dat"))
+                    .filter(path -> !listed.contains(path))
+                    .collect(Collectors.toList());
+        }
+        for (Path path : stale)
+            Files.deleteIfExists(path);
+    }
+
+    static void writeAtomically(Path path, byte[] bytes) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(false);
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.protoevo.env;
+
+import com.protoevo.biology.cells.EvolvableCell;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads gene expression work evenly across ticks.
+ * <p>
+ * Cells request gene expression when their own expression timer fires, and cells born in the same
+ * burst tend to fire together. Rather than expressing every request on the tick it arrives,
+ * requests are queued and only a budget of them is dispatched each tick. The budget follows the
+ * smoothed arrival rate, plus enough to drain any backlog over a given number of ticks.
+ * This means the average expression frequency is unchanged while bursts are flattened out.
+ * <p>
+ * A cell is only queued once until it is dispatched, as the batched evaluator can only
+ * tick each network once per slice.
+ */
+public class GeneExpressionScheduler {
+
+    private static final float arrivalSmoothing = 0.05f;
+
+    private static class Request {
+        final EvolvableCell cell;
+        final long tick;
+
+        Request(EvolvableCell cell, long tick) {
+            this.cell = cell;
+            this.tick = tick;
+        }
+    }
+
+    private final Queue<Request> queue = new ConcurrentLinkedQueue<>();
+    private final Set<EvolvableCell> queued = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger arrivals = new AtomicInteger();
+    private final List<EvolvableCell> slice = new ArrayList<>();
+    private volatile long tick = 0;
+    private float meanArrivals = 0;
+    private int lastBudget, lastDispatched;
+    private float lastMeanLag;
+    private long lastMaxLag;
+
+    /**
+     * Queues a cell for gene expression, unless it is already queued. Safe to call from parallel cell updates.
+     * @param cell the cell whose expression timer has fired
+     */
+    public void request(EvolvableCell cell) {
+        if (!queued.add(cell))
+            return;
+        queue.add(new Request(cell, tick));
+        queueDepth.incrementAndGet();
+        arrivals.incrementAndGet();
+    }
+
+    /**
+     * Takes the requests to be expressed on this tick.
+     * @param spreadTicks the number of ticks over which a backlog of requests should be drained
+     * @return the cells to express, valid until the next call
+     */
+    public List<EvolvableCell> nextSlice(int spreadTicks) {
+        tick++;
+        meanArrivals += arrivalSmoothing * (arrivals.getAndSet(0) - meanArrivals);
+
+        int pending = queueDepth.get();
+        int budget = (int) Math.ceil(meanArrivals + pending / (float) Math.max(spreadTicks, 1));
+
+        slice.clear();
+        long lagSum = 0, maxLag = 0;
+        int dispatched = 0;
+        while (dispatched < budget) {
+            Request request = queue.poll();
+            if (request == null)
+                break;
+            queueDepth.decrementAndGet();
+            queued.remove(request.cell);
+            if (request.cell.isDead())
+                continue;
+
+            long lag = tick - 1 - request.tick;
+            lagSum += lag;
+            maxLag = Math.max(maxLag, lag);
+            slice.add(request.cell);
+            dispatched++;
+        }
+
+        lastBudget = budget;
+        lastDispatched = dispatched;
+        lastMeanLag = dispatched > 0 ? lagSum / (float) dispatched : 0;
+        lastMaxLag = maxLag;
+        return slice;
+    }
+
+    public void clear() {
+        queue.clear();
+        queued.clear();
+        queueDepth.set(0);
+        arrivals.set(0);
+        slice.clear();
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public int getLastBudget() {
+        return lastBudget;
+    }
+
+    public int getLastDispatched() {
+        return lastDispatched;
+    }
+
+    /**
+     * @return the mean number of ticks the requests dispatched on the last tick spent in the queue
+     */
+    public float getLastMeanLag() {
+        return lastMeanLag;
+    }
+
+    /**
+     * @return the most ticks any request dispatched on the last tick spent in the queue
+     */
+    public long getLastMaxLag() {
+        return lastMaxLag;
+    }
+}
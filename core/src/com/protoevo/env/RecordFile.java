@@ -0,0 +1,211 @@
+package com.protoevo.env;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The layout of the files in a save: a sequence of keyed records, each holding serialised bytes.
+ * <p>
+ * A record is either stored in full, or relative to the record with the same key in the save's parent
+ * checkpoint (see {@link CheckpointChain}). A record that has not changed since the parent is stored as
+ * just its key. A record that has changed is stored as a list of copies of runs of the parent's bytes and
+ * literal runs of new bytes, found by matching blocks of the parent against every offset of the new bytes
+ * with a rolling hash, as rsync does. Serialised cells change in many small places between checkpoints,
+ * and usually change length too, so runs are matched wherever they have moved to.
+ */
+public class RecordFile {
+
+    private static final byte FULL = 0, SAME = 1, DIFF = 2;
+    private static final byte LITERAL = 0, COPY = 1;
+    private static final int BLOCK = 16;
+    private static final int HASH_BASE = 0x01000193;
+    private static final int HASH_BASE_POW;
+
+    static {
+        int pow = 1;
+        for (int i = 0; i < BLOCK - 1; i++)
+            pow *= HASH_BASE;
+        HASH_BASE_POW = pow;
+    }
+
+    public static class Record {
+        private final long key;
+        private final byte[] bytes;
+
+        public Record(long key, byte[] bytes) {
+            this.key = key;
+            this.bytes = bytes;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * @param parent the records of the parent checkpoint by key, or null to store every record in full
+     */
+    public static byte[] write(List<Record> records, Map<Long, byte[]> parent) {
+        int capacity = 4;
+        for (Record record : records)
+            capacity += 13 + record.bytes.length;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(parent == null ? capacity : capacity / 4);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(records.size());
+            for (Record record : records) {
+                out.writeLong(record.key);
+                byte[] previous = parent == null ? null : parent.get(record.key);
+                if (previous == null) {
+                    out.writeByte(FULL);
+                    out.writeInt(record.bytes.length);
+                    out.write(record.bytes);
+                } else if (Arrays.equals(previous, record.bytes)) {
+                    out.writeByte(SAME);
+                } else {
+                    out.writeByte(DIFF);
+                    writeDiff(out, previous, record.bytes);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int hash(byte[] bytes, int offset) {
+        int h = 0;
+        for (int i = offset; i < offset + BLOCK; i++)
+            h = h * HASH_BASE + bytes[i];
+        return h;
+    }
+
+    private static int slot(int hash, int mask) {
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static void writeDiff(DataOutputStream out, byte[] previous, byte[] current) throws IOException {
+        // offsets + 1 of the blocks of the previous bytes, by hash; a later block with the same slot replaces an earlier one
+        int numBlocks = previous.length / BLOCK;
+        int mask = Integer.highestOneBit(Math.max(1, numBlocks) * 2 + 1) - 1;
+        int[] table = new int[mask + 1];
+        for (int b = 0; b < numBlocks; b++)
+            table[slot(hash(previous, b * BLOCK), mask)] = b * BLOCK + 1;
+
+        ByteArrayOutputStream ops = new ByteArrayOutputStream(current.length / 8);
+        DataOutputStream opsOut = new DataOutputStream(ops);
+        int literalStart = 0;
+        int i = 0;
+        int h = current.length >= BLOCK ? hash(current, 0) : 0;
+        while (i + BLOCK <= current.length) {
+            int candidate = numBlocks > 0 ? table[slot(h, mask)] - 1 : -1;
+            if (candidate >= 0 && regionMatches(previous, candidate, current, i)) {
+                int start = i, from = candidate;
+                while (start > literalStart && from > 0 && previous[from - 1] == current[start - 1]) {
+                    start--;
+                    from--;
+                }
+                int end = i + BLOCK, fromEnd = candidate + BLOCK;
+                while (end < current.length && fromEnd < previous.length && previous[fromEnd] == current[end]) {
+                    end++;
+                    fromEnd++;
+                }
+                writeLiteral(opsOut, current, literalStart, start);
+                opsOut.writeByte(COPY);
+                opsOut.writeInt(from);
+                opsOut.writeInt(end - start);
+                literalStart = i = end;
+                if (i + BLOCK <= current.length)
+                    h = hash(current, i);
+            } else {
+                if (i + BLOCK < current.length)
+                    h = (h - current[i] * HASH_BASE_POW) * HASH_BASE + current[i + BLOCK];
+                i++;
+            }
+        }
+        writeLiteral(opsOut, current, literalStart, current.length);
+
+        out.writeInt(current.length);
+        out.writeInt(ops.size());
+        ops.writeTo(out);
+    }
+
+    private static boolean regionMatches(byte[] previous, int from, byte[] current, int at) {
+        for (int k = 0; k < BLOCK; k++) {
+            if (previous[from + k] != current[at + k])
+                return false;
+        }
+        return true;
+    }
+
+    private static void writeLiteral(DataOutputStream out, byte[] bytes, int start, int end) throws IOException {
+        if (end <= start)
+            return;
+        out.writeByte(LITERAL);
+        out.writeInt(end - start);
+        out.write(bytes, start, end - start);
+    }
+
+    /**
+     * @param parent the records of the parent checkpoint by key, needed if any record was stored relative to it
+     */
+    public static List<Record> read(byte[] file, Map<Long, byte[]> parent) {
+        ByteBuffer in = ByteBuffer.wrap(file);
+        int count = in.getInt();
+        List<Record> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long key = in.getLong();
+            byte kind = in.get();
+            if (kind == FULL) {
+                byte[] bytes = new byte[in.getInt()];
+                in.get(bytes);
+                records.add(new Record(key, bytes));
+                continue;
+            }
+
+            byte[] previous = parent == null ? null : parent.get(key);
+            if (previous == null)
+                throw new RuntimeException("Record " + key + " is stored relative to a parent checkpoint that does not have it");
+            if (kind == SAME)
+                records.add(new Record(key, previous));
+            else if (kind == DIFF)
+                records.add(new Record(key, readDiff(in, previous)));
+            else
+                throw new RuntimeException("Unknown record kind " + kind + " for record " + key);
+        }
+        return records;
+    }
+
+    private static byte[] readDiff(ByteBuffer in, byte[] previous) {
+        byte[] bytes = new byte[in.getInt()];
+        int end = in.getInt() + in.position();
+        int size = 0;
+        while (in.position() < end) {
+            byte op = in.get();
+            if (op == LITERAL) {
+                int length = in.getInt();
+                in.get(bytes, size, length);
+                size += length;
+            } else if (op == COPY) {
+                int from = in.getInt(), length = in.getInt();
+                System.arraycopy(previous, from, bytes, size, length);
+                size += length;
+            } else {
+                throw new RuntimeException("Unknown delta operation " + op);
+            }
+        }
+        if (size != bytes.length)
+            throw new RuntimeException("Delta produced " + size + " bytes but expected " + bytes.length);
+        return bytes;
+    }
+}
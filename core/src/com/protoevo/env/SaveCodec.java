@@ -0,0 +1,177 @@
+package com.protoevo.env;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * How the files of a save are compressed on disk.
+ * <p>
+ * Each file is compressed on its own, so the segments of a save can be compressed and decompressed
+ * in parallel. The codec a save was written with is recorded in its {@link SaveManifest} by name,
+ * e.g. "none" or "deflate-6".
+ */
+public abstract class SaveCodec {
+
+    public static final SaveCodec NONE = new SaveCodec("none") {
+        @Override
+        public byte[] encode(byte[] bytes) {
+            return bytes;
+        }
+
+        @Override
+        public byte[] decode(byte[] bytes, int rawSize) {
+            return bytes;
+        }
+
+        @Override
+        public OutputStream wrap(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        public InputStream wrap(InputStream in) {
+            return in;
+        }
+    };
+
+    private static final String DEFLATE = "deflate-";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String name;
+
+    private SaveCodec(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param level from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}, or 0 for no compression
+     */
+    public static SaveCodec deflate(int level) {
+        if (level <= 0)
+            return NONE;
+        return new DeflateCodec(Math.min(level, Deflater.BEST_COMPRESSION));
+    }
+
+    public static SaveCodec forName(String name) {
+        if (name == null || name.equals(NONE.name))
+            return NONE;
+        if (name.startsWith(DEFLATE)) {
+            try {
+                return deflate(Integer.parseInt(name.substring(DEFLATE.length())));
+            } catch (NumberFormatException ignored) {}
+        }
+        throw new RuntimeException("Unknown save codec: " + name);
+    }
+
+    public static SaveCodec fromSettings() {
+        return deflate(Environment.settings.misc.saveCompressionLevel.get());
+    }
+
+    public abstract byte[] encode(byte[] bytes);
+
+    /**
+     * @param rawSize the size of the bytes before they were encoded
+     */
+    public abstract byte[] decode(byte[] bytes, int rawSize);
+
+    public abstract OutputStream wrap(OutputStream out);
+
+    public abstract InputStream wrap(InputStream in);
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static class DeflateCodec extends SaveCodec {
+        private final int level;
+
+        private DeflateCodec(int level) {
+            super(DEFLATE + level);
+            this.level = level;
+        }
+
+        @Override
+        public byte[] encode(byte[] bytes) {
+            Deflater deflater = new Deflater(level);
+            try {
+                deflater.setInput(bytes);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    out.write(buffer, 0, n);
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public byte[] decode(byte[] bytes, int rawSize) {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(bytes);
+                // one spare byte to tell data that decodes to more than expected from data that fits exactly
+                byte[] out = new byte[rawSize + 1];
+                int size = 0;
+                while (!inflater.finished()) {
+                    int n = inflater.inflate(out, size, out.length - size);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary() || size == out.length))
+                        break;
+                    size += n;
+                }
+                if (size != rawSize || !inflater.finished())
+                    throw new RuntimeException("Compressed data decoded to " + size
+                            + " bytes but expected " + rawSize);
+                return Arrays.copyOf(out, rawSize);
+            } catch (DataFormatException e) {
+                throw new RuntimeException("Compressed data is corrupt", e);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        @Override
+        public OutputStream wrap(OutputStream out) {
+            return new DeflaterOutputStream(out, new Deflater(level), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        def.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream wrap(InputStream in) {
+            return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inf.end();
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.protoevo.env;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An append-only list of the saves of a simulation, kept in its environment directory, so that
+ * the saves can be listed and the most recent one found by reading one small file.
+ * <p>
+ * The index is a sequence of {@link SaveMetadata} records, appended each time a save is written.
+ * A save written more than once, such as the autosave, has a record for each time, and the last one
+ * is the current one. A record cut short by a crash while appending is ignored. Saves deleted by hand
+ * stay in the index, so callers check that a save still exists before using it.
+ * <p>
+ * If a simulation has no index, such as one created before there were indices, it is rebuilt
+ * from the save directories the first time it is read.
+ */
+public class SaveIndex {
+
+    public static final String INDEX_FILE = "saves.idx";
+
+    // the names of the saves in each index appended to, so that appending need not read the index
+    private static final Map<Path, Set<String>> savedNames = new HashMap<>();
+
+    /**
+     * Appends the metadata of a save to the index of the directory holding it.
+     */
+    public static synchronized void append(Path environmentDir, SaveMetadata metadata) throws IOException {
+        Path path = environmentDir.resolve(INDEX_FILE);
+        if (!Files.exists(path))
+            rebuild(environmentDir);
+        Set<String> names = savedNames.get(key(environmentDir));
+        if (names == null) {
+            names = namesOf(readRecords(path));
+            savedNames.put(key(environmentDir), names);
+        }
+
+        long records;
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            // drop the remains of a record cut short, so that the records after it line up
+            long size = channel.size();
+            if (size % SaveMetadata.SIZE != 0)
+                channel.truncate(size - size % SaveMetadata.SIZE);
+            ByteBuffer buffer = ByteBuffer.wrap(metadata.toBytes());
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(false);
+            records = channel.size() / SaveMetadata.SIZE;
+        }
+        names.add(metadata.getName());
+
+        // rewrite the index once most of its records are for saves that have since been written again
+        if (records > 2 * names.size() + 16)
+            write(environmentDir, readRecords(path));
+    }
+
+    /**
+     * @return the saves in the index, from oldest to most recent
+     */
+    public static List<SaveMetadata> read(Path environmentDir) throws IOException {
+        Path path = environmentDir.resolve(INDEX_FILE);
+        if (!Files.exists(path)) {
+            if (!Files.isDirectory(environmentDir))
+                return new ArrayList<>();
+            synchronized (SaveIndex.class) {
+                if (!Files.exists(path))
+                    rebuild(environmentDir);
+            }
+        }
+        return readRecords(path);
+    }
+
+    /**
+     * @return the most recent save in the index whose directory still holds a save
+     */
+    public static Optional<SaveMetadata> mostRecent(Path environmentDir) throws IOException {
+        List<SaveMetadata> saves = read(environmentDir);
+        for (int i = saves.size() - 1; i >= 0; i--) {
+            if (SaveManifest.exists(environmentDir.resolve(saves.get(i).getName())))
+                return Optional.of(saves.get(i));
+        }
+        return Optional.empty();
+    }
+
+    private static List<SaveMetadata> readRecords(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        Map<String, SaveMetadata> saves = new LinkedHashMap<>();
+        while (buffer.remaining() >= SaveMetadata.SIZE) {
+            SaveMetadata metadata = SaveMetadata.readFrom(buffer);
+            if (metadata != null) {
+                saves.remove(metadata.getName());
+                saves.put(metadata.getName(), metadata);
+            }
+        }
+        List<SaveMetadata> list = new ArrayList<>(saves.values());
+        list.sort(Comparator.comparingLong(SaveMetadata::getTakenAt));
+        return list;
+    }
+
+    private static Path key(Path environmentDir) {
+        return environmentDir.toAbsolutePath().normalize();
+    }
+
+    private static Set<String> namesOf(List<SaveMetadata> saves) {
+        Set<String> names = new HashSet<>();
+        for (SaveMetadata metadata : saves)
+            names.add(metadata.getName());
+        return names;
+    }
+
+    private static synchronized void write(Path environmentDir, List<SaveMetadata> saves) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(saves.size() * SaveMetadata.SIZE);
+        for (SaveMetadata metadata : saves)
+            metadata.writeTo(buffer);
+        EnvironmentSnapshot.writeAtomically(environmentDir.resolve(INDEX_FILE), buffer.array());
+        savedNames.put(key(environmentDir), namesOf(saves));
+    }
+
+    /**
+     * Writes a new index from the metadata, or failing that the manifest, of each save in the directory.
+     */
+    public static synchronized void rebuild(Path environmentDir) throws IOException {
+        Files.createDirectories(environmentDir);
+        List<Path> dirs;
+        try (Stream<Path> paths = Files.list(environmentDir)) {
+            dirs = paths.filter(Files::isDirectory)
+                    .filter(SaveManifest::exists)
+                    .collect(Collectors.toList());
+        }
+        List<SaveMetadata> saves = new ArrayList<>();
+        for (Path dir : dirs) {
+            try {
+                saves.add(SaveMetadata.read(dir));
+            } catch (RuntimeException e) {
+                System.err.println("Leaving " + dir + " out of the save index: " + e.getMessage());
+            }
+        }
+        saves.sort(Comparator.comparingLong(SaveMetadata::getTakenAt));
+        write(environmentDir, saves);
+    }
+}
@@ -0,0 +1,257 @@
+package com.protoevo.env;
+
+import com.protoevo.utils.FileIO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Describes the files that make up a saved environment and how to check them.
+ * <p>
+ * A save directory holds a header with everything in the environment except its cells,
+ * a number of segments that each hold the cells of a run of spatial hash chunks, and this manifest.
+ * The manifest is written last, so a directory without one is an incomplete save, and files in the
+ * directory that the manifest does not list are left over from earlier saves.
+ * <p>
+ * Each file is a {@link RecordFile}. A save that is a delta checkpoint names the sibling directory of its
+ * parent checkpoint, and its records can only be read together with those of the parent.
+ * <p>
+ * Saves from before there were manifests hold the whole environment in a single file. Reading one gives
+ * a manifest of {@link #SINGLE_FILE_FORMAT_VERSION} with that file as its header and no segments,
+ * which can only be loaded whole, see {@link SingleFileSave}.
+ */
+public class SaveManifest {
+
+    public static final int FORMAT_VERSION = 3;
+    public static final int SINGLE_FILE_FORMAT_VERSION = 1;
+    public static final String SINGLE_FILE = "environment.dat";
+    public static final String MANIFEST_FILE = "manifest.json";
+    public static final String SEGMENTS_DIR = "segments";
+
+    public static class Entry {
+        private String file;
+        private long size, rawSize;
+        private long crc32;
+        private int cellCount;
+        private int firstChunk, lastChunk;
+
+        public Entry() {}
+
+        /**
+         * @param bytes the bytes as stored on disk
+         * @param rawSize the size of the bytes before they were compressed
+         */
+        public Entry(String file, byte[] bytes, long rawSize) {
+            this.file = file;
+            this.size = bytes.length;
+            this.rawSize = rawSize;
+            this.crc32 = checksum(bytes);
+        }
+
+        public Entry(String file, byte[] bytes, long rawSize, int cellCount, int firstChunk, int lastChunk) {
+            this(file, bytes, rawSize);
+            this.cellCount = cellCount;
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getRawSize() {
+            return rawSize;
+        }
+
+        public long getCrc32() {
+            return crc32;
+        }
+
+        public int getCellCount() {
+            return cellCount;
+        }
+
+        public int getFirstChunk() {
+            return firstChunk;
+        }
+
+        public int getLastChunk() {
+            return lastChunk;
+        }
+    }
+
+    private int formatVersion = FORMAT_VERSION;
+    private long takenAt;
+    private String codec = SaveCodec.NONE.getName();
+    private String parent;
+    private int depth;
+    private int cellCount;
+    private Entry header;
+    private List<Entry> segments = new ArrayList<>();
+
+    public SaveManifest() {}
+
+    /**
+     * @param parent the directory name of the parent checkpoint, or null if the save stands on its own
+     * @param depth the number of checkpoints between this one and the nearest one that stands on its own
+     */
+    public SaveManifest(long takenAt, SaveCodec codec, String parent, int depth, Entry header, List<Entry> segments) {
+        this.takenAt = takenAt;
+        this.codec = codec.getName();
+        this.parent = parent;
+        this.depth = depth;
+        this.header = header;
+        this.segments = segments;
+        for (Entry segment : segments)
+            cellCount += segment.cellCount;
+    }
+
+    /*
+     * Data files are named after the snapshot they belong to, so that saving over an existing save
+     * never touches the files its manifest refers to until the new manifest has replaced it.
+     */
+    public static String headerFile(long takenAt) {
+        return "header-" + takenAt + ".dat";
+    }
+
+    public static String segmentFile(long takenAt, int segment) {
+        return SEGMENTS_DIR + "/" + takenAt + "-" + segment + ".dat";
+    }
+
+    public static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    public static boolean exists(Path directory) {
+        return Files.exists(directory.resolve(MANIFEST_FILE)) || Files.exists(directory.resolve(SINGLE_FILE));
+    }
+
+    public static SaveManifest read(Path directory) throws IOException {
+        Path path = directory.resolve(MANIFEST_FILE);
+        if (!Files.exists(path)) {
+            if (Files.exists(directory.resolve(SINGLE_FILE)))
+                return singleFile(directory.resolve(SINGLE_FILE));
+            throw new RuntimeException("No save manifest in " + directory + ", the save is missing or incomplete.");
+        }
+        SaveManifest manifest = FileIO.getJsonMapper().readValue(path.toFile(), SaveManifest.class);
+        if (manifest.formatVersion != FORMAT_VERSION)
+            throw new RuntimeException("Unsupported save format version " + manifest.formatVersion
+                    + " in " + directory + ", expected " + FORMAT_VERSION);
+        return manifest;
+    }
+
+    private static SaveManifest singleFile(Path path) throws IOException {
+        SaveManifest manifest = new SaveManifest();
+        manifest.formatVersion = SINGLE_FILE_FORMAT_VERSION;
+        manifest.takenAt = Files.getLastModifiedTime(path).toMillis();
+        manifest.header = new Entry();
+        manifest.header.file = SINGLE_FILE;
+        manifest.header.size = manifest.header.rawSize = Files.size(path);
+        return manifest;
+    }
+
+    public void writeTo(Path directory) throws IOException {
+        byte[] bytes = FileIO.getJsonMapper().writeValueAsBytes(this);
+        EnvironmentSnapshot.writeAtomically(directory.resolve(MANIFEST_FILE), bytes);
+    }
+
+    /**
+     * Reads one of the files listed in the manifest, checking that it has the size and checksum it was saved with.
+     */
+    public static byte[] readVerified(Path directory, Entry entry) throws IOException {
+        Path path = directory.resolve(entry.file);
+        byte[] bytes;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size != entry.size)
+                throw new RuntimeException("Save file " + path + " is corrupt: expected "
+                        + entry.size + " bytes but found " + size);
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0)
+                    break;
+            }
+            bytes = buffer.array();
+        }
+        if (checksum(bytes) != entry.crc32)
+            throw new RuntimeException("Save file " + path + " is corrupt: checksum does not match the manifest");
+        return bytes;
+    }
+
+    /**
+     * Reads and decompresses one of the files listed in the manifest.
+     */
+    public byte[] readFile(Path directory, Entry entry) throws IOException {
+        return getCodec().decode(readVerified(directory, entry), (int) entry.rawSize);
+    }
+
+    public int getFormatVersion() {
+        return formatVersion;
+    }
+
+    /**
+     * @return whether this describes a save in the single file format, whose cell count is not known
+     */
+    public boolean isSingleFile() {
+        return formatVersion == SINGLE_FILE_FORMAT_VERSION;
+    }
+
+    public long getTakenAt() {
+        return takenAt;
+    }
+
+    public SaveCodec getCodec() {
+        return SaveCodec.forName(codec);
+    }
+
+    public String getParent() {
+        return parent;
+    }
+
+    public boolean isDelta() {
+        return parent != null;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    public long getSizeBytes() {
+        long size = header.size;
+        for (Entry segment : segments)
+            size += segment.size;
+        return size;
+    }
+
+    public long getRawSizeBytes() {
+        long size = header.rawSize;
+        for (Entry segment : segments)
+            size += segment.rawSize;
+        return size;
+    }
+
+    public Entry getHeader() {
+        return header;
+    }
+
+    public List<Entry> getSegments() {
+        return segments;
+    }
+}
@@ -0,0 +1,219 @@
+package com.protoevo.env;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A small summary of a save, enough to list and choose between saves without reading them.
+ * <p>
+ * Each save directory holds its metadata in a file of fixed size, and the same records are appended
+ * to the {@link SaveIndex} of the simulation. Counts that were not known when the save was written,
+ * such as for saves made before metadata was recorded, are -1.
+ */
+public class SaveMetadata {
+
+    public static final String METADATA_FILE = "metadata.bin";
+    public static final int SIZE = 128;
+
+    private static final int MAGIC = 0x50454D44;
+    private static final int VERSION = 1;
+    private static final int CODEC_BYTES = 16, NAME_BYTES = 48;
+
+    private String name;
+    private long takenAt;
+    private float timeElapsed;
+    private long generation;
+    private int protozoa = -1, plants = -1, meat = -1;
+    private int cellCount;
+    private long sizeBytes, rawSizeBytes;
+    private int depth;
+    private String codec = SaveCodec.NONE.getName();
+
+    public SaveMetadata(float timeElapsed, long generation, int protozoa, int plants, int meat) {
+        this.timeElapsed = timeElapsed;
+        this.generation = generation;
+        this.protozoa = protozoa;
+        this.plants = plants;
+        this.meat = meat;
+    }
+
+    private SaveMetadata() {}
+
+    /**
+     * @return the metadata of a save whose counts are unknown, filled in from what its manifest records
+     */
+    public static SaveMetadata fromManifest(String name, SaveManifest manifest) {
+        SaveMetadata metadata = new SaveMetadata();
+        metadata.timeElapsed = -1;
+        metadata.generation = -1;
+        metadata.setSaved(name, manifest);
+        return metadata;
+    }
+
+    /**
+     * A copy of this metadata, describing the given save.
+     */
+    public SaveMetadata forSave(String name, SaveManifest manifest) {
+        SaveMetadata metadata = new SaveMetadata(timeElapsed, generation, protozoa, plants, meat);
+        metadata.setSaved(name, manifest);
+        return metadata;
+    }
+
+    private void setSaved(String name, SaveManifest manifest) {
+        if (name.getBytes(StandardCharsets.UTF_8).length > NAME_BYTES)
+            throw new RuntimeException("Save name " + name + " is longer than " + NAME_BYTES + " bytes");
+        this.name = name;
+        this.takenAt = manifest.getTakenAt();
+        this.cellCount = manifest.getCellCount();
+        this.sizeBytes = manifest.getSizeBytes();
+        this.rawSizeBytes = manifest.getRawSizeBytes();
+        this.depth = manifest.getDepth();
+        this.codec = manifest.getCodec().getName();
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(takenAt);
+        buffer.putFloat(timeElapsed);
+        buffer.putLong(generation);
+        buffer.putInt(protozoa);
+        buffer.putInt(plants);
+        buffer.putInt(meat);
+        buffer.putInt(cellCount);
+        buffer.putLong(sizeBytes);
+        buffer.putLong(rawSizeBytes);
+        buffer.putInt(depth);
+        putString(buffer, codec, CODEC_BYTES);
+        putString(buffer, name, NAME_BYTES);
+        while (buffer.position() < start + SIZE)
+            buffer.put((byte) 0);
+    }
+
+    /**
+     * @return the metadata at the buffer's position, or null if there is no valid record there
+     */
+    public static SaveMetadata readFrom(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            buffer.position(start + SIZE);
+            return null;
+        }
+        SaveMetadata metadata = new SaveMetadata();
+        metadata.takenAt = buffer.getLong();
+        metadata.timeElapsed = buffer.getFloat();
+        metadata.generation = buffer.getLong();
+        metadata.protozoa = buffer.getInt();
+        metadata.plants = buffer.getInt();
+        metadata.meat = buffer.getInt();
+        metadata.cellCount = buffer.getInt();
+        metadata.sizeBytes = buffer.getLong();
+        metadata.rawSizeBytes = buffer.getLong();
+        metadata.depth = buffer.getInt();
+        metadata.codec = getString(buffer, CODEC_BYTES);
+        metadata.name = getString(buffer, NAME_BYTES);
+        buffer.position(start + SIZE);
+        return metadata;
+    }
+
+    private static void putString(ByteBuffer buffer, String string, int length) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        buffer.put(bytes, 0, Math.min(bytes.length, length));
+        for (int i = bytes.length; i < length; i++)
+            buffer.put((byte) 0);
+    }
+
+    private static String getString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        int end = 0;
+        while (end < length && bytes[end] != 0)
+            end++;
+        return new String(bytes, 0, end, StandardCharsets.UTF_8);
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        writeTo(buffer);
+        return buffer.array();
+    }
+
+    public void writeTo(Path directory) throws IOException {
+        EnvironmentSnapshot.writeAtomically(directory.resolve(METADATA_FILE), toBytes());
+    }
+
+    public static boolean exists(Path directory) {
+        return Files.exists(directory.resolve(METADATA_FILE));
+    }
+
+    /**
+     * Reads the metadata of a save, falling back to its manifest for saves written without metadata.
+     */
+    public static SaveMetadata read(Path directory) throws IOException {
+        Path path = directory.resolve(METADATA_FILE);
+        if (Files.exists(path)) {
+            byte[] bytes = Files.readAllBytes(path);
+            SaveMetadata metadata = bytes.length == SIZE ? readFrom(ByteBuffer.wrap(bytes)) : null;
+            if (metadata == null)
+                throw new RuntimeException("Save metadata in " + directory + " is corrupt");
+            return metadata;
+        }
+        return fromManifest(directory.getFileName().toString(), SaveManifest.read(directory));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getTakenAt() {
+        return takenAt;
+    }
+
+    public float getTimeElapsed() {
+        return timeElapsed;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public int getProtozoa() {
+        return protozoa;
+    }
+
+    public int getPlants() {
+        return plants;
+    }
+
+    public int getMeat() {
+        return meat;
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public long getRawSizeBytes() {
+        return rawSizeBytes;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public boolean hasCounts() {
+        return protozoa >= 0;
+    }
+}
@@ -0,0 +1,192 @@
+package com.protoevo.env;
+
+import com.protoevo.biology.cells.Cell;
+import com.protoevo.biology.cells.Protozoan;
+import com.protoevo.core.StatRecord;
+import com.protoevo.core.StatSummary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A read-only view of a save that only reads what is asked of it, for looking through saves
+ * without loading them into a running simulation.
+ * <p>
+ * Opening a save reads its manifest and maps its {@link CellIndex}, which is enough to count, find and
+ * locate every cell. Cells are only deserialised when asked for, together with the cells that refer to
+ * them, and the segment holding them is read at that point. Nothing here builds the physics of the
+ * environment: cells come back without an environment, and are for inspecting rather than simulating.
+ * Use {@link #loadEnvironment()} to load the save in full.
+ * <p>
+ * Saves written before cell indices existed are indexed in memory when opened, by reading every segment once.
+ */
+public class SavedWorld {
+
+    private final Path dir;
+    private final SaveManifest manifest;
+    private final CellIndex index;
+    private CheckpointChain.State parent;
+    private final Map<Integer, Map<Long, byte[]>> segmentRecords = new HashMap<>();
+    private final Map<Long, List<Cell>> groups = new HashMap<>();
+
+    private SavedWorld(Path dir) throws IOException {
+        this.dir = dir;
+        this.manifest = SaveManifest.read(dir);
+        if (manifest.isSingleFile())
+            throw new RuntimeException(dir + " was saved in the old single file format, which has no segments "
+                    + "to read cells from, so it can only be loaded in full with EnvFileIO.reloadEnvironment");
+        CellIndex mapped = CellIndex.map(dir, manifest.getTakenAt());
+        this.index = mapped != null ? mapped : buildIndex();
+    }
+
+    public static SavedWorld open(String directory) throws IOException {
+        return new SavedWorld(Paths.get(directory));
+    }
+
+    private synchronized CheckpointChain.State getParent() throws IOException {
+        if (parent == null && manifest.isDelta())
+            parent = CheckpointChain.readParent(dir, manifest);
+        return parent;
+    }
+
+    private List<RecordFile.Record> readRecords(int segment) {
+        try {
+            return CheckpointChain.readSegment(dir, manifest, manifest.getSegments().get(segment), getParent());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private CellIndex buildIndex() throws IOException {
+        List<String> classNames = new ArrayList<>();
+        List<CellIndex.Entries> entries;
+        try {
+            entries = IntStream.range(0, manifest.getSegments().size()).parallel()
+                    .mapToObj(i -> {
+                        CellIndex.Entries segmentEntries = new CellIndex.Entries(
+                                i, classNames, manifest.getSegments().get(i).getCellCount());
+                        for (RecordFile.Record record : readRecords(i)) {
+                            for (Cell cell : deserialise(record.getBytes()))
+                                segmentEntries.add(record.getKey(), cell);
+                        }
+                        return segmentEntries;
+                    })
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return CellIndex.fromBytes(CellIndex.toBytes(manifest.getTakenAt(), classNames, entries));
+    }
+
+    private static List<Cell> deserialise(byte[] bytes) {
+        List<Cell> cells = Serialiser.listFromBytes(bytes, Cell.class);
+        cells.removeIf(c -> Float.isNaN(c.getPos().x) || Float.isNaN(c.getPos().y));
+        return cells;
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    public SaveManifest getManifest() {
+        return manifest;
+    }
+
+    public SaveMetadata getMetadata() throws IOException {
+        return SaveMetadata.read(dir);
+    }
+
+    public CellIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the cell with the given id, deserialised along with the cells that refer to it,
+     * or null if there is no such cell in the save
+     */
+    public Cell getCell(long id) {
+        int i = index.indexOf(id);
+        return i < 0 ? null : getCellAt(i);
+    }
+
+    /**
+     * @return the cell at the given position in the index
+     */
+    public synchronized Cell getCellAt(int i) {
+        long id = index.getId(i);
+        for (Cell cell : getGroup(index.getSegment(i), index.getRecordKey(i))) {
+            if (cell.getId() == id)
+                return cell;
+        }
+        throw new RuntimeException("Cell " + id + " is in the index of " + dir + " but not in its segment");
+    }
+
+    private List<Cell> getGroup(int segment, long key) {
+        List<Cell> group = groups.get(key);
+        if (group != null)
+            return group;
+
+        Map<Long, byte[]> records = segmentRecords.get(segment);
+        if (records == null) {
+            records = new HashMap<>();
+            for (RecordFile.Record record : readRecords(segment))
+                records.put(record.getKey(), record.getBytes());
+            segmentRecords.put(segment, records);
+        }
+        byte[] bytes = records.get(key);
+        if (bytes == null)
+            throw new RuntimeException("No record " + key + " in segment " + segment + " of " + dir);
+        group = deserialise(bytes);
+        groups.put(key, group);
+        return group;
+    }
+
+    /**
+     * Drops the segments read and cells deserialised so far.
+     */
+    public synchronized void release() {
+        segmentRecords.clear();
+        groups.clear();
+    }
+
+    /**
+     * Summarises the stats of the protozoa in the save, as {@link Environment#summariseProtozoa} would
+     * for the environment once loaded, except that stats depending on the environment, such as light level
+     * and external temperature, are missing as the cells are read without one. Segments are read and deserialised in parallel and dropped once
+     * summarised, so only a few segments of cells are ever in memory at once.
+     */
+    public StatSummary summariseProtozoa(boolean computeLogStats, boolean includeResources,
+                                         boolean includeMolecules, boolean computeDistributions) {
+        return IntStream.range(0, manifest.getSegments().size()).parallel()
+                .mapToObj(i -> {
+                    StatSummary summary = new StatSummary(Cell.statSchema, computeLogStats, computeDistributions);
+                    for (RecordFile.Record record : readRecords(i)) {
+                        for (Cell cell : deserialise(record.getBytes())) {
+                            if (!(cell instanceof Protozoan))
+                                continue;
+                            StatRecord stats = summary.getScratchRecord();
+                            stats.clear();
+                            cell.recordStats(stats);
+                            if (includeResources)
+                                cell.recordResourceStats(stats, includeMolecules);
+                            summary.accept(stats);
+                        }
+                    }
+                    return summary;
+                })
+                .reduce(StatSummary::merge)
+                .orElseGet(() -> new StatSummary(Cell.statSchema, computeLogStats, computeDistributions));
+    }
+
+    /**
+     * Loads the save in full, into an environment that can be simulated.
+     */
+    public Environment loadEnvironment() {
+        return EnvFileIO.reloadEnvironment(dir.toString());
+    }
+}
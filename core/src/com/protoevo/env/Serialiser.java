@@ -0,0 +1,180 @@
+package com.protoevo.env;
+
+import com.badlogic.gdx.math.Vector2;
+import com.protoevo.biology.CauseOfDeath;
+import com.protoevo.biology.ComplexMolecule;
+import com.protoevo.biology.ConstructionProject;
+import com.protoevo.biology.Food;
+import com.protoevo.biology.MoleculeLedger;
+import com.protoevo.biology.cells.Cell;
+import com.protoevo.biology.cells.PlantCell;
+import com.protoevo.biology.cells.Protozoan;
+import com.protoevo.biology.evolution.*;
+import com.protoevo.biology.nn.*;
+import com.protoevo.biology.nodes.*;
+import com.protoevo.biology.organelles.MoleculeProductionOrganelle;
+import com.protoevo.biology.organelles.Organelle;
+import com.protoevo.core.Statistics;
+import com.protoevo.physics.Joining;
+import com.protoevo.physics.JointsManager;
+import com.protoevo.physics.SpatialHash;
+import com.protoevo.physics.box2d.Box2DCollisionHandler;
+import com.protoevo.utils.Colour;
+import org.nustaq.serialization.FSTConfiguration;
+import org.nustaq.serialization.FSTObjectInput;
+import org.nustaq.serialization.FSTObjectOutput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serialises objects with FST, for saves, saved cells and sending environments over the network.
+ * <p>
+ * Building an FST configuration and registering classes with it is expensive, so each thread builds
+ * one the first time it serialises and reuses it, along with the configuration's output buffer,
+ * from then on. Nothing is shared between threads, so serialising from many threads at once needs no locking.
+ * <p>
+ * FST writes a registered class as its position in the list of registered classes rather than by name,
+ * which makes registered classes much cheaper to write but means data can only be read back with the
+ * same list. Classes must only ever be added to the end of {@link #REGISTERED_CLASSES}.
+ */
+public class Serialiser {
+
+    private static final Class<?>[] REGISTERED_CLASSES = {
+            Environment.class,
+            Cell.class,
+            Food.class,
+            CauseOfDeath.class,
+            ConstructionProject.class,
+            SpatialHash.class,
+            Rock.class,
+            Box2DCollisionHandler.class,
+            Colour.class,
+            Protozoan.class,
+            SurfaceNode.class,
+            NodeAttachment.class,
+            Flagellum.class,
+            Spike.class,
+            PhagocyticReceptor.class,
+            Photoreceptor.class,
+            AdhesionReceptor.class,
+            Organelle.class,
+            MoleculeProductionOrganelle.class,
+            PlantCell.class,
+            ChemicalSolution.class,
+            ComplexMolecule.class,
+            Statistics.class,
+            Statistics.Stat.class,
+            JointsManager.class,
+            Joining.class,
+            GeneExpressionFunction.class,
+            GeneExpressionFunction.ExpressionNode.class,
+            GeneExpressionFunction.RegulationNode.class,
+            NeuralNetwork.class,
+            Neuron.class,
+            NetworkGenome.class,
+            NeuronGene.class,
+            SynapseGene.class,
+            Evolvable.class,
+            Evolvable.Component.class,
+            Evolvable.Element.class,
+            Trait.class,
+            FloatTrait.class,
+            ControlTrait.class,
+            BooleanTrait.class,
+            IntegerTrait.class,
+            CollectionTrait.class,
+            Vector2.class,
+            MoleculeLedger.class
+    };
+
+    // buffers larger than this, such as for a whole environment, are let go of once used rather than kept for reuse
+    private static final int MAX_RETAINED_BUFFER_BYTES = 16 * 1024 * 1024;
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private static final ThreadLocal<FSTConfiguration> configurations =
+            ThreadLocal.withInitial(Serialiser::createConfiguration);
+
+    public static FSTConfiguration createConfiguration() {
+        FSTConfiguration config = FSTConfiguration.createDefaultConfiguration();
+        config.registerClass(REGISTERED_CLASSES);
+        return config;
+    }
+
+    /**
+     * @return the configuration of the calling thread, which must not be handed to other threads
+     */
+    public static FSTConfiguration getConfiguration() {
+        return configurations.get();
+    }
+
+    public static byte[] toBytes(Object object, Class<?> clazz) {
+        try {
+            FSTObjectOutput out = getConfiguration().getObjectOutput();
+            out.writeObject(object, clazz);
+            byte[] bytes = out.getCopyOfWrittenBuffer();
+            out.flush();
+            if (out.getBuffer().length > MAX_RETAINED_BUFFER_BYTES)
+                out.resetForReUse(new byte[4096]);
+            return bytes;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to serialise " + clazz.getSimpleName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T fromBytes(byte[] bytes, Class<T> clazz) {
+        try {
+            FSTObjectInput in = getConfiguration().getObjectInput(bytes);
+            T object = (T) in.readObject(clazz);
+            if (bytes.length > MAX_RETAINED_BUFFER_BYTES)
+                in.resetForReuseUseArray(NO_BYTES);
+            return object;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to deserialise " + clazz.getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Deserialises a list that was serialised as an {@link ArrayList}, checking that its elements are of the given type.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> listFromBytes(byte[] bytes, Class<T> elementType) {
+        List<?> list = fromBytes(bytes, ArrayList.class);
+        for (Object element : list) {
+            if (element != null && !elementType.isInstance(element))
+                throw new RuntimeException("Failed to deserialise list of " + elementType.getSimpleName()
+                        + ": found " + element.getClass().getSimpleName());
+        }
+        return (List<T>) list;
+    }
+
+    /**
+     * Serialises straight into a stream, without holding the whole of the serialised object in memory.
+     * The stream is flushed but not closed.
+     */
+    public static void write(OutputStream stream, Object object, Class<?> clazz) throws IOException {
+        // the configuration's own output is kept for toBytes, as once given a stream it holds on to it
+        FSTObjectOutput out = new FSTObjectOutput(stream, getConfiguration());
+        out.writeObject(object, clazz);
+        out.flush();
+    }
+
+    /**
+     * Deserialises an object from a stream. The stream may be read past the end of the object,
+     * so it should hold nothing else.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T read(InputStream stream, Class<T> clazz) throws IOException {
+        try {
+            return (T) new FSTObjectInput(stream, getConfiguration()).readObject(clazz);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to deserialise " + clazz.getSimpleName(), e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.protoevo.env;
+
+import org.nustaq.serialization.*;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Loads saves from before there were {@link SaveManifest}s, in which the environment was serialised whole,
+ * cells and all, into a single {@value SaveManifest#SINGLE_FILE}.
+ * <p>
+ * Environments no longer serialise their cells and burst requests, as the cells are saved in segments,
+ * so reading such a save as usual would skip them and lose its place in the file. The environment is read
+ * instead with the fields it was written with, which puts the cells and burst requests into their now transient
+ * fields, and they are restored from there.
+ */
+public class SingleFileSave {
+
+    // the fields that environments were serialised with in the single file format but are now transient
+    private static final String[] FORMERLY_SERIALISED = {"cells", "burstRequests", "handledBurstRequests"};
+
+    private static class Input extends FSTObjectInput {
+        private Input(InputStream stream, FSTConfiguration config) {
+            super(stream, config);
+        }
+
+        private void readFields(FSTClazzInfo.FSTFieldInfo referencedBy, FSTClazzInfo info,
+                                FSTClazzInfo.FSTFieldInfo[] fields, Object object) throws Exception {
+            readObjectFields(referencedBy, info, fields, object, 0, 0);
+        }
+    }
+
+    private static class EnvironmentSerialiser extends FSTBasicObjectSerializer {
+        private FSTClazzInfo.FSTFieldInfo[] fields;
+
+        @Override
+        public void writeObject(FSTObjectOutput out, Object toWrite, FSTClazzInfo info,
+                                FSTClazzInfo.FSTFieldInfo referencedBy, int streamPosition) {
+            throw new UnsupportedOperationException("Environments are no longer saved in the single file format");
+        }
+
+        @Override
+        public void readObject(FSTObjectInput in, Object toRead, FSTClazzInfo info,
+                               FSTClazzInfo.FSTFieldInfo referencedBy) throws Exception {
+            if (fields == null)
+                fields = fieldsOf(info);
+            ((Input) in).readFields(referencedBy, info, fields, toRead);
+        }
+    }
+
+    /**
+     * @return the fields of the environment as it was serialised in the single file format,
+     * in the order that FST serialises fields in
+     */
+    private static FSTClazzInfo.FSTFieldInfo[] fieldsOf(FSTClazzInfo info) throws NoSuchFieldException {
+        List<FSTClazzInfo.FSTFieldInfo> fields = new ArrayList<>(Arrays.asList(info.getFieldInfo()));
+        for (String name : FORMERLY_SERIALISED) {
+            Field field = Environment.class.getDeclaredField(name);
+            field.setAccessible(true);
+            fields.add(new FSTClazzInfo.FSTFieldInfo(null, field, true));
+        }
+        fields.sort(FSTClazzInfo.defFieldComparator);
+        return fields.toArray(new FSTClazzInfo.FSTFieldInfo[0]);
+    }
+
+    /**
+     * Reads the environment in a single file save, without restoring its cells. They are left in the map
+     * of cells by id, where {@link Environment#restoreSingleFileCells()} finds them.
+     */
+    public static Environment read(InputStream stream) throws IOException {
+        // a configuration of its own, as the usual ones would read environments without their cells
+        FSTConfiguration config = Serialiser.createConfiguration();
+        config.registerSerializer(Environment.class, new EnvironmentSerialiser(), false);
+        try {
+            return (Environment) new Input(stream, config).readObject(Environment.class);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to deserialise environment in the single file format", e);
+        }
+    }
+
+    /**
+     * Loads a single file save in full.
+     */
+    public static Environment load(Path dir) throws IOException {
+        Environment env;
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(dir.resolve(SaveManifest.SINGLE_FILE)))) {
+            env = read(stream);
+        }
+        env.restoreSingleFileCells();
+        env.rebuildWorld();
+        return env;
+    }
+}
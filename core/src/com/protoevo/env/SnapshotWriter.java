@@ -0,0 +1,84 @@
+package com.protoevo.env;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialises and writes {@link EnvironmentSnapshot}s to disk on a background thread, in the order they were taken,
+ * and records each one in the {@link SaveIndex} of the directory it was written to.
+ * <p>
+ * At most a fixed number of snapshots are held in memory waiting to be written. If the disk falls so far
+ * behind that the queue is full, {@link #write} waits for a slot rather than letting snapshots pile up.
+ */
+public class SnapshotWriter {
+
+    public static final int DEFAULT_MAX_PENDING = 2;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Snapshot Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Semaphore pending;
+    private final int maxPending;
+
+    public SnapshotWriter() {
+        this(DEFAULT_MAX_PENDING);
+    }
+
+    public SnapshotWriter(int maxPending) {
+        this.maxPending = maxPending;
+        this.pending = new Semaphore(maxPending);
+    }
+
+    public void write(EnvironmentSnapshot snapshot, String directory) {
+        write(snapshot, directory, null);
+    }
+
+    /**
+     * @param chain the checkpoint chain to write the snapshot into, or null to write it as a save that stands on its own
+     */
+    public void write(EnvironmentSnapshot snapshot, String directory, CheckpointChain chain) {
+        pending.acquireUninterruptibly();
+        executor.execute(() -> {
+            try {
+                snapshot.serialise();
+                long start = System.nanoTime();
+                if (chain == null)
+                    snapshot.writeTo(directory);
+                else
+                    chain.write(snapshot, directory);
+                Path dir = Paths.get(directory).toAbsolutePath();
+                SaveIndex.append(dir.getParent(), snapshot.getWrittenMetadata());
+                System.out.printf("Wrote environment to %s (%.1f MB, %.1f MB on disk with %s, " +
+                                "copied in %d ms, serialised in %d ms, written in %d ms)%n",
+                        directory, snapshot.getSizeBytes() / 1e6, snapshot.getWrittenSizeBytes() / 1e6,
+                        snapshot.getCodec(),
+                        TimeUnit.NANOSECONDS.toMillis(snapshot.getCopyTimeNanos()),
+                        TimeUnit.NANOSECONDS.toMillis(snapshot.getSerialiseTimeNanos()),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } catch (IOException e) {
+                System.err.println("Failed to write environment to " + directory + ": " + e);
+            } finally {
+                pending.release();
+            }
+        });
+    }
+
+    public int getPendingCount() {
+        return maxPending - pending.availablePermits();
+    }
+
+    /**
+     * Blocks until every snapshot queued so far has been written.
+     */
+    public void flush() {
+        pending.acquireUninterruptibly(maxPending);
+        pending.release(maxPending);
+    }
+}
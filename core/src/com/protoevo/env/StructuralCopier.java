@@ -0,0 +1,360 @@
+package com.protoevo.env;
+
+import org.objenesis.Objenesis;
+import org.objenesis.ObjenesisStd;
+import org.objenesis.instantiator.ObjectInstantiator;
+
+import java.lang.invoke.SerializedLambda;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * Copies the part of an object graph that FST serialises, so that a consistent copy of the environment
+ * can be taken between ticks and serialised while the simulation carries on.
+ * <p>
+ * Objects are copied field by field. Static and transient fields are skipped, as serialisation skips them,
+ * so they are left at their default values and a copy is only good for serialising. Immutable values,
+ * such as strings, boxed primitives, enums and classes, are shared rather than copied. A serializable lambda
+ * is rebuilt around copies of the values it captured, such as the object a method reference is bound to.
+ * <p>
+ * The internals of JDK classes cannot be reached by reflection, so JDK collections and maps are copied
+ * by adding copies of their contents to a new collection of the same class. This is done once everything
+ * else reachable has been copied, so that copied keys and elements hash as the originals do.
+ * Any other JDK object is copied by serialising it on its own.
+ * <p>
+ * An object reached more than once in a call to {@link #copy}, including through a cycle, is copied once,
+ * so the copy has the same shape as the original. Each call copies its graph on its own, as each call to
+ * {@link Serialiser#toBytes} serialises its graph on its own. A copier is not thread-safe, and the graph
+ * must not change while it is copied.
+ */
+public class StructuralCopier {
+
+    private static final Objenesis OBJENESIS = new ObjenesisStd(true);
+
+    private static final Set<Class<?>> IMMUTABLE = new HashSet<>(Arrays.asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class,
+            Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class, UUID.class,
+            Class.class, Object.class
+    ));
+
+    private enum Kind {
+        SHARED, PRIMITIVE_ARRAY, ARRAY, OBJECT, COLLECTION, MAP, TREE_SET, TREE_MAP, LAMBDA, SERIALISED
+    }
+
+    private static final class Layout {
+        private final Kind kind;
+        // the fields declared outside the JDK that serialisation writes
+        private final Field[] primitiveFields, referenceFields;
+        private final Constructor<?> constructor;
+        private final ObjectInstantiator<?> instantiator;
+        // for a lambda, the method that describes it and the method of the class that made it that rebuilds it
+        private Method writeReplace, deserialise;
+        private Class<?> capturingClass;
+
+        private Layout(Class<?> type) {
+            Kind kind = kindOf(type);
+            if (kind == Kind.LAMBDA) {
+                try {
+                    writeReplace = type.getDeclaredMethod("writeReplace");
+                    writeReplace.setAccessible(true);
+                    String name = type.getName();
+                    capturingClass = Class.forName(
+                            name.substring(0, name.indexOf("$$Lambda")), false, type.getClassLoader());
+                    deserialise = capturingClass.getDeclaredMethod("$deserializeLambda$", SerializedLambda.class);
+                    deserialise.setAccessible(true);
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    // not serializable, so it cannot be part of what is serialised
+                    kind = Kind.SHARED;
+                }
+            }
+            this.kind = kind;
+            List<Field> primitives = new ArrayList<>(), references = new ArrayList<>();
+            if (kind == Kind.OBJECT || kind == Kind.COLLECTION || kind == Kind.MAP) {
+                for (Class<?> c = type; c != Object.class && !isJdk(c); c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        if ((field.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT)) != 0)
+                            continue;
+                        field.setAccessible(true);
+                        (field.getType().isPrimitive() ? primitives : references).add(field);
+                    }
+                }
+            }
+            primitiveFields = primitives.toArray(new Field[0]);
+            referenceFields = references.toArray(new Field[0]);
+            constructor = kind == Kind.COLLECTION || kind == Kind.MAP ? noArgConstructor(type) : null;
+            instantiator = kind == Kind.OBJECT ? OBJENESIS.getInstantiatorOf(type) : null;
+        }
+    }
+
+    private static final ClassValue<Layout> LAYOUTS = new ClassValue<Layout>() {
+        @Override
+        protected Layout computeValue(Class<?> type) {
+            return new Layout(type);
+        }
+    };
+
+    // the originals copied so far and their copies, side by side in an open addressed table keyed by identity
+    private Object[] copies = new Object[256];
+    private int numCopied;
+    // the originals whose fields are still to be copied, each pushed after its copy
+    private final ArrayDeque<Object> toFill = new ArrayDeque<>();
+    private final List<Runnable> contentsToAdd = new ArrayList<>();
+
+    /**
+     * Copies the object and everything reachable from it.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T copy(T object) {
+        if (numCopied > 0) {
+            Arrays.fill(copies, null);
+            numCopied = 0;
+        }
+        T copy = (T) copyOf(object);
+        try {
+            while (!toFill.isEmpty())
+                fill(toFill.pop(), toFill.pop());
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Failed to copy " + object.getClass().getSimpleName(), e);
+        }
+        for (Runnable add : contentsToAdd)
+            add.run();
+        contentsToAdd.clear();
+        return copy;
+    }
+
+    /**
+     * @return the index of the object in the table, or of the empty slot it would go in
+     */
+    private int slotOf(Object object) {
+        int mask = copies.length - 1;
+        int i = (System.identityHashCode(object) << 1) & mask;
+        while (copies[i] != null && copies[i] != object)
+            i = (i + 2) & mask;
+        return i;
+    }
+
+    private void put(int slot, Object object, Object copy) {
+        copies[slot] = object;
+        copies[slot + 1] = copy;
+        if (++numCopied * 4 > copies.length) {
+            Object[] old = copies;
+            copies = new Object[old.length * 2];
+            for (int i = 0; i < old.length; i += 2) {
+                if (old[i] != null) {
+                    int j = slotOf(old[i]);
+                    copies[j] = old[i];
+                    copies[j + 1] = old[i + 1];
+                }
+            }
+        }
+    }
+
+    private static boolean isJdk(Class<?> type) {
+        String name = type.getName();
+        return type.getClassLoader() == null || name.startsWith("java.") || name.startsWith("javax.")
+                || name.startsWith("sun.") || name.startsWith("jdk.");
+    }
+
+    private static boolean extendsJdk(Class<?> type) {
+        for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+            if (isJdk(c))
+                return true;
+        }
+        return false;
+    }
+
+    private static Kind kindOf(Class<?> type) {
+        if (type.isArray())
+            return type.getComponentType().isPrimitive() ? Kind.PRIMITIVE_ARRAY : Kind.ARRAY;
+        if (type.getName().contains("$$Lambda"))
+            return Kind.LAMBDA;
+        if (IMMUTABLE.contains(type) || Enum.class.isAssignableFrom(type))
+            return Kind.SHARED;
+        if (type == TreeSet.class)
+            return Kind.TREE_SET;
+        if (type == TreeMap.class)
+            return Kind.TREE_MAP;
+        if (!extendsJdk(type))
+            return Kind.OBJECT;
+        boolean sorted = SortedMap.class.isAssignableFrom(type) || SortedSet.class.isAssignableFrom(type)
+                || PriorityQueue.class.isAssignableFrom(type);
+        if (!sorted && noArgConstructor(type) != null) {
+            if (Map.class.isAssignableFrom(type))
+                return Kind.MAP;
+            if (Collection.class.isAssignableFrom(type))
+                return Kind.COLLECTION;
+        }
+        return Kind.SERIALISED;
+    }
+
+    private static Constructor<?> noArgConstructor(Class<?> type) {
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (NoSuchMethodException | RuntimeException e) {
+            // such as a constructor of a JDK class that is not public
+            return null;
+        }
+    }
+
+    private Object copyOf(Object object) {
+        if (object == null)
+            return null;
+        Layout layout = LAYOUTS.get(object.getClass());
+        if (layout.kind == Kind.SHARED)
+            return object;
+        int slot = slotOf(object);
+        if (copies[slot] == object)
+            return copies[slot + 1];
+
+        Object copy;
+        switch (layout.kind) {
+            case PRIMITIVE_ARRAY:
+                copy = copyPrimitiveArray(object);
+                break;
+            case ARRAY:
+                copy = Array.newInstance(object.getClass().getComponentType(), Array.getLength(object));
+                break;
+            case OBJECT:
+                copy = layout.instantiator.newInstance();
+                break;
+            case COLLECTION:
+            case MAP:
+                try {
+                    copy = layout.constructor.newInstance();
+                } catch (ReflectiveOperationException e) {
+                    throw new RuntimeException("Failed to copy " + object.getClass().getSimpleName(), e);
+                }
+                break;
+            case TREE_SET:
+                copy = new TreeSet<>(copyOfComparator(((TreeSet<?>) object).comparator()));
+                // copying the comparator may have moved the table
+                slot = slotOf(object);
+                break;
+            case TREE_MAP:
+                copy = new TreeMap<>(copyOfComparator(((TreeMap<?, ?>) object).comparator()));
+                slot = slotOf(object);
+                break;
+            case LAMBDA:
+                copy = copyLambda(object, layout);
+                put(slotOf(object), object, copy);
+                return copy;
+            default:
+                copy = Serialiser.fromBytes(Serialiser.toBytes(object, object.getClass()), object.getClass());
+                put(slot, object, copy);
+                return copy;
+        }
+        put(slot, object, copy);
+        if (layout.kind != Kind.PRIMITIVE_ARRAY) {
+            toFill.push(copy);
+            toFill.push(object);
+        }
+        return copy;
+    }
+
+    private Object copyLambda(Object object, Layout layout) {
+        try {
+            SerializedLambda lambda = (SerializedLambda) layout.writeReplace.invoke(object);
+            if (lambda.getCapturedArgCount() == 0)
+                return object;
+            Object[] captured = new Object[lambda.getCapturedArgCount()];
+            for (int i = 0; i < captured.length; i++)
+                captured[i] = copyOf(lambda.getCapturedArg(i));
+            return layout.deserialise.invoke(null, new SerializedLambda(layout.capturingClass,
+                    lambda.getFunctionalInterfaceClass(), lambda.getFunctionalInterfaceMethodName(),
+                    lambda.getFunctionalInterfaceMethodSignature(), lambda.getImplMethodKind(),
+                    lambda.getImplClass(), lambda.getImplMethodName(), lambda.getImplMethodSignature(),
+                    lambda.getInstantiatedMethodType(), captured));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Failed to copy lambda " + object.getClass().getName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Comparator<Object> copyOfComparator(Comparator<?> comparator) {
+        return (Comparator<Object>) copyOf(comparator);
+    }
+
+    private static Object copyPrimitiveArray(Object array) {
+        if (array instanceof float[])
+            return ((float[]) array).clone();
+        if (array instanceof int[])
+            return ((int[]) array).clone();
+        if (array instanceof double[])
+            return ((double[]) array).clone();
+        if (array instanceof long[])
+            return ((long[]) array).clone();
+        if (array instanceof byte[])
+            return ((byte[]) array).clone();
+        if (array instanceof boolean[])
+            return ((boolean[]) array).clone();
+        if (array instanceof short[])
+            return ((short[]) array).clone();
+        return ((char[]) array).clone();
+    }
+
+    private void fill(Object object, Object copy) throws IllegalAccessException {
+        Layout layout = LAYOUTS.get(object.getClass());
+        if (layout.kind == Kind.ARRAY) {
+            Object[] from = (Object[]) object, to = (Object[]) copy;
+            for (int i = 0; i < from.length; i++)
+                to[i] = copyOf(from[i]);
+            return;
+        }
+
+        for (Field field : layout.primitiveFields)
+            copyPrimitive(field, object, copy);
+        for (Field field : layout.referenceFields)
+            field.set(copy, copyOf(field.get(object)));
+
+        if (layout.kind == Kind.MAP || layout.kind == Kind.TREE_MAP) {
+            Map<?, ?> from = (Map<?, ?>) object;
+            Object[] keys = new Object[from.size()], values = new Object[from.size()];
+            int i = 0;
+            for (Map.Entry<?, ?> entry : from.entrySet()) {
+                keys[i] = copyOf(entry.getKey());
+                values[i++] = copyOf(entry.getValue());
+            }
+            @SuppressWarnings("unchecked")
+            Map<Object, Object> to = (Map<Object, Object>) copy;
+            contentsToAdd.add(() -> {
+                for (int j = 0; j < keys.length; j++)
+                    to.put(keys[j], values[j]);
+            });
+        } else if (layout.kind == Kind.COLLECTION || layout.kind == Kind.TREE_SET) {
+            List<Object> elements = new ArrayList<>(((Collection<?>) object).size());
+            for (Object element : (Collection<?>) object)
+                elements.add(copyOf(element));
+            @SuppressWarnings("unchecked")
+            Collection<Object> to = (Collection<Object>) copy;
+            contentsToAdd.add(() -> to.addAll(elements));
+        }
+    }
+
+    private static void copyPrimitive(Field field, Object from, Object to) throws IllegalAccessException {
+        Class<?> type = field.getType();
+        if (type == float.class)
+            field.setFloat(to, field.getFloat(from));
+        else if (type == int.class)
+            field.setInt(to, field.getInt(from));
+        else if (type == boolean.class)
+            field.setBoolean(to, field.getBoolean(from));
+        else if (type == long.class)
+            field.setLong(to, field.getLong(from));
+        else if (type == double.class)
+            field.setDouble(to, field.getDouble(from));
+        else if (type == byte.class)
+            field.setByte(to, field.getByte(from));
+        else if (type == short.class)
+            field.setShort(to, field.getShort(from));
+        else
+            field.setChar(to, field.getChar(from));
+    }
+}
@@ -2,7 +2,6 @@ package com.protoevo.networking;
 
 import com.protoevo.core.Simulation;
 import com.protoevo.env.EnvFileIO;
-import com.protoevo.env.Environment;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -28,7 +27,7 @@ public class RemoteGraphics {
     }
 
     public void send() {
-        byte[] envBytes = EnvFileIO.toBytes(simulation.getEnv(), Environment.class);
+        byte[] envBytes = EnvFileIO.environmentToBytes(simulation.getEnv());
         client.send(envBytes);
     }
 
@@ -47,10 +47,8 @@ public class RemoteSimulation extends Simulation {
     private Environment getEnvironmentFromServer() {
         byte[] downloadedEnvBytes = environmentServer.get(byte[].class)
                 .orElseThrow(() -> new RuntimeException("Could not get environment from server"));
-        Environment downloadedEnv = EnvFileIO.fromBytes(downloadedEnvBytes, Environment.class);
+        Environment downloadedEnv = EnvFileIO.environmentFromBytes(downloadedEnvBytes);
         loadingStatus = environmentServer.getStatus().getMessage();
-        downloadedEnv.createTransientObjects();
-        downloadedEnv.rebuildWorld();
         initialised = true;
         setName(downloadedEnv.getSimulationName());
         if (getName() != null) {
@@ -14,7 +14,7 @@ import java.util.Optional;
 public abstract class Particle implements Serializable, Shape, Coloured {
     private static final long serialVersionUID = 1L;
 
-    protected final Physics physics;
+    protected transient Physics physics;
     protected boolean rangedInteractionsEnabled = false;
 
     public Particle(Physics physics) {
@@ -14,7 +14,7 @@ public abstract class Physics implements Serializable {
     private static final long serialVersionUID = 1L;
     private final Statistics debugStats = new Statistics();
     protected float physicsStepTime;
-    private final Map<Long, Particle> particles = new ConcurrentHashMap<>();
+    private transient Map<Long, Particle> particles = new ConcurrentHashMap<>();
 
     public abstract void registerStaticBodies(Environment environment);
 
@@ -50,6 +50,14 @@ public abstract class Physics implements Serializable {
 
     protected abstract Particle newParticle();
 
+    /**
+     * Adds a particle that was saved separately from this physics, such as one read back from a save segment.
+     */
+    public void registerParticle(Particle particle) {
+        particle.physics = this;
+        particles.put(particle.getId(), particle);
+    }
+
     public Optional<Particle> getParticle(long id) {
         return Optional.ofNullable(particles.get(id));
     }
@@ -60,6 +68,10 @@ public abstract class Physics implements Serializable {
         return debugStats;
     }
 
+    public void createTransientObjects() {
+        particles = new ConcurrentHashMap<>();
+    }
+
     public void rebuildTransientFields(Environment environment) {
         getJointsManager().rebuild(this);
     }
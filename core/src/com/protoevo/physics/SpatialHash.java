@@ -74,6 +74,10 @@ public class SpatialHash<T> implements Serializable, Iterable<Collection<T>> {
         return i * resolution + j;
     }
 
+    public int getChunkIndex(Vector2 pos) {
+        return getChunkIndex(getChunkX(pos.x), getChunkY(pos.y));
+    }
+
     public boolean add(T t, int i, int j) {
         int idx = getChunkIndex(i, j);
 
@@ -42,8 +42,8 @@ public class Box2DParticle extends Particle implements Serializable {
     private float angle, torqueToApply = 0;
     @JsonIgnore
     private final Statistics stats = new Statistics();
-    private final Collection<Collision> contacts = new ConcurrentLinkedQueue<>();
-    private final Collection<Object> interactionObjects = new ConcurrentLinkedQueue<>();
+    private transient Collection<Collision> contacts = new ConcurrentLinkedQueue<>();
+    private transient Collection<Object> interactionObjects = new ConcurrentLinkedQueue<>();
     private CauseOfDeath causeOfDeath = null;
     private boolean requestedDestroyBody = false;
 
@@ -171,6 +171,8 @@ public class Box2DParticle extends Particle implements Serializable {
 
     @Override
     public void rebuildTransientFields() {
+        contacts = new ConcurrentLinkedQueue<>();
+        interactionObjects = new ConcurrentLinkedQueue<>();
         createBody();
         if (canInteractAtRange())
             createInteractionFixture();
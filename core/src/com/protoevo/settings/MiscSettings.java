@@ -9,6 +9,11 @@ public class MiscSettings extends Settings {
             "Amount of in-simulation time to wait until making a new historical save.",
             500.0f,
             Statistics.ComplexUnit.TIME);
+    public final Settings.Parameter<Integer> historicalSaveDeltas = new Settings.Parameter<>(
+            "Historical Save Deltas",
+            "Number of historical saves stored as changes since the previous one, between each full historical save. " +
+            "Set to 0 to store every historical save in full.",
+            10);
     public final Settings.Parameter<Float> timeBetweenAutoSaves = new Settings.Parameter<>(
             "Time Between Auto Saves",
             "Amount of in-simulation time to wait until making a new autosave.",
@@ -19,6 +24,16 @@ public class MiscSettings extends Settings {
             "Number of autosaves to keep.",
             3,
             Statistics.ComplexUnit.COUNT);
+    public final Settings.Parameter<Integer> saveCompressionLevel = new Settings.Parameter<>(
+            "Save Compression Level",
+            "Deflate compression level for environment saves, from 1 (fastest) to 9 (smallest). " +
+            "Set to 0 to save without compression.",
+            1);
+    public final Settings.Parameter<Boolean> parallelSaveCompression = new Settings.Parameter<>(
+            "Parallel Save Compression",
+            "Whether to compress the segments of a save on all cores at once. " +
+            "Saves are written in the background, so turning this off leaves more cores for the simulation.",
+            true);
     public final Settings.Parameter<Float> statisticsSnapshotTime = new Settings.Parameter<>(
             "Save Statistics Time",
             "Amount of in-simulation time between making a new snapshot of the summary statistics.",
@@ -75,6 +90,20 @@ public class MiscSettings extends Settings {
             "Spatial Hash Resolution",
             "The resolution of the spatial hash used for local population caps.",
             20);
+    public final Settings.Parameter<Boolean> batchGeneExpression = new Settings.Parameter<>(
+            "Batch Gene Expression",
+            "Whether to tick the gene regulatory networks of all cells together, batching those with the same topology.",
+            true);
+    public final Settings.Parameter<Integer> geneExpressionSpreadTicks = new Settings.Parameter<>(
+            "Gene Expression Spread Ticks",
+            "Number of ticks over which a burst of gene expression requests is spread out. " +
+            "Set to 1 to express every request on the tick it is made.",
+            10);
+    public final Settings.Parameter<Boolean> fastActivations = new Settings.Parameter<>(
+            "Fast Activations",
+            "Whether to use lookup tables for the sigmoid, tanh and gaussian activations of neural networks. " +
+            "These are accurate to within a few millionths.",
+            false);
     public final Settings.Parameter<Float> checkCellJoiningsInterval = new Settings.Parameter<>(
             "Check Cell Joinings Interval",
             "The amount of time between checking for cell joinings.",
@@ -0,0 +1,80 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.nn.ActivationFn;
+import com.protoevo.biology.nn.FastActivations;
+
+import java.util.Random;
+
+/**
+ * Compares the exact activation functions with the approximations in {@link FastActivations},
+ * reporting the time per call and the maximum absolute error seen over the benchmark inputs.
+ * Also times the boxed {@link ActivationFn#apply} path that neurons used before networks were compiled.
+ */
+public class ActivationBenchmark {
+
+    private static final ActivationFn.Id[] ids = {
+            ActivationFn.Id.SIGMOID, ActivationFn.Id.TANH, ActivationFn.Id.GAUSSIAN
+    };
+
+    private static ActivationFn exactFn(ActivationFn.Id id) {
+        switch (id) {
+            case SIGMOID: return ActivationFn.SIGMOID;
+            case TANH: return ActivationFn.TANH;
+            default: return ActivationFn.GAUSSIAN;
+        }
+    }
+
+    public static void main(String[] args) {
+        int n = 1 << 16;
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        Random random = new Random(42);
+        float[] inputs = new float[n];
+        for (int i = 0; i < n; i++)
+            inputs[i] = (float) random.nextGaussian() * 3f;
+
+        System.out.printf("%10s %14s %14s %14s %10s %12s%n",
+                "activation", "boxed ns/call", "exact ns/call", "fast ns/call", "speed-up", "max err");
+
+        for (ActivationFn.Id id : ids) {
+            int op = id.getOpcode();
+            ActivationFn fn = exactFn(id);
+            float sink = 0, err = 0;
+
+            for (int i = 0; i < n; i++)
+                err = Math.max(err, Math.abs(
+                        ActivationFn.activate(op, 0, 0, inputs[i]) - FastActivations.activate(op, 0, 0, inputs[i])));
+
+            // warm up all three paths before timing
+            for (int r = 0; r < rounds / 5; r++) {
+                for (int i = 0; i < n; i++) {
+                    sink += fn.apply(inputs[i]);
+                    sink += ActivationFn.activate(op, 0, 0, inputs[i]);
+                    sink += FastActivations.activate(op, 0, 0, inputs[i]);
+                }
+            }
+
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds / 10; r++)
+                for (int i = 0; i < n; i++)
+                    sink += fn.apply(inputs[i]);
+            double boxedNs = (System.nanoTime() - start) / ((double) (rounds / 10) * n);
+
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++)
+                for (int i = 0; i < n; i++)
+                    sink += ActivationFn.activate(op, 0, 0, inputs[i]);
+            double exactNs = (System.nanoTime() - start) / ((double) rounds * n);
+
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r++)
+                for (int i = 0; i < n; i++)
+                    sink += FastActivations.activate(op, 0, 0, inputs[i]);
+            double fastNs = (System.nanoTime() - start) / ((double) rounds * n);
+
+            System.out.printf("%10s %14.2f %14.2f %14.2f %9.2fx %12.2e%n",
+                    id, boxedNs, exactNs, fastNs, exactNs / fastNs, err);
+            if (sink == 42)
+                System.out.println();
+        }
+    }
+}
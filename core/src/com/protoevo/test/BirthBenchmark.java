@@ -0,0 +1,66 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.cells.Protozoan;
+import com.protoevo.biology.evolution.Evolvable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how many protozoa can be constructed per second through each of the ways
+ * new cells come into existence: random initialisation, sexual crossover and asexual cloning.
+ * Also reports the heap retained per protozoan along a lineage of asexual clones.
+ */
+public class BirthBenchmark {
+
+    private interface Birth {
+        Protozoan create(Protozoan p1, Protozoan p2);
+    }
+
+    private static void run(String name, Protozoan p1, Protozoan p2, Birth birth, int births) {
+        for (int i = 0; i < births / 4; i++)
+            birth.create(p1, p2);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < births; i++)
+            birth.create(p1, p2);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%12s %10d %14.1f %14.1f%n", name, births, births / seconds, 1e6 * seconds / births);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void lineageHeap(Protozoan ancestor, int generations) {
+        List<Protozoan> lineage = new ArrayList<>(generations);
+        long before = usedHeap();
+        Protozoan p = ancestor;
+        for (int i = 0; i < generations; i++) {
+            p = Evolvable.asexualClone(p);
+            lineage.add(p);
+        }
+        long after = usedHeap();
+        System.out.printf("%nheap per protozoan over a lineage of %d clones: %.1f KiB%n",
+                lineage.size(), (after - before) / 1024.0 / lineage.size());
+    }
+
+    public static void main(String[] args) {
+        int births = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        Protozoan p1 = Evolvable.createNew(Protozoan.class);
+        Protozoan p2 = Evolvable.createNew(Protozoan.class);
+
+        System.out.printf("%12s %10s %14s %14s%n", "birth", "count", "births/sec", "us/birth");
+        run("random", p1, p2, (a, b) -> Evolvable.createNew(Protozoan.class), births);
+        run("crossover", p1, p2, (a, b) -> Evolvable.createChild(
+                Protozoan.class, a.getGeneExpressionFunction(), b.getGeneExpressionFunction()), births);
+        run("clone", p1, p2, (a, b) -> Evolvable.asexualClone(a), births);
+
+        lineageHeap(p1, births);
+    }
+}
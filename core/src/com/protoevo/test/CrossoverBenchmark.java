@@ -0,0 +1,55 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.nn.NetworkGenome;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Measures crossovers per second, and bytes allocated per crossover, for network genomes
+ * with between 50 and 500 synapses. Parents descend from a common ancestor, so they share
+ * most innovation numbers but each have some disjoint genes from their own mutations.
+ */
+public class CrossoverBenchmark {
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return 0;
+    }
+
+    public static void main(String[] args) {
+        int[][] shapes = {{5, 10}, {10, 10}, {10, 25}, {20, 25}};
+        Random random = new Random(42);
+
+        System.out.printf("%10s %12s %16s %16s%n", "synapses", "crossovers", "crossovers/sec", "bytes/crossover");
+
+        for (int[] shape : shapes) {
+            NetworkGenome ancestor = new NetworkGenome(shape[0], shape[1]);
+            NetworkGenome p1 = new NetworkGenome(ancestor);
+            NetworkGenome p2 = new NetworkGenome(ancestor);
+            p1.mutate(random);
+            p2.mutate(random);
+
+            int synapses = (p1.getSynapseGenes().length + p2.getSynapseGenes().length) / 2;
+            int crossovers = Math.max(10_000, 5_000_000 / synapses);
+
+            int checksum = 0;
+            for (int i = 0; i < crossovers; i++)
+                checksum += p1.crossover(p2, random).getSynapseGenes().length;
+
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < crossovers; i++)
+                checksum += p1.crossover(p2, random).getSynapseGenes().length;
+            double seconds = (System.nanoTime() - start) / 1e9;
+            bytes = allocatedBytes() - bytes;
+
+            System.out.printf("%10d %12d %16.0f %16d%n",
+                    synapses, crossovers, crossovers / seconds, bytes / crossovers);
+            if (checksum == 0)
+                System.out.println("no synapses inherited");
+        }
+    }
+}
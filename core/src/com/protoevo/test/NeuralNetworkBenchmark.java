@@ -0,0 +1,137 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.nn.ActivationFn;
+import com.protoevo.biology.nn.NeuralNetwork;
+import com.protoevo.biology.nn.Neuron;
+
+import java.util.Random;
+
+/**
+ * Compares ticking a network through the compiled evaluator with the object graph
+ * evaluation it replaced, in which each neuron boxes its state through {@link ActivationFn#apply}.
+ */
+public class NeuralNetworkBenchmark {
+
+    private static class ObjectGraphNeuron {
+        ObjectGraphNeuron[] inputs;
+        float[] weights;
+        ActivationFn activation;
+        float state, nextState;
+
+        void tick() {
+            nextState = 0.0f;
+            for (int i = 0; i < inputs.length; i++)
+                nextState += inputs[i].state * weights[i];
+            nextState = activation.apply(nextState);
+        }
+
+        void update() {
+            state = nextState;
+        }
+    }
+
+    private static final Random random = new Random(42);
+
+    private static Neuron[] randomNetwork(int size, int fanIn) {
+        int nSensors = Math.max(1, size / 8);
+        int nOutputs = Math.max(1, size / 8);
+        Neuron[] neurons = new Neuron[size];
+        for (int i = 0; i < size; i++) {
+            Neuron.Type type;
+            if (i < nSensors)
+                type = Neuron.Type.SENSOR;
+            else if (i >= size - nOutputs)
+                type = Neuron.Type.OUTPUT;
+            else
+                type = Neuron.Type.HIDDEN;
+
+            int n = type == Neuron.Type.SENSOR ? 0 : fanIn;
+            ActivationFn activation;
+            if (type == Neuron.Type.SENSOR)
+                activation = ActivationFn.LINEAR;
+            else if (type == Neuron.Type.OUTPUT)
+                activation = ActivationFn.getOutputMapper(0, 1);
+            else
+                activation = ActivationFn.activationFunctions[random.nextInt(ActivationFn.activationFunctions.length)];
+            neurons[i] = new Neuron(i, new Neuron[n], new float[n], type, activation, "Neuron " + i);
+        }
+        for (int i = nSensors; i < size; i++) {
+            Neuron[] inputs = neurons[i].getInputs();
+            float[] weights = neurons[i].getWeights();
+            for (int j = 0; j < inputs.length; j++) {
+                inputs[j] = neurons[random.nextInt(size)];
+                weights[j] = 2 * random.nextFloat() - 1;
+            }
+        }
+        return neurons;
+    }
+
+    private static ObjectGraphNeuron[] toObjectGraph(NeuralNetwork nn) {
+        ObjectGraphNeuron[] graph = new ObjectGraphNeuron[nn.getSize()];
+        for (Neuron neuron : nn.getNeurons())
+            graph[neuron.getId()] = new ObjectGraphNeuron();
+        for (Neuron neuron : nn.getNeurons()) {
+            ObjectGraphNeuron node = graph[neuron.getId()];
+            node.activation = neuron.getActivation();
+            node.weights = neuron.getWeights();
+            node.inputs = new ObjectGraphNeuron[neuron.getInputs().length];
+            for (int i = 0; i < node.inputs.length; i++)
+                node.inputs[i] = graph[neuron.getInputs()[i].getId()];
+        }
+        return graph;
+    }
+
+    private static void setInputs(NeuralNetwork nn, ObjectGraphNeuron[] graph, int t) {
+        Neuron[] sensors = nn.getInputNeurons();
+        for (int i = 0; i < sensors.length; i++) {
+            float value = (float) Math.sin(0.1 * t + i);
+            sensors[i].setState(value);
+            graph[sensors[i].getId()].state = value;
+        }
+    }
+
+    private static float maxAbsError(NeuralNetwork nn, ObjectGraphNeuron[] graph) {
+        float err = 0;
+        for (Neuron neuron : nn.getNeurons())
+            err = Math.max(err, Math.abs(neuron.getState() - graph[neuron.getId()].state));
+        return err;
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = {16, 64, 256, 1024};
+        int fanIn = 8;
+        int warmupTicks = 20_000;
+
+        System.out.printf("%8s %10s %14s %14s %10s %10s%n",
+                "neurons", "ticks", "graph ns/tick", "flat ns/tick", "speed-up", "max err");
+
+        for (int size : sizes) {
+            NeuralNetwork nn = new NeuralNetwork(randomNetwork(size, fanIn));
+            ObjectGraphNeuron[] graph = toObjectGraph(nn);
+            int ticks = Math.max(1000, 20_000_000 / (size * fanIn));
+
+            for (int t = 0; t < warmupTicks; t++) {
+                setInputs(nn, graph, t);
+                nn.tick();
+                for (ObjectGraphNeuron n : graph) n.tick();
+                for (ObjectGraphNeuron n : graph) n.update();
+            }
+            float err = maxAbsError(nn, graph);
+
+            long start = System.nanoTime();
+            for (int t = 0; t < ticks; t++) {
+                for (ObjectGraphNeuron n : graph) n.tick();
+                for (ObjectGraphNeuron n : graph) n.update();
+            }
+            double graphNs = (System.nanoTime() - start) / (double) ticks;
+
+            start = System.nanoTime();
+            for (int t = 0; t < ticks; t++)
+                nn.tick();
+            double flatNs = (System.nanoTime() - start) / (double) ticks;
+
+            System.out.printf("%8d %10d %14.1f %14.1f %9.2fx %10.2e%n",
+                    size, ticks, graphNs, flatNs, graphNs / flatNs, err);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.cells.Cell;
+import com.protoevo.biology.cells.Protozoan;
+import com.protoevo.biology.evolution.Evolvable;
+import com.protoevo.env.EnvFileIO;
+import com.protoevo.env.SaveCodec;
+import com.protoevo.env.SaveManifest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Reports the compression ratio and throughput of each save codec on the segments of a save.
+ * <p>
+ * Pass the directory of an existing save to measure a real world, for example
+ * saves/my-sim/env/autosave, otherwise a population of freshly generated protozoa is used.
+ * Throughput is in MB per second of uncompressed data, with the segments compressed one
+ * after the other and in parallel.
+ */
+public class SaveCompressionBenchmark {
+
+    private static final int[] LEVELS = {0, 1, 3, 6, 9};
+
+    private static List<byte[]> readSave(Path dir) throws IOException {
+        SaveManifest manifest = SaveManifest.read(dir);
+        List<byte[]> files = new ArrayList<>();
+        files.add(manifest.readFile(dir, manifest.getHeader()));
+        for (SaveManifest.Entry segment : manifest.getSegments())
+            files.add(manifest.readFile(dir, segment));
+        return files;
+    }
+
+    private static List<byte[]> generateSegments(int numProtozoa, int numSegments) {
+        List<byte[]> segments = new ArrayList<>();
+        for (int i = 0; i < numSegments; i++) {
+            ArrayList<Cell> cells = new ArrayList<>();
+            for (int j = 0; j < numProtozoa / numSegments; j++)
+                cells.add(Evolvable.createNew(Protozoan.class));
+            segments.add(EnvFileIO.toBytes(cells, ArrayList.class));
+        }
+        return segments;
+    }
+
+    private static double seconds(Runnable runnable, int repeats) {
+        runnable.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < repeats; i++)
+            runnable.run();
+        return (System.nanoTime() - start) / 1e9 / repeats;
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<byte[]> files = args.length > 0
+                ? readSave(Paths.get(args[0]))
+                : generateSegments(1000, 16);
+        long rawSize = files.stream().mapToLong(bytes -> bytes.length).sum();
+        double rawMB = rawSize / 1e6;
+        int repeats = 3;
+
+        System.out.printf("%d files, %.1f MB uncompressed, %d cores%n%n",
+                files.size(), rawMB, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%12s %10s %8s %14s %14s %14s%n",
+                "codec", "MB", "ratio", "compress MB/s", "parallel MB/s", "decompress MB/s");
+
+        for (int level : LEVELS) {
+            SaveCodec codec = SaveCodec.deflate(level);
+            List<byte[]> encoded = files.stream().map(codec::encode).collect(Collectors.toList());
+            long encodedSize = encoded.stream().mapToLong(bytes -> bytes.length).sum();
+
+            double sequential = seconds(() -> files.forEach(codec::encode), repeats);
+            double parallel = seconds(() -> files.parallelStream().forEach(codec::encode), repeats);
+            double decompress = seconds(() -> {
+                for (int i = 0; i < files.size(); i++)
+                    codec.decode(encoded.get(i), files.get(i).length);
+            }, repeats);
+
+            System.out.printf("%12s %10.1f %8.2f %14.0f %14.0f %14.0f%n",
+                    codec, encodedSize / 1e6, rawSize / (double) encodedSize,
+                    rawMB / sequential, rawMB / parallel, rawMB / decompress);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.cells.Protozoan;
+import com.protoevo.biology.evolution.Evolvable;
+import com.protoevo.biology.nn.NetworkGenome;
+import com.protoevo.env.Environment;
+import com.protoevo.env.Serialiser;
+import org.nustaq.serialization.FSTConfiguration;
+import org.nustaq.serialization.FSTObjectOutput;
+
+/**
+ * Reports the serialise and deserialise throughput of the {@link Serialiser} for protozoa, their genomes
+ * and a whole environment, next to building a new FST configuration for every call as saving used to.
+ * <p>
+ * The environment needs the Box2D natives, so it is skipped if they cannot be loaded.
+ */
+public class SerialisationBenchmark {
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private static void run(String name, int repeats, long bytesPerRepeat, Task task) throws Exception {
+        for (int i = 0; i < Math.max(1, repeats / 4); i++)
+            task.run();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < repeats; i++)
+            task.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%40s %10d %14.0f %12.1f %12.1f%n", name, repeats, repeats / seconds,
+                1e6 * seconds / repeats, bytesPerRepeat * repeats / seconds / 1e6);
+    }
+
+    private static byte[] toBytesWithNewConfiguration(Object object, Class<?> clazz) throws Exception {
+        FSTConfiguration config = Serialiser.createConfiguration();
+        FSTObjectOutput out = config.getObjectOutput();
+        out.writeObject(object, clazz);
+        return out.getCopyOfWrittenBuffer();
+    }
+
+    private static <T> void benchmark(String name, T object, Class<T> clazz, int repeats) throws Exception {
+        byte[] bytes = Serialiser.toBytes(object, clazz);
+        run(name + " serialise", repeats, bytes.length, () -> Serialiser.toBytes(object, clazz));
+        run(name + " deserialise", repeats, bytes.length, () -> Serialiser.fromBytes(bytes, clazz));
+        run(name + " serialise (new config)", Math.max(1, repeats / 10), bytes.length,
+                () -> toBytesWithNewConfiguration(object, clazz));
+        run(name + " deserialise (new config)", Math.max(1, repeats / 10), bytes.length,
+                () -> Serialiser.createConfiguration().getObjectInput(bytes).readObject(clazz));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int repeats = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        System.out.printf("%40s %10s %14s %12s %12s%n", "", "count", "ops/sec", "us/op", "MB/s");
+
+        Protozoan protozoan = Evolvable.createNew(Protozoan.class);
+        benchmark("Protozoan", protozoan, Protozoan.class, repeats);
+
+        NetworkGenome genome = protozoan.getGeneExpressionFunction().getGRNGenome();
+        benchmark("NetworkGenome", genome, NetworkGenome.class, repeats);
+
+        Environment environment;
+        try {
+            environment = new Environment();
+            environment.initialise();
+        } catch (Throwable e) {
+            System.out.println("Skipping Environment, could not create one: " + e);
+            return;
+        }
+        benchmark("Environment", environment, Environment.class, Math.max(1, repeats / 500));
+    }
+}
@@ -0,0 +1,221 @@
+package com.protoevo.test;
+
+import com.badlogic.gdx.math.Vector2;
+import com.protoevo.biology.CauseOfDeath;
+import com.protoevo.biology.cells.Cell;
+import com.protoevo.core.Statistics;
+import com.protoevo.physics.Collision;
+import com.protoevo.physics.Joining;
+import com.protoevo.physics.Particle;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ * A particle that only holds its state, so that cells can be tested without Box2D or an environment.
+ */
+public class StubParticle extends Particle {
+
+    private static final long serialVersionUID = 1L;
+    private static long nextId = 1;
+
+    private final long id = nextId++;
+    private final Vector2 pos = new Vector2(), vel = new Vector2();
+    private final Map<Long, Long> joiningIds = new HashMap<>();
+    private float radius, angle;
+    private CauseOfDeath causeOfDeath;
+    private Object userData;
+
+    public StubParticle(float radius) {
+        super(null);
+        this.radius = radius;
+    }
+
+    /**
+     * Gives a cell a stub particle of the given radius, in place of the body an environment would build.
+     */
+    public static <T extends Cell> T attach(T cell, float radius) {
+        StubParticle particle = new StubParticle(radius);
+        particle.setUserData(cell);
+        try {
+            Field field = Cell.class.getDeclaredField("particle");
+            field.setAccessible(true);
+            field.set(cell, particle);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Failed to attach a stub particle to " + cell, e);
+        }
+        return cell;
+    }
+
+    @Override
+    public boolean isDead() {
+        return causeOfDeath != null;
+    }
+
+    @Override
+    public void update(float delta) {}
+
+    @Override
+    public void physicsUpdate() {}
+
+    @Override
+    public float getRadius() {
+        return radius;
+    }
+
+    @Override
+    public void setRadius(double r) {
+        radius = (float) r;
+    }
+
+    @Override
+    public double getMassIfRadius(double r) {
+        return Math.PI * r * r;
+    }
+
+    @Override
+    public float getMass() {
+        return (float) getMassIfRadius(radius);
+    }
+
+    @Override
+    public float getMassDensity() {
+        return 1;
+    }
+
+    @Override
+    public Vector2 getPos() {
+        return pos;
+    }
+
+    @Override
+    public Vector2 getVel() {
+        return vel;
+    }
+
+    @Override
+    public float getAngle() {
+        return angle;
+    }
+
+    @Override
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public void setPos(Vector2 pos) {
+        this.pos.set(pos);
+    }
+
+    @Override
+    public void setAngle(float angle) {
+        this.angle = angle;
+    }
+
+    @Override
+    public void applyImpulse(Vector2 impulse) {
+        vel.add(impulse);
+    }
+
+    @Override
+    public void applyForce(Vector2 force) {}
+
+    @Override
+    public void applyTorque(float torque) {}
+
+    @Override
+    public Map<Long, Long> getJoiningIds() {
+        return joiningIds;
+    }
+
+    @Override
+    public Optional<Joining> getJoining(long joiningId) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void requestJointRemoval(Joining joining) {}
+
+    @Override
+    public Collection<Collision> getContacts() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Collection<Object> getInteractionQueue() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Object getUserData() {
+        return userData;
+    }
+
+    @Override
+    public <T> T getUserData(Class<T> type) {
+        return type.cast(userData);
+    }
+
+    @Override
+    public void setUserData(Object userData) {
+        this.userData = userData;
+    }
+
+    @Override
+    public Statistics getStats() {
+        return new Statistics();
+    }
+
+    @Override
+    public Statistics getDebugStats() {
+        return new Statistics();
+    }
+
+    @Override
+    public void kill(CauseOfDeath causeOfDeath) {
+        this.causeOfDeath = causeOfDeath;
+    }
+
+    @Override
+    public CauseOfDeath getCauseOfDeath() {
+        return causeOfDeath;
+    }
+
+    @Override
+    public void dispose() {}
+
+    @Override
+    public void setVel(float vx, float vy) {
+        vel.set(vx, vy);
+    }
+
+    @Override
+    public void setVel(Vector2 vel) {
+        this.vel.set(vel);
+    }
+
+    @Override
+    public void setAngularVel(float angularVel) {}
+
+    @Override
+    public void setRangedInteractionRadius(float radius) {}
+
+    @Override
+    public void rebuildTransientFields() {}
+
+    @Override
+    public boolean pointInside(Vector2 p) {
+        return pos.dst2(p) <= radius * radius;
+    }
+
+    @Override
+    public boolean rayCollisions(Vector2[] ray, Intersection[] intersections) {
+        return false;
+    }
+
+    @Override
+    public Vector2[] getBoundingBox() {
+        return new Vector2[]{pos.cpy().sub(radius, radius), pos.cpy().add(radius, radius)};
+    }
+}
@@ -0,0 +1,183 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.BurstRequest;
+import com.protoevo.biology.cells.Cell;
+import com.protoevo.biology.cells.Protozoan;
+import com.protoevo.biology.evolution.Evolvable;
+import com.protoevo.biology.evolution.EvolvableInteger;
+import com.protoevo.biology.evolution.GeneExpressionFunction;
+import com.protoevo.biology.evolution.IntegerTrait;
+import com.protoevo.env.Chunks;
+import com.protoevo.env.Environment;
+import org.junit.Test;
+import org.objenesis.ObjenesisStd;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestBurstRequest {
+
+    private static final float PARENT_RADIUS = 0.05f, PARENT_ENERGY = 1000f;
+    private static final int PARENT_GENERATION = 3;
+
+    private final AtomicInteger prepared = new AtomicInteger();
+    private final List<Protozoan> attached = Collections.synchronizedList(new ArrayList<>());
+
+    private static void setField(Class<?> clazz, Object object, String name, Object value) {
+        try {
+            Field field = clazz.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(object, value);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Failed to set " + name + " of " + clazz.getSimpleName(), e);
+        }
+    }
+
+    private static Object getField(Class<?> clazz, Object object, String name) {
+        try {
+            Field field = clazz.getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(object);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Failed to get " + name + " of " + clazz.getSimpleName(), e);
+        }
+    }
+
+    /**
+     * An environment with only what burst requests need, as building a real one needs Box2D.
+     */
+    private static Environment makeEnvironment() {
+        Environment environment = new ObjenesisStd().newInstance(Environment.class);
+        Chunks chunks = new Chunks();
+        chunks.initialise();
+        setField(Environment.class, environment, "chunks", chunks);
+        setField(Environment.class, environment, "cellsToAdd", new HashSet<Cell>());
+        setField(Environment.class, environment, "burstRequests", new ConcurrentHashMap<>());
+        return environment;
+    }
+
+    private static Protozoan makeParent(Environment environment) {
+        Protozoan parent = StubParticle.attach(Evolvable.createNew(Protozoan.class), PARENT_RADIUS);
+        parent.setRadius(PARENT_RADIUS);
+        if (environment != null)
+            setField(Cell.class, parent, "environment", environment);
+        parent.setGeneration(PARENT_GENERATION);
+        parent.setEnergyAvailable(PARENT_ENERGY);
+        return parent;
+    }
+
+    private Protozoan prepareChild() {
+        prepared.incrementAndGet();
+        return Evolvable.createNew(Protozoan.class);
+    }
+
+    private Protozoan attachChild(Protozoan child, float radius) {
+        attached.add(child);
+        child.setRadius(radius);
+        return StubParticle.attach(child, radius);
+    }
+
+    private void assertChildrenAttachedOnce(Protozoan parent) {
+        assertTrue(parent.isDead());
+        assertTrue(attached.size() >= 2);
+        assertEquals(prepared.get(), attached.size());
+        Set<Protozoan> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        distinct.addAll(attached);
+        assertEquals(attached.size(), distinct.size());
+        for (Protozoan child : attached) {
+            assertEquals(PARENT_GENERATION + 1, child.getGeneration());
+            // each child gets the same share of the parent's resources as of its size
+            float share = child.getRadius() / PARENT_RADIUS;
+            assertEquals(PARENT_ENERGY * share, child.getEnergyAvailable(), 1e-3);
+        }
+    }
+
+    private static void awaitPrepared(BurstRequest<?> request) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!request.isPrepared()) {
+            assertTrue("Children were not prepared in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testPreparedBurst() throws InterruptedException {
+        Protozoan parent = makeParent(null);
+        BurstRequest<Protozoan> request = new BurstRequest<>(
+                parent, Protozoan.class, this::prepareChild, this::attachChild);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            request.prepareChildren(executor);
+            request.prepareChildren(executor);
+            awaitPrepared(request);
+        } finally {
+            executor.shutdown();
+        }
+        int numPrepared = prepared.get();
+        assertTrue(attached.isEmpty());
+
+        request.burst();
+        request.burst();
+        assertEquals(numPrepared, prepared.get());
+        assertChildrenAttachedOnce(parent);
+    }
+
+    @Test
+    public void testUnpreparedBurst() {
+        // as for a request loaded from a save, whose prepared children were not saved
+        Protozoan parent = makeParent(null);
+        BurstRequest<Protozoan> request = new BurstRequest<>(
+                parent, Protozoan.class, this::prepareChild, this::attachChild);
+        assertTrue(request.isPrepared());
+        request.burst();
+        assertChildrenAttachedOnce(parent);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testEnvironmentPreparesOnce() throws InterruptedException {
+        Environment environment = makeEnvironment();
+        Protozoan parent = makeParent(environment);
+
+        environment.requestBurst(parent, Protozoan.class, this::prepareChild, this::attachChild);
+        environment.requestBurst(parent, Protozoan.class, this::prepareChild, this::attachChild);
+        assertTrue(environment.hasBurstRequest(parent, Protozoan.class));
+
+        Map<Cell, BurstRequest<?>> requests =
+                (Map<Cell, BurstRequest<?>>) getField(Environment.class, environment, "burstRequests");
+        assertEquals(1, requests.size());
+        BurstRequest<?> request = requests.get(parent);
+        awaitPrepared(request);
+        int numPrepared = prepared.get();
+
+        request.burst();
+        assertEquals(numPrepared, prepared.get());
+        assertChildrenAttachedOnce(parent);
+    }
+
+    @Test
+    public void testCrossoverLeavesParentsUnchanged() {
+        Protozoan parent = Evolvable.createNew(Protozoan.class);
+        Protozoan mate = Evolvable.createNew(Protozoan.class);
+        List<Map<String, Object>> dependencies = new ArrayList<>();
+        for (Protozoan p : Arrays.asList(parent, mate)) {
+            GeneExpressionFunction fn = p.getGeneExpressionFunction();
+            IntegerTrait trait = new IntegerTrait("Test Count", 0, 10,
+                    EvolvableInteger.MutationMethod.INCREMENT_ANY_DIR, 1, true, -1, false, 5);
+            fn.addNode("Test Count", new GeneExpressionFunction.ExpressionNode("Test Count", trait, null));
+            assertEquals(5, fn.getGeneValue("Test Count"));
+            dependencies.add(fn.getNode("Test Count").getDependencies());
+        }
+
+        Evolvable.createChild(Protozoan.class,
+                parent.getGeneExpressionFunction(), mate.getGeneExpressionFunction());
+        // the parents may still be expressing their genes, so what they have expressed is left alone
+        for (Map<String, Object> deps : dependencies)
+            assertEquals(false, deps.get("Disable Test Count"));
+    }
+}
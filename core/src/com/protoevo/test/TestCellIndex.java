@@ -0,0 +1,82 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.cells.MeatCell;
+import com.protoevo.biology.cells.PlantCell;
+import com.protoevo.biology.cells.Protozoan;
+import com.protoevo.env.CellIndex;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestCellIndex {
+
+    private static Path writeIndex(long takenAt) throws IOException {
+        Path dir = Files.createTempDirectory("save");
+        List<String> classNames = new ArrayList<>();
+        CellIndex.Entries segmentA = new CellIndex.Entries(0, classNames, 1);
+        CellIndex.Entries segmentB = new CellIndex.Entries(1, classNames, 1);
+        segmentA.add(30, 10, 1f, 2f, 0.5f, 7, Protozoan.class, false);
+        segmentA.add(10, 10, 1.5f, 2.5f, 0.1f, 0, MeatCell.class, true);
+        segmentB.add(20, 20, -3f, 4f, 0.2f, 2, PlantCell.class, false);
+        segmentB.add(40, 40, 5f, -6f, 0.3f, 9, Protozoan.class, false);
+        CellIndex.write(dir, takenAt, classNames, Arrays.asList(segmentA, segmentB));
+        return dir;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        CellIndex index = CellIndex.map(writeIndex(5), 5);
+        assertNotNull(index);
+        assertEquals(4, index.size());
+        for (int i = 1; i < index.size(); i++)
+            assertTrue(index.getId(i - 1) < index.getId(i));
+
+        int i = index.indexOf(30);
+        assertEquals(10, index.getRecordKey(i));
+        assertEquals(1f, index.getX(i), 0);
+        assertEquals(2f, index.getY(i), 0);
+        assertEquals(0.5f, index.getRadius(i), 0);
+        assertEquals(7, index.getGeneration(i));
+        assertEquals(0, index.getSegment(i));
+        assertEquals(Protozoan.class, index.getCellClass(i));
+        assertFalse(index.isEngulfed(i));
+
+        i = index.indexOf(10);
+        assertEquals(MeatCell.class, index.getCellClass(i));
+        assertTrue(index.isEngulfed(i));
+        assertEquals(1, index.getSegment(index.indexOf(20)));
+        assertEquals(-1, index.indexOf(25));
+
+        assertEquals(2, index.count(Protozoan.class));
+        assertEquals(1, index.count(PlantCell.class));
+    }
+
+    @Test
+    public void testStaleIndexIsIgnored() throws IOException {
+        Path dir = writeIndex(5);
+        assertNull(CellIndex.map(dir, 6));
+        assertNull(CellIndex.map(Files.createTempDirectory("save"), 5));
+    }
+
+    @Test
+    public void testEntriesGrow() throws IOException {
+        Path dir = Files.createTempDirectory("save");
+        List<String> classNames = new ArrayList<>();
+        CellIndex.Entries entries = new CellIndex.Entries(0, classNames, 0);
+        for (int i = 1000; i > 0; i--)
+            entries.add(i, i, i, -i, 1, i % 5, PlantCell.class, false);
+        CellIndex.write(dir, 1, classNames, Arrays.asList(entries));
+
+        CellIndex index = CellIndex.map(dir, 1);
+        assertEquals(1000, index.size());
+        assertEquals(1, index.getId(0));
+        assertEquals(-500f, index.getY(index.indexOf(500)), 0);
+    }
+}
@@ -0,0 +1,114 @@
+package com.protoevo.test;
+
+import com.protoevo.env.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TestCheckpointChain {
+
+    private static byte[] makeBytes(Random random, int n) {
+        byte[] bytes = new byte[n];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes a series of checkpoints in which one record changes each time, and returns their directories.
+     */
+    private static List<Path> writeChain(Path environmentDir, int saves, int maxDeltas,
+                                         List<Map<Long, byte[]>> contents) throws IOException {
+        Random random = new Random(1);
+        Map<Long, byte[]> records = new HashMap<>();
+        for (long key = 1; key <= 8; key++)
+            records.put(key, makeBytes(random, 2000));
+
+        CheckpointChain chain = new CheckpointChain();
+        List<Path> dirs = new ArrayList<>();
+        for (int i = 0; i < saves; i++) {
+            byte[] changed = records.get((long) (i % 8 + 1)).clone();
+            changed[i] ^= 0x5A;
+            records.put((long) (i % 8 + 1), changed);
+
+            List<RecordFile.Record> segment = new ArrayList<>();
+            for (Map.Entry<Long, byte[]> entry : records.entrySet())
+                segment.add(new RecordFile.Record(entry.getKey(), entry.getValue()));
+            EnvironmentSnapshot snapshot = EnvironmentSnapshot.of(new byte[]{(byte) i},
+                    Collections.singletonList(segment), SaveCodec.NONE, 1000 + i,
+                    new SaveMetadata(i, 1, 0, 0, 0));
+
+            Path dir = environmentDir.resolve("save-" + i);
+            chain.write(snapshot, dir.toString(), maxDeltas);
+            dirs.add(dir);
+            contents.add(new HashMap<>(records));
+        }
+        return dirs;
+    }
+
+    private static void assertContents(Map<Long, byte[]> expected, Path dir) throws IOException {
+        Map<Long, byte[]> records = CheckpointChain.read(dir).getRecords();
+        assertEquals(expected.keySet(), records.keySet());
+        for (Long key : expected.keySet())
+            assertArrayEquals(expected.get(key), records.get(key));
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        Path environmentDir = Files.createTempDirectory("env");
+        List<Map<Long, byte[]>> contents = new ArrayList<>();
+        List<Path> dirs = writeChain(environmentDir, 4, 10, contents);
+        assertEquals(3, SaveManifest.read(dirs.get(3)).getDepth());
+
+        CheckpointChain.compact(dirs.get(2));
+        assertFalse(SaveManifest.read(dirs.get(2)).isDelta());
+        assertContents(contents.get(2), dirs.get(2));
+        assertContents(contents.get(3), dirs.get(3));
+    }
+
+    @Test
+    public void testDeleteKeepsLaterSaves() throws IOException {
+        Path environmentDir = Files.createTempDirectory("env");
+        List<Map<Long, byte[]>> contents = new ArrayList<>();
+        List<Path> dirs = writeChain(environmentDir, 4, 10, contents);
+
+        CheckpointChain.delete(dirs.get(0));
+        CheckpointChain.delete(dirs.get(2));
+        assertFalse(Files.exists(dirs.get(0)));
+        assertFalse(Files.exists(dirs.get(2)));
+        assertContents(contents.get(1), dirs.get(1));
+        assertContents(contents.get(3), dirs.get(3));
+    }
+
+    @Test
+    public void testDeletedParentIsReported() throws IOException {
+        Path environmentDir = Files.createTempDirectory("env");
+        List<Path> dirs = writeChain(environmentDir, 2, 10, new ArrayList<>());
+        Files.delete(dirs.get(0).resolve(SaveManifest.MANIFEST_FILE));
+        try {
+            CheckpointChain.read(dirs.get(1));
+            fail("Expected the missing parent to be reported");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains(dirs.get(0).getFileName().toString()));
+        }
+    }
+
+    @Test
+    public void testLimitDepth() throws IOException {
+        Path environmentDir = Files.createTempDirectory("env");
+        List<Map<Long, byte[]>> contents = new ArrayList<>();
+        List<Path> dirs = writeChain(environmentDir, 7, 10, contents);
+
+        // saves 3 and 6 are each more than two deltas on from the last full checkpoint
+        assertEquals(2, CheckpointChain.limitDepth(environmentDir, 2));
+        for (int i = 0; i < dirs.size(); i++) {
+            assertEquals(i % 3 != 0, SaveManifest.read(dirs.get(i)).isDelta());
+            assertContents(contents.get(i), dirs.get(i));
+        }
+        assertEquals(0, CheckpointChain.limitDepth(environmentDir, 2));
+    }
+}
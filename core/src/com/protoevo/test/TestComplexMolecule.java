@@ -0,0 +1,48 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.ComplexMolecule;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TestComplexMolecule {
+
+    @Test
+    public void testOrdinalsRoundTrip() {
+        for (int ordinal = 0; ordinal < ComplexMolecule.getNumOrdinals(); ordinal++) {
+            ComplexMolecule molecule = ComplexMolecule.fromOrdinal(ordinal);
+            assertEquals(ordinal, molecule.getOrdinal());
+            assertSame(molecule, ComplexMolecule.fromSignature(molecule.getSignature()));
+        }
+        assertEquals(0, ComplexMolecule.fromSignature(-0.5f).getOrdinal());
+        assertEquals(ComplexMolecule.getNumOrdinals() - 1, ComplexMolecule.fromSignature(1f).getOrdinal());
+    }
+
+    @Test
+    public void testConcurrentLookupsShareInstances() {
+        Set<ComplexMolecule> seen = ConcurrentHashMap.newKeySet();
+        IntStream.range(0, 1_000_000).parallel()
+                .forEach(i -> seen.add(ComplexMolecule.fromSignature((i % 1000) / 1000f)));
+        assertEquals(ComplexMolecule.getNumOrdinals() - 1, seen.size());
+        for (ComplexMolecule molecule : seen)
+            assertSame(molecule, ComplexMolecule.fromOrdinal(molecule.getOrdinal()));
+    }
+
+    @Test
+    public void testDeserializedMoleculesAreInterned() throws IOException, ClassNotFoundException {
+        ComplexMolecule molecule = ComplexMolecule.fromOrdinal(3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(molecule);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertSame(molecule, in.readObject());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.CauseOfDeath;
+import com.protoevo.biology.cells.PlantCell;
+import com.protoevo.biology.cells.Protozoan;
+import com.protoevo.core.EventLog;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class TestEventLog {
+
+    private static void recordEvents(EventLog log, int thread, int count) {
+        for (int i = 0; i < count; i++)
+            log.record(EventLog.Type.BIRTH, null, PlantCell.class, i, i, thread, -i, i, thread * 1_000_000L + i);
+    }
+
+    @Test
+    public void testThreadsRoundTrip() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("events");
+        // each thread records no more than its ring holds, so none can be dropped however slow the writer is
+        int threads = 8, perThread = EventLog.DEFAULT_RING_CAPACITY - 1;
+        EventLog log = EventLog.open(directory);
+        List<Thread> recorders = IntStream.range(0, threads)
+                .mapToObj(t -> new Thread(() -> recordEvents(log, t, perThread)))
+                .collect(Collectors.toList());
+        recorders.forEach(Thread::start);
+        for (Thread recorder : recorders)
+            recorder.join();
+        // a time long into a run, which a float could not hold to the quarter second
+        log.record(EventLog.Type.DEATH, CauseOfDeath.EATEN, Protozoan.class, 3, 50_000_000.25, 0, 0, 42, 7);
+        log.close();
+        assertEquals(0, log.getDroppedCount());
+
+        List<EventLog.Event> events = EventLog.readAll(directory);
+        assertEquals(threads * perThread + 1, events.size());
+        Set<Long> others = new HashSet<>();
+        long[] lastPerThread = new long[threads];
+        for (EventLog.Event event : events) {
+            if (event.getType() != EventLog.Type.BIRTH)
+                continue;
+            assertEquals(PlantCell.class, event.getCellType());
+            assertNull(event.getCauseOfDeath());
+            int thread = (int) event.getX();
+            long i = event.getOtherId() - thread * 1_000_000L;
+            assertEquals(i, event.getGeneration());
+            assertEquals(-i, event.getY(), 0);
+            // events from one thread stay in the order they were recorded
+            assertTrue(i == 0 || i == lastPerThread[thread] + 1);
+            lastPerThread[thread] = i;
+            others.add(event.getOtherId());
+        }
+        assertEquals(threads * perThread, others.size());
+
+        EventLog.Event death = events.stream()
+                .filter(event -> event.getType() == EventLog.Type.DEATH)
+                .findFirst().orElseThrow(AssertionError::new);
+        assertEquals(CauseOfDeath.EATEN, death.getCauseOfDeath());
+        assertEquals(Protozoan.class, death.getCellType());
+        assertEquals(42, death.getCellId());
+        assertEquals(7, death.getOtherId());
+        assertEquals(50_000_000.25, death.getTime(), 0);
+    }
+
+    @Test
+    public void testRotation() throws IOException {
+        Path directory = Files.createTempDirectory("events");
+        long segmentBytes = 8 + 100 * EventLog.RECORD_SIZE;
+        try (EventLog log = new EventLog(directory, segmentBytes, 1 << 12)) {
+            recordEvents(log, 0, 1000);
+        }
+        List<Path> segments = EventLog.getSegments(directory);
+        assertEquals(10, segments.size());
+        for (Path segment : segments)
+            assertEquals(segmentBytes, Files.size(segment));
+
+        // resuming starts a new segment, and a record cut short is ignored
+        Files.write(segments.get(9), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        try (EventLog log = new EventLog(directory, segmentBytes, 1 << 12)) {
+            recordEvents(log, 1, 10);
+        }
+        assertEquals(11, EventLog.getSegments(directory).size());
+
+        List<EventLog.Event> events = EventLog.readAll(directory);
+        assertEquals(1010, events.size());
+        for (int i = 0; i < 1000; i++)
+            assertEquals(i, events.get(i).getOtherId());
+        assertEquals(1_000_000L, events.get(1000).getOtherId());
+    }
+
+    @Test
+    public void testFullRingDrops() throws IOException {
+        Path directory = Files.createTempDirectory("events");
+        EventLog log = new EventLog(directory, EventLog.DEFAULT_SEGMENT_BYTES, 16);
+        recordEvents(log, 0, 100_000);
+        log.close();
+
+        long written = EventLog.readAll(directory).size();
+        assertTrue(written >= 16);
+        assertEquals(100_000, written + log.getDroppedCount());
+    }
+
+    @Test
+    public void testDeadThreadRingsDropped() throws Exception {
+        Path directory = Files.createTempDirectory("events");
+        EventLog log = new EventLog(directory, EventLog.DEFAULT_SEGMENT_BYTES, 16);
+        // as the workers of a pool come and go, each recording a few events then dying
+        int threads = 100, perThread = 20;
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread recorder = new Thread(() -> recordEvents(log, thread, perThread));
+            recorder.start();
+            recorder.join();
+        }
+        Field ringsField = EventLog.class.getDeclaredField("rings");
+        ringsField.setAccessible(true);
+        List<?> rings = (List<?>) ringsField.get(log);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!rings.isEmpty()) {
+            assertTrue("Rings of dead threads were not dropped", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        log.close();
+
+        // the events each ring dropped are still counted once the ring is gone
+        long written = EventLog.readAll(directory).size();
+        assertEquals(threads * perThread, written + log.getDroppedCount());
+    }
+}
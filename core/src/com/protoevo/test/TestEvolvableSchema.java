@@ -0,0 +1,64 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.evolution.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestEvolvableSchema {
+
+    public static class Overloaded implements Evolvable.Component {
+        private static final long serialVersionUID = 1L;
+        private float size;
+        private double scale;
+        private String label;
+
+        @EvolvableFloat(name = "Size")
+        public void setSize(float size) {
+            this.size = size;
+        }
+
+        @EvolvableObject(name = "Size Label", traitClass = "com.protoevo.biology.evolution.BooleanTrait")
+        public void setSize(String label) {
+            this.label = label;
+        }
+
+        @EvolvableFloat(name = "Scale")
+        public void setScale(double scale) {
+            this.scale = scale;
+        }
+    }
+
+    @Test
+    public void testOverloadedSetters() {
+        EvolvableSchema schema = EvolvableSchema.of(Overloaded.class);
+        Overloaded target = new Overloaded();
+
+        schema.getTraitSetter("setSize", float.class).set(target, 2f);
+        schema.getTraitSetter("setSize", String.class).set(target, "large");
+        assertEquals(2f, target.size, 0);
+        assertEquals("large", target.label);
+        assertEquals(3, schema.getTraitMethods().size());
+    }
+
+    @Test
+    public void testPrimitivesWidened() {
+        EvolvableSchema schema = EvolvableSchema.of(Overloaded.class);
+        Overloaded target = new Overloaded();
+
+        schema.getTraitSetter("setSize", float.class).set(target, 3);
+        assertEquals(3f, target.size, 0);
+        schema.getTraitSetter("setScale", double.class).set(target, 1.5f);
+        assertEquals(1.5, target.scale, 0);
+        schema.getTraitSetter("setScale", double.class).set(target, 'a');
+        assertEquals('a', target.scale, 0);
+
+        // narrowing is refused, as it is by Method#invoke
+        try {
+            schema.getTraitSetter("setSize", float.class).set(target, 1.0);
+            fail("Expected a double not to be narrowed to a float");
+        } catch (RuntimeException e) {
+            assertEquals(3f, target.size, 0);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.nn.ActivationFn;
+import com.protoevo.biology.nn.FastActivations;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestFastActivations {
+
+    private static float maxError(ActivationFn.Id id, float from, float to, int samples) {
+        float err = 0;
+        for (int i = 0; i <= samples; i++) {
+            float z = from + (to - from) * i / samples;
+            float exact = ActivationFn.activate(id.getOpcode(), 0, 0, z);
+            float fast = FastActivations.activate(id, 0, 0, z);
+            err = Math.max(err, Math.abs(exact - fast));
+        }
+        return err;
+    }
+
+    @Test
+    public void testMaxErrors() {
+        int samples = 2_000_000;
+        float tanh = maxError(ActivationFn.Id.TANH, -20, 20, samples);
+        float sigmoid = maxError(ActivationFn.Id.SIGMOID, -40, 40, samples);
+        float gaussian = maxError(ActivationFn.Id.GAUSSIAN, -10, 10, samples);
+        assertTrue("tanh error " + tanh, tanh <= FastActivations.TANH_MAX_ERROR);
+        assertTrue("sigmoid error " + sigmoid, sigmoid <= FastActivations.SIGMOID_MAX_ERROR);
+        assertTrue("gaussian error " + gaussian, gaussian <= FastActivations.GAUSSIAN_MAX_ERROR);
+    }
+
+    @Test
+    public void testLimits() {
+        assertEquals(1f, FastActivations.tanh(Float.POSITIVE_INFINITY), 0);
+        assertEquals(-1f, FastActivations.tanh(Float.NEGATIVE_INFINITY), 0);
+        assertEquals(0f, FastActivations.sigmoid(Float.NEGATIVE_INFINITY), 0);
+        assertEquals(0f, FastActivations.gaussian(Float.POSITIVE_INFINITY), 0);
+        assertTrue(Float.isNaN(FastActivations.tanh(Float.NaN)));
+        assertTrue(Float.isNaN(FastActivations.gaussian(Float.NaN)));
+    }
+
+    @Test
+    public void testOtherActivationsAreExact() {
+        for (ActivationFn.Id id : ActivationFn.Id.values()) {
+            if (id == ActivationFn.Id.CUSTOM || id == ActivationFn.Id.TANH
+                    || id == ActivationFn.Id.SIGMOID || id == ActivationFn.Id.GAUSSIAN)
+                continue;
+            for (float z = -5; z <= 5; z += 0.01f)
+                assertEquals(id.name(),
+                        ActivationFn.activate(id.getOpcode(), -2, 3, z),
+                        FastActivations.activate(id, -2, 3, z), 0);
+        }
+    }
+
+    @Test
+    public void testUnknownOpcodes() {
+        for (ActivationFn.Id id : ActivationFn.Id.values())
+            assertEquals(id, ActivationFn.Id.fromOpcode(id.getOpcode()));
+        for (int opcode : new int[]{-1, ActivationFn.Id.values().length}) {
+            try {
+                ActivationFn.Id.fromOpcode(opcode);
+                fail("Expected opcode " + opcode + " to be rejected");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+}
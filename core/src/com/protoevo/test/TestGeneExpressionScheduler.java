@@ -0,0 +1,86 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.cells.EvolvableCell;
+import com.protoevo.biology.cells.Protozoan;
+import com.protoevo.biology.evolution.Evolvable;
+import com.protoevo.env.GeneExpressionScheduler;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestGeneExpressionScheduler {
+
+    private static List<EvolvableCell> makeCells(int count) {
+        List<EvolvableCell> cells = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            cells.add(StubParticle.attach(Evolvable.createNew(Protozoan.class), 0.01f));
+        return cells;
+    }
+
+    @Test
+    public void testCellQueuedOnce() {
+        GeneExpressionScheduler scheduler = new GeneExpressionScheduler();
+        EvolvableCell cell = StubParticle.attach(Evolvable.createNew(Protozoan.class), 0.01f);
+        EvolvableCell other = StubParticle.attach(Evolvable.createNew(Protozoan.class), 0.01f);
+
+        scheduler.request(cell);
+        scheduler.request(other);
+        scheduler.request(cell);
+        assertEquals(2, scheduler.getQueueDepth());
+
+        List<EvolvableCell> slice = scheduler.nextSlice(1);
+        assertEquals(2, slice.size());
+        assertSame(cell, slice.get(0));
+        assertSame(other, slice.get(1));
+
+        // once dispatched, the cell can be queued again
+        scheduler.request(cell);
+        slice = scheduler.nextSlice(1);
+        assertEquals(1, slice.size());
+        assertSame(cell, slice.get(0));
+        assertEquals(0, scheduler.getQueueDepth());
+    }
+
+    @Test
+    public void testBurstDrainsOverSpreadTicks() {
+        int burst = 200, spreadTicks = 10;
+        GeneExpressionScheduler scheduler = new GeneExpressionScheduler();
+        for (EvolvableCell cell : makeCells(burst))
+            scheduler.request(cell);
+
+        int dispatched = 0, ticks = 0, lastSliceSize = Integer.MAX_VALUE;
+        while (scheduler.getQueueDepth() > 0) {
+            int sliceSize = scheduler.nextSlice(spreadTicks).size();
+            // a share of the backlog each tick, rather than all of it at once
+            assertTrue(sliceSize <= burst / spreadTicks + Math.ceil(burst * 0.05f));
+            assertTrue(sliceSize <= lastSliceSize);
+            lastSliceSize = sliceSize;
+            dispatched += sliceSize;
+            ticks++;
+        }
+        assertEquals(burst, dispatched);
+        assertTrue("drained in " + ticks + " ticks", ticks > spreadTicks / 2 && ticks <= 2 * spreadTicks);
+    }
+
+    @Test
+    public void testSteadyRateKept() {
+        int perTick = 10, spreadTicks = 10;
+        GeneExpressionScheduler scheduler = new GeneExpressionScheduler();
+        // enough cells that none is requested again before it has been dispatched
+        List<EvolvableCell> cells = makeCells(10 * perTick);
+        int next = 0;
+        for (int tick = 0; tick < 150; tick++) {
+            for (int i = 0; i < perTick; i++)
+                scheduler.request(cells.get(next++ % cells.size()));
+            int sliceSize = scheduler.nextSlice(spreadTicks).size();
+            // once the arrival rate has been learnt, every request is expressed on the tick it arrives
+            if (tick >= 100) {
+                assertEquals(perTick, sliceSize);
+                assertEquals(0, scheduler.getQueueDepth());
+            }
+        }
+    }
+}
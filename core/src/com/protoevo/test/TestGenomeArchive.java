@@ -0,0 +1,120 @@
+package com.protoevo.test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.protoevo.biology.cells.Protozoan;
+import com.protoevo.biology.evolution.Evolvable;
+import com.protoevo.biology.nn.*;
+import com.protoevo.core.GenomeArchive;
+import com.protoevo.utils.FileIO;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestGenomeArchive {
+
+    private final ObjectMapper mapper = FileIO.getJsonMapper();
+
+    private static NetworkGenome makeGenome() {
+        return Evolvable.createNew(Protozoan.class).getGeneExpressionFunction().getGRNGenome();
+    }
+
+    private static NetworkGenome makeChild(NetworkGenome parent) {
+        NetworkGenome child = new NetworkGenome(parent);
+        child.mutate(new Random(3));
+        return child;
+    }
+
+    private void assertSameJson(NetworkGenome expected, NetworkGenome actual) throws IOException {
+        assertEquals(mapper.writeValueAsString(expected), mapper.writeValueAsString(actual));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path dir = Files.createTempDirectory("genomes");
+        NetworkGenome first = makeGenome(), second = makeGenome();
+        NetworkGenome child = makeChild(first);
+
+        try (GenomeArchive archive = GenomeArchive.open(dir)) {
+            archive.append(1000, new long[]{1, 2, 3}, new NetworkGenome[]{first, second, first});
+            archive.append(2000, new long[]{1, 4}, new NetworkGenome[]{first, child});
+        }
+
+        GenomeArchive.Contents contents = GenomeArchive.read(dir);
+        assertEquals(2, contents.getSnapshots().size());
+        GenomeArchive.Snapshot snapshot = contents.getSnapshots().get(0);
+        assertEquals(1000, snapshot.getTakenAt());
+        assertEquals(3, snapshot.size());
+        assertEquals(snapshot.getGenomeHash(0), snapshot.getGenomeHash(2));
+        assertNotEquals(snapshot.getGenomeHash(0), snapshot.getGenomeHash(1));
+        assertSame(contents.getGenome(snapshot.getGenomeHash(0)), contents.getGenome(snapshot.getGenomeHash(2)));
+
+        assertSameJson(first, contents.getGenome(snapshot.getGenomeHash(0)));
+        assertSameJson(second, contents.getGenome(snapshot.getGenomeHash(1)));
+        GenomeArchive.Snapshot next = contents.getSnapshots().get(1);
+        assertEquals(4, next.getCellId(1));
+        assertSameJson(child, contents.getGenome(next.getGenomeHash(1)));
+    }
+
+    @Test
+    public void testSharedGenesWrittenOnce() throws IOException {
+        Path dir = Files.createTempDirectory("genomes");
+        NetworkGenome parent = makeGenome();
+        int genes = parent.getSynapseGenes().length;
+
+        try (GenomeArchive archive = GenomeArchive.open(dir)) {
+            archive.append(1000, new long[]{1}, new NetworkGenome[]{parent});
+        }
+        long parentSize = Files.size(dir.resolve(GenomeArchive.PACK_FILE));
+        int parentRecords = GenomeArchive.read(dir).getRecordCount();
+        assertTrue(parentRecords > genes);
+
+        // reopening starts from no cached hashes, but the genes are already in the pack
+        NetworkGenome child = makeChild(parent);
+        try (GenomeArchive archive = GenomeArchive.open(dir)) {
+            archive.append(2000, new long[]{1, 2}, new NetworkGenome[]{parent, child});
+        }
+        int childRecords = GenomeArchive.read(dir).getRecordCount() - parentRecords;
+        assertTrue("child added " + childRecords + " records", childRecords < genes / 2);
+        assertTrue(Files.size(dir.resolve(GenomeArchive.PACK_FILE)) - parentSize < parentSize / 2);
+    }
+
+    @Test
+    public void testReopenDropsPartialRecords() throws IOException {
+        Path dir = Files.createTempDirectory("genomes");
+        NetworkGenome genome = makeGenome();
+        try (GenomeArchive archive = GenomeArchive.open(dir)) {
+            archive.append(1000, new long[]{1}, new NetworkGenome[]{genome});
+        }
+        // as if the simulation died partway through writing the next snapshot
+        Files.write(dir.resolve(GenomeArchive.PACK_FILE), new byte[]{2, 0, 0, 0}, StandardOpenOption.APPEND);
+        Files.write(dir.resolve(GenomeArchive.SNAPSHOTS_FILE), new byte[]{0, 0, 0, 0, 0, 0, 7, -48, 0, 0, 0, 9},
+                StandardOpenOption.APPEND);
+
+        NetworkGenome other = makeGenome();
+        try (GenomeArchive archive = GenomeArchive.open(dir)) {
+            archive.append(3000, new long[]{5}, new NetworkGenome[]{other});
+        }
+        GenomeArchive.Contents contents = GenomeArchive.read(dir);
+        assertEquals(2, contents.getSnapshots().size());
+        assertSameJson(other, contents.getGenome(contents.getSnapshots().get(1).getGenomeHash(0)));
+    }
+
+    @Test
+    public void testCustomActivationNotRead() throws IOException {
+        NeuronGene gene = new NeuronGene(0, Neuron.Type.HIDDEN, new ActivationFn(z -> 2 * z, "Double"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GenomeCodec.writeNeuronGene(new DataOutputStream(bytes), gene);
+        try {
+            GenomeCodec.readNeuronGene(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            fail("Expected reading a custom activation to fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Double"));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.MoleculeLedger;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestMoleculeLedger {
+
+    private static void checkLedger(MoleculeLedger ledger, int maxOrdinal) {
+        assertTrue(ledger.isEmpty());
+        assertEquals(0f, ledger.get(3), 0);
+
+        ledger.set(3, 0.5f);
+        ledger.add(maxOrdinal, 0.25f);
+        ledger.add(3, 0.5f);
+        ledger.set(7, 0f);
+
+        assertFalse(ledger.isEmpty());
+        assertEquals(1f, ledger.get(3), 0);
+        assertEquals(0.25f, ledger.get(maxOrdinal), 0);
+        assertEquals(1.25f, ledger.getTotal(), 1e-6f);
+        // molecules stay present once set, even with nothing left
+        assertTrue(ledger.contains(7));
+        assertFalse(ledger.contains(4));
+
+        int present = 0;
+        for (int slot = 0; slot < ledger.slots(); slot++) {
+            int ordinal = ledger.ordinalAt(slot);
+            if (ordinal < 0)
+                continue;
+            present++;
+            assertEquals(ledger.get(ordinal), ledger.amountAt(slot), 0);
+        }
+        assertEquals(3, present);
+
+        MoleculeLedger child = new MoleculeLedger(maxOrdinal + 1);
+        child.setScaled(ledger, 0.5f);
+        assertEquals(0.5f, child.get(3), 0);
+        assertEquals(0.125f, child.get(maxOrdinal), 0);
+        assertTrue(child.contains(7));
+
+        ledger.scale(2f);
+        assertEquals(2.5f, ledger.getTotal(), 1e-6f);
+    }
+
+    @Test
+    public void testDense() {
+        checkLedger(new MoleculeLedger(33), 32);
+    }
+
+    @Test
+    public void testSparse() {
+        int n = 4 * MoleculeLedger.DENSE_LIMIT;
+        checkLedger(new MoleculeLedger(n), n - 1);
+    }
+
+    private static void checkConcurrentInserts(int numOrdinals) throws InterruptedException {
+        int threads = 4;
+        MoleculeLedger[] ledgers = new MoleculeLedger[2000];
+        for (int i = 0; i < ledgers.length; i++)
+            ledgers[i] = new MoleculeLedger(numOrdinals);
+
+        // every thread inserts into each ledger at about the same time, interleaving ordinals in the same words
+        CyclicBarrier start = new CyclicBarrier(threads);
+        List<Thread> inserters = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            inserters.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    throw new RuntimeException(e);
+                }
+                for (MoleculeLedger ledger : ledgers)
+                    for (int ordinal = first; ordinal < numOrdinals; ordinal += threads)
+                        ledger.set(ordinal, 1f);
+            }));
+        }
+        inserters.forEach(Thread::start);
+        for (Thread inserter : inserters)
+            inserter.join();
+
+        for (MoleculeLedger ledger : ledgers) {
+            int present = 0;
+            for (int slot = 0; slot < ledger.slots(); slot++)
+                if (ledger.ordinalAt(slot) >= 0)
+                    present++;
+            assertEquals(numOrdinals, present);
+            assertEquals(numOrdinals, ledger.getTotal(), 0);
+        }
+    }
+
+    @Test
+    public void testConcurrentInsertsDense() throws InterruptedException {
+        checkConcurrentInserts(MoleculeLedger.DENSE_LIMIT);
+    }
+
+    @Test
+    public void testConcurrentInsertsSparse() throws InterruptedException {
+        checkConcurrentInserts(2 * MoleculeLedger.DENSE_LIMIT);
+    }
+}
@@ -0,0 +1,90 @@
+package com.protoevo.test;
+
+import com.protoevo.core.QuantileSketch;
+import com.protoevo.core.StatDistribution;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestQuantileSketch {
+
+    private static double[] makeValues(int n) {
+        Random random = new Random(3);
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++)
+            values[i] = Math.exp(random.nextGaussian());
+        return values;
+    }
+
+    private static void checkRankError(QuantileSketch sketch, double[] values, double maxError) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double fraction : StatDistribution.QUANTILES) {
+            double estimate = sketch.getQuantile(fraction);
+            int rank = Arrays.binarySearch(sorted, estimate);
+            assertTrue("quantile is one of the values seen", rank >= 0);
+            assertEquals(fraction, rank / (double) sorted.length, maxError);
+        }
+    }
+
+    @Test
+    public void testExactWhenSmall() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = 1; i <= 99; i++)
+            sketch.add(i);
+        assertEquals(50, sketch.getQuantile(0.5), 0);
+        assertEquals(1, sketch.getQuantile(0), 0);
+        assertEquals(99, sketch.getQuantile(1), 0);
+        assertEquals(10, sketch.getRank(10), 0);
+    }
+
+    @Test
+    public void testAccuracyAndSize() {
+        double[] values = makeValues(200_000);
+        QuantileSketch sketch = new QuantileSketch();
+        for (double value : values)
+            sketch.add(value);
+
+        assertEquals(values.length, sketch.getCount());
+        assertTrue(sketch.getRetainedItems() <= 3 * QuantileSketch.DEFAULT_K + 16);
+        assertEquals(values.length, sketch.getRank(Double.POSITIVE_INFINITY), 0);
+        checkRankError(sketch, values, 0.02);
+    }
+
+    @Test
+    public void testParallelMerge() {
+        double[] values = makeValues(100_000);
+        QuantileSketch sketch = IntStream.range(0, values.length).parallel().collect(
+                QuantileSketch::new,
+                (s, i) -> s.add(values[i]),
+                QuantileSketch::merge);
+
+        assertEquals(values.length, sketch.getCount());
+        assertTrue(sketch.getRetainedItems() <= 3 * QuantileSketch.DEFAULT_K + 16);
+        checkRankError(sketch, values, 0.02);
+    }
+
+    @Test
+    public void testHistogramCountsAddUp() {
+        double[] values = makeValues(50_000);
+        QuantileSketch sketch = new QuantileSketch();
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            sketch.add(value);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        StatDistribution distribution = new StatDistribution(sketch, min, max);
+        assertEquals(StatDistribution.HISTOGRAM_BINS, distribution.getBinCounts().length);
+        assertEquals(min, distribution.getBinEdges()[0], 0);
+        assertEquals(max, distribution.getBinEdges()[StatDistribution.HISTOGRAM_BINS], 0);
+        assertEquals(values.length, Arrays.stream(distribution.getBinCounts()).sum());
+        assertEquals(sketch.getQuantile(0.5), distribution.getMedian(), 0);
+    }
+}
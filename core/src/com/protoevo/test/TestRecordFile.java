@@ -0,0 +1,90 @@
+package com.protoevo.test;
+
+import com.protoevo.env.RecordFile;
+import com.protoevo.env.SaveCodec;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TestRecordFile {
+
+    private static byte[] makeBytes(Random random, int n) {
+        byte[] bytes = new byte[n];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static Map<Long, byte[]> toMap(List<RecordFile.Record> records) {
+        Map<Long, byte[]> map = new HashMap<>();
+        for (RecordFile.Record record : records)
+            map.put(record.getKey(), record.getBytes());
+        return map;
+    }
+
+    @Test
+    public void testFullRoundTrip() {
+        Random random = new Random(1);
+        List<RecordFile.Record> records = Arrays.asList(
+                new RecordFile.Record(5, makeBytes(random, 100)),
+                new RecordFile.Record(-3, new byte[0]),
+                new RecordFile.Record(7, makeBytes(random, 1000)));
+
+        List<RecordFile.Record> read = RecordFile.read(RecordFile.write(records, null), null);
+        assertEquals(records.size(), read.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(records.get(i).getKey(), read.get(i).getKey());
+            assertArrayEquals(records.get(i).getBytes(), read.get(i).getBytes());
+        }
+    }
+
+    @Test
+    public void testDeltaRoundTrip() {
+        Random random = new Random(2);
+        byte[] unchanged = makeBytes(random, 5000);
+        byte[] changed = makeBytes(random, 5000);
+        byte[] grown = makeBytes(random, 5000);
+        byte[] removed = makeBytes(random, 5000);
+        Map<Long, byte[]> parent = toMap(Arrays.asList(
+                new RecordFile.Record(1, unchanged),
+                new RecordFile.Record(2, changed),
+                new RecordFile.Record(3, grown),
+                new RecordFile.Record(4, removed)));
+
+        byte[] changedNow = changed.clone();
+        changedNow[10] ^= 0x55;
+        changedNow[4000] ^= 0x11;
+        byte[] grownNow = new byte[grown.length + 3];
+        System.arraycopy(grown, 0, grownNow, 0, 2000);
+        System.arraycopy(grown, 2000, grownNow, 2003, grown.length - 2000);
+        byte[] created = makeBytes(random, 5000);
+
+        List<RecordFile.Record> current = Arrays.asList(
+                new RecordFile.Record(1, unchanged.clone()),
+                new RecordFile.Record(2, changedNow),
+                new RecordFile.Record(3, grownNow),
+                new RecordFile.Record(5, created));
+
+        byte[] full = RecordFile.write(current, null);
+        byte[] delta = RecordFile.write(current, parent);
+        SaveCodec codec = SaveCodec.deflate(1);
+        assertTrue(codec.encode(delta).length < codec.encode(full).length / 3);
+
+        Map<Long, byte[]> read = toMap(RecordFile.read(delta, parent));
+        assertEquals(4, read.size());
+        assertFalse(read.containsKey(4L));
+        assertArrayEquals(unchanged, read.get(1L));
+        assertArrayEquals(changedNow, read.get(2L));
+        assertArrayEquals(grownNow, read.get(3L));
+        assertArrayEquals(created, read.get(5L));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDeltaNeedsParent() {
+        byte[] bytes = {1, 2, 3};
+        Map<Long, byte[]> parent = Collections.singletonMap(1L, bytes);
+        byte[] delta = RecordFile.write(Collections.singletonList(new RecordFile.Record(1, bytes)), parent);
+        RecordFile.read(delta, Collections.emptyMap());
+    }
+}
@@ -0,0 +1,89 @@
+package com.protoevo.test;
+
+import com.protoevo.env.SaveCodec;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestSaveCodec {
+
+    private static byte[] makeBytes(int n) {
+        // half random, half repetitive, so the data is compressible but not trivially so
+        Random random = new Random(5);
+        byte[] bytes = new byte[n];
+        for (int i = 0; i < n; i++)
+            bytes[i] = (byte) (i % 2 == 0 ? random.nextInt(256) : i % 7);
+        return bytes;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        byte[] bytes = makeBytes(300_000);
+        for (int level = 1; level <= 9; level++) {
+            SaveCodec codec = SaveCodec.deflate(level);
+            byte[] encoded = codec.encode(bytes);
+            assertTrue(encoded.length < bytes.length);
+            assertArrayEquals(bytes, codec.decode(encoded, bytes.length));
+        }
+
+        SaveCodec codec = SaveCodec.deflate(6);
+        assertArrayEquals(new byte[0], codec.decode(codec.encode(new byte[0]), 0));
+    }
+
+    @Test
+    public void testNames() {
+        assertSame(SaveCodec.NONE, SaveCodec.deflate(0));
+        assertSame(SaveCodec.NONE, SaveCodec.forName("none"));
+        assertSame(SaveCodec.NONE, SaveCodec.forName(null));
+        assertEquals("deflate-6", SaveCodec.deflate(6).getName());
+        assertEquals("deflate-9", SaveCodec.deflate(12).getName());
+        assertEquals("deflate-3", SaveCodec.forName("deflate-3").getName());
+        try {
+            SaveCodec.forName("zstd-3");
+            fail("Expected unknown codec");
+        } catch (RuntimeException ignored) {}
+    }
+
+    @Test
+    public void testWrongSizeIsRejected() {
+        byte[] bytes = makeBytes(10_000);
+        SaveCodec codec = SaveCodec.deflate(1);
+        byte[] encoded = codec.encode(bytes);
+        try {
+            codec.decode(encoded, bytes.length - 1);
+            fail("Expected size mismatch");
+        } catch (RuntimeException ignored) {}
+        try {
+            codec.decode(encoded, bytes.length + 1);
+            fail("Expected size mismatch");
+        } catch (RuntimeException ignored) {}
+    }
+
+    @Test
+    public void testStreams() throws IOException {
+        byte[] bytes = makeBytes(200_000);
+        SaveCodec codec = SaveCodec.deflate(4);
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (OutputStream out = codec.wrap(encoded)) {
+            out.write(bytes);
+        }
+        assertArrayEquals(bytes, codec.decode(encoded.toByteArray(), bytes.length));
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        try (InputStream in = codec.wrap(new ByteArrayInputStream(codec.encode(bytes)))) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+                decoded.write(buffer, 0, n);
+        }
+        assertArrayEquals(bytes, decoded.toByteArray());
+    }
+}
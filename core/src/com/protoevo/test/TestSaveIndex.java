@@ -0,0 +1,112 @@
+package com.protoevo.test;
+
+import com.protoevo.env.SaveCodec;
+import com.protoevo.env.SaveIndex;
+import com.protoevo.env.SaveManifest;
+import com.protoevo.env.SaveMetadata;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestSaveIndex {
+
+    private static SaveManifest writeManifest(Path dir, long takenAt) throws IOException {
+        Files.createDirectories(dir);
+        byte[] header = new byte[]{1, 2, 3};
+        SaveManifest.Entry headerEntry = new SaveManifest.Entry(SaveManifest.headerFile(takenAt), header, 10);
+        SaveManifest manifest = new SaveManifest(
+                takenAt, SaveCodec.deflate(1), null, 0, headerEntry, Collections.emptyList());
+        manifest.writeTo(dir);
+        return manifest;
+    }
+
+    private static SaveMetadata writeSave(Path envDir, String name, long takenAt, int protozoa) throws IOException {
+        Path dir = envDir.resolve(name);
+        SaveMetadata metadata = new SaveMetadata(100f * takenAt, takenAt, protozoa, 20, 30)
+                .forSave(name, writeManifest(dir, takenAt));
+        metadata.writeTo(dir);
+        return metadata;
+    }
+
+    @Test
+    public void testMetadataRoundTrip() throws IOException {
+        Path envDir = Files.createTempDirectory("env");
+        writeSave(envDir, "2023-01-02-03-04-05", 7, 123);
+
+        SaveMetadata metadata = SaveMetadata.read(envDir.resolve("2023-01-02-03-04-05"));
+        assertEquals(SaveMetadata.SIZE, Files.size(envDir.resolve("2023-01-02-03-04-05/" + SaveMetadata.METADATA_FILE)));
+        assertEquals("2023-01-02-03-04-05", metadata.getName());
+        assertEquals(7, metadata.getTakenAt());
+        assertEquals(700f, metadata.getTimeElapsed(), 0);
+        assertEquals(7, metadata.getGeneration());
+        assertEquals(123, metadata.getProtozoa());
+        assertEquals(20, metadata.getPlants());
+        assertEquals(30, metadata.getMeat());
+        assertEquals(3, metadata.getSizeBytes());
+        assertEquals(10, metadata.getRawSizeBytes());
+        assertEquals("deflate-1", metadata.getCodec());
+        assertTrue(metadata.hasCounts());
+    }
+
+    @Test
+    public void testAppendKeepsLatestRecord() throws IOException {
+        Path envDir = Files.createTempDirectory("env");
+        SaveIndex.append(envDir, writeSave(envDir, "a", 1, 10));
+        SaveIndex.append(envDir, writeSave(envDir, "autosave", 2, 11));
+        SaveIndex.append(envDir, writeSave(envDir, "b", 3, 12));
+        SaveIndex.append(envDir, writeSave(envDir, "autosave", 4, 13));
+
+        List<SaveMetadata> saves = SaveIndex.read(envDir);
+        assertEquals(3, saves.size());
+        assertEquals("a", saves.get(0).getName());
+        assertEquals("b", saves.get(1).getName());
+        assertEquals("autosave", saves.get(2).getName());
+        assertEquals(13, saves.get(2).getProtozoa());
+        assertEquals("autosave", SaveIndex.mostRecent(envDir).get().getName());
+    }
+
+    @Test
+    public void testTruncatedRecordIsIgnored() throws IOException {
+        Path envDir = Files.createTempDirectory("env");
+        SaveIndex.append(envDir, writeSave(envDir, "a", 1, 10));
+        Files.write(envDir.resolve(SaveIndex.INDEX_FILE),
+                writeSave(envDir, "b", 2, 11).toBytes(), StandardOpenOption.APPEND);
+        // cut the last record short, as a crash while appending would
+        Path index = envDir.resolve(SaveIndex.INDEX_FILE);
+        byte[] bytes = Files.readAllBytes(index);
+        Files.write(index, Arrays.copyOf(bytes, bytes.length - 5));
+
+        assertEquals(1, SaveIndex.read(envDir).size());
+        SaveIndex.append(envDir, writeSave(envDir, "c", 3, 12));
+        List<SaveMetadata> saves = SaveIndex.read(envDir);
+        assertEquals(2, saves.size());
+        assertEquals("c", saves.get(1).getName());
+    }
+
+    @Test
+    public void testRebuildFromSaves() throws IOException {
+        Path envDir = Files.createTempDirectory("env");
+        writeSave(envDir, "b", 2, 11);
+        writeSave(envDir, "a", 1, 10);
+        writeManifest(envDir.resolve("old"), 3);
+        Files.createDirectories(envDir.resolve("incomplete"));
+
+        List<SaveMetadata> saves = SaveIndex.read(envDir);
+        assertTrue(Files.exists(envDir.resolve(SaveIndex.INDEX_FILE)));
+        assertEquals(3, saves.size());
+        assertEquals("a", saves.get(0).getName());
+        assertEquals("old", saves.get(2).getName());
+        assertFalse(saves.get(2).hasCounts());
+
+        Files.delete(envDir.resolve("old").resolve(SaveManifest.MANIFEST_FILE));
+        assertEquals("b", SaveIndex.mostRecent(envDir).get().getName());
+    }
+}
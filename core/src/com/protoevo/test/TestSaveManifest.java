@@ -0,0 +1,105 @@
+package com.protoevo.test;
+
+import com.protoevo.env.SaveCodec;
+import com.protoevo.env.SaveManifest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestSaveManifest {
+
+    private static SaveManifest writeSave(Path dir, byte[] header, byte[]... segments) throws IOException {
+        Files.createDirectories(dir.resolve(SaveManifest.SEGMENTS_DIR));
+        long takenAt = 42;
+        Files.write(dir.resolve(SaveManifest.headerFile(takenAt)), header);
+        SaveManifest.Entry headerEntry = new SaveManifest.Entry(SaveManifest.headerFile(takenAt), header, header.length);
+
+        SaveManifest.Entry[] segmentEntries = new SaveManifest.Entry[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            String file = SaveManifest.segmentFile(takenAt, i);
+            Files.write(dir.resolve(file), segments[i]);
+            segmentEntries[i] = new SaveManifest.Entry(file, segments[i], segments[i].length, i + 1, 10 * i, 10 * i + 9);
+        }
+
+        SaveManifest manifest = new SaveManifest(takenAt, SaveCodec.NONE, null, 0, headerEntry, Arrays.asList(segmentEntries));
+        manifest.writeTo(dir);
+        return manifest;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path dir = Files.createTempDirectory("save");
+        byte[] header = "header".getBytes(StandardCharsets.UTF_8);
+        byte[] segmentA = "segment a".getBytes(StandardCharsets.UTF_8);
+        byte[] segmentB = new byte[0];
+        writeSave(dir, header, segmentA, segmentB);
+
+        assertTrue(SaveManifest.exists(dir));
+        SaveManifest manifest = SaveManifest.read(dir);
+        assertEquals(SaveManifest.FORMAT_VERSION, manifest.getFormatVersion());
+        assertEquals(42, manifest.getTakenAt());
+        assertEquals(3, manifest.getCellCount());
+
+        List<SaveManifest.Entry> segments = manifest.getSegments();
+        assertEquals(2, segments.size());
+        assertEquals(10, segments.get(1).getFirstChunk());
+        assertEquals(19, segments.get(1).getLastChunk());
+        assertArrayEquals(header, SaveManifest.readVerified(dir, manifest.getHeader()));
+        assertArrayEquals(segmentA, SaveManifest.readVerified(dir, segments.get(0)));
+        assertArrayEquals(segmentB, SaveManifest.readVerified(dir, segments.get(1)));
+    }
+
+    @Test
+    public void testCorruptSegmentIsRejected() throws IOException {
+        Path dir = Files.createTempDirectory("save");
+        byte[] segment = "segment".getBytes(StandardCharsets.UTF_8);
+        SaveManifest manifest = writeSave(dir, new byte[]{1, 2, 3}, segment);
+
+        SaveManifest.Entry entry = manifest.getSegments().get(0);
+        byte[] corrupted = segment.clone();
+        corrupted[3] ^= 1;
+        Files.write(dir.resolve(entry.getFile()), corrupted);
+        try {
+            SaveManifest.readVerified(dir, entry);
+            fail("Expected checksum mismatch");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("checksum"));
+        }
+
+        Files.write(dir.resolve(entry.getFile()), Arrays.copyOf(segment, 4));
+        try {
+            SaveManifest.readVerified(dir, entry);
+            fail("Expected size mismatch");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("bytes"));
+        }
+    }
+
+    @Test
+    public void testMissingManifest() throws IOException {
+        Path dir = Files.createTempDirectory("save");
+        assertFalse(SaveManifest.exists(dir));
+        try {
+            SaveManifest.read(dir);
+            fail("Expected missing manifest");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("incomplete"));
+        }
+
+        Files.write(dir.resolve(SaveManifest.SINGLE_FILE), new byte[]{0, 1, 2});
+        assertTrue(SaveManifest.exists(dir));
+        SaveManifest manifest = SaveManifest.read(dir);
+        assertTrue(manifest.isSingleFile());
+        assertFalse(manifest.isDelta());
+        assertEquals(SaveManifest.SINGLE_FILE, manifest.getHeader().getFile());
+        assertEquals(3, manifest.getSizeBytes());
+        assertTrue(manifest.getSegments().isEmpty());
+    }
+}
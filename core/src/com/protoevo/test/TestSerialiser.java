@@ -0,0 +1,62 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.cells.Protozoan;
+import com.protoevo.biology.evolution.Evolvable;
+import com.protoevo.biology.nn.NetworkGenome;
+import com.protoevo.env.Serialiser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class TestSerialiser {
+
+    private static NetworkGenome makeGenome() {
+        return Evolvable.createNew(Protozoan.class).getGeneExpressionFunction().getGRNGenome();
+    }
+
+    private static void assertSameGenome(NetworkGenome expected, NetworkGenome actual) {
+        assertNotSame(expected, actual);
+        assertEquals(expected.getSynapseGenes().length, actual.getSynapseGenes().length);
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(0, expected.distance(actual), 1e-9);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        NetworkGenome genome = makeGenome();
+        byte[] bytes = Serialiser.toBytes(genome, NetworkGenome.class);
+        assertSameGenome(genome, Serialiser.fromBytes(bytes, NetworkGenome.class));
+        assertArrayEquals(bytes, Serialiser.toBytes(genome, NetworkGenome.class));
+    }
+
+    @Test
+    public void testThreadsAgree() {
+        NetworkGenome genome = makeGenome();
+        byte[] expected = Serialiser.toBytes(genome, NetworkGenome.class);
+        List<byte[]> results = IntStream.range(0, 32).parallel()
+                .mapToObj(i -> Serialiser.toBytes(genome, NetworkGenome.class))
+                .collect(Collectors.toList());
+        for (byte[] bytes : results)
+            assertArrayEquals(expected, bytes);
+    }
+
+    @Test
+    public void testStreams() throws IOException {
+        NetworkGenome genome = makeGenome();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Serialiser.write(out, genome, NetworkGenome.class);
+        byte[] written = out.toByteArray();
+        assertArrayEquals(Serialiser.toBytes(genome, NetworkGenome.class), written);
+        // serialising to bytes afterwards must not write to the stream again
+        assertEquals(written.length, out.size());
+
+        assertSameGenome(genome, Serialiser.read(new ByteArrayInputStream(written), NetworkGenome.class));
+    }
+}
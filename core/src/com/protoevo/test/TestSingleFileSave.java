@@ -0,0 +1,112 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.BurstRequest;
+import com.protoevo.biology.cells.Cell;
+import com.protoevo.biology.cells.Protozoan;
+import com.protoevo.biology.evolution.Evolvable;
+import com.protoevo.env.Environment;
+import com.protoevo.env.Serialiser;
+import com.protoevo.env.SingleFileSave;
+import org.junit.Test;
+import org.nustaq.serialization.*;
+import org.objenesis.ObjenesisStd;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.*;
+
+public class TestSingleFileSave {
+
+    /**
+     * Writes environments as they were written in the single file format, with the given extra fields.
+     */
+    private static class SingleFileOutput extends FSTObjectOutput {
+        private SingleFileOutput(FSTConfiguration config) {
+            super(config);
+        }
+
+        private static byte[] write(Environment env, String... extraFields) throws IOException {
+            FSTConfiguration config = Serialiser.createConfiguration();
+            config.registerSerializer(Environment.class, new FSTBasicObjectSerializer() {
+                @Override
+                public void writeObject(FSTObjectOutput out, Object toWrite, FSTClazzInfo info,
+                                        FSTClazzInfo.FSTFieldInfo referencedBy, int streamPosition)
+                        throws IOException {
+                    List<FSTClazzInfo.FSTFieldInfo> fields = new ArrayList<>(Arrays.asList(info.getFieldInfo()));
+                    try {
+                        for (String name : extraFields) {
+                            Field field = Environment.class.getDeclaredField(name);
+                            field.setAccessible(true);
+                            fields.add(new FSTClazzInfo.FSTFieldInfo(null, field, true));
+                        }
+                    } catch (NoSuchFieldException e) {
+                        throw new IOException(e);
+                    }
+                    fields.sort(FSTClazzInfo.defFieldComparator);
+                    ((SingleFileOutput) out).writeObjectFields(
+                            toWrite, info, fields.toArray(new FSTClazzInfo.FSTFieldInfo[0]), 0, 0);
+                }
+            }, false);
+            SingleFileOutput out = new SingleFileOutput(config);
+            out.writeObject(env, Environment.class);
+            return out.getCopyOfWrittenBuffer();
+        }
+    }
+
+    private static Environment makeEnvironment(Cell cell) throws ReflectiveOperationException {
+        // built without its constructor, as that needs the physics natives
+        Environment env = new ObjenesisStd().newInstance(Environment.class);
+        ConcurrentHashMap<Long, Cell> cells = new ConcurrentHashMap<>();
+        cells.put(cell.getId(), cell);
+        ConcurrentHashMap<Cell, BurstRequest<? extends Cell>> requests = new ConcurrentHashMap<>();
+        requests.put(cell, new BurstRequest<>(cell));
+        setField(env, "cells", cells);
+        setField(env, "burstRequests", requests);
+        setField(env, "handledBurstRequests", new ConcurrentLinkedQueue<Cell>());
+        setField(env, "simulationName", "single-file");
+        return env;
+    }
+
+    private static void setField(Environment env, String name, Object value) throws ReflectiveOperationException {
+        Field field = Environment.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(env, value);
+    }
+
+    private static Object getField(Environment env, String name) throws ReflectiveOperationException {
+        Field field = Environment.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(env);
+    }
+
+    @Test
+    public void testFieldsWrittenInFstOrder() throws Exception {
+        Environment env = makeEnvironment(StubParticle.attach(Evolvable.createNew(Protozoan.class), 1));
+        // without the extra fields, the environment is written exactly as FST writes it
+        assertArrayEquals(Serialiser.toBytes(env, Environment.class), SingleFileOutput.write(env));
+    }
+
+    @Test
+    public void testReadsCellsAndBurstRequests() throws Exception {
+        Protozoan protozoan = StubParticle.attach(Evolvable.createNew(Protozoan.class), 1);
+        byte[] bytes = SingleFileOutput.write(makeEnvironment(protozoan),
+                "cells", "burstRequests", "handledBurstRequests");
+
+        Environment env = SingleFileSave.read(new ByteArrayInputStream(bytes));
+        assertEquals(1, env.getCells().size());
+        Cell cell = env.getCells().iterator().next();
+        assertEquals(protozoan.getId(), cell.getId());
+        assertTrue(cell instanceof Protozoan);
+        Map<?, ?> requests = (Map<?, ?>) getField(env, "burstRequests");
+        assertEquals(1, requests.size());
+        // the request refers to the same cell as the map of cells, as it did when written
+        assertSame(cell, requests.keySet().iterator().next());
+        // the fields serialised after the formerly serialised ones are still read in the right place
+        assertEquals("single-file", getField(env, "simulationName"));
+    }
+}
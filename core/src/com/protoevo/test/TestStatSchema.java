@@ -0,0 +1,64 @@
+package com.protoevo.test;
+
+import com.protoevo.core.StatRecord;
+import com.protoevo.core.StatSchema;
+import com.protoevo.core.Statistics;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestStatSchema {
+
+    @Test
+    public void testRegisterIsIdempotent() {
+        StatSchema schema = new StatSchema();
+        StatSchema.Id size = schema.register("Size", Statistics.ComplexUnit.MASS);
+        StatSchema.Id count = schema.registerCount("Count");
+
+        assertSame(size, schema.register("Size", Statistics.ComplexUnit.MASS));
+        assertSame(count, schema.get("Count"));
+        assertEquals(2, schema.size());
+        assertEquals(1, count.getIndex());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegisterRejectsTypeMismatch() {
+        StatSchema schema = new StatSchema();
+        schema.registerCount("Count");
+        schema.registerBoolean("Count");
+    }
+
+    @Test
+    public void testRecordWritesTypedStats() {
+        StatSchema schema = new StatSchema();
+        StatSchema.Id mass = schema.register("Mass", Statistics.ComplexUnit.MASS);
+        StatSchema.Id count = schema.registerCount("Count");
+        StatSchema.Id flag = schema.registerBoolean("Flag");
+        StatSchema.Id unused = schema.register("Unused");
+
+        StatRecord record = new StatRecord(schema);
+        record.put(mass, 2.5);
+        record.put(count, 3);
+        record.put(flag, true);
+        // registered after the record was created
+        StatSchema.Id late = schema.register("Late");
+        record.put(late, 1.0);
+
+        assertTrue(record.has(late));
+        assertFalse(record.has(unused));
+        assertTrue(Double.isNaN(record.get(unused)));
+
+        Statistics stats = record.toStatistics();
+        assertEquals(2.5, stats.getDouble("Mass"), 0);
+        assertEquals(Integer.valueOf(3), stats.getCount("Count"));
+        assertEquals(Boolean.TRUE, stats.getBoolean("Flag"));
+        assertNull(stats.getValue("Unused"));
+
+        record.clear();
+        assertFalse(record.has(mass));
+    }
+}
@@ -0,0 +1,85 @@
+package com.protoevo.test;
+
+import com.protoevo.core.StatRecord;
+import com.protoevo.core.StatSchema;
+import com.protoevo.core.StatSummary;
+import com.protoevo.core.Statistics;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestStatSummary {
+
+    private final StatSchema schema = new StatSchema();
+    private final StatSchema.Id mass = schema.register("Mass", Statistics.ComplexUnit.MASS);
+    private final StatSchema.Id spikes = schema.registerCount("Spikes");
+
+    private StatRecord[] makeRecords(int n) {
+        Random random = new Random(7);
+        StatRecord[] records = new StatRecord[n];
+        for (int i = 0; i < n; i++) {
+            records[i] = new StatRecord(schema);
+            records[i].put(mass, 1 + 10 * random.nextDouble());
+            if (i % 3 == 0)
+                records[i].put(spikes, random.nextInt(5));
+        }
+        return records;
+    }
+
+    private static StatSummary summarise(StatSchema schema, StatRecord[] records, int from, int to) {
+        StatSummary summary = new StatSummary(schema, true);
+        for (int i = from; i < to; i++)
+            summary.accept(records[i]);
+        return summary;
+    }
+
+    @Test
+    public void testMergeMatchesSequential() {
+        StatRecord[] records = makeRecords(1001);
+        StatSummary sequential = summarise(schema, records, 0, records.length);
+        StatSummary merged = summarise(schema, records, 0, 10)
+                .merge(summarise(schema, records, 10, 600))
+                .merge(summarise(schema, records, 600, records.length));
+        StatSummary parallel = IntStream.range(0, records.length).parallel().collect(
+                () -> new StatSummary(schema, true),
+                (summary, i) -> summary.accept(records[i]),
+                StatSummary::merge);
+
+        for (StatSummary summary : new StatSummary[]{merged, parallel}) {
+            assertEquals(records.length, summary.getSamples());
+            for (StatSchema.Id id : new StatSchema.Id[]{mass, spikes}) {
+                assertEquals(sequential.getCount(id), summary.getCount(id));
+                assertEquals(sequential.getMean(id), summary.getMean(id), 1e-9);
+                assertEquals(sequential.getVariance(id), summary.getVariance(id), 1e-9);
+                assertEquals(sequential.getMin(id), summary.getMin(id), 0);
+                assertEquals(sequential.getMax(id), summary.getMax(id), 0);
+                assertEquals(sequential.getLogMean(id), summary.getLogMean(id), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testAgreesWithStatisticsSummary() {
+        StatRecord[] records = makeRecords(200);
+        List<Statistics> perRecord = new ArrayList<>();
+        for (StatRecord record : records)
+            perRecord.add(record.toStatistics());
+
+        Statistics expected = Statistics.computeSummaryStatistics(perRecord.iterator());
+        Statistics actual = summarise(schema, records, 0, records.length).writeTo(new Statistics(), true);
+
+        for (String name : new String[]{"Mass Mean", "Mass Min", "Mass Max", "Spikes Mean", "Spikes Max"})
+            assertEquals(expected.getDouble(name), actual.getDouble(name), 1e-9);
+        assertEquals(expected.getStatsMap().get("Mass Mean").getError(),
+                actual.getStatsMap().get("Mass Mean").getError(), 1e-9);
+        assertEquals(expected.getCount("Spikes Count"), actual.getCount("Spikes Count"));
+        // recorded for every sample, so the count is implied
+        assertNull(actual.getValue("Mass Count"));
+    }
+}
@@ -0,0 +1,122 @@
+package com.protoevo.test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.protoevo.core.QuantileSketch;
+import com.protoevo.core.StatDistribution;
+import com.protoevo.core.Statistics;
+import com.protoevo.core.StatsLog;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TestStatsLog {
+
+    private static Statistics makeStats(int i) {
+        Statistics stats = new Statistics();
+        stats.putMass("Total Mass", 10.0 * i).setError(0.5);
+        stats.putCount("Protozoa", 100 + i);
+        stats.putBoolean("Mating", i % 2 == 0);
+        stats.put("Label", "not logged");
+        if (i >= 5)
+            stats.putTime("Time Elapsed", 2.5 * i);
+        return stats;
+    }
+
+    private static Map<String, StatDistribution> makeDistributions() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = 1; i <= 100; i++)
+            sketch.add(i);
+        return Collections.singletonMap("Size", new StatDistribution(sketch, 1, 100));
+    }
+
+    private static Path writeLog(int rows) throws IOException {
+        Path path = Files.createTempDirectory("stats").resolve(StatsLog.LOG_FILE);
+        try (StatsLog log = StatsLog.open(path)) {
+            for (int i = 0; i < rows; i++)
+                log.append(1000L * i, makeStats(i), i == 0 ? makeDistributions() : null);
+        }
+        return path;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        int rows = StatsLog.FLUSH_ROWS + 8;
+        StatsLog.History history = StatsLog.read(writeLog(rows));
+
+        assertEquals(rows, history.getRowCount());
+        StatsLog.Column mass = history.getColumn("Total Mass");
+        StatsLog.Column protozoa = history.getColumn("Protozoa");
+        StatsLog.Column time = history.getColumn("Time Elapsed");
+        assertNull(history.getColumn("Label"));
+        for (int i = 0; i < rows; i++) {
+            assertEquals(1000L * i, history.getTimeStamp(i));
+            assertEquals(10.0 * i, history.getValue(mass, i), 0);
+            assertEquals(0.5, history.getError(mass, i), 0);
+            assertEquals(100 + i, history.getValue(protozoa, i), 0);
+            assertEquals(i >= 5, history.has(time, i));
+        }
+
+        Statistics stats = history.getStatistics(7);
+        assertEquals(Integer.valueOf(107), stats.getValue("Protozoa", Integer.class));
+        assertEquals(Boolean.FALSE, stats.getBoolean("Mating"));
+        assertEquals(17.5, stats.getStatsMap().get("Time Elapsed").getDouble(), 0);
+        assertEquals(1, stats.getStatsMap().get("Total Mass").getUnit().getExponent(Statistics.BaseUnit.MASS));
+    }
+
+    @Test
+    public void testReopenDropsPartialRecord() throws IOException {
+        Path path = writeLog(3);
+        // a record header promising more than was written, as if the simulation died mid-write
+        Files.write(path, new byte[]{1, 0, 0, 1, 0, 42}, StandardOpenOption.APPEND);
+
+        try (StatsLog log = StatsLog.open(path)) {
+            log.append(3000L, makeStats(3), null);
+        }
+        StatsLog.History history = StatsLog.read(path);
+        assertEquals(4, history.getRowCount());
+        assertEquals(30.0, history.getValue(history.getColumn("Total Mass"), 3), 0);
+    }
+
+    @Test
+    public void testExports() throws IOException {
+        StatsLog.History history = StatsLog.read(writeLog(6));
+
+        StringWriter csv = new StringWriter();
+        history.writeCsv(csv);
+        String[] lines = csv.toString().split("\n");
+        assertEquals(7, lines.length);
+        assertTrue(lines[0].startsWith("Time Stamp,"));
+        assertTrue(lines[0].contains("Total Mass,Total Mass Error"));
+        assertTrue(lines[0].contains("Size p50"));
+
+        StringWriter ndjson = new StringWriter();
+        history.writeNdjson(ndjson);
+        lines = ndjson.toString().split("\n");
+        assertEquals(6, lines.length);
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode first = mapper.readTree(lines[0]);
+        JsonNode mass = first.get("stats").get("Total Mass");
+        assertEquals(0.0, mass.get("value").asDouble(), 0);
+        assertEquals(0.5, mass.get("error").asDouble(), 0);
+        assertEquals(1, mass.get("unit").get("units").get("MASS").asInt());
+        assertTrue(first.get("stats").get("Mating").get("value").asBoolean());
+        JsonNode size = first.get("distributions").get("Size");
+        assertEquals(100, size.get("count").asLong());
+        assertEquals(StatDistribution.QUANTILES.length, size.get("quantiles").size());
+        assertEquals(StatDistribution.HISTOGRAM_BINS, size.get("binCounts").size());
+        assertEquals(StatDistribution.HISTOGRAM_BINS + 1, size.get("binEdges").size());
+
+        JsonNode last = mapper.readTree(lines[5]);
+        assertEquals(12.5, last.get("stats").get("Time Elapsed").get("value").asDouble(), 0);
+        assertEquals(0, last.get("distributions").size());
+    }
+}
@@ -0,0 +1,117 @@
+package com.protoevo.test;
+
+import com.protoevo.biology.cells.Cell;
+import com.protoevo.biology.cells.Protozoan;
+import com.protoevo.biology.evolution.Evolvable;
+import com.protoevo.env.Serialiser;
+import com.protoevo.env.StructuralCopier;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class TestStructuralCopier {
+
+    public interface ValueSupplier extends Serializable {
+        int get();
+    }
+
+    public static class Node implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String name;
+        private int value;
+        private Node next;
+        private final float[] weights = {1, 2, 3};
+        private final Node[] children = new Node[2];
+        private final Map<String, Node> byName = new HashMap<>();
+        private final Set<Node> seen = new HashSet<>();
+        private final TreeMap<String, Integer> sorted = new TreeMap<>(Comparator.reverseOrder());
+        private final Map<Long, Long> concurrent = new ConcurrentHashMap<>();
+        private final ValueSupplier valueSupplier = this::getValue;
+        private transient List<Node> cache = new ArrayList<>();
+
+        public Node(String name, int value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Node && ((Node) o).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+
+    private static Node makeGraph() {
+        Node a = new Node("a", 1), b = new Node("b", 2);
+        a.next = b;
+        b.next = a;
+        a.children[0] = b;
+        a.children[1] = a;
+        a.byName.put("b", b);
+        a.seen.add(b);
+        b.seen.add(a);
+        a.sorted.put("x", 1);
+        a.sorted.put("y", 2);
+        a.concurrent.put(3L, 4L);
+        a.cache.add(b);
+        return a;
+    }
+
+    @Test
+    public void testCopiesGraph() {
+        Node a = makeGraph();
+        Node copy = new StructuralCopier().copy(a);
+
+        assertNotSame(a, copy);
+        assertEquals(1, copy.value);
+        assertSame(a.name, copy.name);
+        assertNotSame(a.next, copy.next);
+        assertEquals(2, copy.next.value);
+        // shared references and cycles keep their shape
+        assertSame(copy, copy.next.next);
+        assertSame(copy.next, copy.children[0]);
+        assertSame(copy, copy.children[1]);
+        assertSame(copy.next, copy.byName.get("b"));
+        assertTrue(copy.seen.contains(copy.next));
+        assertSame(copy, copy.next.seen.iterator().next());
+        assertNotSame(a.weights, copy.weights);
+        assertArrayEquals(a.weights, copy.weights, 0);
+        assertEquals(Arrays.asList("y", "x"), new ArrayList<>(copy.sorted.keySet()));
+        assertEquals(Long.valueOf(4), copy.concurrent.get(3L));
+        // transient fields are left out, as serialisation leaves them out
+        assertNull(copy.cache);
+        assertArrayEquals(Serialiser.toBytes(a, Node.class), Serialiser.toBytes(copy, Node.class));
+
+        // the copy is independent of the original
+        a.value = 5;
+        a.weights[0] = 10;
+        a.byName.clear();
+        assertEquals(1, copy.value);
+        // a method reference is bound to the copy rather than the original
+        assertEquals(1, copy.valueSupplier.get());
+        assertEquals(1, copy.weights[0], 0);
+        assertEquals(1, copy.byName.size());
+    }
+
+    @Test
+    public void testCopySerialisesAsOriginal() {
+        Protozoan protozoan = Evolvable.createNew(Protozoan.class);
+        Protozoan copy = new StructuralCopier().copy(protozoan);
+        assertNotSame(protozoan, copy);
+        assertNotSame(protozoan.getGeneExpressionFunction(), copy.getGeneExpressionFunction());
+        // maps keyed by lambdas, which hash by identity, may be written in another order, but hold the same
+        assertEquals(Serialiser.toBytes(protozoan, Cell.class).length, Serialiser.toBytes(copy, Cell.class).length);
+    }
+}
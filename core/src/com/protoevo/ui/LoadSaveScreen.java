@@ -9,21 +9,19 @@ import com.badlogic.gdx.scenes.scene2d.ui.*;
 import com.badlogic.gdx.scenes.scene2d.utils.ClickListener;
 import com.badlogic.gdx.utils.Align;
 import com.badlogic.gdx.utils.ScreenUtils;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.protoevo.core.Simulation;
 import com.protoevo.core.Statistics;
+import com.protoevo.env.SaveManifest;
+import com.protoevo.env.SaveMetadata;
 import com.protoevo.ui.rendering.EnvironmentRenderer;
 import com.protoevo.utils.CursorUtils;
 import com.protoevo.utils.DebugMode;
-import com.protoevo.utils.FileIO;
 import scala.Int;
 
-import java.io.IOException;
 import java.nio.file.Path;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.function.Consumer;
 
 public class LoadSaveScreen extends ScreenAdapter {
@@ -49,9 +47,12 @@ public class LoadSaveScreen extends ScreenAdapter {
         skin = graphics.getSkin();
         final Table scrollTable = new Table();
 
-        Simulation.getSavePaths(simulationName)
-                .sorted(Comparator.comparing(Simulation::saveModifiedTime).reversed())
-                .forEach(p -> addLoadScrollItem(p, scrollTable));
+        List<SaveMetadata> saves = Simulation.getSaves(simulationName);
+        Path environmentDir = Simulation.getEnvironmentDir(simulationName);
+        for (int i = saves.size() - 1; i >= 0; i--) {
+            if (SaveManifest.exists(environmentDir.resolve(saves.get(i).getName())))
+                addLoadScrollItem(saves.get(i), scrollTable);
+        }
 
         final ScrollPane scroller = new ScrollPane(scrollTable);
         scroller.setScrollbarsVisible(true);
@@ -101,34 +102,27 @@ public class LoadSaveScreen extends ScreenAdapter {
         }
     }
 
-    private Map<String, String> getStatsMap(Path savePath) {
-        Map<String, String> statsMap = new HashMap<>();
-        String saveTimeStamp = savePath.getFileName().toString();
-        String timeStampPretty = reformatTimeStampString(saveTimeStamp);
-        statsMap.put("Time Stamp", timeStampPretty);
-
-        Long saveTime = Simulation.saveModifiedTime(savePath);
-        Optional<Path> statsPath = Simulation.getClosestStatsPath(simulationName, saveTime);
-        if (statsPath.isPresent()) {
-            try {
-                JsonNode stats = FileIO.readJson(statsPath.get().toString()).get("stats");
-                statsMap.put("Time Elapsed", stats.get("Time Elapsed").get("value").asText());
-                statsMap.put("Generation", stats.get("Max Protozoa Generation").get("value").asText());
-                statsMap.put("Number of Protozoa", stats.get("Protozoa").get("value").asInt() + "");
-            } catch (IOException e) {
-                return statsMap;
-            }
+    private Map<String, String> getStatsMap(SaveMetadata save) {
+        Map<String, String> statsMap = new LinkedHashMap<>();
+        statsMap.put("Time Stamp", reformatTimeStampString(save.getName()));
+
+        if (save.hasCounts()) {
+            Statistics stats = new Statistics();
+            statsMap.put("Time Elapsed", stats.putTime("Time Elapsed", save.getTimeElapsed()).getValueString());
+            statsMap.put("Generation", save.getGeneration() + "");
+            statsMap.put("Number of Protozoa", save.getProtozoa() + "");
         }
+        statsMap.put("Size", String.format("%.1f MB", save.getSizeBytes() / 1e6));
 
         return statsMap;
     }
 
-    private void addLoadScrollItem(Path path, Table scrollTable) {
+    private void addLoadScrollItem(SaveMetadata save, Table scrollTable) {
         float scrollWidth = Gdx.graphics.getWidth() / 2f;
 
         Table statsTable = new Table();
 
-        for (Map.Entry<String, String> entry : getStatsMap(path).entrySet()) {
+        for (Map.Entry<String, String> entry : getStatsMap(save).entrySet()) {
             Label nameLabel = new Label(entry.getKey() + ": ", skin);
             nameLabel.setAlignment(Align.right);
             statsTable.add(nameLabel).width(scrollWidth / 2f);
@@ -141,7 +135,7 @@ public class LoadSaveScreen extends ScreenAdapter {
             statsTable.row();
         }
 
-        final String saveTimeStamp = path.getFileName().toString();
+        final String saveTimeStamp = save.getName();
         TextButton loadButton = new TextButton("Load", skin);
         loadButton.addListener(new ClickListener() {
             @Override
@@ -8,6 +8,7 @@ import com.badlogic.gdx.scenes.scene2d.ui.TextButton;
 import com.badlogic.gdx.scenes.scene2d.ui.VerticalGroup;
 import com.badlogic.gdx.utils.ScreenUtils;
 import com.protoevo.core.Simulation;
+import com.protoevo.env.SaveMetadata;
 import com.protoevo.networking.RemoteSimulation;
 import com.protoevo.ui.rendering.EnvironmentRenderer;
 import com.protoevo.utils.CursorUtils;
@@ -84,8 +85,8 @@ public class TitleScreen extends ScreenAdapter {
     }
 
     public Long getMostRecentSaveModifiedTime(String saveName) {
-        return Simulation.getMostRecentSave(saveName)
-                .map(s -> s.toFile().lastModified()).orElseGet(() -> 0L);
+        return Simulation.getMostRecentSaveMetadata(saveName)
+                .map(SaveMetadata::getTakenAt).orElse(0L);
     }
 
     @Override
@@ -0,0 +1,6 @@
+package com.protoevo.utils;
+
+import java.io.Serializable;
+import java.util.function.BiFunction;
+
+public interface SerializableBiFunction<T, U, R> extends BiFunction<T, U, R>, Serializable {}
@@ -0,0 +1,6 @@
+package com.protoevo.utils;
+
+import java.io.Serializable;
+import java.util.function.Supplier;
+
+public interface SerializableSupplier<T> extends Supplier<T>, Serializable {}
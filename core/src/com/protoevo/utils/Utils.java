@@ -6,12 +6,13 @@ import com.badlogic.gdx.math.Vector2;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Utils {
 
     public static long randomLong() {
-        return UUID.randomUUID().getMostSignificantBits();
+        // ids and gene signatures only need to be unique, not cryptographically random
+        return ThreadLocalRandom.current().nextLong();
     }
 
     public static Map<String, String> parseArgs(String[] args) {
@@ -18,12 +18,36 @@ class SimulationFiles:
         self.load()
 
     def load(self):
+        stats_file = self.save_dir / 'stats/stats.ndjson'
+        stats_log = self.save_dir / 'stats/stats.log'
         stats_dir = self.save_dir  / 'stats/summaries'
         genomes_dir = self.save_dir / 'stats/protozoa-genomes'
+        genome_snapshots = self.save_dir / 'stats/genome-archive/snapshots.log'
+
+        if stats_log.exists() and (
+                not stats_file.exists() or stats_file.stat().st_mtime < stats_log.stat().st_mtime):
+            # the export is only brought up to date when the simulation closes or crashes
+            raise RuntimeError(
+                f'{stats_file} is missing or older than {stats_log}, '
+                f'export it with: StatsLog {self.name}')
+
+        if stats_file.exists():
+            # exported from the stats log, with one snapshot per line
+            with open(stats_file) as f:
+                snapshots = [json.loads(line) for line in f if line.strip()]
+            self.stats = {snapshot['time_stamp']: snapshot for snapshot in snapshots}
+        else:
+            # simulations from before the stats log wrote a file per snapshot
+            self.stats = {
+                f.stem: json.load(open(f)) for f in stats_dir.glob('*.json')
+            }
 
-        self.stats = {
-            f.stem: json.load(open(f)) for f in stats_dir.glob('*.json')
-        }
+        if genome_snapshots.exists() and (
+                not genomes_dir.exists() or genomes_dir.stat().st_mtime < genome_snapshots.stat().st_mtime):
+            # the genome archive is only converted to json on demand
+            raise RuntimeError(
+                f'{genomes_dir} is missing or older than {genome_snapshots}, '
+                f'export it with: GenomeArchive {self.name}')
 
         self.genomes = {
             f.stem: json.load(open(f)) for f in genomes_dir.glob('*.json')